@@ -0,0 +1,147 @@
+/*
+Copyright (c) 2007 Health Market Science, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.healthmarketscience.rmiio.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.healthmarketscience.rmiio.PacketOutputStream;
+import com.healthmarketscience.rmiio.util.EncodingInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the common read patterns against an {@link EncodingInputStream}
+ * whose encoder writes packets of a fixed size.  Each invocation reads
+ * {@link #TOTAL_BYTES} bytes.
+ *
+ * @author James Ahlborn
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EncodingInputStreamBenchmark
+{
+  static final int TOTAL_BYTES = 1024 * 1024;
+
+  /** size of the packets written by the encoder */
+  @Param({"1024", "7168"})
+  public int encodeSize;
+
+  /** whether the encoder hands over its packets or writes copies */
+  @Param({"true", "false"})
+  public boolean writePackets;
+
+  @Benchmark
+  public long readSingleBytes() throws IOException
+  {
+    EncodingInputStream in = newStream();
+    long total = 0L;
+    while(in.read() >= 0) {
+      ++total;
+    }
+    return total;
+  }
+
+  @Benchmark
+  public long readSmallArrays() throws IOException
+  {
+    return readArrays(newStream(), new byte[512]);
+  }
+
+  @Benchmark
+  public long readLargeArrays() throws IOException
+  {
+    return readArrays(newStream(), new byte[64 * 1024]);
+  }
+
+  @Benchmark
+  public long readPackets() throws IOException
+  {
+    EncodingInputStream in = newStream();
+    long total = 0L;
+    byte[] packet = null;
+    while((packet = in.readPacket(false)) != null) {
+      total += packet.length;
+    }
+    return total;
+  }
+
+  private static long readArrays(EncodingInputStream in, byte[] buf)
+    throws IOException
+  {
+    long total = 0L;
+    int numRead = 0;
+    while((numRead = in.read(buf)) >= 0) {
+      total += numRead;
+    }
+    return total;
+  }
+
+  private EncodingInputStream newStream() {
+    return new FixedEncodingInputStream(encodeSize, writePackets);
+  }
+
+  /**
+   * EncodingInputStream which encodes {@link #TOTAL_BYTES} bytes in fixed
+   * size packets.
+   */
+  private static final class FixedEncodingInputStream
+    extends EncodingInputStream
+  {
+    private final PacketOutputStream _out;
+    private final int _encodeSize;
+    private final boolean _writePackets;
+    private final byte[] _buf;
+    private int _remaining = TOTAL_BYTES;
+
+    private FixedEncodingInputStream(int encodeSize, boolean writePackets) {
+      super(encodeSize);
+      _out = createOutputStream();
+      _encodeSize = encodeSize;
+      _writePackets = writePackets;
+      _buf = new byte[encodeSize];
+    }
+
+    @Override
+    protected void encode(int suggestedLength) throws IOException
+    {
+      if(_remaining <= 0) {
+        _out.close();
+        return;
+      }
+      int len = Math.min(_encodeSize, _remaining);
+      if(_writePackets) {
+        _out.writePacket(new byte[len]);
+      } else {
+        _out.write(_buf, 0, len);
+      }
+      _remaining -= len;
+    }
+  }
+
+}
@@ -0,0 +1,169 @@
+/*
+Copyright (c) 2007 Health Market Science, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.healthmarketscience.rmiio.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.healthmarketscience.rmiio.GZIPRemoteInputStream;
+import com.healthmarketscience.rmiio.GZIPRemoteOutputStream;
+import com.healthmarketscience.rmiio.RemoteInputStreamClient;
+import com.healthmarketscience.rmiio.RemoteInputStreamServer;
+import com.healthmarketscience.rmiio.RemoteOutputStreamClient;
+import com.healthmarketscience.rmiio.RemoteRetry;
+import com.healthmarketscience.rmiio.SimpleRemoteInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the compression work done by {@link GZIPRemoteInputStream} and
+ * {@link GZIPRemoteOutputStream} (and the matching client decompression),
+ * with uncompressed {@link SimpleRemoteInputStream} transfers as a
+ * baseline.  The servers are not exported, so no RMI work is measured.
+ *
+ * @author James Ahlborn
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GZIPBenchmark
+{
+  @Param({"65536", "1048576"})
+  public int payloadSize;
+
+  /** "text" is fairly compressible, "random" is not compressible */
+  @Param({"text", "random"})
+  public String payloadType;
+
+  private byte[] _payload;
+  private final byte[] _buf = new byte[8192];
+
+  @Setup
+  public void setUp() {
+    _payload = newPayload(payloadType, payloadSize);
+  }
+
+  /** server side compression only */
+  @Benchmark
+  public long gzipInputEncode() throws IOException
+  {
+    GZIPRemoteInputStream server =
+      new GZIPRemoteInputStream(new ByteArrayInputStream(_payload));
+    long total = 0L;
+    int packetId = 0;
+    byte[] packet = null;
+    while((packet = server.readPacket(packetId++)) != null) {
+      total += packet.length;
+    }
+    server.close(true);
+    return total;
+  }
+
+  /** server side compression and client side decompression */
+  @Benchmark
+  public long gzipInputRoundTrip() throws IOException
+  {
+    return readAll(new GZIPRemoteInputStream(
+                       new ByteArrayInputStream(_payload)));
+  }
+
+  @Benchmark
+  public long simpleInputRoundTrip() throws IOException
+  {
+    return readAll(new SimpleRemoteInputStream(
+                       new ByteArrayInputStream(_payload)));
+  }
+
+  /** client side compression and server side decompression */
+  @Benchmark
+  public long gzipOutputRoundTrip() throws IOException
+  {
+    CountingOutputStream counter = new CountingOutputStream();
+    OutputStream out = RemoteOutputStreamClient.wrap(
+        new GZIPRemoteOutputStream(counter), RemoteRetry.NEVER);
+    out.write(_payload);
+    out.close();
+    return counter._count;
+  }
+
+  private long readAll(RemoteInputStreamServer server) throws IOException
+  {
+    InputStream in = RemoteInputStreamClient.wrap(server, RemoteRetry.NEVER);
+    long total = 0L;
+    int numRead = 0;
+    while((numRead = in.read(_buf)) >= 0) {
+      total += numRead;
+    }
+    in.close();
+    return total;
+  }
+
+  static byte[] newPayload(String type, int size)
+  {
+    byte[] payload = new byte[size];
+    Random rand = new Random(42L);
+    if("random".equals(type)) {
+      rand.nextBytes(payload);
+    } else {
+      // repetitive words, roughly as compressible as typical text
+      String[] words = {"the ", "quick ", "brown ", "fox ", "jumped ",
+                        "over ", "lazy ", "dogs ", "remote ", "stream\n"};
+      int pos = 0;
+      while(pos < size) {
+        byte[] word = words[rand.nextInt(words.length)].getBytes();
+        int len = Math.min(word.length, size - pos);
+        System.arraycopy(word, 0, payload, pos, len);
+        pos += len;
+      }
+    }
+    return payload;
+  }
+
+  /**
+   * OutputStream which discards the data, just counting the bytes.
+   */
+  private static final class CountingOutputStream extends OutputStream
+  {
+    private long _count;
+
+    @Override
+    public void write(int b) {
+      ++_count;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      _count += len;
+    }
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+Copyright (c) 2007 Health Market Science, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.healthmarketscience.rmiio.benchmark;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.healthmarketscience.rmiio.IOIteratorPipe;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the handoff of elements between a producer thread and a
+ * consumer thread through an {@link IOIteratorPipe}.  Each invocation moves
+ * {@link #numElements} elements.
+ *
+ * @author James Ahlborn
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IOIteratorPipeBenchmark
+{
+  @Param({"1", "100", "1000"})
+  public int queueSize;
+
+  @Param({"10000"})
+  public int numElements;
+
+  private ExecutorService _producer;
+
+  @Setup
+  public void setUp() {
+    _producer = Executors.newSingleThreadExecutor();
+  }
+
+  @TearDown
+  public void tearDown() {
+    _producer.shutdownNow();
+  }
+
+  @Benchmark
+  public long handoff() throws Exception
+  {
+    final IOIteratorPipe<Integer> pipe =
+      new IOIteratorPipe<Integer>(queueSize);
+    final int numElems = numElements;
+    Future<?> producer = _producer.submit(() -> {
+        IOIteratorPipe<Integer>.Sink sink = pipe.getSink();
+        try {
+          for(int i = 0; i < numElems; ++i) {
+            sink.addNext(i);
+          }
+          sink.setFinished();
+        } finally {
+          sink.close();
+        }
+        return null;
+      });
+
+    long total = 0L;
+    IOIteratorPipe<Integer>.Source source = pipe.getSource();
+    try {
+      while(source.hasNext()) {
+        total += source.next();
+      }
+    } finally {
+      source.close();
+    }
+    producer.get();
+    return total;
+  }
+
+}
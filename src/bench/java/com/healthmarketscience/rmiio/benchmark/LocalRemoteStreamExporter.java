@@ -0,0 +1,52 @@
+/*
+Copyright (c) 2007 Health Market Science, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.healthmarketscience.rmiio.benchmark;
+
+import com.healthmarketscience.rmiio.RemoteStreamServer;
+import com.healthmarketscience.rmiio.exporter.RemoteStreamExporter;
+
+/**
+ * RemoteStreamExporter which does not actually export the stream servers,
+ * the "stub" is the server itself.  Allows the benchmarks to measure the
+ * encoding/decoding work without any RMI overhead.
+ *
+ * @author James Ahlborn
+ */
+public class LocalRemoteStreamExporter extends RemoteStreamExporter
+{
+  /** the last server "exported" by this exporter */
+  private RemoteStreamServer<?,?> _lastServer;
+
+  public LocalRemoteStreamExporter() {}
+
+  public RemoteStreamServer<?,?> getLastServer() {
+    return _lastServer;
+  }
+
+  @Override
+  protected Object exportImpl(RemoteStreamServer<?,?> server)
+  {
+    _lastServer = server;
+    return server;
+  }
+
+  @Override
+  protected void unexportImpl(RemoteStreamServer<?,?> server)
+  {
+    // nothing to do
+  }
+
+}
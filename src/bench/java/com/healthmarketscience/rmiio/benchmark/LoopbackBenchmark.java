@@ -0,0 +1,870 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.rmi.Remote;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.healthmarketscience.rmiio.GZIPRemoteInputStream;
+import com.healthmarketscience.rmiio.RemoteCallMonitor;
+import com.healthmarketscience.rmiio.RemoteInputStream;
+import com.healthmarketscience.rmiio.RemoteInputStreamClient;
+import com.healthmarketscience.rmiio.RemoteInputStreamServer;
+import com.healthmarketscience.rmiio.RemoteIterator;
+import com.healthmarketscience.rmiio.RemoteWrapper;
+import com.healthmarketscience.rmiio.RmiioUtil;
+import com.healthmarketscience.rmiio.SerialRemoteIteratorClient;
+import com.healthmarketscience.rmiio.SerialRemoteIteratorServer;
+import com.healthmarketscience.rmiio.SimpleRemoteInputStream;
+import com.healthmarketscience.rmiio.exporter.NetworkEmulatingRemoteStreamExporter;
+import com.healthmarketscience.rmiio.exporter.RemoteStreamExporter;
+import com.healthmarketscience.rmiio.socket.RMISocket;
+import com.healthmarketscience.rmiio.util.ThreadFactories;
+import examples.iterator.RemoteStringServer;
+import examples.socket.RemoteSocketServer;
+import examples.stream.RemoteFileServer;
+
+/**
+ * End-to-end throughput and latency benchmark which runs the example
+ * servers' remote interfaces ({@code examples.stream},
+ * {@code examples.iterator} and {@code examples.socket}) over real RMI
+ * calls on the loopback interface.  A local registry is started, the
+ * servers are bound under the same names used by the examples, and the
+ * clients look them up through the registry, just like the example
+ * clients.  The servers discard the data they receive (instead of writing
+ * it to temp files), so only the transfer itself is measured.
+ * <p>
+ * Each cell of the matrix (scenario x payload size x chunk size x
+ * compression x concurrency) runs the given number of concurrent
+ * transfers, and reports:
+ * <ul>
+ * <li>{@code mbPerSec}: total payload MB (2^20 bytes) per second of wall
+ *     time</li>
+ * <li>{@code packetsPerSec}: remote packet calls per second</li>
+ * <li>{@code ttfb*}: time from the start of the transfer call on the
+ *     receiving server to the first byte (or element) of data; for the
+ *     socket scenario, the round trip of the first message</li>
+ * <li>{@code packet*}: latency of the individual remote packet calls
+ *     ({@code readPacket}/{@code writePacket}), including retries</li>
+ * </ul>
+ * Results are written as JSON lines (one object per run of each cell) and
+ * summarized on stdout.  For the socket scenario, the chunk size is used as
+ * the message size (sent in pieces no larger than the socket's pipe buffer)
+ * and compression does not apply.  Cells whose total
+ * payload (payload size x concurrency) exceeds {@code maxBytesPerRun} are
+ * skipped.
+ * <p>
+ * If a baseline results file is given, the throughput of each cell is
+ * compared to the baseline and the benchmark exits with status 1 if any
+ * cell regressed by more than {@code maxRegression}, so it can be used as a
+ * regression gate.
+ * <p>
+ * Usage (all options are optional, lists are comma separated):
+ * <pre>
+ * mvn -Pbenchmarks test-compile exec:exec@loopback -Dloopback.args="..."
+ *
+ *   --scenarios=stream,iterator,socket
+ *   --payloadSizes=65536,1048576,16777216
+ *   --chunkSizes=4096,7168,65536
+ *   --compression=false,true
+ *   --concurrency=1,10,100,1000
+ *   --runs=1
+ *   --maxBytesPerRun=1073741824
+ *   --out=target/loopback-results.jsonl
+ *   --baseline=&lt;previous results file&gt;
+ *   --maxRegression=0.2
+ *   --latency=0 --jitter=0 --bandwidth=0 --failureRate=0
+ * </pre>
+ * The latency, jitter, bandwidth and failureRate options enable the
+ * {@link NetworkEmulatingRemoteStreamExporter} for the streams, so the
+ * scenarios can be run under WAN-like conditions (see that class for
+ * details on the units).
+ *
+ * @author James Ahlborn
+ */
+public class LoopbackBenchmark
+{
+  private static final String STREAM = "stream";
+  private static final String ITERATOR = "iterator";
+  private static final String SOCKET = "socket";
+
+  /** size of the strings sent by the iterator scenario */
+  private static final int STRING_LENGTH = 64;
+  /** the data sent by all the scenarios (repeated as necessary) */
+  private static final byte[] PATTERN =
+    GZIPBenchmark.newPayload("text", 64 * 1024);
+
+  /** the state of the current run, updated by the servers */
+  private static volatile Run _run;
+
+  private final Map<String,String> _opts;
+  private final List<Remote> _servers = new ArrayList<Remote>();
+  private RemoteFileServer _fileServer;
+  private RemoteStringServer _stringServer;
+  private RemoteSocketServer _socketServer;
+
+  private LoopbackBenchmark(Map<String,String> opts) {
+    _opts = opts;
+  }
+
+  public static void main(String[] args) throws Exception
+  {
+    Map<String,String> opts = new HashMap<String,String>();
+    for(String arg : args) {
+      if(!arg.startsWith("--") || (arg.indexOf('=') < 0)) {
+        System.err.println("Invalid option " + arg +
+                           " (expected --name=value)");
+        System.exit(2);
+      }
+      int idx = arg.indexOf('=');
+      opts.put(arg.substring(2, idx), arg.substring(idx + 1));
+    }
+
+    int status = new LoopbackBenchmark(opts).run();
+    System.exit(status);
+  }
+
+  private int run() throws Exception
+  {
+    List<String> scenarios = getList("scenarios", "stream,iterator,socket");
+    List<String> payloadSizes = getList("payloadSizes",
+                                        "65536,1048576,16777216");
+    List<String> chunkSizes = getList("chunkSizes", "4096,7168,65536");
+    List<String> compressions = getList("compression", "false,true");
+    List<String> concurrencies = getList("concurrency", "1,10,100,1000");
+    int numRuns = Integer.parseInt(getOpt("runs", "1"));
+    long maxBytesPerRun = Long.parseLong(getOpt("maxBytesPerRun",
+                                                "1073741824"));
+    File outFile = new File(getOpt("out", "target/loopback-results.jsonl"));
+    String baseline = getOpt("baseline", null);
+    double maxRegression = Double.parseDouble(getOpt("maxRegression", "0.2"));
+
+    startServers();
+    List<Result> results = new ArrayList<Result>();
+    try {
+
+      // warm up each scenario once, so the first cells are not penalized
+      for(String scenario : scenarios) {
+        runCell(scenario, 1024 * 1024, RemoteInputStreamServer.DEFAULT_CHUNK_SIZE,
+                false, 4, -1);
+      }
+
+      File outDir = outFile.getAbsoluteFile().getParentFile();
+      if(outDir != null) {
+        outDir.mkdirs();
+      }
+      PrintWriter out = new PrintWriter(new FileWriter(outFile));
+      try {
+        System.out.println(Result.HEADER);
+        for(String scenario : scenarios) {
+          for(String payloadSize : payloadSizes) {
+            for(String chunkSize : chunkSizes) {
+              for(String compression : compressions) {
+                boolean compress = Boolean.parseBoolean(compression);
+                if(SOCKET.equals(scenario) && compress) {
+                  // not applicable
+                  continue;
+                }
+                for(String concurrency : concurrencies) {
+                  int numStreams = Integer.parseInt(concurrency);
+                  long payload = Long.parseLong(payloadSize);
+                  if((payload * numStreams) > maxBytesPerRun) {
+                    continue;
+                  }
+                  for(int i = 0; i < numRuns; ++i) {
+                    Result result = runCell(
+                        scenario, payload, Integer.parseInt(chunkSize),
+                        compress, numStreams, i);
+                    results.add(result);
+                    System.out.println(result.toSummary());
+                    out.println(result.toJson());
+                    out.flush();
+                  }
+                }
+              }
+            }
+          }
+        }
+      } finally {
+        out.close();
+      }
+      System.out.println("Results written to " + outFile);
+
+    } finally {
+      stopServers();
+    }
+
+    int status = 0;
+    for(Result result : results) {
+      if(result._failures > 0) {
+        status = 1;
+      }
+    }
+    if(baseline != null) {
+      if(!checkBaseline(results, new File(baseline), maxRegression)) {
+        status = 1;
+      }
+    }
+    return status;
+  }
+
+  private void startServers() throws Exception
+  {
+    enableNetworkEmulation();
+
+    int port = Integer.parseInt(getOpt("port", "0"));
+    if(port == 0) {
+      // find a free port
+      ServerSocket tmpSocket = new ServerSocket(0);
+      port = tmpSocket.getLocalPort();
+      tmpSocket.close();
+    }
+
+    Registry registry = LocateRegistry.createRegistry(port);
+    _servers.add(registry);
+    registry.bind("RemoteFileServer", export(new FileSink()));
+    registry.bind("RemoteStringServer", export(new StringSink()));
+    registry.bind("RemoteSocketServer", export(new EchoSocketServer()));
+
+    // the clients get the stubs through the registry, like the examples
+    Registry clientRegistry = LocateRegistry.getRegistry(port);
+    _fileServer = (RemoteFileServer)clientRegistry.lookup("RemoteFileServer");
+    _stringServer = (RemoteStringServer)
+      clientRegistry.lookup("RemoteStringServer");
+    _socketServer = (RemoteSocketServer)
+      clientRegistry.lookup("RemoteSocketServer");
+  }
+
+  /**
+   * Installs the NetworkEmulatingRemoteStreamExporter (via system properties)
+   * if any network conditions were given.  Must be called before any streams
+   * are exported.
+   */
+  private void enableNetworkEmulation()
+  {
+    boolean emulate = false;
+    emulate |= setProperty("latency",
+                           NetworkEmulatingRemoteStreamExporter.LATENCY_PROPERTY);
+    emulate |= setProperty("jitter",
+                           NetworkEmulatingRemoteStreamExporter.JITTER_PROPERTY);
+    emulate |= setProperty("bandwidth",
+                           NetworkEmulatingRemoteStreamExporter.BANDWIDTH_PROPERTY);
+    emulate |= setProperty(
+        "failureRate", NetworkEmulatingRemoteStreamExporter.FAILURE_RATE_PROPERTY);
+    if(emulate) {
+      System.setProperty(RemoteStreamExporter.EXPORTER_PROPERTY,
+                         NetworkEmulatingRemoteStreamExporter.class.getName());
+    }
+  }
+
+  private boolean setProperty(String optName, String propName)
+  {
+    String value = getOpt(optName, null);
+    if(value == null) {
+      return false;
+    }
+    System.setProperty(propName, value);
+    return true;
+  }
+
+  private Remote export(Remote server) throws IOException
+  {
+    _servers.add(server);
+    return UnicastRemoteObject.exportObject(server, 0);
+  }
+
+  private void stopServers()
+  {
+    for(Remote server : _servers) {
+      try {
+        UnicastRemoteObject.unexportObject(server, true);
+      } catch(IOException ignored) {
+        // whatever
+      }
+    }
+  }
+
+  private Result runCell(final String scenario, final long payloadSize,
+                         final int chunkSize, final boolean compress,
+                         int numStreams, int runNum)
+    throws Exception
+  {
+    Run run = new Run();
+    _run = run;
+    RemoteCallMonitor oldMonitor = RemoteWrapper.getDefaultRemoteCallMonitor();
+    RemoteWrapper.setDefaultRemoteCallMonitor(run);
+
+    ExecutorService executor = Executors.newFixedThreadPool(
+        numStreams, ThreadFactories.newThreadFactory("loopback-client"));
+    AtomicReference<Throwable> firstFailure = new AtomicReference<Throwable>();
+    int numFailures = 0;
+    long elapsed = 0L;
+    try {
+      final CountDownLatch startLatch = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for(int i = 0; i < numStreams; ++i) {
+        futures.add(executor.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+              startLatch.await();
+              transfer(scenario, payloadSize, chunkSize, compress);
+              return null;
+            }
+          }));
+      }
+
+      long startTime = System.nanoTime();
+      startLatch.countDown();
+      for(Future<?> future : futures) {
+        try {
+          future.get();
+        } catch(Exception e) {
+          ++numFailures;
+          firstFailure.compareAndSet(null, e.getCause());
+        }
+      }
+      elapsed = System.nanoTime() - startTime;
+
+    } finally {
+      executor.shutdownNow();
+      RemoteWrapper.setDefaultRemoteCallMonitor(oldMonitor);
+      _run = null;
+    }
+
+    if(firstFailure.get() != null) {
+      System.err.println("Failed transfer in " + scenario + " run:");
+      firstFailure.get().printStackTrace(System.err);
+    }
+
+    return new Result(scenario, payloadSize, chunkSize, compress, numStreams,
+                      runNum, run, elapsed, numFailures);
+  }
+
+  private void transfer(String scenario, long payloadSize, int chunkSize,
+                        boolean compress)
+    throws Exception
+  {
+    if(STREAM.equals(scenario)) {
+      // same as examples.stream.TestClient
+      InputStream in = new PayloadInputStream(payloadSize);
+      RemoteInputStreamServer istream = (compress ?
+        new GZIPRemoteInputStream(in, RemoteInputStreamServer.DUMMY_MONITOR,
+                                  chunkSize) :
+        new SimpleRemoteInputStream(in, RemoteInputStreamServer.DUMMY_MONITOR,
+                                    chunkSize));
+      try {
+        _fileServer.sendFile(istream.export());
+      } finally {
+        istream.close();
+      }
+
+    } else if(ITERATOR.equals(scenario)) {
+      // same as examples.iterator.TestClient
+      SerialRemoteIteratorServer<String> server =
+        new SerialRemoteIteratorServer<String>(
+            compress, false, RemoteInputStreamServer.DUMMY_MONITOR, chunkSize,
+            new StringGenerator(payloadSize / STRING_LENGTH));
+      try {
+        _stringServer.sendStrings(
+            new SerialRemoteIteratorClient<String>(server));
+      } finally {
+        server.close();
+      }
+
+    } else if(SOCKET.equals(scenario)) {
+      // same as examples.socket.TestClient, but the "messages" are raw
+      // chunks of payload which are echoed back
+      RMISocket socket = new RMISocket();
+      try {
+        socket.setRemoteSource(_socketServer.connect(socket.getSource()));
+        OutputStream out = socket.getOutputStream();
+        InputStream in = socket.getInputStream();
+        byte[] msg = new byte[chunkSize];
+        byte[] reply = new byte[chunkSize];
+        long remaining = payloadSize;
+        boolean first = true;
+        while(remaining > 0L) {
+          int msgLen = (int)Math.min(remaining, chunkSize);
+          System.arraycopy(PATTERN, 0, msg, 0, Math.min(msgLen,
+                                                        PATTERN.length));
+          long startTime = System.nanoTime();
+          // the socket pipes only buffer one default chunk, so send the
+          // message in pieces and read the echo of each piece before sending
+          // more (otherwise both ends would block writing)
+          for(int pos = 0; pos < msgLen; ) {
+            int len = Math.min(msgLen - pos,
+                               RemoteInputStreamServer.DEFAULT_CHUNK_SIZE);
+            out.write(msg, pos, len);
+            out.flush();
+            readFully(in, reply, pos, len);
+            pos += len;
+          }
+          long rtt = System.nanoTime() - startTime;
+          Run run = _run;
+          if(first) {
+            run._ttfb.record(rtt);
+            first = false;
+          }
+          run._bytes.add(msgLen);
+          remaining -= msgLen;
+        }
+      } finally {
+        RmiioUtil.closeQuietly(socket);
+      }
+
+    } else {
+      throw new IllegalArgumentException("Unknown scenario " + scenario);
+    }
+  }
+
+  private static void readFully(InputStream in, byte[] buf, int off, int len)
+    throws IOException
+  {
+    int numRemaining = len;
+    while(numRemaining > 0) {
+      int numRead = in.read(buf, off + len - numRemaining, numRemaining);
+      if(numRead < 0) {
+        throw new IOException("socket closed after " + (len - numRemaining) +
+                              " of " + len + " bytes");
+      }
+      numRemaining -= numRead;
+    }
+  }
+
+  private boolean checkBaseline(List<Result> results, File baselineFile,
+                                double maxRegression)
+    throws IOException
+  {
+    // use the best throughput of any run for each cell
+    Map<String,Double> baseline = new HashMap<String,Double>();
+    BufferedReader reader = new BufferedReader(new FileReader(baselineFile));
+    try {
+      String line = null;
+      while((line = reader.readLine()) != null) {
+        if(line.trim().length() == 0) {
+          continue;
+        }
+        putMax(baseline, Result.getKey(line),
+               Double.parseDouble(Result.getField(line, "mbPerSec")));
+      }
+    } finally {
+      reader.close();
+    }
+    Map<String,Double> current = new HashMap<String,Double>();
+    for(Result result : results) {
+      putMax(current, result.getKey(), result.getMbPerSec());
+    }
+
+    boolean passed = true;
+    for(Map.Entry<String,Double> e : current.entrySet()) {
+      Double baseMbPerSec = baseline.get(e.getKey());
+      if(baseMbPerSec == null) {
+        continue;
+      }
+      double change = (e.getValue() - baseMbPerSec) / baseMbPerSec;
+      if(change < -maxRegression) {
+        passed = false;
+        System.out.println(String.format(
+            Locale.ROOT, "REGRESSION %s: %.2f MB/s (baseline %.2f MB/s, %.1f%%)",
+            e.getKey(), e.getValue(), baseMbPerSec, change * 100.0d));
+      }
+    }
+    System.out.println(passed ? "No regressions compared to " + baselineFile :
+                       "Regressions found compared to " + baselineFile);
+    return passed;
+  }
+
+  private static void putMax(Map<String,Double> values, String key,
+                             double value)
+  {
+    Double curValue = values.get(key);
+    if((curValue == null) || (curValue < value)) {
+      values.put(key, value);
+    }
+  }
+
+  private String getOpt(String name, String defaultValue)
+  {
+    String value = _opts.get(name);
+    return((value != null) ? value : defaultValue);
+  }
+
+  private List<String> getList(String name, String defaultValue)
+  {
+    return Arrays.asList(getOpt(name, defaultValue).split(","));
+  }
+
+  /**
+   * State for a single run of a cell, updated by the servers and the remote
+   * call monitor.
+   */
+  private static final class Run implements RemoteCallMonitor
+  {
+    private final LongAdder _bytes = new LongAdder();
+    private final LatencySamples _ttfb = new LatencySamples();
+    private final LatencySamples _packets = new LatencySamples();
+
+    @Override
+    public void callCompleted(String methodName, long latencyNanos,
+                              int numAttempts, long backOffNanos,
+                              Throwable failure) {
+      if("readPacket".equals(methodName) ||
+         "writePacket".equals(methodName)) {
+        _packets.record(latencyNanos);
+      }
+    }
+  }
+
+  /**
+   * Collects all the latency samples for a run, for exact percentiles.
+   */
+  private static final class LatencySamples
+  {
+    private long[] _samples = new long[1024];
+    private int _count;
+
+    private synchronized void record(long nanos)
+    {
+      if(_count == _samples.length) {
+        _samples = Arrays.copyOf(_samples, _samples.length * 2);
+      }
+      _samples[_count++] = nanos;
+    }
+
+    private synchronized int getCount() {
+      return _count;
+    }
+
+    /**
+     * @return the given percentile (0-100) of the samples in microseconds
+     */
+    private synchronized double getPercentileMicros(double percentile)
+    {
+      if(_count == 0) {
+        return 0.0d;
+      }
+      long[] sorted = Arrays.copyOf(_samples, _count);
+      Arrays.sort(sorted);
+      int idx = (int)Math.ceil((percentile / 100.0d) * _count) - 1;
+      return sorted[Math.max(Math.min(idx, _count - 1), 0)] / 1000.0d;
+    }
+  }
+
+  /**
+   * The results of a single run of a cell.
+   */
+  private static final class Result
+  {
+    private static final String HEADER = String.format(
+        Locale.ROOT, "%-9s %10s %6s %5s %5s %10s %12s %10s %10s %10s %10s %4s",
+        "scenario", "payload", "chunk", "gzip", "conc", "MB/s",
+        "packets/s", "ttfb50us", "ttfb99us", "pkt50us", "pkt99us", "fail");
+    private static final Pattern KEY_PAT = Pattern.compile(
+        "\"(\\w+)\":\"?([^,\"}]*)\"?");
+
+    private final String _scenario;
+    private final long _payloadSize;
+    private final int _chunkSize;
+    private final boolean _compress;
+    private final int _concurrency;
+    private final int _runNum;
+    private final long _totalBytes;
+    private final long _elapsedNanos;
+    private final int _packets;
+    private final double _ttfbP50;
+    private final double _ttfbP99;
+    private final double _packetP50;
+    private final double _packetP99;
+    private final int _failures;
+
+    private Result(String scenario, long payloadSize, int chunkSize,
+                   boolean compress, int concurrency, int runNum, Run run,
+                   long elapsedNanos, int failures) {
+      _scenario = scenario;
+      _payloadSize = payloadSize;
+      _chunkSize = chunkSize;
+      _compress = compress;
+      _concurrency = concurrency;
+      _runNum = runNum;
+      _totalBytes = run._bytes.sum();
+      _elapsedNanos = Math.max(elapsedNanos, 1L);
+      _packets = run._packets.getCount();
+      _ttfbP50 = run._ttfb.getPercentileMicros(50.0d);
+      _ttfbP99 = run._ttfb.getPercentileMicros(99.0d);
+      _packetP50 = run._packets.getPercentileMicros(50.0d);
+      _packetP99 = run._packets.getPercentileMicros(99.0d);
+      _failures = failures;
+    }
+
+    private double getElapsedSeconds() {
+      return _elapsedNanos / (double)TimeUnit.SECONDS.toNanos(1L);
+    }
+
+    private double getMbPerSec() {
+      return (_totalBytes / (1024.0d * 1024.0d)) / getElapsedSeconds();
+    }
+
+    private double getPacketsPerSec() {
+      return _packets / getElapsedSeconds();
+    }
+
+    private String getKey() {
+      return _scenario + "|" + _payloadSize + "|" + _chunkSize + "|" +
+        _compress + "|" + _concurrency;
+    }
+
+    private static String getKey(String json) {
+      return getField(json, "scenario") + "|" +
+        getField(json, "payloadBytes") + "|" + getField(json, "chunkSize") +
+        "|" + getField(json, "compression") + "|" +
+        getField(json, "concurrency");
+    }
+
+    private static String getField(String json, String name)
+    {
+      Matcher m = KEY_PAT.matcher(json);
+      while(m.find()) {
+        if(m.group(1).equals(name)) {
+          return m.group(2);
+        }
+      }
+      throw new IllegalArgumentException("Missing field " + name + " in " +
+                                         json);
+    }
+
+    private String toJson() {
+      return String.format(
+          Locale.ROOT,
+          "{\"scenario\":\"%s\",\"payloadBytes\":%d,\"chunkSize\":%d," +
+          "\"compression\":%b,\"concurrency\":%d,\"run\":%d," +
+          "\"totalBytes\":%d,\"elapsedMs\":%.3f,\"mbPerSec\":%.3f," +
+          "\"packets\":%d,\"packetsPerSec\":%.1f,\"ttfbP50Us\":%.1f," +
+          "\"ttfbP99Us\":%.1f,\"packetP50Us\":%.1f,\"packetP99Us\":%.1f," +
+          "\"failures\":%d}",
+          _scenario, _payloadSize, _chunkSize, _compress, _concurrency,
+          _runNum, _totalBytes, _elapsedNanos / 1000000.0d, getMbPerSec(),
+          _packets, getPacketsPerSec(), _ttfbP50, _ttfbP99, _packetP50,
+          _packetP99, _failures);
+    }
+
+    private String toSummary() {
+      return String.format(
+          Locale.ROOT,
+          "%-9s %10d %6d %5b %5d %10.2f %12.1f %10.1f %10.1f %10.1f %10.1f %4d",
+          _scenario, _payloadSize, _chunkSize, _compress, _concurrency,
+          getMbPerSec(), getPacketsPerSec(), _ttfbP50, _ttfbP99, _packetP50,
+          _packetP99, _failures);
+    }
+  }
+
+  /**
+   * Generates the given number of bytes of payload data.
+   */
+  private static final class PayloadInputStream extends InputStream
+  {
+    private long _remaining;
+    private int _pos;
+
+    private PayloadInputStream(long size) {
+      _remaining = size;
+    }
+
+    @Override
+    public int read() {
+      if(_remaining <= 0L) {
+        return -1;
+      }
+      --_remaining;
+      int b = PATTERN[_pos] & 0xFF;
+      _pos = (_pos + 1) % PATTERN.length;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len)
+    {
+      if(_remaining <= 0L) {
+        return -1;
+      }
+      len = (int)Math.min(Math.min(len, _remaining), PATTERN.length - _pos);
+      System.arraycopy(PATTERN, _pos, buf, off, len);
+      _pos = (_pos + len) % PATTERN.length;
+      _remaining -= len;
+      return len;
+    }
+
+    @Override
+    public int available() {
+      return (int)Math.min(_remaining, PATTERN.length - _pos);
+    }
+  }
+
+  /**
+   * Generates the given number of payload strings.
+   */
+  private static final class StringGenerator implements Iterator<String>
+  {
+    private final long _numStrings;
+    private long _next;
+
+    private StringGenerator(long numStrings) {
+      _numStrings = numStrings;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return(_next < _numStrings);
+    }
+
+    @Override
+    public String next() {
+      if(!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      int pos = (int)((_next++ * STRING_LENGTH) %
+                      (PATTERN.length - STRING_LENGTH));
+      return new String(PATTERN, pos, STRING_LENGTH,
+                        StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * Version of examples.stream.TestServer.FileServer which discards the
+   * data.
+   */
+  private static final class FileSink implements RemoteFileServer
+  {
+    @Override
+    public void sendFile(RemoteInputStream ristream) throws IOException
+    {
+      long startTime = System.nanoTime();
+      Run run = _run;
+      InputStream istream = RemoteInputStreamClient.wrap(ristream);
+      try {
+        byte[] buf = new byte[64 * 1024];
+        boolean first = true;
+        int bytesRead = 0;
+        while((bytesRead = istream.read(buf)) >= 0) {
+          if(first) {
+            run._ttfb.record(System.nanoTime() - startTime);
+            first = false;
+          }
+          run._bytes.add(bytesRead);
+        }
+      } finally {
+        istream.close();
+      }
+    }
+  }
+
+  /**
+   * Version of examples.iterator.TestServer.StringServer which discards the
+   * strings.
+   */
+  private static final class StringSink implements RemoteStringServer
+  {
+    @Override
+    public void sendStrings(RemoteIterator<String> iter) throws IOException
+    {
+      long startTime = System.nanoTime();
+      Run run = _run;
+      try {
+        boolean first = true;
+        while(iter.hasNext()) {
+          String str = iter.next();
+          if(first) {
+            run._ttfb.record(System.nanoTime() - startTime);
+            first = false;
+          }
+          run._bytes.add(str.length());
+        }
+      } finally {
+        iter.close();
+      }
+    }
+  }
+
+  /**
+   * Version of examples.socket.TestServer.SocketServer which echoes raw
+   * data (instead of framed messages).
+   */
+  private static final class EchoSocketServer implements RemoteSocketServer
+  {
+    @Override
+    public RMISocket.Source connect(RMISocket.Source remoteSource)
+      throws IOException
+    {
+      final RMISocket socket = new RMISocket(remoteSource);
+      RMISocket.Source source = socket.getSource();
+      Thread t = ThreadFactories.newThreadFactory("loopback-echo").newThread(
+          () -> {
+            try {
+              InputStream in = socket.getInputStream();
+              OutputStream out = socket.getOutputStream();
+              byte[] buf = new byte[64 * 1024];
+              int numRead = 0;
+              while((numRead = in.read(buf)) >= 0) {
+                out.write(buf, 0, numRead);
+                out.flush();
+              }
+            } catch(IOException ignored) {
+              // client went away
+            } finally {
+              RmiioUtil.closeQuietly(socket);
+            }
+          });
+      t.start();
+      return source;
+    }
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+Copyright (c) 2007 Health Market Science, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.healthmarketscience.rmiio.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import com.healthmarketscience.rmiio.util.PipeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks moving data through a {@link PipeBuffer} using the byte and
+ * packet based methods.  Each invocation moves {@link #TOTAL_BYTES} bytes.
+ *
+ * @author James Ahlborn
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PipeBufferBenchmark
+{
+  static final int TOTAL_BYTES = 1024 * 1024;
+
+  @Param({"1024", "7168", "65536"})
+  public int packetSize;
+
+  /** size of the arrays used for the byte based reads/writes */
+  @Param({"512", "8192"})
+  public int ioSize;
+
+  private byte[] _ioBuf;
+
+  @Setup
+  public void setUp() {
+    _ioBuf = new byte[ioSize];
+  }
+
+  @Benchmark
+  public long writeRead()
+  {
+    PipeBuffer buf = new PipeBuffer(packetSize);
+    long total = 0L;
+    while(total < TOTAL_BYTES) {
+      buf.write(_ioBuf, 0, _ioBuf.length);
+      buf.read(_ioBuf, 0, _ioBuf.length);
+      total += _ioBuf.length;
+    }
+    return total;
+  }
+
+  @Benchmark
+  public long writeReadPacket()
+  {
+    PipeBuffer buf = new PipeBuffer(packetSize);
+    long total = 0L;
+    while(total < TOTAL_BYTES) {
+      buf.write(_ioBuf, 0, _ioBuf.length);
+      while(buf.packetsAvailable() > 0) {
+        total += buf.readPacket().length;
+      }
+    }
+    return total;
+  }
+
+  @Benchmark
+  public long writePacketReadPacket()
+  {
+    PipeBuffer buf = new PipeBuffer(packetSize);
+    long total = 0L;
+    while(total < TOTAL_BYTES) {
+      buf.writePacket(new byte[packetSize], 0, packetSize);
+      total += buf.readPacket().length;
+    }
+    return total;
+  }
+
+}
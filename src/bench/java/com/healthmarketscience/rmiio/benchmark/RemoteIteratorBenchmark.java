@@ -0,0 +1,148 @@
+/*
+Copyright (c) 2007 Health Market Science, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.healthmarketscience.rmiio.benchmark;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.healthmarketscience.rmiio.RemoteInputStreamServer;
+import com.healthmarketscience.rmiio.SerialRemoteIteratorClient;
+import com.healthmarketscience.rmiio.SerialRemoteIteratorServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the {@link SerialRemoteIteratorServer} encoding and the
+ * {@link SerialRemoteIteratorClient} decoding of typical element types.
+ * Each invocation moves {@link #numElements} elements.  The servers are not
+ * exported, so no RMI work is measured.
+ *
+ * @author James Ahlborn
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RemoteIteratorBenchmark
+{
+  @Param({"integer", "string", "record"})
+  public String elementType;
+
+  @Param({"false", "true"})
+  public boolean compress;
+
+  @Param({"10000"})
+  public int numElements;
+
+  private List<Object> _elements;
+
+  @Setup
+  public void setUp()
+  {
+    _elements = new ArrayList<Object>(numElements);
+    for(int i = 0; i < numElements; ++i) {
+      _elements.add(newElement(elementType, i));
+    }
+  }
+
+  /** server side encoding only */
+  @Benchmark
+  public long encode() throws IOException
+  {
+    LocalRemoteStreamExporter exporter = new LocalRemoteStreamExporter();
+    SerialRemoteIteratorServer<Object> server =
+      new SerialRemoteIteratorServer<Object>(compress, _elements.iterator());
+    new SerialRemoteIteratorClient<Object>(server, exporter);
+    RemoteInputStreamServer streamServer =
+      (RemoteInputStreamServer)exporter.getLastServer();
+
+    long total = 0L;
+    int packetId = 0;
+    byte[] packet = null;
+    while((packet = streamServer.readPacket(packetId++)) != null) {
+      total += packet.length;
+    }
+    server.close();
+    return total;
+  }
+
+  /** server side encoding and client side decoding */
+  @Benchmark
+  public long roundTrip() throws IOException
+  {
+    SerialRemoteIteratorServer<Object> server =
+      new SerialRemoteIteratorServer<Object>(compress, _elements.iterator());
+    SerialRemoteIteratorClient<Object> client =
+      new SerialRemoteIteratorClient<Object>(
+          server, new LocalRemoteStreamExporter());
+
+    long total = 0L;
+    while(client.hasNext()) {
+      client.next();
+      ++total;
+    }
+    client.close();
+    return total;
+  }
+
+  static Object newElement(String type, int idx)
+  {
+    if("integer".equals(type)) {
+      return Integer.valueOf(idx);
+    }
+    if("string".equals(type)) {
+      return "element-" + idx + "-of-the-remote-iterator";
+    }
+    return new Record(idx, "name-" + idx, idx * 1.5d);
+  }
+
+  /**
+   * Small serializable "record" type, typical of application data.
+   */
+  public static final class Record implements Serializable
+  {
+    private static final long serialVersionUID = 20261019L;
+
+    private final long _id;
+    private final String _name;
+    private final double _value;
+
+    public Record(long id, String name, double value) {
+      _id = id;
+      _name = name;
+      _value = value;
+    }
+
+    public long getId() { return _id; }
+    public String getName() { return _name; }
+    public double getValue() { return _value; }
+  }
+
+}
@@ -0,0 +1,131 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Base class for the asynchronous transfers.  Rather than running an entire
+ * transfer on one thread, the transfer moves a single chunk per task and
+ * then resubmits itself to the executor.  Thus, an executor with a few
+ * threads can drive many concurrent transfers, and a thread is only ever
+ * busy while actually moving data.
+ *
+ * @author James Ahlborn
+ */
+abstract class AsyncTransfer implements Runnable
+{
+  private static final Log LOG = LogFactory.getLog(AsyncTransfer.class);
+
+  private final CompletableFuture<TransferStats> _future =
+    new CompletableFuture<TransferStats>();
+  private final Executor _executor;
+  private long _startTime;
+  private long _bytes;
+  private long _chunks;
+
+  protected AsyncTransfer(Executor executor) {
+    if(executor == null) {
+      throw new IllegalArgumentException("executor cannot be null");
+    }
+    _executor = executor;
+  }
+
+  /**
+   * Starts this transfer.
+   *
+   * @return a future which will be completed with the stats for the
+   *         transfer, or the failure which stopped it.  Cancelling the
+   *         future stops the transfer (as a failure) before the next chunk.
+   */
+  public CompletableFuture<TransferStats> start()
+  {
+    _startTime = System.nanoTime();
+    submit();
+    return _future;
+  }
+
+  @Override
+  public void run()
+  {
+    if(_future.isDone()) {
+      // cancelled
+      fail(null);
+      return;
+    }
+
+    try {
+      int numBytes = transferChunk();
+      if(numBytes >= 0) {
+        _bytes += numBytes;
+        ++_chunks;
+        submit();
+        return;
+      }
+
+      finish(true);
+      _future.complete(new TransferStats(_bytes, _chunks,
+                                         System.nanoTime() - _startTime));
+    } catch(Throwable t) {
+      fail(t);
+    }
+  }
+
+  private void submit()
+  {
+    try {
+      _executor.execute(this);
+    } catch(Throwable t) {
+      fail(t);
+    }
+  }
+
+  private void fail(Throwable t)
+  {
+    try {
+      finish(false);
+    } catch(Throwable t2) {
+      if(LOG.isDebugEnabled()) {
+        LOG.debug("Ignoring exception while closing failed transfer", t2);
+      }
+    }
+    if(t != null) {
+      _future.completeExceptionally(t);
+    }
+  }
+
+  /**
+   * Moves the next chunk of data.
+   *
+   * @return the number of bytes moved, or -1 if there is no more data
+   */
+  protected abstract int transferChunk() throws IOException;
+
+  /**
+   * Cleans up the transfer, called once when the transfer is finished.
+   *
+   * @param success <code>true</code> if all data was transferred,
+   *                <code>false</code> otherwise
+   */
+  protected abstract void finish(boolean success) throws IOException;
+
+}
@@ -0,0 +1,223 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket which limits the rate at which bytes are transferred by
+ * RemoteStreamServers.  A limiter may be given to a single stream server
+ * (see {@link RemoteStreamServer#setBandwidthLimiter}), shared by a group of
+ * stream servers, or used for all stream servers (see
+ * {@link RemoteStreamServer#setGlobalBandwidthLimiter}).  The rate may be
+ * changed at any time, and takes effect immediately (even for streams
+ * currently waiting on the limiter).
+ * <p>
+ * Since the size of a packet is not always known before it is read, a
+ * limiter allows the available bytes to go negative (a "debt").  Streams
+ * wait before each packet until any debt has been repaid, so the long-term
+ * rate is maintained even though a single packet may exceed the available
+ * bytes.
+ * <p>
+ * This class is thread-safe (waiting streams use an explicit lock, so that
+ * virtual threads are not pinned while waiting).
+ *
+ * @author James Ahlborn
+ */
+public class BandwidthLimiter
+{
+  /** rate value which indicates that the bandwidth is not limited */
+  public static final long UNLIMITED = 0L;
+
+  /** lock for the limiter state */
+  private final ReentrantLock _lock = new ReentrantLock();
+  /** signalled when the limits change */
+  private final Condition _limitsChanged = _lock.newCondition();
+  /** current max bytes per second, or {@link #UNLIMITED} */
+  private long _bytesPerSecond;
+  /** max number of bytes which may be accumulated while idle */
+  private long _maxBurst;
+  /** current number of available bytes (may be negative) */
+  private double _available;
+  /** last time the available bytes were replenished */
+  private long _lastRefillTime;
+
+  /**
+   * Creates a limiter which allows bursts of up to one second's worth of
+   * bytes.
+   *
+   * @param bytesPerSecond the max sustained transfer rate, or
+   *                       {@link #UNLIMITED}
+   */
+  public BandwidthLimiter(long bytesPerSecond) {
+    this(bytesPerSecond, bytesPerSecond);
+  }
+
+  /**
+   * @param bytesPerSecond the max sustained transfer rate, or
+   *                       {@link #UNLIMITED}
+   * @param maxBurst the max number of bytes which may be transferred in a
+   *                 burst after the limiter has been idle
+   */
+  public BandwidthLimiter(long bytesPerSecond, long maxBurst)
+  {
+    _lastRefillTime = System.nanoTime();
+    setBytesPerSecond(bytesPerSecond, maxBurst);
+    _available = _maxBurst;
+  }
+
+  /**
+   * @return the max sustained transfer rate, or {@link #UNLIMITED}
+   */
+  public long getBytesPerSecond() {
+    _lock.lock();
+    try {
+      return _bytesPerSecond;
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * Changes the max sustained transfer rate, allowing bursts of up to one
+   * second's worth of bytes.
+   *
+   * @param bytesPerSecond the new max sustained transfer rate, or
+   *                       {@link #UNLIMITED}
+   */
+  public void setBytesPerSecond(long bytesPerSecond) {
+    setBytesPerSecond(bytesPerSecond, bytesPerSecond);
+  }
+
+  /**
+   * Changes the max sustained transfer rate and the max burst size.
+   *
+   * @param bytesPerSecond the new max sustained transfer rate, or
+   *                       {@link #UNLIMITED}
+   * @param maxBurst the max number of bytes which may be transferred in a
+   *                 burst after the limiter has been idle
+   */
+  public void setBytesPerSecond(long bytesPerSecond, long maxBurst)
+  {
+    if((bytesPerSecond < 0L) || (maxBurst < 0L)) {
+      throw new IllegalArgumentException(
+          "invalid limits " + bytesPerSecond + ", " + maxBurst);
+    }
+    _lock.lock();
+    try {
+      // account for the time passed at the old rate
+      refill();
+      _bytesPerSecond = bytesPerSecond;
+      _maxBurst = maxBurst;
+      _available = Math.min(_available, _maxBurst);
+      // wake up any waiters so they use the new rate
+      _limitsChanged.signalAll();
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * @return <code>true</code> if the transfer rate is not currently limited
+   */
+  public boolean isUnlimited() {
+    _lock.lock();
+    try {
+      return(_bytesPerSecond == UNLIMITED);
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of bytes which may currently be transferred without
+   *         waiting (negative if the limiter is in debt)
+   */
+  public long getAvailable() {
+    _lock.lock();
+    try {
+      refill();
+      return (long)_available;
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until this limiter is not in debt.
+   *
+   * @throws InterruptedIOException if interrupted while waiting
+   */
+  public void await()
+    throws InterruptedIOException
+  {
+    _lock.lock();
+    try {
+      while(true) {
+        refill();
+        if((_bytesPerSecond == UNLIMITED) || (_available >= 0.0d)) {
+          return;
+        }
+        long waitNanos = (long)Math.ceil(
+            (-_available * TimeUnit.SECONDS.toNanos(1L)) / _bytesPerSecond);
+        _limitsChanged.awaitNanos(Math.max(waitNanos, 1L));
+      }
+    } catch(InterruptedException e) {
+      // pass interrupt along
+      Thread.currentThread().interrupt();
+      throw (InterruptedIOException)
+        new InterruptedIOException("interrupted waiting for bandwidth")
+        .initCause(e);
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * Records that the given number of bytes were transferred.
+   */
+  public void consume(long numBytes)
+  {
+    _lock.lock();
+    try {
+      if(_bytesPerSecond == UNLIMITED) {
+        return;
+      }
+      refill();
+      _available -= numBytes;
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  private void refill()
+  {
+    // caller should synch
+    long now = System.nanoTime();
+    if(_bytesPerSecond != UNLIMITED) {
+      _available = Math.min(
+          _maxBurst,
+          _available + (((double)(now - _lastRefillTime) * _bytesPerSecond) /
+                        TimeUnit.SECONDS.toNanos(1L)));
+    }
+    _lastRefillTime = now;
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+Copyright (c) 2007 Health Market Science, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Concrete implementation of a RemoteInputStreamServer which sends
+ * uncompressed data, which it will read directly from the underlying
+ * ReadableByteChannel (without going through an InputStream).  If the
+ * channel is a SeekableByteChannel (e.g. a FileChannel), available() and
+ * skip() are implemented using the channel's size and position.  The
+ * channel should be in blocking mode.
+ * <p>
+ * Note, {@link #getInputStream} returns an InputStream view of the channel,
+ * closing this stream closes the channel.
+ *
+ * @see <a href="{@docRoot}/overview-summary.html#Usage_Notes">Usage Notes</a>
+ * @see #writeReplace
+ *
+ * @author James Ahlborn
+ */
+public class ChannelRemoteInputStream extends RemoteInputStreamServer
+{
+  private static final long serialVersionUID = 20261019L;
+
+  /** the channel from which the data is read */
+  private transient final ReadableByteChannel _channel;
+
+  public ChannelRemoteInputStream(ReadableByteChannel channel) {
+    this(channel, DUMMY_MONITOR, DEFAULT_CHUNK_SIZE);
+  }
+
+  public ChannelRemoteInputStream(
+    ReadableByteChannel channel,
+    RemoteStreamMonitor<RemoteInputStreamServer> monitor) {
+    this(channel, monitor, DEFAULT_CHUNK_SIZE);
+  }
+
+  public ChannelRemoteInputStream(
+    ReadableByteChannel channel,
+    RemoteStreamMonitor<RemoteInputStreamServer> monitor,
+    int chunkSize)
+  {
+    super(Channels.newInputStream(channel), monitor, chunkSize);
+    _channel = channel;
+  }
+
+  /** Returns the real channel from which this stream is reading data */
+  public ReadableByteChannel getChannel() { return _channel; }
+
+  @Override
+  public boolean usingGZIPCompression()
+  {
+    // no compression
+    return false;
+  }
+
+  @Override
+  protected int availableImpl()
+    throws IOException
+  {
+    getStreamLock().lock();
+    try {
+      if(_channel instanceof SeekableByteChannel) {
+        SeekableByteChannel seekable = (SeekableByteChannel)_channel;
+        return (int)Math.min(
+            Math.max(seekable.size() - seekable.position(), 0L),
+            Integer.MAX_VALUE);
+      }
+      return 0;
+    } finally {
+      getStreamLock().unlock();
+    }
+  }
+
+  @Override
+  protected byte[] readPacket()
+    throws IOException
+  {
+    // will be called with the stream lock held
+
+    // read another packet of data, filling the packet if possible
+    ByteBuffer bb = ByteBuffer.allocate(_chunkSize);
+    int numRead = 0;
+    while(bb.hasRemaining() && ((numRead = _channel.read(bb)) > 0)) {
+      // keep reading
+    }
+    if(bb.position() == 0) {
+      return((numRead < 0) ? null : PacketInputStream.EMPTY_PACKET);
+    }
+
+    byte[] packet = bb.array();
+    if(bb.position() < packet.length) {
+      // shrink buffer for output
+      byte[] tmpPacket = new byte[bb.position()];
+      System.arraycopy(packet, 0, tmpPacket, 0, tmpPacket.length);
+      packet = tmpPacket;
+    }
+    _monitor.localBytesMoved(this, packet.length);
+    return packet;
+  }
+
+  @Override
+  protected long skip(long n)
+    throws IOException
+  {
+    // will be called with the stream lock held
+    long numSkipped = 0L;
+    if(_channel instanceof SeekableByteChannel) {
+      SeekableByteChannel seekable = (SeekableByteChannel)_channel;
+      long pos = seekable.position();
+      numSkipped = Math.max(Math.min(n, seekable.size() - pos), 0L);
+      seekable.position(pos + numSkipped);
+    } else {
+      numSkipped = _in.skip(n);
+    }
+    _monitor.localBytesSkipped(this, numSkipped);
+    return numSkipped;
+  }
+
+}
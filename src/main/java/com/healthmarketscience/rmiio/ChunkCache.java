@@ -0,0 +1,345 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Client side disk cache of stream chunks, keyed by the hash of their data
+ * (see {@link RemoteInputStreamClient#wrapCached}).  Each chunk is stored as
+ * a separate file in the cache directory.  When the total size of the cached
+ * chunks exceeds the configured max size, the least recently used chunks
+ * are removed.  The cache directory may be reused across JVM runs (the
+ * recency of the existing chunks is restored from their modification
+ * times), but should not be shared by multiple caches at the same time.
+ * <p>
+ * Chunk data is verified against its hash when it is read from the cache,
+ * so a corrupted chunk file is treated as a cache miss (and removed).
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author James Ahlborn
+ */
+public class ChunkCache
+{
+  private static final Log LOG = LogFactory.getLog(ChunkCache.class);
+
+  /** suffix for partially written chunk files */
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final Path _dir;
+  private final long _maxSize;
+  /** the cached chunk file names and sizes, in least to most recently used
+      order */
+  private final LinkedHashMap<String,Long> _entries =
+    new LinkedHashMap<String,Long>(16, 0.75f, true);
+  /** total size of the cached chunks */
+  private long _size;
+  private final LongAdder _numHits = new LongAdder();
+  private final LongAdder _numMisses = new LongAdder();
+
+  /**
+   * @param dir the directory in which the chunks will be stored (will be
+   *            created if necessary)
+   * @param maxSize the max total size in bytes of the cached chunks
+   */
+  public ChunkCache(Path dir, long maxSize)
+    throws IOException
+  {
+    if(maxSize <= 0L) {
+      throw new IllegalArgumentException("invalid max size " + maxSize);
+    }
+    _dir = dir;
+    _maxSize = maxSize;
+    Files.createDirectories(dir);
+    loadEntries();
+  }
+
+  public Path getDirectory() {
+    return _dir;
+  }
+
+  public long getMaxSize() {
+    return _maxSize;
+  }
+
+  /**
+   * @return the current total size in bytes of the cached chunks
+   */
+  public synchronized long getSize() {
+    return _size;
+  }
+
+  /**
+   * @return the current number of cached chunks
+   */
+  public synchronized int getNumChunks() {
+    return _entries.size();
+  }
+
+  /**
+   * @return the number of chunks which have been found in this cache
+   */
+  public long getNumHits() {
+    return _numHits.sum();
+  }
+
+  /**
+   * @return the number of chunks which have not been found in this cache
+   */
+  public long getNumMisses() {
+    return _numMisses.sum();
+  }
+
+  /**
+   * Returns the chunk with the given hash, if cached.
+   *
+   * @param algorithm the hash algorithm (see
+   *                  {@link ChunkManifest#getAlgorithm})
+   * @param hash the hash of the chunk
+   * @return the chunk data, or <code>null</code> if not cached
+   */
+  public byte[] get(String algorithm, byte[] hash)
+    throws IOException
+  {
+    String name = getName(algorithm, hash);
+    synchronized(this) {
+      // note, get() (unlike containsKey()) updates the recency
+      if(_entries.get(name) == null) {
+        _numMisses.increment();
+        return null;
+      }
+    }
+
+    Path file = _dir.resolve(name);
+    byte[] data = null;
+    try {
+      data = Files.readAllBytes(file);
+    } catch(NoSuchFileException e) {
+      // removed behind our back
+    }
+    if((data == null) ||
+       !MessageDigest.isEqual(hash, ChunkManifest.newDigest(algorithm)
+                              .digest(data))) {
+      LOG.warn("Discarding missing or corrupt cached chunk " + file);
+      remove(name);
+      _numMisses.increment();
+      return null;
+    }
+
+    // remember recency across runs
+    touch(file);
+    _numHits.increment();
+    return data;
+  }
+
+  /**
+   * Adds the given chunk to this cache, removing the least recently used
+   * chunks as necessary.  Chunks larger than the max size of this cache are
+   * ignored.
+   *
+   * @param algorithm the hash algorithm (see
+   *                  {@link ChunkManifest#getAlgorithm})
+   * @param hash the hash of the chunk
+   * @param data the chunk data (which must match the hash)
+   */
+  public void put(String algorithm, byte[] hash, byte[] data)
+    throws IOException
+  {
+    if(data.length > _maxSize) {
+      return;
+    }
+    String name = getName(algorithm, hash);
+    synchronized(this) {
+      if(_entries.containsKey(name)) {
+        return;
+      }
+    }
+
+    // write to a temp file first so that readers never see partial chunks
+    Path file = _dir.resolve(name);
+    Path tmpFile = Files.createTempFile(_dir, name, TEMP_SUFFIX);
+    try {
+      Files.write(tmpFile, data);
+      Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmpFile);
+    }
+
+    List<String> evicted = null;
+    synchronized(this) {
+      Long oldSize = _entries.put(name, (long)data.length);
+      if(oldSize != null) {
+        _size -= oldSize;
+      }
+      _size += data.length;
+      evicted = evictEntries();
+    }
+
+    for(String evictedName : evicted) {
+      deleteFile(evictedName);
+    }
+  }
+
+  /**
+   * Removes all the chunks from this cache.
+   */
+  public void clear()
+    throws IOException
+  {
+    List<String> names = null;
+    synchronized(this) {
+      names = new ArrayList<String>(_entries.keySet());
+      _entries.clear();
+      _size = 0L;
+    }
+    for(String name : names) {
+      deleteFile(name);
+    }
+  }
+
+  private void remove(String name)
+    throws IOException
+  {
+    synchronized(this) {
+      Long size = _entries.remove(name);
+      if(size == null) {
+        return;
+      }
+      _size -= size;
+    }
+    deleteFile(name);
+  }
+
+  private void deleteFile(String name)
+    throws IOException
+  {
+    Files.deleteIfExists(_dir.resolve(name));
+  }
+
+  /**
+   * Loads the chunks already in the cache directory, oldest first.
+   */
+  private void loadEntries()
+    throws IOException
+  {
+    List<Map.Entry<Path,BasicFileAttributes>> files =
+      new ArrayList<Map.Entry<Path,BasicFileAttributes>>();
+    try(DirectoryStream<Path> dirStream = Files.newDirectoryStream(_dir)) {
+      for(Path file : dirStream) {
+        if(file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+          // leftover from an interrupted put
+          Files.deleteIfExists(file);
+          continue;
+        }
+        BasicFileAttributes attrs = Files.readAttributes(
+            file, BasicFileAttributes.class);
+        if(attrs.isRegularFile()) {
+          files.add(new AbstractMap.SimpleEntry<Path,BasicFileAttributes>(
+                        file, attrs));
+        }
+      }
+    }
+    files.sort((e1, e2) -> e1.getValue().lastModifiedTime().compareTo(
+                   e2.getValue().lastModifiedTime()));
+
+    List<String> evicted = null;
+    synchronized(this) {
+      for(Map.Entry<Path,BasicFileAttributes> entry : files) {
+        long size = entry.getValue().size();
+        _entries.put(entry.getKey().getFileName().toString(), size);
+        _size += size;
+      }
+      // the max size may have been reduced since the last run
+      evicted = evictEntries();
+    }
+    for(String evictedName : evicted) {
+      deleteFile(evictedName);
+    }
+  }
+
+  /**
+   * Removes the least recently used entries until the cache is within its
+   * max size (caller must synch).
+   *
+   * @return the names of the removed entries (whose files need to be
+   *         deleted)
+   */
+  private List<String> evictEntries()
+  {
+    List<String> evicted = new ArrayList<String>();
+    Iterator<Map.Entry<String,Long>> iter = _entries.entrySet().iterator();
+    while((_size > _maxSize) && iter.hasNext()) {
+      Map.Entry<String,Long> entry = iter.next();
+      _size -= entry.getValue();
+      evicted.add(entry.getKey());
+      iter.remove();
+    }
+    return evicted;
+  }
+
+  private static void touch(Path file)
+  {
+    try {
+      Files.setLastModifiedTime(
+          file, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch(IOException e) {
+      // not critical, only affects the recency after a restart
+      if(LOG.isDebugEnabled()) {
+        LOG.debug("Failed updating time of cached chunk " + file, e);
+      }
+    }
+  }
+
+  private static String getName(String algorithm, byte[] hash)
+  {
+    StringBuilder sb = new StringBuilder(
+        algorithm.length() + 1 + (hash.length * 2));
+    for(int i = 0; i < algorithm.length(); ++i) {
+      char c = algorithm.charAt(i);
+      if(Character.isLetterOrDigit(c)) {
+        sb.append(Character.toLowerCase(c));
+      }
+    }
+    sb.append('-');
+    for(byte b : hash) {
+      sb.append(Character.forDigit((b >> 4) & 0x0F, 16))
+        .append(Character.forDigit(b & 0x0F, 16));
+    }
+    return sb.toString();
+  }
+
+}
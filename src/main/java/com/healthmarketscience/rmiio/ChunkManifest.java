@@ -0,0 +1,226 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Description of the content of a file-backed stream as a list of fixed size
+ * chunks, each identified by the hash of its data (see
+ * {@link ChunkedRemoteInputStream#getChunkManifest}).  All chunks are
+ * {@link #getChunkSize} bytes long, except (possibly) the last one.
+ * <p>
+ * Instances of this class are immutable.
+ *
+ * @author James Ahlborn
+ */
+public final class ChunkManifest implements Serializable
+{
+  private static final long serialVersionUID = 20261019L;
+
+  /** the hash algorithm used for the chunk hashes */
+  public static final String HASH_ALGORITHM = "SHA-256";
+
+  /** default size of the chunks described by a manifest */
+  public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+  private final String _algorithm;
+  private final int _chunkSize;
+  private final long _length;
+  private final byte[][] _hashes;
+
+  private ChunkManifest(String algorithm, int chunkSize, long length,
+                        byte[][] hashes) {
+    _algorithm = algorithm;
+    _chunkSize = chunkSize;
+    _length = length;
+    _hashes = hashes;
+  }
+
+  /**
+   * @return the name of the MessageDigest algorithm used to compute the
+   *         chunk hashes
+   */
+  public String getAlgorithm() {
+    return _algorithm;
+  }
+
+  /**
+   * @return the size of every chunk except (possibly) the last one
+   */
+  public int getChunkSize() {
+    return _chunkSize;
+  }
+
+  /**
+   * @return the total length of the stream data
+   */
+  public long getLength() {
+    return _length;
+  }
+
+  public int getNumChunks() {
+    return _hashes.length;
+  }
+
+  /**
+   * @return the length of the chunk with the given index
+   */
+  public int getChunkLength(int chunkIndex) {
+    checkChunkIndex(chunkIndex);
+    return (int)Math.min(_chunkSize, _length - ((long)chunkIndex * _chunkSize));
+  }
+
+  /**
+   * @return the offset of the chunk with the given index within the stream
+   */
+  public long getChunkOffset(int chunkIndex) {
+    checkChunkIndex(chunkIndex);
+    return (long)chunkIndex * _chunkSize;
+  }
+
+  /**
+   * @return a copy of the hash of the chunk with the given index
+   */
+  public byte[] getChunkHash(int chunkIndex) {
+    checkChunkIndex(chunkIndex);
+    return _hashes[chunkIndex].clone();
+  }
+
+  /**
+   * @return <code>true</code> if the given data has the length and hash of
+   *         the chunk with the given index, <code>false</code> otherwise
+   */
+  public boolean isValidChunk(int chunkIndex, byte[] data)
+    throws IOException
+  {
+    checkChunkIndex(chunkIndex);
+    return((data != null) && (data.length == getChunkLength(chunkIndex)) &&
+           MessageDigest.isEqual(_hashes[chunkIndex],
+                                 newDigest(_algorithm).digest(data)));
+  }
+
+  private void checkChunkIndex(int chunkIndex) {
+    if((chunkIndex < 0) || (chunkIndex >= _hashes.length)) {
+      throw new IndexOutOfBoundsException(
+          "invalid chunk index " + chunkIndex + ", num chunks " +
+          _hashes.length);
+    }
+  }
+
+  private void readObject(ObjectInputStream in)
+    throws IOException, ClassNotFoundException
+  {
+    in.defaultReadObject();
+
+    // sanity check the manifest from the (untrusted) remote side
+    if((_algorithm == null) || (_chunkSize <= 0) || (_length < 0L) ||
+       (_hashes == null) ||
+       (_hashes.length != getNumChunks(_length, _chunkSize))) {
+      throw new InvalidObjectException("invalid chunk manifest");
+    }
+    for(byte[] hash : _hashes) {
+      if(hash == null) {
+        throw new InvalidObjectException("invalid chunk manifest");
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ChunkManifest[" + _algorithm + ", chunkSize=" + _chunkSize +
+      ", length=" + _length + ", numChunks=" + _hashes.length + "]";
+  }
+
+  /**
+   * Computes the manifest for the first <code>length</code> bytes of the
+   * given file using the {@link #HASH_ALGORITHM}.  The position of the
+   * channel is not changed.
+   *
+   * @param channel the file to describe
+   * @param length the length of the data to describe
+   * @param chunkSize the size of the chunks
+   */
+  public static ChunkManifest create(FileChannel channel, long length,
+                                     int chunkSize)
+    throws IOException
+  {
+    if((chunkSize <= 0) || (length < 0L)) {
+      throw new IllegalArgumentException(
+          "invalid manifest parameters " + length + ", " + chunkSize);
+    }
+    MessageDigest digest = newDigest(HASH_ALGORITHM);
+    byte[][] hashes = new byte[getNumChunks(length, chunkSize)][];
+    ByteBuffer bb = ByteBuffer.allocate((int)Math.min(chunkSize, length));
+    for(int i = 0; i < hashes.length; ++i) {
+      long offset = (long)i * chunkSize;
+      bb.clear();
+      bb.limit((int)Math.min(chunkSize, length - offset));
+      readFully(channel, bb, offset);
+      digest.update(bb.array(), 0, bb.limit());
+      hashes[i] = digest.digest();
+    }
+    return new ChunkManifest(HASH_ALGORITHM, chunkSize, length, hashes);
+  }
+
+  /**
+   * Fills the given buffer from the given file starting at the given
+   * offset, without changing the channel position.
+   *
+   * @throws EOFException if the file ends before the buffer is full
+   */
+  static void readFully(FileChannel channel, ByteBuffer bb, long offset)
+    throws IOException
+  {
+    while(bb.hasRemaining()) {
+      int numRead = channel.read(bb, offset + bb.position());
+      if(numRead < 0) {
+        throw new EOFException(
+            "file truncated at " + (offset + bb.position()));
+      }
+    }
+  }
+
+  static MessageDigest newDigest(String algorithm)
+    throws IOException
+  {
+    try {
+      return MessageDigest.getInstance(algorithm);
+    } catch(NoSuchAlgorithmException e) {
+      throw new IOException("unsupported chunk hash algorithm " + algorithm, e);
+    }
+  }
+
+  private static int getNumChunks(long length, int chunkSize)
+  {
+    long numChunks = (length + chunkSize - 1L) / chunkSize;
+    if(numChunks > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "too many chunks for length " + length + ", chunkSize " + chunkSize);
+    }
+    return (int)numChunks;
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+
+/**
+ * Extension of the RemoteInputStream interface for streams whose entire
+ * content is known up front (e.g. files), which allows the client to
+ * retrieve the data as a list of content-addressed chunks instead of as a
+ * sequence of packets.  A client which keeps a {@link ChunkCache} can then
+ * skip fetching any chunks it has already seen (see
+ * {@link RemoteInputStreamClient#wrapCached}).
+ * <p>
+ * The chunk methods do not affect the packet based methods (and vice
+ * versa), but a client should generally use one or the other.  As with any
+ * RemoteInputStream, the client must call {@link #close} when finished.
+ * All methods on this interface are idempotent, and can therefore be
+ * retried as necessary in the face of RemoteExceptions.
+ *
+ * @see FileRemoteInputStream
+ *
+ * @author James Ahlborn
+ */
+public interface ChunkedRemoteInputStream extends RemoteInputStream
+{
+
+  /**
+   * Returns the manifest describing the chunks of this stream.
+   *
+   * @return the manifest for this stream, or <code>null</code> if the chunks
+   *         are not available (in which case the client should use the
+   *         packet based methods)
+   */
+  public ChunkManifest getChunkManifest()
+    throws IOException, RemoteException;
+
+  /**
+   * Returns the data of the chunk with the given index from the manifest
+   * returned by {@link #getChunkManifest}.  Chunks may be read in any order.
+   *
+   * @param chunkIndex index of the chunk to read
+   * @return the data for the given chunk
+   */
+  public byte[] readChunk(int chunkIndex)
+    throws IOException, RemoteException;
+
+}
@@ -0,0 +1,402 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.rmi.server.RemoteObject;
+import java.rmi.server.RemoteRef;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * RemoteRetry decorator which adds a "circuit breaker" shared by all the
+ * calls to the same remote endpoint.  Once a number of consecutive call
+ * attempts to an endpoint have failed with RemoteExceptions (regardless of
+ * which stream made them), the circuit is "opened" and all subsequent calls
+ * to that endpoint fail immediately (with an {@link OpenException}) instead
+ * of each running through a full retry cycle.
+ * After the reset timeout, a single "probe" call is allowed through
+ * (half-open state).  If the probe succeeds, the circuit is closed and calls
+ * proceed as normal, otherwise the circuit is opened again.  While the
+ * circuit is closed, retry decisions are made by the delegate policy.
+ * <p>
+ * The endpoint for a remote stub can be determined using
+ * {@link #forStub}, which uses the host and port from the stub's
+ * {@link RemoteRef}.  Note that all instances for the same endpoint share
+ * the same circuit, and the thresholds of the first instance created for an
+ * endpoint are used for the circuit.  A circuit is only kept while some
+ * instance for its endpoint is reachable.
+ * <p>
+ * Example usage:
+ * <pre>
+ *
+ * RemoteInputStream remoteIn = ...;
+ * InputStream istream = RemoteInputStreamClient.wrap(
+ *   remoteIn, CircuitBreakerRetry.forStub(remoteIn, RemoteRetry.SIMPLE));
+ *
+ * </pre>
+ *
+ * @author James Ahlborn
+ */
+public class CircuitBreakerRetry extends RemoteRetry
+{
+  /** default number of consecutive failed attempts which open the
+      circuit */
+  public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+  /** default time in milliseconds the circuit stays open before a probe
+      call is allowed */
+  public static final long DEFAULT_RESET_TIMEOUT = 10000L;
+
+  /** pattern for extracting the endpoint from the string form of a
+      RemoteRef, e.g. "... endpoint:[10.0.0.1:1099](remote) ..." */
+  private static final Pattern ENDPOINT_PAT =
+    Pattern.compile("endpoint:\\[([^\\]]+)\\]");
+
+  /** the circuits for all endpoints in use, keyed by endpoint (access
+      synchronized on the map) */
+  private static final Map<String,CircuitRef> _circuits =
+    new HashMap<String,CircuitRef>();
+  /** queue of the circuits which are no longer in use */
+  private static final ReferenceQueue<Circuit> _staleCircuits =
+    new ReferenceQueue<Circuit>();
+
+  /** the retry policy used while the circuit is closed */
+  private final RemoteRetry _delegate;
+  /** the circuit for the endpoint being called */
+  private final Circuit _circuit;
+
+  public CircuitBreakerRetry(String endpoint, RemoteRetry delegate) {
+    this(endpoint, delegate, DEFAULT_FAILURE_THRESHOLD,
+         DEFAULT_RESET_TIMEOUT);
+  }
+
+  /**
+   * @param endpoint identifier for the remote endpoint being called
+   * @param delegate the retry policy to use while the circuit is closed
+   * @param failureThreshold number of consecutive failed call attempts
+   *                         which open the circuit
+   * @param resetTimeout time in milliseconds the circuit stays open before
+   *                     a probe call is allowed
+   */
+  public CircuitBreakerRetry(String endpoint, RemoteRetry delegate,
+                             int failureThreshold, long resetTimeout)
+  {
+    if((endpoint == null) || (delegate == null)) {
+      throw new IllegalArgumentException(
+          "endpoint and delegate cannot be null");
+    }
+    if((failureThreshold < 1) || (resetTimeout < 0L)) {
+      throw new IllegalArgumentException(
+          "invalid thresholds " + failureThreshold + ", " + resetTimeout);
+    }
+    _delegate = delegate;
+    _circuit = getCircuit(endpoint, failureThreshold, resetTimeout);
+  }
+
+  /**
+   * Returns a circuit breaker retry policy for the endpoint of the given
+   * remote stub, using the given policy while the circuit is closed.  If the
+   * endpoint cannot be determined from the stub (it is not an RMI stub, or
+   * its reference does not include the endpoint), the given policy is
+   * returned as is.
+   *
+   * @param stub remote stub which will be called using the returned policy
+   * @param delegate the retry policy to use while the circuit is closed
+   */
+  public static RemoteRetry forStub(Object stub, RemoteRetry delegate)
+  {
+    String endpoint = getEndpoint(stub);
+    return((endpoint != null) ? new CircuitBreakerRetry(endpoint, delegate) :
+           delegate);
+  }
+
+  /**
+   * @return the endpoint ("host:port") for the given RMI stub, or
+   *         {@code null} if the given object is not an RMI stub (or the
+   *         endpoint cannot be determined)
+   */
+  public static String getEndpoint(Object stub)
+  {
+    RemoteRef ref = null;
+    if(stub instanceof RemoteObject) {
+      ref = ((RemoteObject)stub).getRef();
+    } else if((stub != null) && Proxy.isProxyClass(stub.getClass())) {
+      // dynamic stubs are proxies which use a RemoteObject handler
+      InvocationHandler handler = Proxy.getInvocationHandler(stub);
+      if(handler instanceof RemoteObject) {
+        ref = ((RemoteObject)handler).getRef();
+      }
+    }
+    if(ref == null) {
+      return null;
+    }
+
+    // note, the RemoteRef api does not expose the endpoint directly, so we
+    // parse it out of the string representation (anything else in the
+    // string is unique per remote object, so would not be shared)
+    Matcher m = ENDPOINT_PAT.matcher(ref.remoteToString());
+    return(m.find() ? m.group(1) : null);
+  }
+
+  /**
+   * @return the number of circuits currently being tracked
+   */
+  static int getNumCircuits()
+  {
+    synchronized(_circuits) {
+      purgeStaleCircuits();
+      return _circuits.size();
+    }
+  }
+
+  /**
+   * @return the current circuit for the given endpoint, creating it if
+   *         necessary
+   */
+  private static Circuit getCircuit(String endpoint, int failureThreshold,
+                                    long resetTimeout)
+  {
+    synchronized(_circuits) {
+      purgeStaleCircuits();
+      CircuitRef ref = _circuits.get(endpoint);
+      Circuit circuit = ((ref != null) ? ref.get() : null);
+      if(circuit == null) {
+        circuit = new Circuit(endpoint, failureThreshold, resetTimeout);
+        _circuits.put(endpoint, new CircuitRef(circuit));
+      }
+      return circuit;
+    }
+  }
+
+  /**
+   * Removes the circuits which are no longer in use (caller must synch on
+   * the map).
+   */
+  private static void purgeStaleCircuits()
+  {
+    CircuitRef ref = null;
+    while((ref = (CircuitRef)_staleCircuits.poll()) != null) {
+      // (the endpoint may already have a new circuit)
+      _circuits.remove(ref._endpoint, ref);
+    }
+  }
+
+  public RemoteRetry getDelegate() {
+    return _delegate;
+  }
+
+  public String getEndpoint() {
+    return _circuit._endpoint;
+  }
+
+  /**
+   * @return <code>true</code> if the circuit for this endpoint is currently
+   *         closed (calls are being made normally), <code>false</code>
+   *         otherwise
+   */
+  public boolean isClosed() {
+    return _circuit.isClosed();
+  }
+
+  @Override
+  public <RetType, ExType1 extends Throwable, ExType2 extends Throwable,
+          ExType3 extends Throwable>
+  RetType call(ICaller<RetType> caller,
+               Log log,
+               Class<ExType1> throwType1,
+               Class<ExType2> throwType2,
+               Class<ExType3> throwType3)
+    throws ExType1, ExType2, ExType3
+  {
+    // all the other call methods end up here
+    return super.call(new CircuitCaller<RetType>(caller, _circuit), log,
+                      throwType1, throwType2, throwType3);
+  }
+
+  @Override
+  public boolean shouldRetry(Throwable t, int numRetries)
+  {
+    return shouldRetry(t, numRetries, 0L);
+  }
+
+  @Override
+  public boolean shouldRetry(Throwable t, int numRetries, long elapsedMillis)
+  {
+    if((t instanceof OpenException) || !_circuit.isClosed()) {
+      // fail fast, no point in retrying
+      return false;
+    }
+    return _delegate.shouldRetry(t, numRetries, elapsedMillis);
+  }
+
+  @Override
+  public void backOff(int numRetries, Log log)
+  {
+    _delegate.backOff(numRetries, log);
+  }
+
+  @Override
+  public void backOff(int numRetries, long elapsedMillis, Log log)
+  {
+    _delegate.backOff(numRetries, elapsedMillis, log);
+  }
+
+  /**
+   * Exception thrown (without making the remote call) when the circuit for
+   * an endpoint is open.
+   */
+  public static class OpenException extends RemoteException
+  {
+    private static final long serialVersionUID = 20261019L;
+
+    public OpenException(String endpoint) {
+      super("Circuit open for endpoint " + endpoint);
+    }
+  }
+
+  /**
+   * ICaller which checks the circuit before making the actual call and
+   * updates it with the result.
+   */
+  private static final class CircuitCaller<RetType>
+    implements ICaller<RetType>
+  {
+    private final ICaller<RetType> _caller;
+    private final Circuit _circuit;
+
+    private CircuitCaller(ICaller<RetType> caller, Circuit circuit) {
+      _caller = caller;
+      _circuit = circuit;
+    }
+
+    @Override
+    public RetType call()
+      throws Exception
+    {
+      if(!_circuit.allowCall()) {
+        throw new OpenException(_circuit._endpoint);
+      }
+
+      boolean success = false;
+      try {
+        RetType result = _caller.call();
+        success = true;
+        return result;
+      } catch(RemoteException e) {
+        // communication failure
+        throw e;
+      } catch(Exception e) {
+        // any other exception came from the remote endpoint, so it is alive
+        success = true;
+        throw e;
+      } finally {
+        _circuit.callCompleted(success);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return _caller.toString();
+    }
+  }
+
+  /**
+   * Weak reference to the circuit for an endpoint, so that the circuit is
+   * dropped once all the instances using it are gone.
+   */
+  private static final class CircuitRef extends WeakReference<Circuit>
+  {
+    private final String _endpoint;
+
+    private CircuitRef(Circuit circuit) {
+      super(circuit, _staleCircuits);
+      _endpoint = circuit._endpoint;
+    }
+  }
+
+  private enum State {
+    CLOSED, OPEN, HALF_OPEN;
+  }
+
+  /**
+   * The state of the circuit for a single endpoint.
+   */
+  private static final class Circuit
+  {
+    private final String _endpoint;
+    private final int _failureThreshold;
+    private final long _resetTimeoutNanos;
+    private State _state = State.CLOSED;
+    private int _numFailures;
+    private long _openTime;
+
+    private Circuit(String endpoint, int failureThreshold, long resetTimeout)
+    {
+      _endpoint = endpoint;
+      _failureThreshold = failureThreshold;
+      _resetTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(resetTimeout);
+    }
+
+    private synchronized boolean isClosed() {
+      return(_state == State.CLOSED);
+    }
+
+    private synchronized boolean allowCall()
+    {
+      switch(_state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if((System.nanoTime() - _openTime) >= _resetTimeoutNanos) {
+          // allow a single probe call through
+          _state = State.HALF_OPEN;
+          return true;
+        }
+        return false;
+      default:
+        // probe call already in progress
+        return false;
+      }
+    }
+
+    private synchronized void callCompleted(boolean success)
+    {
+      if(success) {
+        _state = State.CLOSED;
+        _numFailures = 0;
+        return;
+      }
+
+      ++_numFailures;
+      if((_state == State.HALF_OPEN) ||
+         (_numFailures >= _failureThreshold)) {
+        _state = State.OPEN;
+        _openTime = System.nanoTime();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,57 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+
+/**
+ * Extension of the RemoteOutputStream interface for streams which replace
+ * an existing server-side copy of the data (e.g. a file), which allows the
+ * client to send only the differences from the existing copy (similar to
+ * rsync).  The client retrieves the block signatures of the existing copy,
+ * and then sends a stream of instructions through the normal packet
+ * methods, where each instruction is either literal data or a reference to
+ * a run of existing blocks (see
+ * {@link RemoteOutputStreamClient#wrapDelta}).
+ * <p>
+ * Calling {@link #getDeltaSignature} switches the stream into delta mode,
+ * so it must be called before any data is written.  If it is never called,
+ * the stream accepts the new data as is.  All methods on this interface are
+ * idempotent, and can therefore be retried as necessary in the face of
+ * RemoteExceptions.
+ *
+ * @see FileRemoteOutputStream
+ *
+ * @author James Ahlborn
+ */
+public interface DeltaRemoteOutputStream extends RemoteOutputStream
+{
+
+  /**
+   * Returns the block signatures of the existing copy of the data and
+   * switches this stream into delta mode.
+   *
+   * @return the signatures of the existing copy (which will have no blocks
+   *         if there is no existing copy), or <code>null</code> if delta
+   *         mode is not available (in which case the client should write
+   *         the new data as is)
+   */
+  public DeltaSignature getDeltaSignature()
+    throws IOException, RemoteException;
+
+}
@@ -0,0 +1,227 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+/**
+ * Block signatures of the current server-side copy of a file, used for
+ * rsync style delta uploads (see
+ * {@link DeltaRemoteOutputStream#getDeltaSignature}).  The file is divided
+ * into fixed size blocks (the last block may be shorter), and each block is
+ * described by a cheap rolling checksum (used to find candidate matches at
+ * any offset of the new data) and a strong hash (used to confirm the
+ * matches).
+ * <p>
+ * Instances of this class are immutable.
+ *
+ * @author James Ahlborn
+ */
+public final class DeltaSignature implements Serializable
+{
+  private static final long serialVersionUID = 20261019L;
+
+  /** the hash algorithm used for the strong block hashes and the whole file
+      hash */
+  public static final String HASH_ALGORITHM = "SHA-256";
+
+  /** default size of the blocks described by a signature */
+  public static final int DEFAULT_BLOCK_SIZE = 16 * 1024;
+
+  /** delta instruction: end of data, followed by the total length (long) and
+      the hash of the new data */
+  static final byte OP_END = 0;
+  /** delta instruction: literal data, followed by the length (int) and the
+      data */
+  static final byte OP_LITERAL = 1;
+  /** delta instruction: copy of existing blocks, followed by the first block
+      index (int) and the number of blocks (int) */
+  static final byte OP_COPY = 2;
+
+  /** max length of the literal data in a single instruction */
+  static final int MAX_LITERAL_LENGTH = 64 * 1024;
+
+  /** modulus of the rolling checksum components */
+  private static final int CHECKSUM_MOD = 1 << 16;
+
+  private final int _blockSize;
+  private final long _length;
+  private final int[] _weakSums;
+  private final byte[][] _strongHashes;
+
+  private DeltaSignature(int blockSize, long length, int[] weakSums,
+                         byte[][] strongHashes) {
+    _blockSize = blockSize;
+    _length = length;
+    _weakSums = weakSums;
+    _strongHashes = strongHashes;
+  }
+
+  /**
+   * @return the size of every block except (possibly) the last one
+   */
+  public int getBlockSize() {
+    return _blockSize;
+  }
+
+  /**
+   * @return the length of the existing file (0 if there is none)
+   */
+  public long getLength() {
+    return _length;
+  }
+
+  public int getNumBlocks() {
+    return _weakSums.length;
+  }
+
+  /**
+   * @return the length of the block with the given index
+   */
+  public int getBlockLength(int blockIndex) {
+    checkBlockIndex(blockIndex);
+    return (int)Math.min(_blockSize, _length - ((long)blockIndex * _blockSize));
+  }
+
+  /**
+   * @return the rolling checksum of the block with the given index
+   */
+  public int getWeakSum(int blockIndex) {
+    checkBlockIndex(blockIndex);
+    return _weakSums[blockIndex];
+  }
+
+  /**
+   * @return a copy of the strong hash of the block with the given index
+   */
+  public byte[] getStrongHash(int blockIndex) {
+    checkBlockIndex(blockIndex);
+    return _strongHashes[blockIndex].clone();
+  }
+
+  /**
+   * @return <code>true</code> if the block with the given index has the
+   *         given strong hash
+   */
+  boolean isStrongHash(int blockIndex, byte[] strongHash) {
+    return MessageDigest.isEqual(_strongHashes[blockIndex], strongHash);
+  }
+
+  private void checkBlockIndex(int blockIndex) {
+    if((blockIndex < 0) || (blockIndex >= _weakSums.length)) {
+      throw new IndexOutOfBoundsException(
+          "invalid block index " + blockIndex + ", num blocks " +
+          _weakSums.length);
+    }
+  }
+
+  private void readObject(ObjectInputStream in)
+    throws IOException, ClassNotFoundException
+  {
+    in.defaultReadObject();
+
+    // sanity check the signature from the (untrusted) remote side
+    if((_blockSize <= 0) || (_length < 0L) || (_weakSums == null) ||
+       (_strongHashes == null) ||
+       (_weakSums.length != _strongHashes.length) ||
+       (_weakSums.length != ((_length + _blockSize - 1L) / _blockSize))) {
+      throw new InvalidObjectException("invalid delta signature");
+    }
+    for(byte[] hash : _strongHashes) {
+      if(hash == null) {
+        throw new InvalidObjectException("invalid delta signature");
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "DeltaSignature[blockSize=" + _blockSize + ", length=" + _length +
+      ", numBlocks=" + _weakSums.length + "]";
+  }
+
+  /**
+   * Computes the signature for the first <code>length</code> bytes of the
+   * given file.  The position of the channel is not changed.
+   *
+   * @param channel the file to describe, may be <code>null</code> if the
+   *                file does not exist (in which case the length must be 0)
+   * @param length the length of the data to describe
+   * @param blockSize the size of the blocks
+   */
+  public static DeltaSignature create(FileChannel channel, long length,
+                                      int blockSize)
+    throws IOException
+  {
+    if((blockSize <= 0) || (length < 0L) ||
+       ((channel == null) && (length > 0L))) {
+      throw new IllegalArgumentException(
+          "invalid signature parameters " + length + ", " + blockSize);
+    }
+    long numBlocks = (length + blockSize - 1L) / blockSize;
+    if(numBlocks > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "too many blocks for length " + length + ", blockSize " +
+          blockSize);
+    }
+
+    MessageDigest digest = ChunkManifest.newDigest(HASH_ALGORITHM);
+    int[] weakSums = new int[(int)numBlocks];
+    byte[][] strongHashes = new byte[weakSums.length][];
+    ByteBuffer bb = ByteBuffer.allocate((int)Math.min(blockSize, length));
+    for(int i = 0; i < weakSums.length; ++i) {
+      long offset = (long)i * blockSize;
+      bb.clear();
+      bb.limit((int)Math.min(blockSize, length - offset));
+      ChunkManifest.readFully(channel, bb, offset);
+      weakSums[i] = weakSum(bb.array(), 0, bb.limit());
+      digest.update(bb.array(), 0, bb.limit());
+      strongHashes[i] = digest.digest();
+    }
+    return new DeltaSignature(blockSize, length, weakSums, strongHashes);
+  }
+
+  /**
+   * Computes the rolling checksum (as in rsync) of the given data.
+   */
+  static int weakSum(byte[] buf, int off, int len)
+  {
+    int a = 0;
+    int b = 0;
+    for(int i = 0; i < len; ++i) {
+      int val = buf[off + i] & 0xFF;
+      a += val;
+      b += (len - i) * val;
+    }
+    return toWeakSum(a, b);
+  }
+
+  /**
+   * Combines the two components of the rolling checksum.
+   */
+  static int toWeakSum(int a, int b)
+  {
+    return (((b & (CHECKSUM_MOD - 1)) << 16) | (a & (CHECKSUM_MOD - 1)));
+  }
+
+}
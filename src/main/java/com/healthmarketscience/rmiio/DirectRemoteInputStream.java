@@ -19,7 +19,6 @@ package com.healthmarketscience.rmiio;
 import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -29,8 +28,12 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.rmi.RemoteException;
 
+import com.healthmarketscience.rmiio.util.PipeBuffer;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -71,10 +74,11 @@ import org.apache.commons.logging.LogFactory;
  *   <li>The server side process cannot start processing the data until the
  *       entire stream is sent (whereas with the other implementations, the
  *       data can be processed as it is received).
- *   <li>The stream data is temporarily stored on the server's local
- *       filesystem.  This can have any number of implications including
- *       slower performance, excess disk consumption, and/or exposure of
- *       sensitive data if temp file attributes are incorrect.
+ *   <li>Stream data larger than the configured memory threshold (see
+ *       {@link #MEMORY_THRESHOLD_PROPERTY}) is temporarily stored on the
+ *       server's local filesystem.  This can have any number of implications
+ *       including slower performance, excess disk consumption, and/or
+ *       exposure of sensitive data if temp file attributes are incorrect.
  *   <li>This implementation is RMI specific, so it cannot be used with any
  *       non-RMI compatible RPC frameworks (e.g. CORBA).
  * </ul>
@@ -115,9 +119,22 @@ public class DirectRemoteInputStream
   /** chunk code which indicates the end of the embedded stream data. */
   private static final int EOF_CODE = 2;
 
+  /** system property used to determine the maximum number of bytes of
+      received stream data which will be held in memory before the data is
+      spooled to a temporary file.  if not given,
+      {@link #DEFAULT_MEMORY_THRESHOLD} is used.  a value of 0 will cause all
+      received data to be spooled to a temporary file. */
+  public static final String MEMORY_THRESHOLD_PROPERTY =
+    "com.healthmarketscience.rmiio.direct.memoryThreshold";
+
+  /** default maximum number of bytes of received stream data which will be
+      held in memory */
+  public static final int DEFAULT_MEMORY_THRESHOLD = 64 * 1024;
+
   /** stream containing the actual data.  when this class is instantiated
       directly, this will be any stream.  when this class is deserialized,
-      this will be a temporary file on the local filesystem. */
+      this will be an in-memory buffer or a temporary file on the local
+      filesystem (depending on the size of the data). */
   private transient InputStream _in;
   /** optional monitor for the initial serialization of the underlying
       stream */
@@ -129,8 +146,12 @@ public class DirectRemoteInputStream
       consumed */
   private transient boolean _gotEOF;
   /** local file which is caching the streamed data, only used when this
-      object is deserialized */
+      object is deserialized and the data exceeded the memory threshold */
   private transient File _tmpFile;
+  /** whether or not this object was created by deserialization (in which
+      case the data in _in is already compressed, if compression was
+      desired) */
+  private transient boolean _deserialized;
   /** whether or not the bytes should be compressed when serialized */
   private final boolean _compress;
 
@@ -202,8 +223,11 @@ public class DirectRemoteInputStream
     }
 
     markLocalConsumption();
-    byte[] packet = PacketInputStream.readPacket(
-        _in, new byte[RemoteInputStreamServer.DEFAULT_CHUNK_SIZE]);
+    byte[] packet = ((_in instanceof PacketInputStream) ?
+                     ((PacketInputStream)_in).readPacket() :
+                     PacketInputStream.readPacket(
+                         _in,
+                         new byte[RemoteInputStreamServer.DEFAULT_CHUNK_SIZE]));
     _gotEOF = (packet == null);
     return packet;
   }
@@ -279,7 +303,7 @@ public class DirectRemoteInputStream
     // actually export them.
     RemoteInputStreamServer server = null;
     try {
-      if(_compress && (_tmpFile == null)) {
+      if(_compress && !_deserialized) {
         // this is the first time the data is being read, and we need to
         // compress it as we read it.
         server = new GZIPRemoteInputStream(_in, _monitor, defaultChunkSize);
@@ -338,8 +362,10 @@ public class DirectRemoteInputStream
 
   /**
    * Reads the state of this object and all of the underlying stream's data
-   * directly from the given ObjectInputStream.  The stream data is stored in
-   * a temporary file in the default java temp directory with the name
+   * directly from the given ObjectInputStream.  The stream data is held in
+   * memory until it exceeds the threshold configured by the system property
+   * {@link #MEMORY_THRESHOLD_PROPERTY}, at which point it is stored in a
+   * temporary file in the default java temp directory with the name
    * {@code "stream_<num>.dat"}.
    */
   private void readObject(ObjectInputStream in)
@@ -351,17 +377,17 @@ public class DirectRemoteInputStream
     final int defaultChunkSize = in.readInt();
     checkChunkSize(defaultChunkSize);
 
-    // setup a temp file for the incoming data (make sure it gets cleaned up
-    // somehow)
-    _tmpFile = File.createTempFile("stream_", ".dat");
-    _tmpFile.deleteOnExit();
+    // limit buffer size in case of malicious input
+    final int transferSize = Math.min(
+        defaultChunkSize, RemoteInputStreamServer.DEFAULT_CHUNK_SIZE);
 
-    FileOutputStream out = new FileOutputStream(_tmpFile);
+    // incoming data is held in memory until we exceed the memory threshold
+    final long memThreshold = getMemoryThreshold();
+    PipeBuffer memBuf = new PipeBuffer(transferSize);
+
+    FileOutputStream out = null;
     try {
-      // limit buffer size in case of malicious input
-      byte[] transferBuf = new byte[
-          Math.min(defaultChunkSize,
-                   RemoteInputStreamServer.DEFAULT_CHUNK_SIZE)];
+      byte[] transferBuf = null;
       while(true) {
 
         // read in another chunk
@@ -377,17 +403,41 @@ public class DirectRemoteInputStream
           checkChunkSize(readLen);
         }
 
-        // copy chunk into temp file
-        copy(in, out, transferBuf, readLen);
+        if((out == null) && ((memBuf.remaining() + readLen) > memThreshold)) {
+          // too much data to hold in memory, switch over to a temp file
+          out = createTempFile(memBuf);
+          transferBuf = new byte[transferSize];
+        }
+
+        if(out == null) {
+          // keep chunk in memory (the chunk is bounded by the memory
+          // threshold, so this is safe from malicious input)
+          byte[] chunk = new byte[readLen];
+          readFully(in, chunk);
+          memBuf.writePacket(chunk, 0, chunk.length);
+        } else {
+          // copy chunk into temp file
+          copy(in, out, transferBuf, readLen);
+        }
 
       }
 
-      // attempt to close the temp file.  if successful, we're good to go
-      out.close();
+      if(out != null) {
+        // attempt to close the temp file.  if successful, we're good to go
+        out.close();
+        _in = new BufferedInputStream(Channels.newInputStream(
+            FileChannel.open(_tmpFile.toPath(), StandardOpenOption.READ)));
+      } else {
+        PipeBuffer.InputStreamAdapter memIn =
+          new PipeBuffer.InputStreamAdapter(transferSize);
+        memBuf.closeWrite();
+        memIn.setBuffer(memBuf);
+        _in = memIn;
+      }
 
       // sweet, setup final state
       _monitor = RemoteInputStreamServer.DUMMY_MONITOR;
-      _in = new BufferedInputStream(new FileInputStream(_tmpFile));
+      _deserialized = true;
 
       // the underlying stream is now in it's initial state
       _consumptionState = ConsumptionState.NONE;
@@ -399,6 +449,41 @@ public class DirectRemoteInputStream
 
   }
 
+  /**
+   * Sets up a temp file for the incoming data (making sure it gets cleaned up
+   * somehow) and moves any data currently in the given memory buffer into
+   * it.
+   *
+   * @return the stream to which the rest of the incoming data should be
+   *         written
+   */
+  private FileOutputStream createTempFile(PipeBuffer memBuf)
+    throws IOException
+  {
+    _tmpFile = File.createTempFile("stream_", ".dat");
+    _tmpFile.deleteOnExit();
+
+    FileOutputStream out = new FileOutputStream(_tmpFile);
+    while(memBuf.hasRemaining()) {
+      byte[] packet = memBuf.readPacket();
+      out.write(packet, 0, packet.length);
+    }
+    return out;
+  }
+
+  /**
+   * Determines the memory threshold to use for deserialization.  If the
+   * system property {@link #MEMORY_THRESHOLD_PROPERTY} has a valid integer it
+   * will be returned, otherwise {@link #DEFAULT_MEMORY_THRESHOLD} will be
+   * returned.
+   * @return a memory threshold in bytes
+   */
+  private static long getMemoryThreshold()
+  {
+    return Integer.getInteger(MEMORY_THRESHOLD_PROPERTY,
+                              DEFAULT_MEMORY_THRESHOLD);
+  }
+
   /**
    * Throws an InvalidObjectException if the given chunkSize is invalid.
    */
@@ -410,6 +495,24 @@ public class DirectRemoteInputStream
     }
   }
 
+  /**
+   * Fills the given buffer from the given InputStream.  The given InputStream
+   * is expected to have at least this many bytes left to read, otherwise an
+   * InvalidObjectException will be thrown.
+   */
+  private static void readFully(InputStream in, byte[] buffer)
+    throws IOException
+  {
+    int pos = 0;
+    while(pos < buffer.length) {
+      int readLen = in.read(buffer, pos, buffer.length - pos);
+      if(readLen < 0) {
+        throw new InvalidObjectException("input stream data truncated");
+      }
+      pos += readLen;
+    }
+  }
+
   /**
    * Copies the given number of bytes from the given InputStream to the given
    * OutputStream using the given buffer for transfer.  The given InputStream
@@ -0,0 +1,239 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Concrete implementation of a RemoteInputStreamServer which sends
+ * uncompressed data read from a file (like {@link ChannelRemoteInputStream}),
+ * and additionally implements {@link ChunkedRemoteInputStream}, so that
+ * clients with a {@link ChunkCache} only need to fetch the parts of the file
+ * which they have not seen before.
+ * <p>
+ * The chunk manifest is computed the first time a client requests it (which
+ * requires reading the whole file).  Recently computed manifests are kept in
+ * memory (keyed by the file path, size and modification time), so serving
+ * the same file repeatedly only reads the file for the chunks which clients
+ * actually fetch.
+ *
+ * @see <a href="{@docRoot}/overview-summary.html#Usage_Notes">Usage Notes</a>
+ * @see #writeReplace
+ *
+ * @author James Ahlborn
+ */
+public class FileRemoteInputStream extends ChannelRemoteInputStream
+  implements ChunkedRemoteInputStream
+{
+  private static final long serialVersionUID = 20261019L;
+
+  /** max number of manifests kept in memory */
+  private static final int MAX_CACHED_MANIFESTS = 64;
+
+  /** recently computed manifests (access synchronized on the map) */
+  private static final Map<String,ChunkManifest> _manifestCache =
+    new LinkedHashMap<String,ChunkManifest>(16, 0.75f, true) {
+      private static final long serialVersionUID = 20261019L;
+      @Override
+      protected boolean removeEldestEntry(
+          Map.Entry<String,ChunkManifest> eldest) {
+        return(size() > MAX_CACHED_MANIFESTS);
+      }
+    };
+
+  /** the file from which the data is read */
+  private transient final Path _file;
+  /** the size of the chunks in the manifest */
+  private transient final int _manifestChunkSize;
+  /** the manifest for the file, once computed */
+  private transient volatile ChunkManifest _manifest;
+
+  public FileRemoteInputStream(Path file)
+    throws IOException
+  {
+    this(file, DUMMY_MONITOR, DEFAULT_CHUNK_SIZE,
+         ChunkManifest.DEFAULT_CHUNK_SIZE);
+  }
+
+  public FileRemoteInputStream(
+    Path file,
+    RemoteStreamMonitor<RemoteInputStreamServer> monitor)
+    throws IOException
+  {
+    this(file, monitor, DEFAULT_CHUNK_SIZE, ChunkManifest.DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * @param file the file to send
+   * @param monitor monitor for the stream
+   * @param chunkSize size of the packets sent to clients reading the packets
+   * @param manifestChunkSize size of the chunks sent to clients reading the
+   *                          chunks
+   */
+  public FileRemoteInputStream(
+    Path file,
+    RemoteStreamMonitor<RemoteInputStreamServer> monitor,
+    int chunkSize,
+    int manifestChunkSize)
+    throws IOException
+  {
+    super(FileChannel.open(file, StandardOpenOption.READ), monitor,
+          chunkSize);
+    if(manifestChunkSize <= 0) {
+      getChannel().close();
+      throw new IllegalArgumentException(
+          "invalid manifest chunk size " + manifestChunkSize);
+    }
+    _file = file;
+    _manifestChunkSize = manifestChunkSize;
+  }
+
+  /** Returns the file from which this stream is reading data */
+  public Path getFile() { return _file; }
+
+  @Override
+  public FileChannel getChannel() {
+    return (FileChannel)super.getChannel();
+  }
+
+  @Override
+  public ChunkManifest getChunkManifest()
+    throws IOException
+  {
+    checkAborted();
+
+    try {
+      if(_manifest == null) {
+        // loaded outside of the lock (it may need to wait for an I/O slot) so
+        // that we don't hold up other calls, e.g. close
+        ChunkManifest manifest = loadManifest();
+        getStreamLock().lock();
+        try {
+          if(_manifest == null) {
+            _manifest = manifest;
+          }
+        } finally {
+          getStreamLock().unlock();
+        }
+      }
+      return _manifest;
+    } catch(IOException e) {
+      // update the monitor
+      _monitor.failure(this, e);
+      throw e;
+    } catch(RuntimeException e) {
+      // update the monitor
+      _monitor.failure(this, e);
+      throw e;
+    }
+  }
+
+  @Override
+  public byte[] readChunk(int chunkIndex)
+    throws IOException
+  {
+    checkAborted();
+
+    // wait for any bandwidth limits and an I/O slot (outside of the lock so
+    // that we don't hold up other calls, e.g. close)
+    awaitBandwidth();
+    IOScheduler.Ticket ioTicket = acquireIOSlot(_manifestChunkSize);
+
+    getStreamLock().lock();
+    try {
+      if(_manifest == null) {
+        throw new IllegalStateException("chunk manifest was not requested");
+      }
+
+      int chunkLength = _manifest.getChunkLength(chunkIndex);
+      ByteBuffer bb = ByteBuffer.allocate(chunkLength);
+      long startTime = System.nanoTime();
+      try {
+        // positional reads do not affect the packet based reads
+        ChunkManifest.readFully(getChannel(), bb,
+                                _manifest.getChunkOffset(chunkIndex));
+      } catch(IOException e) {
+        // update the monitor
+        _monitor.failure(this, e);
+        throw e;
+      } catch(RuntimeException e) {
+        // update the monitor
+        _monitor.failure(this, e);
+        throw e;
+      } finally {
+        releaseIOSlot(ioTicket, bb.position());
+        ioTicket = null;
+      }
+
+      consumeBandwidth(chunkLength);
+
+      // update the monitor
+      _monitor.localBytesMoved(this, chunkLength);
+      _monitor.packetServiced(this, System.nanoTime() - startTime);
+      _monitor.bytesMoved(this, chunkLength, false);
+
+      return bb.array();
+    } finally {
+      // give back the I/O slot if unused (e.g. for an invalid chunk)
+      releaseIOSlot(ioTicket, 0L);
+      getStreamLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the manifest for the current file contents, from the manifest
+   * cache if possible.
+   */
+  private ChunkManifest loadManifest()
+    throws IOException
+  {
+    // will be called without the stream lock held (the file is only read
+    // using positional reads)
+    BasicFileAttributes attrs = Files.readAttributes(
+        _file, BasicFileAttributes.class);
+    long length = getChannel().size();
+    String key = _file.toAbsolutePath().normalize() + "|" + length + "|" +
+      attrs.lastModifiedTime().toMillis() + "|" + _manifestChunkSize;
+
+    ChunkManifest manifest = null;
+    synchronized(_manifestCache) {
+      manifest = _manifestCache.get(key);
+    }
+    if(manifest == null) {
+      IOScheduler.Ticket ioTicket = acquireIOSlot(length);
+      try {
+        manifest = ChunkManifest.create(getChannel(), length,
+                                        _manifestChunkSize);
+      } finally {
+        releaseIOSlot(ioTicket, length);
+      }
+      synchronized(_manifestCache) {
+        _manifestCache.put(key, manifest);
+      }
+    }
+    return manifest;
+  }
+
+}
@@ -0,0 +1,406 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * Concrete implementation of a RemoteOutputStreamServer which replaces a
+ * file with the uncompressed data it receives.  The data is written to a
+ * temporary file in the same directory, which replaces the target file
+ * only when the client closes the stream successfully (so readers never
+ * see a partially written file, and a failed upload leaves the existing
+ * file untouched).
+ * <p>
+ * This class also implements {@link DeltaRemoteOutputStream}, so a client
+ * using {@link RemoteOutputStreamClient#wrapDelta} only needs to send the
+ * parts of the new data which differ from the existing file, and the new
+ * file is reconstructed here from those differences and the blocks of the
+ * existing file.  The reconstructed data is verified against the hash of
+ * the new data computed by the client.
+ *
+ * @see <a href="{@docRoot}/overview-summary.html#Usage_Notes">Usage Notes</a>
+ * @see #writeReplace
+ *
+ * @author James Ahlborn
+ */
+public class FileRemoteOutputStream extends RemoteOutputStreamServer
+  implements DeltaRemoteOutputStream
+{
+  private static final long serialVersionUID = 20261019L;
+
+  /** suffix of the temporary file holding the new data */
+  private static final String TEMP_SUFFIX = ".part";
+
+  /** the file being replaced */
+  private transient final Path _file;
+  /** the temporary file to which the new data is written */
+  private transient final Path _tmpFile;
+  /** the size of the blocks in the delta signature */
+  private transient final int _blockSize;
+  /** whether any data has been written */
+  private transient boolean _gotData;
+  /** the decoder for the delta instructions, if in delta mode */
+  private transient DeltaDecoder _decoder;
+
+  public FileRemoteOutputStream(Path file)
+    throws IOException
+  {
+    this(file, DUMMY_MONITOR, DeltaSignature.DEFAULT_BLOCK_SIZE);
+  }
+
+  public FileRemoteOutputStream(
+    Path file,
+    RemoteStreamMonitor<RemoteOutputStreamServer> monitor)
+    throws IOException
+  {
+    this(file, monitor, DeltaSignature.DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * @param file the file to replace
+   * @param monitor monitor for the stream
+   * @param blockSize size of the blocks in the delta signature
+   */
+  public FileRemoteOutputStream(
+    Path file,
+    RemoteStreamMonitor<RemoteOutputStreamServer> monitor,
+    int blockSize)
+    throws IOException
+  {
+    this(file, createTempFile(file, blockSize), monitor, blockSize);
+  }
+
+  private FileRemoteOutputStream(
+    Path file,
+    Path tmpFile,
+    RemoteStreamMonitor<RemoteOutputStreamServer> monitor,
+    int blockSize)
+    throws IOException
+  {
+    super(new BufferedOutputStream(Files.newOutputStream(tmpFile)), monitor);
+    _file = file;
+    _tmpFile = tmpFile;
+    _blockSize = blockSize;
+  }
+
+  /** Returns the file which this stream is replacing */
+  public Path getFile() { return _file; }
+
+  @Override
+  public boolean usingGZIPCompression()
+  {
+    // no compression
+    return false;
+  }
+
+  @Override
+  public DeltaSignature getDeltaSignature()
+    throws IOException
+  {
+    checkAborted();
+
+    getStreamLock().lock();
+    try {
+      if(_decoder == null) {
+        if(_gotData) {
+          throw new IllegalStateException(
+              "data already written, cannot switch to delta mode");
+        }
+        FileChannel base = openBaseFile();
+        boolean success = false;
+        try {
+          _decoder = new DeltaDecoder(base);
+          success = true;
+        } finally {
+          if(!success && (base != null)) {
+            base.close();
+          }
+        }
+      }
+      return _decoder._signature;
+    } catch(IOException e) {
+      // update the monitor
+      _monitor.failure(this, e);
+      throw e;
+    } catch(RuntimeException e) {
+      // update the monitor
+      _monitor.failure(this, e);
+      throw e;
+    } finally {
+      getStreamLock().unlock();
+    }
+  }
+
+  @Override
+  protected boolean isLocalStreamSupported() {
+    // delta instructions must go through the decoder
+    getStreamLock().lock();
+    try {
+      return(_decoder == null);
+    } finally {
+      getStreamLock().unlock();
+    }
+  }
+
+  @Override
+  protected void flushImpl()
+    throws IOException
+  {
+    getStreamLock().lock();
+    try {
+      _out.flush();
+    } finally {
+      getStreamLock().unlock();
+    }
+  }
+
+  @Override
+  protected void writePacket(byte[] packet)
+    throws IOException
+  {
+    // will be called with the stream lock held
+    _gotData = true;
+    if(_decoder != null) {
+      _decoder.write(packet);
+    } else {
+      _out.write(packet);
+    }
+    _monitor.localBytesMoved(this, packet.length);
+  }
+
+  @Override
+  protected void closeImpl(boolean writeSuccess)
+    throws IOException
+  {
+    getStreamLock().lock();
+    try {
+      boolean replaced = false;
+      try {
+        try {
+          super.closeImpl(writeSuccess);
+        } finally {
+          if(_decoder != null) {
+            _decoder.close();
+          }
+        }
+
+        if(writeSuccess) {
+          if((_decoder != null) && !_decoder._done) {
+            throw new IOException("Delta upload for " + _file +
+                                  " ended without all the data");
+          }
+          replaceFile();
+          replaced = true;
+        }
+      } finally {
+        if(!replaced) {
+          Files.deleteIfExists(_tmpFile);
+        }
+      }
+    } finally {
+      getStreamLock().unlock();
+    }
+  }
+
+  private void replaceFile()
+    throws IOException
+  {
+    try {
+      Files.move(_tmpFile, _file, StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+    } catch(AtomicMoveNotSupportedException e) {
+      Files.move(_tmpFile, _file, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * @return a channel for the existing file, or <code>null</code> if there
+   *         is none
+   */
+  private FileChannel openBaseFile()
+    throws IOException
+  {
+    try {
+      return FileChannel.open(_file, StandardOpenOption.READ);
+    } catch(NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  private static Path createTempFile(Path file, int blockSize)
+    throws IOException
+  {
+    if(blockSize <= 0) {
+      throw new IllegalArgumentException("invalid block size " + blockSize);
+    }
+    Path dir = file.toAbsolutePath().getParent();
+    return Files.createTempFile(dir, file.getFileName().toString(),
+                                TEMP_SUFFIX);
+  }
+
+  /**
+   * Reconstructs the new data from the delta instructions (which may be
+   * split arbitrarily across packets) and the blocks of the existing file.
+   */
+  private final class DeltaDecoder
+  {
+    /** the existing file, if any */
+    private final FileChannel _base;
+    private final DeltaSignature _signature;
+    /** hash of the reconstructed data */
+    private final MessageDigest _digest;
+    /** the header of the current instruction (the end instruction is the
+        longest) */
+    private final ByteBuffer _header;
+    /** remaining bytes of the current literal instruction */
+    private int _literalRemaining;
+    /** total length of the reconstructed data */
+    private long _length;
+    /** whether the end instruction has been received (and verified) */
+    private boolean _done;
+
+    private DeltaDecoder(FileChannel base)
+      throws IOException
+    {
+      _base = base;
+      _signature = DeltaSignature.create(
+          base, ((base != null) ? base.size() : 0L), _blockSize);
+      _digest = ChunkManifest.newDigest(DeltaSignature.HASH_ALGORITHM);
+      _header = ByteBuffer.allocate(1 + 8 + _digest.getDigestLength());
+    }
+
+    private void write(byte[] buf)
+      throws IOException
+    {
+      int off = 0;
+      while(off < buf.length) {
+
+        if(_literalRemaining > 0) {
+          int len = Math.min(_literalRemaining, buf.length - off);
+          writeData(buf, off, len);
+          _literalRemaining -= len;
+          off += len;
+          continue;
+        }
+
+        if(_done) {
+          throw new IOException("Unexpected data after end of delta");
+        }
+
+        _header.put(buf[off++]);
+        int headerLength = getHeaderLength(_header.get(0));
+        if(_header.position() == headerLength) {
+          _header.flip();
+          handleInstruction();
+          _header.clear();
+        }
+      }
+    }
+
+    private int getHeaderLength(byte op)
+      throws IOException
+    {
+      switch(op) {
+      case DeltaSignature.OP_END:
+        return _header.capacity();
+      case DeltaSignature.OP_LITERAL:
+        return 1 + 4;
+      case DeltaSignature.OP_COPY:
+        return 1 + 4 + 4;
+      default:
+        throw new IOException("Invalid delta instruction " + op);
+      }
+    }
+
+    private void handleInstruction()
+      throws IOException
+    {
+      byte op = _header.get();
+      switch(op) {
+      case DeltaSignature.OP_END:
+        long length = _header.getLong();
+        byte[] hash = new byte[_header.remaining()];
+        _header.get(hash);
+        if((length != _length) ||
+           !MessageDigest.isEqual(hash, _digest.digest())) {
+          throw new IOException("Delta upload for " + _file +
+                                " failed verification");
+        }
+        _done = true;
+        break;
+      case DeltaSignature.OP_LITERAL:
+        _literalRemaining = _header.getInt();
+        if((_literalRemaining < 0) ||
+           (_literalRemaining > DeltaSignature.MAX_LITERAL_LENGTH)) {
+          throw new IOException("Invalid literal length " +
+                                _literalRemaining);
+        }
+        break;
+      case DeltaSignature.OP_COPY:
+        copyBlocks(_header.getInt(), _header.getInt());
+        break;
+      default:
+        throw new IllegalStateException();
+      }
+    }
+
+    private void copyBlocks(int firstBlock, int numBlocks)
+      throws IOException
+    {
+      if((firstBlock < 0) || (numBlocks <= 0) ||
+         (numBlocks > (_signature.getNumBlocks() - firstBlock))) {
+        throw new IOException("Invalid block range " + firstBlock + ", " +
+                              numBlocks);
+      }
+      ByteBuffer bb = ByteBuffer.allocate(_blockSize);
+      for(int i = firstBlock; i < (firstBlock + numBlocks); ++i) {
+        bb.clear();
+        bb.limit(_signature.getBlockLength(i));
+        ChunkManifest.readFully(_base, bb, (long)i * _blockSize);
+        writeData(bb.array(), 0, bb.limit());
+      }
+    }
+
+    private void writeData(byte[] buf, int off, int len)
+      throws IOException
+    {
+      _out.write(buf, off, len);
+      _digest.update(buf, off, len);
+      _length += len;
+    }
+
+    private void close()
+      throws IOException
+    {
+      if(_base != null) {
+        _base.close();
+      }
+    }
+  }
+
+}
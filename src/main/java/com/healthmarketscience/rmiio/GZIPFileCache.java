@@ -0,0 +1,533 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Server side disk cache of the GZIP compressed contents of files, for
+ * serving the same files to many clients without compressing them for each
+ * client.  The streams returned by {@link #newStream} behave like a
+ * {@link GZIPRemoteInputStream} for the file.  If the compressed data for
+ * the current version of the file (identified by the file path, size and
+ * modification time) is cached, the stream sends the cached data as is.
+ * Otherwise, the stream compresses the file as usual and, if the client
+ * reads the whole stream successfully, the compressed data is added to the
+ * cache.
+ * <p>
+ * When the total size of the cached data exceeds the configured max size,
+ * the least recently used entries are removed.  Each entry is stored as a
+ * separate file in the cache directory.  The cache directory may be reused
+ * across JVM runs (the recency of the existing entries is restored from
+ * their modification times), but should not be shared by multiple caches at
+ * the same time.  Note, cached data is not verified when it is sent, but the
+ * GZIP format includes a checksum which the client verifies.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author James Ahlborn
+ */
+public class GZIPFileCache
+{
+  private static final Log LOG = LogFactory.getLog(GZIPFileCache.class);
+
+  /** prefix for the cache entry file names */
+  private static final String NAME_PREFIX = "gz-";
+  /** suffix for partially written entry files */
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final Path _dir;
+  private final long _maxSize;
+  /** the cached entry file names and sizes, in least to most recently used
+      order */
+  private final LinkedHashMap<String,Long> _entries =
+    new LinkedHashMap<String,Long>(16, 0.75f, true);
+  /** total size of the cached entries */
+  private long _size;
+  private final LongAdder _numHits = new LongAdder();
+  private final LongAdder _numMisses = new LongAdder();
+
+  /**
+   * @param dir the directory in which the entries will be stored (will be
+   *            created if necessary)
+   * @param maxSize the max total size in bytes of the cached entries
+   */
+  public GZIPFileCache(Path dir, long maxSize)
+    throws IOException
+  {
+    if(maxSize <= 0L) {
+      throw new IllegalArgumentException("invalid max size " + maxSize);
+    }
+    _dir = dir;
+    _maxSize = maxSize;
+    Files.createDirectories(dir);
+    loadEntries();
+  }
+
+  public Path getDirectory() {
+    return _dir;
+  }
+
+  public long getMaxSize() {
+    return _maxSize;
+  }
+
+  /**
+   * @return the current total size in bytes of the cached entries
+   */
+  public synchronized long getSize() {
+    return _size;
+  }
+
+  /**
+   * @return the current number of cached entries
+   */
+  public synchronized int getNumEntries() {
+    return _entries.size();
+  }
+
+  /**
+   * @return the number of streams which were served from this cache
+   */
+  public long getNumHits() {
+    return _numHits.sum();
+  }
+
+  /**
+   * @return the number of streams which were not served from this cache
+   */
+  public long getNumMisses() {
+    return _numMisses.sum();
+  }
+
+  public RemoteInputStreamServer newStream(Path file)
+    throws IOException
+  {
+    return newStream(file, RemoteInputStreamServer.DUMMY_MONITOR,
+                     RemoteInputStreamServer.DEFAULT_CHUNK_SIZE);
+  }
+
+  public RemoteInputStreamServer newStream(
+    Path file,
+    RemoteStreamMonitor<RemoteInputStreamServer> monitor)
+    throws IOException
+  {
+    return newStream(file, monitor, RemoteInputStreamServer.DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Returns a new stream which sends the GZIP compressed contents of the
+   * given file, using the cached compressed data if possible.  Note that for
+   * streams served from the cache, the monitor sees the compressed data as
+   * the local data.
+   *
+   * @param file the file to send
+   * @param monitor monitor for the stream
+   * @param chunkSize size of the packets sent to the client
+   * @return a stream for which {@link
+   *         RemoteInputStreamServer#usingGZIPCompression} is
+   *         <code>true</code>
+   */
+  public RemoteInputStreamServer newStream(
+    Path file,
+    RemoteStreamMonitor<RemoteInputStreamServer> monitor,
+    int chunkSize)
+    throws IOException
+  {
+    BasicFileAttributes attrs = Files.readAttributes(
+        file, BasicFileAttributes.class);
+    String name = getName(file, attrs);
+
+    boolean cached = false;
+    synchronized(this) {
+      // note, get() (unlike containsKey()) updates the recency
+      cached = (_entries.get(name) != null);
+    }
+    if(cached) {
+      Path entryFile = _dir.resolve(name);
+      InputStream in = null;
+      try {
+        in = Files.newInputStream(entryFile);
+      } catch(NoSuchFileException e) {
+        // removed behind our back
+        LOG.warn("Discarding missing cached entry " + entryFile);
+        remove(name);
+      }
+      if(in != null) {
+        // remember recency across runs
+        touch(entryFile);
+        _numHits.increment();
+        return new CachedStream(in, monitor, chunkSize);
+      }
+    }
+
+    _numMisses.increment();
+    return new CachingStream(file, attrs, name, monitor, chunkSize);
+  }
+
+  /**
+   * Removes all the entries from this cache.
+   */
+  public void clear()
+    throws IOException
+  {
+    List<String> names = null;
+    synchronized(this) {
+      names = new ArrayList<String>(_entries.keySet());
+      _entries.clear();
+      _size = 0L;
+    }
+    for(String name : names) {
+      deleteFile(name);
+    }
+  }
+
+  /**
+   * Adds the given temp file to this cache as the entry with the given name,
+   * removing the least recently used entries as necessary.
+   */
+  private void put(String name, Path tmpFile)
+    throws IOException
+  {
+    long size = Files.size(tmpFile);
+    if(size > _maxSize) {
+      return;
+    }
+    synchronized(this) {
+      if(_entries.containsKey(name)) {
+        // another stream got there first
+        return;
+      }
+    }
+
+    Files.move(tmpFile, _dir.resolve(name),
+               StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+
+    List<String> evicted = null;
+    synchronized(this) {
+      Long oldSize = _entries.put(name, size);
+      if(oldSize != null) {
+        _size -= oldSize;
+      }
+      _size += size;
+      evicted = evictEntries();
+    }
+
+    for(String evictedName : evicted) {
+      deleteFile(evictedName);
+    }
+  }
+
+  private void remove(String name)
+    throws IOException
+  {
+    synchronized(this) {
+      Long size = _entries.remove(name);
+      if(size == null) {
+        return;
+      }
+      _size -= size;
+    }
+    deleteFile(name);
+  }
+
+  private void deleteFile(String name)
+  {
+    try {
+      Files.deleteIfExists(_dir.resolve(name));
+    } catch(IOException e) {
+      // may still be in use by a stream (on some platforms)
+      LOG.warn("Failed removing cached entry " + name, e);
+    }
+  }
+
+  /**
+   * Loads the entries already in the cache directory, oldest first.
+   */
+  private void loadEntries()
+    throws IOException
+  {
+    List<Map.Entry<Path,BasicFileAttributes>> files =
+      new ArrayList<Map.Entry<Path,BasicFileAttributes>>();
+    try(DirectoryStream<Path> dirStream = Files.newDirectoryStream(_dir)) {
+      for(Path file : dirStream) {
+        if(file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+          // leftover from an interrupted stream
+          Files.deleteIfExists(file);
+          continue;
+        }
+        BasicFileAttributes attrs = Files.readAttributes(
+            file, BasicFileAttributes.class);
+        if(attrs.isRegularFile()) {
+          files.add(new AbstractMap.SimpleEntry<Path,BasicFileAttributes>(
+                        file, attrs));
+        }
+      }
+    }
+    files.sort((e1, e2) -> e1.getValue().lastModifiedTime().compareTo(
+                   e2.getValue().lastModifiedTime()));
+
+    List<String> evicted = null;
+    synchronized(this) {
+      for(Map.Entry<Path,BasicFileAttributes> entry : files) {
+        long size = entry.getValue().size();
+        _entries.put(entry.getKey().getFileName().toString(), size);
+        _size += size;
+      }
+      // the max size may have been reduced since the last run
+      evicted = evictEntries();
+    }
+    for(String evictedName : evicted) {
+      deleteFile(evictedName);
+    }
+  }
+
+  /**
+   * Removes the least recently used entries until the cache is within its
+   * max size (caller must synch).
+   *
+   * @return the names of the removed entries (whose files need to be
+   *         deleted)
+   */
+  private List<String> evictEntries()
+  {
+    List<String> evicted = new ArrayList<String>();
+    Iterator<Map.Entry<String,Long>> iter = _entries.entrySet().iterator();
+    while((_size > _maxSize) && iter.hasNext()) {
+      Map.Entry<String,Long> entry = iter.next();
+      _size -= entry.getValue();
+      evicted.add(entry.getKey());
+      iter.remove();
+    }
+    return evicted;
+  }
+
+  private static void touch(Path file)
+  {
+    try {
+      Files.setLastModifiedTime(
+          file, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch(IOException e) {
+      // not critical, only affects the recency after a restart
+      if(LOG.isDebugEnabled()) {
+        LOG.debug("Failed updating time of cached entry " + file, e);
+      }
+    }
+  }
+
+  /**
+   * @return the entry name for the given version of the given file
+   */
+  private static String getName(Path file, BasicFileAttributes attrs)
+    throws IOException
+  {
+    String key = file.toAbsolutePath().normalize() + "|" + attrs.size() +
+      "|" + attrs.lastModifiedTime().toMillis();
+    byte[] hash = ChunkManifest.newDigest(ChunkManifest.HASH_ALGORITHM)
+      .digest(key.getBytes(StandardCharsets.UTF_8));
+    StringBuilder sb = new StringBuilder(
+        NAME_PREFIX.length() + (hash.length * 2));
+    sb.append(NAME_PREFIX);
+    for(byte b : hash) {
+      sb.append(Character.forDigit((b >> 4) & 0x0F, 16))
+        .append(Character.forDigit(b & 0x0F, 16));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Stream which sends cached compressed data as is.
+   */
+  private static final class CachedStream extends SimpleRemoteInputStream
+  {
+    private static final long serialVersionUID = 20261019L;
+
+    private CachedStream(InputStream in,
+                         RemoteStreamMonitor<RemoteInputStreamServer> monitor,
+                         int chunkSize)
+    {
+      super(in, monitor, chunkSize);
+    }
+
+    @Override
+    public boolean usingGZIPCompression()
+    {
+      return true;
+    }
+
+    @Override
+    protected boolean isLocalStreamSupported() {
+      // local streams send the underlying (compressed) data uncompressed
+      return false;
+    }
+
+    @Override
+    protected long skip(long n)
+      throws IOException
+    {
+      throw new IOException("Should not be called on compressed stream");
+    }
+  }
+
+  /**
+   * Stream which compresses the file and saves the compressed data to a temp
+   * file, which is added to the cache if the whole stream is read
+   * successfully.
+   */
+  private final class CachingStream extends GZIPRemoteInputStream
+  {
+    private static final long serialVersionUID = 20261019L;
+
+    private transient final Path _file;
+    private transient final BasicFileAttributes _attrs;
+    private transient final String _name;
+    /** the temp file holding the compressed data */
+    private transient Path _tmpFile;
+    private transient OutputStream _tmpOut;
+    /** whether the compressed data is still being saved */
+    private transient boolean _caching = true;
+    /** whether all the compressed data has been read */
+    private transient boolean _complete;
+
+    private CachingStream(Path file, BasicFileAttributes attrs, String name,
+                          RemoteStreamMonitor<RemoteInputStreamServer> monitor,
+                          int chunkSize)
+      throws IOException
+    {
+      super(Files.newInputStream(file), monitor, chunkSize);
+      _file = file;
+      _attrs = attrs;
+      _name = name;
+    }
+
+    @Override
+    protected byte[] readPacket()
+      throws IOException
+    {
+      // will be called with the stream lock held
+      byte[] packet = super.readPacket();
+      if(packet != null) {
+        saveData(packet);
+      } else {
+        _complete = true;
+      }
+      return packet;
+    }
+
+    @Override
+    protected void closeImpl(boolean readSuccess)
+      throws IOException
+    {
+      try {
+        super.closeImpl(readSuccess);
+      } finally {
+        getStreamLock().lock();
+        try {
+          finishCaching(readSuccess);
+        } finally {
+          getStreamLock().unlock();
+        }
+      }
+    }
+
+    private void saveData(byte[] packet)
+    {
+      if(!_caching) {
+        return;
+      }
+      try {
+        if(_tmpOut == null) {
+          _tmpFile = Files.createTempFile(_dir, _name, TEMP_SUFFIX);
+          _tmpOut = new BufferedOutputStream(Files.newOutputStream(_tmpFile));
+        }
+        _tmpOut.write(packet);
+      } catch(IOException e) {
+        // the stream itself is fine, just don't cache it
+        LOG.warn("Failed caching compressed data for " + _file, e);
+        abandonCaching();
+      }
+    }
+
+    private void finishCaching(boolean readSuccess)
+    {
+      if(!_caching || (_tmpOut == null)) {
+        return;
+      }
+      try {
+        _tmpOut.close();
+        _tmpOut = null;
+        if(readSuccess && _complete && !isFileChanged()) {
+          put(_name, _tmpFile);
+        }
+      } catch(IOException e) {
+        LOG.warn("Failed caching compressed data for " + _file, e);
+      } finally {
+        abandonCaching();
+      }
+    }
+
+    private boolean isFileChanged()
+      throws IOException
+    {
+      BasicFileAttributes attrs = Files.readAttributes(
+          _file, BasicFileAttributes.class);
+      return((attrs.size() != _attrs.size()) ||
+             !attrs.lastModifiedTime().equals(_attrs.lastModifiedTime()));
+    }
+
+    private void abandonCaching()
+    {
+      try {
+        if(_tmpOut != null) {
+          _tmpOut.close();
+        }
+        if(_tmpFile != null) {
+          Files.deleteIfExists(_tmpFile);
+        }
+      } catch(IOException e) {
+        LOG.warn("Failed removing temp file " + _tmpFile, e);
+      } finally {
+        _tmpOut = null;
+        _tmpFile = null;
+        _caching = false;
+      }
+    }
+  }
+
+}
@@ -83,8 +83,11 @@ public class GZIPRemoteInputStream extends RemoteInputStreamServer
   protected int availableImpl()
     throws IOException
   {
-    synchronized(getLock()) {
+    getStreamLock().lock();
+    try {
       return _packetIStream.available();
+    } finally {
+      getStreamLock().unlock();
     }
   }
 
@@ -109,7 +112,7 @@ public class GZIPRemoteInputStream extends RemoteInputStreamServer
   protected byte[] readPacket()
     throws IOException
   {
-    // will be called synchronized
+    // will be called with the stream lock held
 
     return _packetIStream.readPacket();
   }
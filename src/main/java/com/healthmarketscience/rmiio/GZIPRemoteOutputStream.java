@@ -84,7 +84,7 @@ public class GZIPRemoteOutputStream extends RemoteOutputStreamServer
   private void flushPacket(int maxReadLen, boolean finish)
     throws IOException
   {
-    // will be called synchronized
+    // will be called with the stream lock held
 
     // now, force data to be read from packet buffer
     int totRead = 0;
@@ -134,7 +134,8 @@ public class GZIPRemoteOutputStream extends RemoteOutputStreamServer
     // stream could cause deadlock (and isn't worth it anyway), so skip
     // flushing in that case
     if(writeSuccess) {
-      synchronized(getLock()) {
+      getStreamLock().lock();
+      try {
         try {
           // don't bother flushing unless we actually wrote something!
           if(_gzipIStream != null) {
@@ -147,6 +148,8 @@ public class GZIPRemoteOutputStream extends RemoteOutputStreamServer
             LOG.debug("Ignoring exception while flushing stream", ignored);
           }
         }
+      } finally {
+        getStreamLock().unlock();
       }
     }
 
@@ -161,8 +164,11 @@ public class GZIPRemoteOutputStream extends RemoteOutputStreamServer
     // note the best we can do here is flush the underlying stream, we cannot
     // flush our gzip stream (or we may deadlock).
 
-    synchronized(getLock()) {
+    getStreamLock().lock();
+    try {
       _out.flush();
+    } finally {
+      getStreamLock().unlock();
     }
   }
 
@@ -170,7 +176,7 @@ public class GZIPRemoteOutputStream extends RemoteOutputStreamServer
   protected void writePacket(byte[] packet)
     throws IOException
   {
-    // will be called synchronized
+    // will be called with the stream lock held
 
     // set new data
     _packetIStream.getBuffer().writePacket(packet, 0, packet.length);
@@ -0,0 +1,380 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.healthmarketscience.rmiio.util.ThreadFactories;
+
+/**
+ * Policy for "hedged" packet reads by a RemoteInputStream client (see
+ * {@link RemoteInputStreamClient#wrap(RemoteInputStream,RemoteRetry,HedgingPolicy)}).
+ * If a packet has not arrived within the configured percentile of recent
+ * packet latencies, a second <code>readPacket</code> call is made with the
+ * same packet id and whichever result arrives first is used.  This is safe
+ * because the server returns the same packet for a repeated packet id.
+ * <p>
+ * Both the original call and the hedged call (if needed) are made from
+ * threads of the executor, so the hedged call will use a different
+ * connection than the original (the RMI runtime only runs one call at a
+ * time on a connection), and the reading thread can return as soon as
+ * either call succeeds.  The losing call is cancelled, but a remote call in
+ * progress generally cannot be interrupted, so its executor thread is only
+ * released once the call returns (or fails).  Note that this mainly helps
+ * when the delay is in the network (e.g. a stalled TCP connection), a
+ * hedged call will not complete any faster if the server is slow to read
+ * the underlying data.
+ * <p>
+ * The latency statistics are shared by all the streams using this policy
+ * instance.  This class is thread-safe.
+ *
+ * @author James Ahlborn
+ */
+public class HedgingPolicy
+{
+  /** default percentile of recent packet latencies after which a hedged call
+      is made */
+  public static final double DEFAULT_PERCENTILE = 0.95d;
+  /** default min time in milliseconds to wait before making a hedged call */
+  public static final long DEFAULT_MIN_DELAY = 5L;
+  /** default max time in milliseconds to wait before making a hedged call
+      (also used until enough latencies have been recorded) */
+  public static final long DEFAULT_MAX_DELAY = 1000L;
+
+  /** number of recent packet latencies used to compute the hedge delay */
+  private static final int NUM_SAMPLES = 128;
+  /** number of new samples after which the hedge delay is recomputed */
+  private static final int RECOMPUTE_INTERVAL = 16;
+
+  /** lazily created executor shared by policies which are not given one */
+  private static ExecutorService _defaultExecutor;
+
+  private final double _percentile;
+  private final long _minDelayNanos;
+  private final long _maxDelayNanos;
+  private final ExecutorService _executor;
+  /** ring buffer of recent packet latencies */
+  private final long[] _samples = new long[NUM_SAMPLES];
+  private int _numSamples;
+  private int _nextSample;
+  private int _samplesSinceRecompute;
+  /** current delay after which a hedged call is made */
+  private long _delayNanos;
+  private final LongAdder _numHedged = new LongAdder();
+  private final LongAdder _numHedgeWins = new LongAdder();
+
+  public HedgingPolicy() {
+    this(DEFAULT_PERCENTILE, DEFAULT_MIN_DELAY, DEFAULT_MAX_DELAY, null);
+  }
+
+  /**
+   * @param percentile percentile (between 0 and 1) of recent packet
+   *                   latencies after which a hedged call is made
+   * @param minDelay min time in milliseconds to wait before making a hedged
+   *                 call
+   * @param maxDelay max time in milliseconds to wait before making a hedged
+   *                 call
+   * @param executor executor used to make the hedged calls, if
+   *                 <code>null</code>, a shared pool of threads from
+   *                 {@link ThreadFactories} will be used
+   */
+  public HedgingPolicy(double percentile, long minDelay, long maxDelay,
+                       ExecutorService executor)
+  {
+    if((percentile <= 0.0d) || (percentile > 1.0d) || (minDelay < 0L) ||
+       (maxDelay < minDelay)) {
+      throw new IllegalArgumentException(
+          "invalid hedging parameters " + percentile + ", " + minDelay +
+          ", " + maxDelay);
+    }
+    _percentile = percentile;
+    _minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelay);
+    _maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelay);
+    _delayNanos = _maxDelayNanos;
+    _executor = ((executor != null) ? executor : getDefaultExecutor());
+  }
+
+  /**
+   * @return the current time in milliseconds a packet read waits before
+   *         making a hedged call
+   */
+  public synchronized long getDelay() {
+    return TimeUnit.NANOSECONDS.toMillis(_delayNanos);
+  }
+
+  /**
+   * @return the number of hedged calls which have been made
+   */
+  public long getNumHedged() {
+    return _numHedged.sum();
+  }
+
+  /**
+   * @return the number of hedged calls which returned before the original
+   *         call
+   */
+  public long getNumHedgeWins() {
+    return _numHedgeWins.sum();
+  }
+
+  /**
+   * Reads the packet with the given id from the given remote stream, making
+   * a second call if the first call does not return within the current
+   * hedge delay.  If all calls fail, the failure from the original call is
+   * thrown.
+   */
+  byte[] readPacket(RemoteInputStream remoteIn, int packetId)
+    throws IOException
+  {
+    long startTime = System.nanoTime();
+    HedgedRead read = new HedgedRead(remoteIn, packetId);
+    try {
+      // the calls are made from the executor, so that this thread never
+      // waits for a remote call which it cannot abandon
+      read.start(false);
+      if(!read.await(getDelayNanos())) {
+        read.start(true);
+        read.await();
+      }
+    } catch(InterruptedException e) {
+      // pass interrupt along
+      Thread.currentThread().interrupt();
+      throw (IOException)new InterruptedIOException(
+          "interrupted while reading packet " + packetId).initCause(e);
+    } finally {
+      // stop any losing call which is still retrying (the remote call itself
+      // cannot be interrupted, its result will just be ignored)
+      read.cancel();
+    }
+
+    byte[] packet = read.getResult();
+    if(read.isHedgeWinner()) {
+      _numHedgeWins.increment();
+    }
+    addSample(System.nanoTime() - startTime);
+    return packet;
+  }
+
+  private synchronized long getDelayNanos() {
+    return _delayNanos;
+  }
+
+  private synchronized void addSample(long latencyNanos)
+  {
+    _samples[_nextSample] = latencyNanos;
+    _nextSample = (_nextSample + 1) % NUM_SAMPLES;
+    if(_numSamples < NUM_SAMPLES) {
+      ++_numSamples;
+    }
+
+    // sorting the samples on every packet would be wasteful, so only
+    // recompute the delay periodically
+    if(++_samplesSinceRecompute < RECOMPUTE_INTERVAL) {
+      return;
+    }
+    _samplesSinceRecompute = 0;
+    long[] sorted = Arrays.copyOf(_samples, _numSamples);
+    Arrays.sort(sorted);
+    int idx = Math.min((int)Math.ceil(_percentile * _numSamples) - 1,
+                       _numSamples - 1);
+    _delayNanos = Math.max(_minDelayNanos,
+                           Math.min(_maxDelayNanos,
+                                    sorted[Math.max(idx, 0)]));
+  }
+
+  private static synchronized ExecutorService getDefaultExecutor()
+  {
+    if(_defaultExecutor == null) {
+      _defaultExecutor = Executors.newCachedThreadPool(
+          ThreadFactories.newThreadFactory("HedgingPolicy-Reader"));
+    }
+    return _defaultExecutor;
+  }
+
+  /**
+   * The state of a single (possibly hedged) packet read.
+   */
+  private final class HedgedRead
+  {
+    private final RemoteInputStream _remoteIn;
+    private final int _packetId;
+    private int _numCalls;
+    private int _numFailed;
+    private boolean _done;
+    private boolean _succeeded;
+    private boolean _hedgeWinner;
+    private byte[] _result;
+    private Throwable _originalFailure;
+    private Throwable _hedgeFailure;
+    private Future<?> _original;
+    private Future<?> _hedge;
+
+    private HedgedRead(RemoteInputStream remoteIn, int packetId) {
+      _remoteIn = remoteIn;
+      _packetId = packetId;
+    }
+
+    /**
+     * Makes the original or hedged call using the executor, unless the read
+     * is already complete.
+     */
+    private void start(final boolean isHedge)
+    {
+      synchronized(this) {
+        // the check and the new call must be atomic, otherwise a failure of
+        // the original call in between would complete the read
+        if(_done) {
+          return;
+        }
+        ++_numCalls;
+      }
+      if(isHedge) {
+        _numHedged.increment();
+      }
+
+      Future<?> call = null;
+      try {
+        call = _executor.submit(() -> call(isHedge));
+      } catch(RuntimeException e) {
+        failed(e, isHedge);
+        return;
+      }
+
+      synchronized(this) {
+        if(isHedge) {
+          _hedge = call;
+        } else {
+          _original = call;
+        }
+        if(_done) {
+          // completed (or abandoned) while we were submitting
+          call.cancel(true);
+        }
+      }
+    }
+
+    private void call(boolean isHedge)
+    {
+      try {
+        byte[] packet = _remoteIn.readPacket(_packetId);
+        succeeded(packet, isHedge);
+      } catch(Throwable t) {
+        failed(t, isHedge);
+      }
+    }
+
+    private synchronized void succeeded(byte[] packet, boolean isHedge) {
+      if(!_done) {
+        _done = true;
+        _succeeded = true;
+        _result = packet;
+        _hedgeWinner = isHedge;
+        notifyAll();
+      }
+    }
+
+    private synchronized void failed(Throwable t, boolean isHedge) {
+      if(isHedge) {
+        _hedgeFailure = t;
+      } else {
+        _originalFailure = t;
+      }
+      if(++_numFailed == _numCalls) {
+        _done = true;
+        notifyAll();
+      }
+    }
+
+    /**
+     * Completes (or abandons) the read, cancelling any calls which are still
+     * in progress.
+     */
+    private synchronized void cancel() {
+      _done = true;
+      if(_original != null) {
+        _original.cancel(true);
+      }
+      if(_hedge != null) {
+        _hedge.cancel(true);
+      }
+    }
+
+    /**
+     * Waits for the read to complete (successfully or not).
+     */
+    private synchronized void await()
+      throws InterruptedException
+    {
+      while(!_done) {
+        wait();
+      }
+    }
+
+    /**
+     * Waits at most the given time for the read to complete (successfully or
+     * not).
+     *
+     * @return <code>true</code> if the read is complete, <code>false</code>
+     *         otherwise
+     */
+    private synchronized boolean await(long timeoutNanos)
+      throws InterruptedException
+    {
+      long endTime = System.nanoTime() + timeoutNanos;
+      while(!_done) {
+        long remainingNanos = endTime - System.nanoTime();
+        if(remainingNanos <= 0L) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+      }
+      return true;
+    }
+
+    private synchronized boolean isHedgeWinner() {
+      return _hedgeWinner;
+    }
+
+    private synchronized byte[] getResult()
+      throws IOException
+    {
+      if(_succeeded) {
+        return _result;
+      }
+      Throwable failure = ((_originalFailure != null) ? _originalFailure :
+                           _hedgeFailure);
+      if(failure instanceof IOException) {
+        throw (IOException)failure;
+      }
+      if(failure instanceof RuntimeException) {
+        throw (RuntimeException)failure;
+      }
+      if(failure instanceof Error) {
+        throw (Error)failure;
+      }
+      throw new IOException(failure);
+    }
+  }
+
+}
@@ -0,0 +1,488 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * <p>
+ * RemoteInputStream implementation which embeds the first part of the
+ * underlying stream directly in its serialized form (similar to
+ * {@link DirectRemoteInputStream}), and only falls back to an exported
+ * RemoteInputStreamServer if the stream is longer than the configured inline
+ * size.  Small streams therefore require no extra RMI invocations and no
+ * export at all, while large streams pay for the usual remote stream
+ * interaction only for the data beyond the embedded prefix.
+ * </p>
+ * <p>
+ * The embedded prefix is the first few packets generated by a normal
+ * RemoteInputStreamServer (compressed, if desired), and the same server
+ * instance is exported to provide the remainder of the stream, so the data
+ * seen by the client is exactly the same as the data it would have seen from
+ * a plain RemoteInputStreamServer.  The embedded portion has the same
+ * limitations as DirectRemoteInputStream (it cannot be retried once
+ * serialization has started), but the remote portion benefits from the
+ * normal retry handling.
+ * </p>
+ * <p>
+ * As with DirectRemoteInputStream, <i>the client-side decision to use this
+ * class will not impact the server</i>.
+ *
+ * @author James Ahlborn
+ */
+public class HybridRemoteInputStream
+  implements RemoteInputStream, Closeable, Serializable
+{
+  private static final Log LOG = LogFactory.getLog(HybridRemoteInputStream.class);
+
+  private static final long serialVersionUID = 20261019L;
+
+  /** default maximum number of (wire) bytes which will be embedded in the
+      serialized form of this object */
+  public static final int DEFAULT_INLINE_SIZE = 16 * 1024;
+
+  /** status of the consumption of the underlying stream */
+  private enum ConsumptionState {
+    /** the underlying stream has not been consumed yet */
+    NONE,
+    /** the underlying stream is being consumed locally */
+    LOCAL,
+    /** the underlying stream is being consumed by serialization */
+    SERIAL;
+  }
+
+  /** original stream containing the actual data.  only used before this
+      object is serialized. */
+  private transient InputStream _in;
+  /** optional monitor for the server used to read the underlying stream */
+  private transient RemoteStreamMonitor<RemoteInputStreamServer> _monitor;
+  /** indicates how this object is being consumed.  it can be consumed locally
+      or for serialization, but not both. */
+  private transient ConsumptionState _consumptionState;
+  /** indicates whether or not the underlying stream has been completely
+      consumed */
+  private transient boolean _gotEOF;
+  /** the embedded prefix of the stream data, only used when this object is
+      deserialized */
+  private transient byte[] _prefix;
+  /** the current read position in the _prefix */
+  private transient int _prefixPos;
+  /** the remote stream providing the data beyond the _prefix, if any, only
+      used when this object is deserialized */
+  private transient RemoteInputStream _remainder;
+  /** offset added to the incoming sequence ids before passing them along to
+      the _remainder (the server has already used the ids below this value
+      while generating the _prefix) */
+  private transient int _remainderIdOffset;
+  /** whether or not the bytes should be compressed when serialized */
+  private final boolean _compress;
+  /** maximum number of (wire) bytes to embed in the serialized form */
+  private final int _inlineSize;
+
+  public HybridRemoteInputStream(InputStream in) {
+    this(in, true, DEFAULT_INLINE_SIZE, RemoteInputStreamServer.DUMMY_MONITOR);
+  }
+
+  public HybridRemoteInputStream(InputStream in, boolean compress) {
+    this(in, compress, DEFAULT_INLINE_SIZE,
+         RemoteInputStreamServer.DUMMY_MONITOR);
+  }
+
+  public HybridRemoteInputStream(InputStream in, boolean compress,
+                                 int inlineSize) {
+    this(in, compress, inlineSize, RemoteInputStreamServer.DUMMY_MONITOR);
+  }
+
+  /**
+   * @param in the real input stream from which the data will be read
+   * @param compress whether or not the data should be compressed when sent
+   * @param inlineSize the maximum number of bytes (as sent over the wire) to
+   *                   embed in the serialized form of this object.  note that
+   *                   this is a suggestion, the actual amount may exceed it
+   *                   by up to one packet.
+   * @param monitor monitor for tracking the progress of the stream usage
+   */
+  public HybridRemoteInputStream(
+      InputStream in, boolean compress, int inlineSize,
+      RemoteStreamMonitor<RemoteInputStreamServer> monitor)
+  {
+    if(in == null) {
+      throw new IllegalArgumentException("InputStream cannot be null");
+    }
+    if(inlineSize < 0) {
+      throw new IllegalArgumentException("inlineSize cannot be negative");
+    }
+    _in = in;
+    _compress = compress;
+    _inlineSize = inlineSize;
+    _monitor = monitor;
+    _consumptionState = ConsumptionState.NONE;
+  }
+
+  /**
+   * @return <code>true</code> iff this object was deserialized and all of
+   *         the stream data was embedded (no remote stream is needed),
+   *         <code>false</code> otherwise.
+   */
+  public boolean isFullyInline() {
+    return((_prefix != null) && (_remainder == null));
+  }
+
+  /**
+   * @return <code>true</code> iff this instance was created by
+   *         deserialization (as opposed to wrapping a local stream)
+   */
+  private boolean isDeserialized() {
+    return(_prefix != null);
+  }
+
+  /**
+   * Mark this object as being consumed locally.  This happens whenever the
+   * underlying stream starts being consumed via the regular read/skip
+   * methods.
+   */
+  private void markLocalConsumption() {
+    if(_consumptionState == ConsumptionState.SERIAL) {
+      throw new IllegalStateException(
+          "locally consuming stream which was already serialized");
+    }
+    _consumptionState = ConsumptionState.LOCAL;
+  }
+
+  /**
+   * Throws an IOException if this stream has been closed.
+   */
+  private void checkClosed() throws IOException {
+    if((_in == null) && (_prefix == null)) {
+      throw new IOException("stream closed");
+    }
+  }
+
+  private int prefixRemaining() {
+    return(_prefix.length - _prefixPos);
+  }
+
+  @Override
+  public boolean usingGZIPCompression()
+    throws IOException, RemoteException
+  {
+    // the data in a local (not deserialized) instance is read directly from
+    // the underlying stream, and therefore is never compressed
+    return(isDeserialized() ? _compress : false);
+  }
+
+  @Override
+  public int available()
+    throws IOException, RemoteException
+  {
+    checkClosed();
+    markLocalConsumption();
+    if(!isDeserialized()) {
+      return _in.available();
+    }
+    if(prefixRemaining() > 0) {
+      return prefixRemaining();
+    }
+    return((_remainder != null) ? _remainder.available() : 0);
+  }
+
+  @Override
+  public void close(boolean readSuccess)
+    throws IOException, RemoteException
+  {
+    // close the remote stream first, so that a failed (and retried) close
+    // call will still find it
+    if(_remainder != null) {
+      _remainder.close(readSuccess);
+    }
+    close();
+  }
+
+  @Override
+  public byte[] readPacket(int packetId)
+    throws IOException, RemoteException
+  {
+    if(_gotEOF) {
+      return null;
+    }
+
+    checkClosed();
+    markLocalConsumption();
+
+    if(!isDeserialized()) {
+      // note, this code is used locally, so the incoming packetId can be
+      // safely ignored
+      byte[] packet = PacketInputStream.readPacket(
+          _in, new byte[RemoteInputStreamServer.DEFAULT_CHUNK_SIZE]);
+      _gotEOF = (packet == null);
+      return packet;
+    }
+
+    int prefixRemaining = prefixRemaining();
+    if(prefixRemaining > 0) {
+      // the prefix is local, so the incoming packetId can be ignored (there
+      // is nothing to retry)
+      int len = Math.min(prefixRemaining,
+                         RemoteInputStreamServer.DEFAULT_CHUNK_SIZE);
+      byte[] packet = Arrays.copyOfRange(_prefix, _prefixPos,
+                                         _prefixPos + len);
+      _prefixPos += len;
+      return packet;
+    }
+
+    if(_remainder == null) {
+      _gotEOF = true;
+      return null;
+    }
+
+    // note, a retried call will use the same packetId, which maps to the same
+    // remote packetId, so the remote call remains idempotent
+    byte[] packet = _remainder.readPacket(packetId + _remainderIdOffset);
+    _gotEOF = (packet == null);
+    return packet;
+  }
+
+  @Override
+  public long skip(long n, int skipId)
+    throws IOException, RemoteException
+  {
+    checkClosed();
+    markLocalConsumption();
+
+    if(!isDeserialized()) {
+      // note, this code is used locally, so the incoming skipId can be
+      // safely ignored
+      return _in.skip(n);
+    }
+
+    if(n <= 0) {
+      return 0;
+    }
+
+    int prefixRemaining = prefixRemaining();
+    if(prefixRemaining > 0) {
+      int skipLen = (int)Math.min(prefixRemaining, n);
+      _prefixPos += skipLen;
+      return skipLen;
+    }
+
+    if(_remainder == null) {
+      return 0;
+    }
+    return _remainder.skip(n, skipId + _remainderIdOffset);
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    if(_consumptionState == ConsumptionState.NONE) {
+      _consumptionState = ConsumptionState.LOCAL;
+    }
+    try {
+      if(_in != null) {
+        _in.close();
+      }
+    } finally {
+      _in = null;
+      _prefix = null;
+      _remainder = null;
+      _gotEOF = true;
+    }
+  }
+
+  /**
+   * Serializes this object, the first portion of the underlying stream's
+   * data and, if necessary, a remote stub for the rest of the stream
+   * directly to the given ObjectOutputStream.
+   * @serialData the compression status of the stream, the inline size, the
+   *             length of the embedded prefix (int) followed by the prefix
+   *             bytes, and then a flag (boolean) indicating whether a remote
+   *             stream follows.  if so, the packet id offset (int) for the
+   *             remote stream is written followed by the remote stream
+   *             itself.
+   */
+  private void writeObject(ObjectOutputStream out)
+     throws IOException
+  {
+    switch(_consumptionState) {
+    case NONE:
+      // this is the required state
+      break;
+    case LOCAL:
+    case SERIAL:
+      throw new NotSerializableException(
+          getClass().getName() +
+          " (underlying stream has already been consumed, type: " +
+          _consumptionState + ")");
+    default:
+      throw new RuntimeException("unknown state " + _consumptionState);
+    }
+
+    out.defaultWriteObject();
+
+    // once we start consuming the inputstream, we can't rewrite it
+    _consumptionState = ConsumptionState.SERIAL;
+
+    if(isDeserialized()) {
+      // we are re-serializing a previously serialized stream, just pass
+      // along what we received
+      try {
+        writeState(out, _prefix, _remainder, _remainderIdOffset);
+      } finally {
+        // we no longer own the remote stream (if any), so don't close it
+        _remainder = null;
+        RmiioUtil.closeQuietly(this);
+      }
+      return;
+    }
+
+    // note, we create a RemoteInputStreamServer instance, but we only export
+    // it if the stream is too large to embed entirely
+    RemoteInputStreamServer server = null;
+    boolean exported = false;
+    try {
+      final int chunkSize = RemoteInputStreamServer.DEFAULT_CHUNK_SIZE;
+      if(_compress) {
+        server = new GZIPRemoteInputStream(_in, _monitor, chunkSize);
+      } else {
+        server = new SimpleRemoteInputStream(_in, _monitor, chunkSize);
+      }
+
+      ByteArrayOutputStream prefix = new ByteArrayOutputStream(
+          Math.min(_inlineSize, chunkSize));
+      int packetId = RemoteStreamServer.INITIAL_VALID_SEQUENCE_ID;
+      boolean gotEOF = false;
+      while(prefix.size() < _inlineSize) {
+        byte[] packet = server.readPacket(packetId++);
+        if(packet == null) {
+          gotEOF = true;
+          break;
+        }
+        prefix.write(packet, 0, packet.length);
+      }
+
+      if(gotEOF) {
+
+        writeState(out, prefix.toByteArray(), null, 0);
+
+        // indicate successful read
+        try {
+          server.close(true);
+        } catch(IOException e) {
+          // log, but ignore failures here
+          if(LOG.isDebugEnabled()) {
+            LOG.debug("Failed closing server", e);
+          }
+        }
+
+      } else {
+
+        // too much data, export the server to handle the rest of the stream.
+        // the remote client will continue using packet ids after the ones
+        // we have already used here.
+        RemoteInputStream remainder = server.export();
+        exported = true;
+        writeState(out, prefix.toByteArray(), remainder, packetId);
+      }
+
+      // local stream is no longer our responsibility
+      _gotEOF = true;
+
+    } finally {
+      if(!exported) {
+        RmiioUtil.closeQuietly(server);
+        RmiioUtil.closeQuietly(this);
+      } else {
+        // the server now owns the underlying stream
+        _in = null;
+      }
+    }
+  }
+
+  /**
+   * Writes the serialized stream state to the given ObjectOutputStream.
+   */
+  private static void writeState(ObjectOutputStream out, byte[] prefix,
+                                 RemoteInputStream remainder,
+                                 int remainderIdOffset)
+    throws IOException
+  {
+    out.writeInt(prefix.length);
+    out.write(prefix);
+    out.writeBoolean(remainder != null);
+    if(remainder != null) {
+      out.writeInt(remainderIdOffset);
+      out.writeObject(remainder);
+    }
+  }
+
+  /**
+   * Reads the state of this object, the embedded portion of the underlying
+   * stream's data and the remote stub for the rest of the stream (if any)
+   * from the given ObjectInputStream.
+   */
+  private void readObject(ObjectInputStream in)
+    throws IOException, ClassNotFoundException
+  {
+    in.defaultReadObject();
+
+    int prefixLen = in.readInt();
+    if(prefixLen < 0) {
+      throw new InvalidObjectException("invalid prefix length " + prefixLen);
+    }
+    byte[] prefix = new byte[prefixLen];
+    in.readFully(prefix);
+
+    RemoteInputStream remainder = null;
+    int remainderIdOffset = 0;
+    if(in.readBoolean()) {
+      remainderIdOffset = in.readInt();
+      if(remainderIdOffset < RemoteStreamServer.INITIAL_VALID_SEQUENCE_ID) {
+        throw new InvalidObjectException("invalid packet id offset " +
+                                         remainderIdOffset);
+      }
+      remainder = (RemoteInputStream)in.readObject();
+    }
+
+    // sweet, setup final state
+    _monitor = RemoteInputStreamServer.DUMMY_MONITOR;
+    _prefix = prefix;
+    _prefixPos = 0;
+    _remainder = remainder;
+    _remainderIdOffset = remainderIdOffset;
+
+    // the underlying stream is now in it's initial state
+    _consumptionState = ConsumptionState.NONE;
+    _gotEOF = false;
+  }
+
+}
@@ -0,0 +1,316 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Scheduler which limits the number of RemoteStreamServers concurrently
+ * doing I/O on their underlying streams, and shares the available I/O slots
+ * fairly between the waiting streams.  Without a scheduler, every stream
+ * does its I/O directly on the RMI connection thread making the remote
+ * call, so a few huge transfers can starve many small ones.
+ * <p>
+ * Waiting packets are ordered using weighted fair queuing (start-time fair
+ * queuing): each stream (or each group of streams, e.g. a tenant, see
+ * {@link RemoteStreamServer#setIOGroup}) is given a share of the I/O slots
+ * proportional to its weight (see {@link RemoteStreamServer#setIOWeight}),
+ * measured in bytes transferred.  Additionally, streams which have
+ * transferred less than the "short stream" threshold are scheduled ahead of
+ * all other streams, so that small, interactive transfers keep low latency
+ * while bulk transfers proceed in the background.
+ * <p>
+ * A scheduler may be given to a single stream server
+ * ({@link RemoteStreamServer#setIOScheduler}) or used by all stream servers
+ * ({@link RemoteStreamServer#setGlobalIOScheduler}).  Note that the I/O is
+ * still done on the calling thread, the scheduler only decides when each
+ * waiting thread may proceed.
+ * <p>
+ * This class is thread-safe (waiting threads use an explicit lock, so that
+ * virtual threads are not pinned while waiting).
+ *
+ * @author James Ahlborn
+ */
+public class IOScheduler
+{
+  /** default number of bytes a stream may transfer before it is no longer
+      considered "short" */
+  public static final long DEFAULT_SHORT_STREAM_BYTES = 64 * 1024;
+
+  /** max number of concurrent I/O operations */
+  private final int _maxConcurrent;
+  /** streams which have transferred less than this are prioritized */
+  private final long _shortStreamBytes;
+  /** lock for the scheduler state */
+  private final ReentrantLock _lock = new ReentrantLock();
+  /** signalled when waiting packets are dispatched */
+  private final Condition _dispatched = _lock.newCondition();
+  /** queue of waiting packets from "short" streams */
+  private final PriorityQueue<Ticket> _shortQueue = new PriorityQueue<Ticket>();
+  /** queue of all other waiting packets */
+  private final PriorityQueue<Ticket> _queue = new PriorityQueue<Ticket>();
+  /** state for each group of streams which has recently done I/O (weakly
+      keyed, so that a flow which still has a finish tag ahead of the
+      virtual time does not keep its stream/group from being collected) */
+  private final Map<Object,Flow> _flows = new WeakHashMap<Object,Flow>();
+  /** current virtual time (start tag of the last dispatched packet) */
+  private double _virtualTime;
+  /** tie breaker for tickets with the same start tag */
+  private long _nextSeq;
+  private int _numActive;
+
+  public IOScheduler(int maxConcurrent) {
+    this(maxConcurrent, DEFAULT_SHORT_STREAM_BYTES);
+  }
+
+  /**
+   * @param maxConcurrent max number of streams concurrently doing I/O
+   * @param shortStreamBytes streams which have transferred fewer bytes than
+   *                         this are scheduled ahead of all others
+   */
+  public IOScheduler(int maxConcurrent, long shortStreamBytes)
+  {
+    if((maxConcurrent < 1) || (shortStreamBytes < 0L)) {
+      throw new IllegalArgumentException(
+          "invalid scheduler parameters " + maxConcurrent + ", " +
+          shortStreamBytes);
+    }
+    _maxConcurrent = maxConcurrent;
+    _shortStreamBytes = shortStreamBytes;
+  }
+
+  public int getMaxConcurrent() {
+    return _maxConcurrent;
+  }
+
+  /**
+   * @return the number of streams currently doing I/O
+   */
+  public int getNumActive() {
+    _lock.lock();
+    try {
+      return _numActive;
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of streams currently waiting to do I/O
+   */
+  public int getNumWaiting() {
+    _lock.lock();
+    try {
+      return _shortQueue.size() + _queue.size();
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until the caller may do I/O for a stream.  The returned ticket
+   * <b>must</b> be released (see {@link Ticket#release}) once the I/O is
+   * complete.
+   *
+   * @param group the group to which the stream belongs (the stream itself if
+   *              it is not part of a larger group)
+   * @param weight relative share of the I/O slots for the group
+   * @param attainedBytes number of bytes transferred by the stream so far
+   * @param estimatedBytes estimated number of bytes which will be
+   *                       transferred
+   * @throws InterruptedIOException if interrupted while waiting
+   */
+  public Ticket acquire(Object group, int weight, long attainedBytes,
+                        long estimatedBytes)
+    throws InterruptedIOException
+  {
+    _lock.lock();
+    try {
+      Flow flow = _flows.get(group);
+      if(flow == null) {
+        flow = new Flow();
+        _flows.put(group, flow);
+      }
+      weight = Math.max(weight, 1);
+      double startTag = Math.max(_virtualTime, flow._finishTag);
+      flow._finishTag = startTag + ((double)estimatedBytes / weight);
+      ++flow._numPending;
+      Ticket ticket = new Ticket(this, group, flow, weight, estimatedBytes,
+                                 startTag, _nextSeq++);
+
+      if((_numActive < _maxConcurrent) && _shortQueue.isEmpty() &&
+         _queue.isEmpty()) {
+        // no waiting necessary
+        dispatch(ticket);
+        return ticket;
+      }
+
+      ((attainedBytes < _shortStreamBytes) ? _shortQueue : _queue).add(ticket);
+      try {
+        while(!ticket._dispatched) {
+          _dispatched.await();
+        }
+      } catch(InterruptedException e) {
+        if(ticket._dispatched) {
+          // got the slot anyway, give it back
+          release(ticket, 0L);
+        } else {
+          _shortQueue.remove(ticket);
+          _queue.remove(ticket);
+          // the abandoned packet should not count against the flow
+          idle(ticket, 0L);
+        }
+        // pass interrupt along
+        Thread.currentThread().interrupt();
+        throw (InterruptedIOException)
+          new InterruptedIOException("interrupted waiting for I/O slot")
+          .initCause(e);
+      }
+      return ticket;
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * Indicates that the I/O for the given ticket is complete, allowing other
+   * streams to proceed.
+   */
+  private void release(Ticket ticket, long actualBytes)
+  {
+    _lock.lock();
+    try {
+      if(ticket._released) {
+        return;
+      }
+      ticket._released = true;
+      --_numActive;
+      idle(ticket, actualBytes);
+
+      Ticket next = _shortQueue.poll();
+      if(next == null) {
+        next = _queue.poll();
+      }
+      if(next != null) {
+        dispatch(next);
+        _dispatched.signalAll();
+      }
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * Updates the flow of the given ticket once the ticket is no longer
+   * pending, correcting the flow's finish tag for the actual cost of the I/O
+   * (if any).  The flow is discarded once it has no pending packets and its
+   * finish tag is not ahead of the virtual time (the next packet would start
+   * at the virtual time anyway).
+   */
+  private void idle(Ticket ticket, long actualBytes)
+  {
+    // caller should synch
+    Flow flow = ticket._flow;
+    --flow._numPending;
+    flow._finishTag += ((double)(actualBytes - ticket._estimatedBytes) /
+                        ticket._weight);
+    if((flow._numPending == 0) && (flow._finishTag <= _virtualTime) &&
+       (_flows.get(ticket._group) == flow)) {
+      _flows.remove(ticket._group);
+    }
+  }
+
+  private void dispatch(Ticket ticket)
+  {
+    // caller should synch
+    ticket._dispatched = true;
+    ++_numActive;
+    _virtualTime = Math.max(_virtualTime, ticket._startTag);
+  }
+
+  /**
+   * @return the number of flows currently tracked
+   */
+  int getNumFlows() {
+    _lock.lock();
+    try {
+      return _flows.size();
+    } finally {
+      _lock.unlock();
+    }
+  }
+
+  /**
+   * State for a group of streams.
+   */
+  private static final class Flow
+  {
+    /** finish tag of the last packet queued for this flow */
+    private double _finishTag;
+    /** number of packets waiting for or doing I/O */
+    private int _numPending;
+  }
+
+  /**
+   * Handle for a single I/O operation, returned by {@link #acquire}.
+   */
+  public static final class Ticket implements Comparable<Ticket>
+  {
+    private final IOScheduler _scheduler;
+    private final Object _group;
+    private final Flow _flow;
+    private final int _weight;
+    private final long _estimatedBytes;
+    private final double _startTag;
+    private final long _seq;
+    private boolean _dispatched;
+    private boolean _released;
+
+    private Ticket(IOScheduler scheduler, Object group, Flow flow, int weight,
+                   long estimatedBytes, double startTag, long seq) {
+      _scheduler = scheduler;
+      _group = group;
+      _flow = flow;
+      _weight = weight;
+      _estimatedBytes = estimatedBytes;
+      _startTag = startTag;
+      _seq = seq;
+    }
+
+    /**
+     * Indicates that the I/O for this ticket is complete, allowing other
+     * streams to proceed.  Additional calls are ignored.
+     *
+     * @param actualBytes number of bytes actually transferred
+     */
+    public void release(long actualBytes) {
+      _scheduler.release(this, actualBytes);
+    }
+
+    @Override
+    public int compareTo(Ticket other) {
+      int cmp = Double.compare(_startTag, other._startTag);
+      return((cmp != 0) ? cmp : Long.compare(_seq, other._seq));
+    }
+  }
+
+}
@@ -0,0 +1,67 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+/**
+ * Interface for monitoring the remote method calls made through a
+ * {@link RemoteWrapper}, including any retries hidden by the retry policy.
+ * All methods have empty default implementations, so implementations need
+ * only override the methods of interest.  Note, implementations must be
+ * thread-safe, as a monitor may be shared by many wrappers and threads.
+ * <p>
+ * Wrappers use the {@link #DUMMY_MONITOR} by default, in which case no
+ * instrumentation is done whatsoever.  A different monitor may be set for
+ * an individual wrapper via {@link RemoteWrapper#setRemoteCallMonitor}, or
+ * for all newly created wrappers (including those used internally by
+ * {@link RemoteInputStreamClient} and {@link RemoteOutputStreamClient}) via
+ * {@link RemoteWrapper#setDefaultRemoteCallMonitor}.
+ *
+ * @author James Ahlborn
+ */
+public interface RemoteCallMonitor
+{
+  /** monitor which does nothing */
+  public static final RemoteCallMonitor DUMMY_MONITOR =
+    new RemoteCallMonitor() {};
+
+  /**
+   * Called when a remote call attempt failed and the call is about to be
+   * reattempted (after any backoff).
+   *
+   * @param methodName the name of the remote method
+   * @param numTries the number of failed attempts thus far
+   * @param cause the exception which caused the retry
+   */
+  default public void retried(String methodName, int numTries,
+                              Throwable cause) {}
+
+  /**
+   * Called when a remote call completes, successfully or not.
+   *
+   * @param methodName the name of the remote method
+   * @param latencyNanos the total time spent in the call, including all
+   *                     attempts and backoff
+   * @param numAttempts the total number of attempts made
+   * @param backOffNanos the total time spent between attempts (backing off)
+   * @param failure the final exception thrown from the call, or
+   *                {@code null} if the call succeeded
+   */
+  default public void callCompleted(String methodName, long latencyNanos,
+                                    int numAttempts, long backOffNanos,
+                                    Throwable failure) {}
+
+}
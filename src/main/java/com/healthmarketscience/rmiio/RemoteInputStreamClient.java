@@ -18,10 +18,22 @@ package com.healthmarketscience.rmiio;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.zip.GZIPInputStream;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.logging.Log;
 
+import com.healthmarketscience.rmiio.exporter.RemoteStreamExporter;
+import com.healthmarketscience.rmiio.metrics.FlightRecorderEvents;
 import com.healthmarketscience.rmiio.util.EncodingInputStream;
 
 
@@ -34,6 +46,10 @@ import com.healthmarketscience.rmiio.util.EncodingInputStream;
  * need to wrap the returned stream with a BufferedInputStream as buffering
  * will be done by the returned implementation (unless *large* amounts of
  * buffering are desired).
+ * <p>
+ * If the remote stream was exported by this JVM and the local short-circuit
+ * is enabled (see {@link RemoteStreamExporter}), the returned stream accesses
+ * the server's underlying stream directly instead of making remote calls.
  *
  * @author James Ahlborn
  */
@@ -70,10 +86,42 @@ public class RemoteInputStreamClient
                                  RemoteRetry retry)
     throws IOException
   {
+    return wrap(remoteIn, retry, null);
+  }
+
+  /**
+   * Wraps a RemoteInputStream as an InputStream using the given retry
+   * strategy, making "hedged" packet reads according to the given hedging
+   * policy.
+   *
+   * @param remoteIn a remote input stream interface
+   * @param retry RemoteException retry policy to use, if <code>null</code>,
+   *              {@link RemoteClient#DEFAULT_RETRY} will be used.
+   * @param hedging policy for making duplicate packet reads when a packet
+   *                read is slow, if <code>null</code>, reads will not be
+   *                hedged.
+   * @return an InputStream which will read from the given RemoteInputStream
+   */
+  public static InputStream wrap(RemoteInputStream remoteIn,
+                                 RemoteRetry retry,
+                                 HedgingPolicy hedging)
+    throws IOException
+  {
+    // a stream exported by this JVM can be read directly
+    RemoteInputStreamServer localServer = RemoteStreamExporter.getLocalServer(
+        remoteIn, RemoteInputStreamServer.class);
+    if(localServer != null) {
+      InputStream localIn = localServer.openLocalStream(remoteIn);
+      if(localIn != null) {
+        return localIn;
+      }
+    }
+
     if(retry == null) {
       retry = RemoteClient.DEFAULT_RETRY;
     }
-    InputStream retStream = new RemoteInputStreamImpl(remoteIn, retry);
+    InputStream retStream = new RemoteInputStreamImpl(remoteIn, retry,
+                                                      hedging);
 
     // determine if using compression (use wrapped _remoteIn with retry
     // builtin)
@@ -87,6 +135,295 @@ public class RemoteInputStreamClient
     return retStream;
   }
 
+  /**
+   * Wraps a RemoteInputStream as an InputStream using the
+   * {@link RemoteClient#DEFAULT_RETRY} retry policy and the given chunk
+   * cache (see
+   * {@link #wrapCached(RemoteInputStream,RemoteRetry,ChunkCache)}).
+   */
+  public static InputStream wrapCached(RemoteInputStream remoteIn,
+                                       ChunkCache cache)
+    throws IOException
+  {
+    return wrapCached(remoteIn, null, cache);
+  }
+
+  /**
+   * Wraps a RemoteInputStream as an InputStream using the given retry
+   * strategy and chunk cache.  If the remote stream is a
+   * {@link ChunkedRemoteInputStream} which provides a chunk manifest (e.g. a
+   * {@link FileRemoteInputStream}), the data is retrieved as chunks, and only
+   * the chunks which are not already in the given cache are fetched from the
+   * server.  Fetched chunks are verified against the manifest and added to
+   * the cache.  Otherwise, this method behaves like
+   * {@link #wrap(RemoteInputStream,RemoteRetry)}.
+   *
+   * @param remoteIn a remote input stream interface
+   * @param retry RemoteException retry policy to use, if <code>null</code>,
+   *              {@link RemoteClient#DEFAULT_RETRY} will be used.
+   * @param cache cache of previously fetched chunks, if <code>null</code>,
+   *              the data will be read normally
+   * @return an InputStream which will read from the given RemoteInputStream
+   */
+  public static InputStream wrapCached(RemoteInputStream remoteIn,
+                                       RemoteRetry retry,
+                                       ChunkCache cache)
+    throws IOException
+  {
+    if(retry == null) {
+      retry = RemoteClient.DEFAULT_RETRY;
+    }
+
+    // (a stream exported by this JVM is better read directly)
+    if((cache != null) && (remoteIn instanceof ChunkedRemoteInputStream) &&
+       (RemoteStreamExporter.getLocalServer(
+           remoteIn, RemoteInputStreamServer.class) == null)) {
+      ChunkedRemoteInputStream chunkedIn = RemoteWrapper.wrap(
+          ChunkedRemoteInputStream.class, (ChunkedRemoteInputStream)remoteIn,
+          retry, LOG);
+      ChunkManifest manifest = chunkedIn.getChunkManifest();
+      if(manifest != null) {
+        return new ChunkInputStream(
+            new RemoteInputStreamWrapper(remoteIn, retry, LOG), chunkedIn,
+            manifest, cache);
+      }
+    }
+
+    return wrap(remoteIn, retry);
+  }
+
+  /**
+   * Wraps a RemoteInputStream as a ReadableByteChannel using the
+   * {@link RemoteClient#DEFAULT_RETRY} retry policy (see
+   * {@link #wrapChannel(RemoteInputStream,RemoteRetry)}).
+   */
+  public static ReadableByteChannel wrapChannel(RemoteInputStream remoteIn)
+    throws IOException
+  {
+    return wrapChannel(remoteIn, null);
+  }
+
+  /**
+   * Wraps a RemoteInputStream as a ReadableByteChannel using the given retry
+   * policy.  The data from each packet received from the server is copied
+   * directly into the given buffers (heap or direct), without going through
+   * an intermediate array.  Closing the returned channel closes the remote
+   * stream.
+   *
+   * @param remoteIn a remote input stream interface
+   * @param retry RemoteException retry policy to use, if <code>null</code>,
+   *              {@link RemoteClient#DEFAULT_RETRY} will be used.
+   * @return a channel which will read from the given RemoteInputStream
+   */
+  public static ReadableByteChannel wrapChannel(RemoteInputStream remoteIn,
+                                                RemoteRetry retry)
+    throws IOException
+  {
+    return new RemoteInputChannel(wrap(remoteIn, retry));
+  }
+
+  /**
+   * Copies all the data from the given RemoteInputStream to the given
+   * stream using the {@link RemoteClient#DEFAULT_RETRY} retry policy (see
+   * {@link #transferTo(RemoteInputStream,OutputStream,RemoteRetry)}).
+   */
+  public static long transferTo(RemoteInputStream remoteIn, OutputStream out)
+    throws IOException
+  {
+    return transferTo(remoteIn, out, null);
+  }
+
+  /**
+   * Copies all the data from the given RemoteInputStream to the given
+   * stream.  Unlike reading from the stream returned by {@link #wrap}, each
+   * packet received from the server (or each inflated buffer for compressed
+   * streams) is handed directly to the given stream, without being staged
+   * in any intermediate buffers.  The remote stream will be closed when the
+   * transfer completes (successfully or not), the given stream will not.
+   *
+   * @param remoteIn a remote input stream interface
+   * @param out the stream to which the data will be written
+   * @param retry RemoteException retry policy to use, if <code>null</code>,
+   *              {@link RemoteClient#DEFAULT_RETRY} will be used.
+   * @return the number of bytes transferred
+   */
+  public static long transferTo(RemoteInputStream remoteIn,
+                                final OutputStream out, RemoteRetry retry)
+    throws IOException
+  {
+    return transferTo(remoteIn, retry, new PacketSink() {
+        @Override
+        public void write(byte[] buf, int len) throws IOException {
+          out.write(buf, 0, len);
+        }
+      });
+  }
+
+  /**
+   * Copies all the data from the given RemoteInputStream to the given
+   * channel using the {@link RemoteClient#DEFAULT_RETRY} retry policy (see
+   * {@link #transferTo(RemoteInputStream,WritableByteChannel,RemoteRetry)}).
+   */
+  public static long transferTo(RemoteInputStream remoteIn,
+                                WritableByteChannel out)
+    throws IOException
+  {
+    return transferTo(remoteIn, out, null);
+  }
+
+  /**
+   * Copies all the data from the given RemoteInputStream to the given
+   * channel (see
+   * {@link #transferTo(RemoteInputStream,OutputStream,RemoteRetry)}).
+   *
+   * @return the number of bytes transferred
+   */
+  public static long transferTo(RemoteInputStream remoteIn,
+                                final WritableByteChannel out,
+                                RemoteRetry retry)
+    throws IOException
+  {
+    return transferTo(remoteIn, retry, new PacketSink() {
+        @Override
+        public void write(byte[] buf, int len) throws IOException {
+          ByteBuffer bb = ByteBuffer.wrap(buf, 0, len);
+          while(bb.hasRemaining()) {
+            out.write(bb);
+          }
+        }
+      });
+  }
+
+  private static long transferTo(RemoteInputStream remoteIn,
+                                 RemoteRetry retry, PacketSink sink)
+    throws IOException
+  {
+    if(retry == null) {
+      retry = RemoteClient.DEFAULT_RETRY;
+    }
+    InputStream in = null;
+    boolean success = false;
+    try {
+      in = wrap(remoteIn, retry);
+      long numBytes = 0L;
+      if(in instanceof RemoteInputStreamImpl) {
+        numBytes = ((RemoteInputStreamImpl)in).transferPackets(sink);
+      } else {
+        // compressed stream (hand over each inflated buffer) or stream read
+        // directly from a local server
+        byte[] buf = new byte[RemoteInputStreamServer.DEFAULT_CHUNK_SIZE];
+        int numRead = 0;
+        while((numRead = in.read(buf)) >= 0) {
+          sink.write(buf, numRead);
+          numBytes += numRead;
+        }
+      }
+      in.close();
+      success = true;
+      return numBytes;
+    } finally {
+      if(!success) {
+        // make sure the server knows the transfer failed
+        try {
+          if(in != null) {
+            closeFailed(in, remoteIn);
+          } else {
+            new RemoteInputStreamWrapper(remoteIn, retry, LOG).close(false);
+          }
+        } catch(IOException e) {
+          LOG.debug("Ignoring exception while closing failed transfer", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Closes the given stream (returned from a call to {@link #wrap}) such that
+   * the server considers the transfer failed.
+   */
+  private static void closeFailed(InputStream in, RemoteInputStream remoteIn)
+    throws IOException
+  {
+    try {
+      InputStream source = ((in instanceof SaferGZIPInputStream) ?
+                            ((SaferGZIPInputStream)in).getSource() : in);
+      if(source instanceof RemoteInputStreamImpl) {
+        ((RemoteInputStreamImpl)source)._readSuccess = false;
+      } else {
+        // stream read directly from a local server (the subsequent close of
+        // the local stream will be a no-op)
+        RemoteInputStreamServer localServer =
+          RemoteStreamExporter.getLocalServer(
+              remoteIn, RemoteInputStreamServer.class);
+        if(localServer != null) {
+          localServer.close(false);
+        }
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Asynchronously copies all the data from the given RemoteInputStream to
+   * the given channel using the {@link RemoteClient#DEFAULT_RETRY} retry
+   * policy (see
+   * {@link #transferToAsync(RemoteInputStream,WritableByteChannel,RemoteRetry,Executor)}).
+   */
+  public static CompletableFuture<TransferStats> transferToAsync(
+      RemoteInputStream remoteIn, WritableByteChannel out, Executor executor)
+  {
+    return transferToAsync(remoteIn, out, null, executor);
+  }
+
+  /**
+   * Asynchronously copies all the data from the given RemoteInputStream to
+   * the given channel.  The transfer is driven by the given executor, one
+   * chunk per task, so that a small number of threads can drive many
+   * concurrent transfers (no thread is blocked waiting for the transfer to
+   * complete).  The remote stream will be closed when the transfer
+   * completes (successfully or not), the given channel will not.
+   *
+   * @param remoteIn a remote input stream interface
+   * @param out the channel to which the data will be written
+   * @param retry RemoteException retry policy to use, if <code>null</code>,
+   *              {@link RemoteClient#DEFAULT_RETRY} will be used.
+   * @param executor the executor which will run the transfer
+   * @return a future which will be completed with the stats for the
+   *         transfer (or the failure).  Cancelling the future will stop the
+   *         transfer.
+   */
+  public static CompletableFuture<TransferStats> transferToAsync(
+      RemoteInputStream remoteIn, WritableByteChannel out, RemoteRetry retry,
+      Executor executor)
+  {
+    return new AsyncDownload(remoteIn, retry, executor, out, null).start();
+  }
+
+  /**
+   * Asynchronously copies all the data from the given RemoteInputStream to
+   * the given file (which will be created or truncated) using the
+   * {@link RemoteClient#DEFAULT_RETRY} retry policy (see
+   * {@link #transferToAsync(RemoteInputStream,WritableByteChannel,RemoteRetry,Executor)}).
+   */
+  public static CompletableFuture<TransferStats> transferToAsync(
+      RemoteInputStream remoteIn, Path file, Executor executor)
+  {
+    return transferToAsync(remoteIn, file, null, executor);
+  }
+
+  /**
+   * Asynchronously copies all the data from the given RemoteInputStream to
+   * the given file (which will be created or truncated, see
+   * {@link #transferToAsync(RemoteInputStream,WritableByteChannel,RemoteRetry,Executor)}).
+   * The file will be closed when the transfer completes.
+   */
+  public static CompletableFuture<TransferStats> transferToAsync(
+      RemoteInputStream remoteIn, Path file, RemoteRetry retry,
+      Executor executor)
+  {
+    return new AsyncDownload(remoteIn, retry, executor, null, file).start();
+  }
 
   /**
    * InputStream implementation which reads data from a RemoteInputStream
@@ -98,6 +435,8 @@ public class RemoteInputStreamClient
     private final RemoteInputStream _remoteIn;
     /** output stream to which we write the bytes from the remote server */
     private final PacketOutputStream _ostream;
+    /** optional policy for hedging packet reads */
+    private final HedgingPolicy _hedging;
     /** the next sequence id to use for a remote call */
     private int nextActionId = RemoteStreamServer.INITIAL_VALID_SEQUENCE_ID;
     /** keep track of successful remote close calls, so that double closing
@@ -107,11 +446,13 @@ public class RemoteInputStreamClient
     private volatile boolean _readSuccess = true;
 
     public RemoteInputStreamImpl(RemoteInputStream remoteIn,
-                                 RemoteRetry retry) {
+                                 RemoteRetry retry,
+                                 HedgingPolicy hedging) {
       super(RemoteInputStreamServer.DEFAULT_CHUNK_SIZE);
       // wrap the remote stub with automatic retry facility using given retry
       // policy
       _remoteIn = new RemoteInputStreamWrapper(remoteIn, retry, LOG);
+      _hedging = hedging;
 
       // note, we call this here because this subclass is final, otherwise we
       // would not want to call this in the constructor
@@ -167,6 +508,51 @@ public class RemoteInputStreamClient
       return super.packetsAvailable();
     }
 
+    // (overrides InputStream.transferTo in java 9+)
+    public synchronized long transferTo(final OutputStream out)
+      throws IOException
+    {
+      return transferPackets(new PacketSink() {
+          @Override
+          public void write(byte[] buf, int len) throws IOException {
+            out.write(buf, 0, len);
+          }
+        });
+    }
+
+    /**
+     * Moves all the remaining data to the given sink, handing over each
+     * packet as it is received from the server.
+     *
+     * @return the number of bytes transferred
+     */
+    private synchronized long transferPackets(PacketSink sink)
+      throws IOException
+    {
+      long numBytes = 0L;
+
+      // first, hand over anything already buffered
+      byte[] packet = null;
+      while((packet = readBufferedPacket()) != null) {
+        sink.write(packet, packet.length);
+        numBytes += packet.length;
+      }
+
+      // the rest can bypass the buffering altogether
+      while(!isEncodingComplete()) {
+        throwIfClosed();
+        packet = readRemotePacket();
+        if(packet == null) {
+          _ostream.close();
+          break;
+        }
+        sink.write(packet, packet.length);
+        numBytes += packet.length;
+      }
+
+      return numBytes;
+    }
+
     @Override
     public void close()
       throws IOException
@@ -191,21 +577,39 @@ public class RemoteInputStreamClient
       throws IOException
     {
       // grab more data from remote server
+      byte[] packet = readRemotePacket();
+      if(packet != null) {
+        _ostream.writePacket(packet);
+      } else {
+        _ostream.close();
+      }
+    }
+
+    /**
+     * @return the next packet from the remote server, or <code>null</code>
+     *         if there is no more data
+     */
+    private byte[] readRemotePacket()
+      throws IOException
+    {
       boolean success = false;
       byte[] packet = null;
+      int packetId = nextActionId++;
+      Object event = FlightRecorderEvents.beginPacket();
       try {
-        packet = _remoteIn.readPacket(nextActionId++);
+        packet = ((_hedging != null) ?
+                  _hedging.readPacket(_remoteIn, packetId) :
+                  _remoteIn.readPacket(packetId));
+        FlightRecorderEvents.endPacket(
+            event, _remoteIn, false, true, packetId,
+            ((packet != null) ? packet.length : -1), false);
         success = true;
       } finally {
         if(!success) {
           _readSuccess = false;
         }
       }
-      if(packet != null) {
-        _ostream.writePacket(packet);
-      } else {
-        _ostream.close();
-      }
+      return packet;
     }
 
     @Override
@@ -226,6 +630,339 @@ public class RemoteInputStreamClient
 
   }
 
+  /**
+   * ReadableByteChannel which reads from a wrapped RemoteInputStream.
+   */
+  private static final class RemoteInputChannel
+    implements ReadableByteChannel
+  {
+    /** the wrapped remote stream */
+    private final InputStream _in;
+    /** the current packet of data */
+    private byte[] _packet;
+    /** the position of the next byte in the current packet */
+    private int _pos;
+    /** the number of bytes in the current packet */
+    private int _len;
+    private boolean _gotEOF;
+    private volatile boolean _open = true;
+
+    private RemoteInputChannel(InputStream in) {
+      _in = in;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst)
+      throws IOException
+    {
+      if(!_open) {
+        throw new ClosedChannelException();
+      }
+      if(!dst.hasRemaining()) {
+        return 0;
+      }
+
+      if((_pos == _len) && !nextPacket()) {
+        return -1;
+      }
+
+      int numBytes = Math.min(dst.remaining(), _len - _pos);
+      dst.put(_packet, _pos, numBytes);
+      _pos += numBytes;
+      return numBytes;
+    }
+
+    /**
+     * Loads the next packet of data.
+     *
+     * @return <code>true</code> if more data was loaded, <code>false</code>
+     *         if there is no more data
+     */
+    private boolean nextPacket()
+      throws IOException
+    {
+      // caller should synch
+      if(_gotEOF) {
+        return false;
+      }
+
+      _pos = 0;
+      _len = 0;
+      if(_in instanceof PacketInputStream) {
+        // use the packets from the remote server as is
+        _packet = ((PacketInputStream)_in).readPacket(false);
+        if(_packet != null) {
+          _len = _packet.length;
+        }
+      } else {
+        // compressed stream, inflate into our own buffer
+        if(_packet == null) {
+          _packet = new byte[RemoteInputStreamServer.DEFAULT_CHUNK_SIZE];
+        }
+        _len = Math.max(_in.read(_packet), 0);
+      }
+
+      if(_len == 0) {
+        _gotEOF = true;
+        return false;
+      }
+      return true;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return _open;
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      _open = false;
+      _in.close();
+    }
+  }
+
+  /**
+   * InputStream implementation which reads the chunks of a
+   * ChunkedRemoteInputStream, using the chunk cache where possible.
+   */
+  private static final class ChunkInputStream extends InputStream
+  {
+    /** handle to the RemoteInputStream server (for closing) */
+    private final RemoteInputStreamWrapper _remoteIn;
+    /** handle to the ChunkedRemoteInputStream server (for reading chunks) */
+    private final ChunkedRemoteInputStream _chunkedIn;
+    private final ChunkManifest _manifest;
+    private final ChunkCache _cache;
+    /** index of the next chunk to load */
+    private int _nextChunk;
+    /** the current chunk */
+    private byte[] _chunk = PacketInputStream.EMPTY_PACKET;
+    /** the position of the next byte in the current chunk */
+    private int _chunkPos;
+    /** keep track of successful remote close calls, so that double closing
+        the stream does not cause spurious errors (in the normal case) */
+    private boolean _remoteCloseSuccessful;
+    /** keep track of whether any over-the-wire read calls failed */
+    private boolean _readSuccess = true;
+
+    private ChunkInputStream(RemoteInputStreamWrapper remoteIn,
+                             ChunkedRemoteInputStream chunkedIn,
+                             ChunkManifest manifest, ChunkCache cache) {
+      _remoteIn = remoteIn;
+      _chunkedIn = chunkedIn;
+      _manifest = manifest;
+      _cache = cache;
+    }
+
+    @Override
+    public synchronized int available() {
+      return _chunk.length - _chunkPos;
+    }
+
+    @Override
+    public synchronized int read()
+      throws IOException
+    {
+      if(!fill()) {
+        return -1;
+      }
+      return(_chunk[_chunkPos++] & 0xFF);
+    }
+
+    @Override
+    public synchronized int read(byte[] buf, int pos, int len)
+      throws IOException
+    {
+      if((pos < 0) || (len < 0) || (len > (buf.length - pos))) {
+        throw new IndexOutOfBoundsException();
+      }
+      if(len == 0) {
+        return 0;
+      }
+      if(!fill()) {
+        return -1;
+      }
+      int numRead = Math.min(len, _chunk.length - _chunkPos);
+      System.arraycopy(_chunk, _chunkPos, buf, pos, numRead);
+      _chunkPos += numRead;
+      return numRead;
+    }
+
+    @Override
+    public synchronized long skip(long n)
+      throws IOException
+    {
+      long remaining = n;
+      while(remaining > 0L) {
+        int chunkRemaining = _chunk.length - _chunkPos;
+        if(chunkRemaining > 0) {
+          int numSkipped = (int)Math.min(chunkRemaining, remaining);
+          _chunkPos += numSkipped;
+          remaining -= numSkipped;
+        } else if(_nextChunk >= _manifest.getNumChunks()) {
+          break;
+        } else if(remaining >= _manifest.getChunkLength(_nextChunk)) {
+          // skip whole chunks without fetching them
+          remaining -= _manifest.getChunkLength(_nextChunk);
+          ++_nextChunk;
+        } else {
+          fill();
+        }
+      }
+      return((n > 0L) ? (n - remaining) : 0L);
+    }
+
+    @Override
+    public synchronized void close()
+      throws IOException
+    {
+      if(_remoteCloseSuccessful) {
+        // we've already successfully called close on the remote stream,
+        // calling it again would result in an exception because the remote
+        // server will be gone
+        return;
+      }
+
+      // close the remote stream
+      _remoteIn.close(_readSuccess);
+
+      // only set this if the close call is successful (does not throw)
+      _remoteCloseSuccessful = true;
+    }
+
+    /**
+     * Loads the next chunk if the current chunk has been consumed.
+     *
+     * @return <code>true</code> if there is more data, <code>false</code> if
+     *         there are no more chunks
+     */
+    private boolean fill()
+      throws IOException
+    {
+      // caller should synch
+      while(_chunkPos >= _chunk.length) {
+        if(_nextChunk >= _manifest.getNumChunks()) {
+          return false;
+        }
+        _chunk = loadChunk(_nextChunk++);
+        _chunkPos = 0;
+      }
+      return true;
+    }
+
+    private byte[] loadChunk(int chunkIndex)
+      throws IOException
+    {
+      String algorithm = _manifest.getAlgorithm();
+      byte[] hash = _manifest.getChunkHash(chunkIndex);
+      byte[] chunk = _cache.get(algorithm, hash);
+      if(chunk != null) {
+        return chunk;
+      }
+
+      boolean success = false;
+      try {
+        chunk = _chunkedIn.readChunk(chunkIndex);
+        if(!_manifest.isValidChunk(chunkIndex, chunk)) {
+          throw new IOException("Chunk " + chunkIndex +
+                                " does not match the manifest");
+        }
+        success = true;
+      } finally {
+        if(!success) {
+          _readSuccess = false;
+        }
+      }
+
+      try {
+        _cache.put(algorithm, hash, chunk);
+      } catch(IOException e) {
+        // the data is still good, the next read will just fetch it again
+        LOG.warn("Failed caching chunk " + chunkIndex, e);
+      }
+      return chunk;
+    }
+  }
+
+  /**
+   * Destination for the data moved by the transferTo methods.
+   */
+  private interface PacketSink
+  {
+    public void write(byte[] buf, int len) throws IOException;
+  }
+
+  /**
+   * AsyncTransfer which copies the data from a RemoteInputStream to a
+   * channel.
+   */
+  private static final class AsyncDownload extends AsyncTransfer
+  {
+    private final RemoteInputStream _remoteIn;
+    private final RemoteRetry _retry;
+    private final Path _file;
+    private final byte[] _buf =
+      new byte[RemoteInputStreamServer.DEFAULT_CHUNK_SIZE];
+    private WritableByteChannel _out;
+    private InputStream _in;
+
+    private AsyncDownload(RemoteInputStream remoteIn, RemoteRetry retry,
+                          Executor executor, WritableByteChannel out,
+                          Path file) {
+      super(executor);
+      _remoteIn = remoteIn;
+      _retry = ((retry != null) ? retry : RemoteClient.DEFAULT_RETRY);
+      _out = out;
+      _file = file;
+    }
+
+    @Override
+    protected int transferChunk()
+      throws IOException
+    {
+      if(_in == null) {
+        // do the setup in the first task (it involves remote calls)
+        if(_file != null) {
+          _out = FileChannel.open(_file, StandardOpenOption.WRITE,
+                                  StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        _in = wrap(_remoteIn, _retry);
+      }
+
+      int numRead = _in.read(_buf);
+      if(numRead > 0) {
+        ByteBuffer bb = ByteBuffer.wrap(_buf, 0, numRead);
+        while(bb.hasRemaining()) {
+          _out.write(bb);
+        }
+      }
+      return numRead;
+    }
+
+    @Override
+    protected void finish(boolean success)
+      throws IOException
+    {
+      try {
+        if(success) {
+          _in.close();
+        } else if(_in != null) {
+          // make sure the server knows the transfer failed
+          closeFailed(_in, _remoteIn);
+        } else {
+          new RemoteInputStreamWrapper(_remoteIn, _retry, LOG).close(false);
+        }
+      } finally {
+        if((_file != null) && (_out != null)) {
+          _out.close();
+        }
+      }
+    }
+  }
+
   /**
    * Subclass of GZIPInputStream which makes a better attempt at closing the
    * underlying RemoteInputStream, even if the data has not been successfully
@@ -239,6 +976,10 @@ public class RemoteInputStreamClient
       super(in, size);
     }
 
+    private InputStream getSource() {
+      return in;
+    }
+
     @Override
     public void close()
       throws IOException
@@ -19,6 +19,8 @@ package com.healthmarketscience.rmiio;
 import java.io.IOException;
 import java.io.InputStream;
 
+import com.healthmarketscience.rmiio.metrics.FlightRecorderEvents;
+
 
 /**
  * Server implementation base class for a RemoteInputStream.  Handles the
@@ -54,6 +56,8 @@ public abstract class RemoteInputStreamServer
   private transient int _lastSkipId = INITIAL_INVALID_SEQUENCE_ID;
   /** the results of the last skip() call, corresponds to _lastSkipId */
   private transient long _lastSkip;
+  /** whether the underlying stream has been handed to a local client */
+  private transient boolean _localStreamOpened;
 
 
   protected RemoteInputStreamServer(InputStream in) {
@@ -90,6 +94,7 @@ public abstract class RemoteInputStreamServer
   /** Returns the real InputStream from which this stream is reading data */
   public InputStream getInputStream() { return _in; }
 
+  @Deprecated
   @Override
   protected final Object getLock() { return _in; }
 
@@ -105,9 +110,12 @@ public abstract class RemoteInputStreamServer
   protected void closeImpl(boolean readSuccess)
     throws IOException
   {
-    synchronized(getLock()) {
+    getStreamLock().lock();
+    try {
       // close input
       _in.close();
+    } finally {
+      getStreamLock().unlock();
     }
   }
 
@@ -138,16 +146,26 @@ public abstract class RemoteInputStreamServer
 
     checkAborted();
 
-    synchronized(getLock()) {
+    // wait for any bandwidth limits and an I/O slot (outside of the lock so
+    // that we don't hold up other calls, e.g. close)
+    awaitBandwidth();
+    IOScheduler.Ticket ioTicket = acquireIOSlot(DEFAULT_CHUNK_SIZE);
+
+    getStreamLock().lock();
+    try {
       if(packetId < _lastPacketId) {
         throw new IllegalArgumentException("packetId must increase.");
       }
 
+      Object event = FlightRecorderEvents.beginPacket();
       boolean isReattempt = false;
       if(packetId != _lastPacketId) {
 
+        long numBytes = 0L;
+        long startTime = System.nanoTime();
         try {
           _lastPacket = readPacket();
+          numBytes = ((_lastPacket != null) ? _lastPacket.length : 0L);
         } catch(IOException e) {
           // update the monitor
           _monitor.failure(this, e);
@@ -156,11 +174,21 @@ public abstract class RemoteInputStreamServer
           // update the monitor
           _monitor.failure(this, e);
           throw e;
+        } finally {
+          releaseIOSlot(ioTicket, numBytes);
+          ioTicket = null;
         }
 
         // update packetId
         _lastPacketId = packetId;
 
+        if(_lastPacket != null) {
+          consumeBandwidth(_lastPacket.length);
+        }
+
+        // update the monitor
+        _monitor.packetServiced(this, System.nanoTime() - startTime);
+
       } else {
 
         // try again!
@@ -172,7 +200,15 @@ public abstract class RemoteInputStreamServer
         _monitor.bytesMoved(this, _lastPacket.length, isReattempt);
       }
 
+      FlightRecorderEvents.endPacket(
+          event, this, false, false, packetId,
+          ((_lastPacket != null) ? _lastPacket.length : -1), isReattempt);
+
       return _lastPacket;
+    } finally {
+      // give back the I/O slot if unused (e.g. for a reattempt)
+      releaseIOSlot(ioTicket, 0L);
+      getStreamLock().unlock();
     }
   }
 
@@ -186,7 +222,8 @@ public abstract class RemoteInputStreamServer
 
     checkAborted();
 
-    synchronized(getLock()) {
+    getStreamLock().lock();
+    try {
       if(skipId < _lastSkipId) {
         throw new IllegalArgumentException("skipId must increase.");
       }
@@ -219,10 +256,46 @@ public abstract class RemoteInputStreamServer
       _monitor.bytesSkipped(this, _lastSkip, isReattempt);
 
       return _lastSkip;
+    } finally {
+      getStreamLock().unlock();
     }
   }
 
 
+  /**
+   * Returns an InputStream which reads directly from the underlying stream
+   * of this server, for a client in the same JVM (see
+   * {@link
+   * com.healthmarketscience.rmiio.exporter.RemoteStreamExporter#getLocalServer}).
+   * The returned stream does no packetization or compression and is not
+   * subject to bandwidth limits or I/O scheduling.  Closing the returned
+   * stream closes this server (like a remote close).
+   *
+   * @param stub the stub for this server held by the client, kept reachable
+   *             by the returned stream so that this server is not
+   *             unreferenced
+   * @return a local stream, or <code>null</code> if this server does not
+   *         support local streams or has already been read
+   */
+  InputStream openLocalStream(Object stub)
+    throws IOException
+  {
+    checkAborted();
+
+    getStreamLock().lock();
+    try {
+      if(!isLocalStreamSupported() || isClosed() || _localStreamOpened ||
+         (_lastPacketId != INITIAL_INVALID_SEQUENCE_ID) ||
+         (_lastSkipId != INITIAL_INVALID_SEQUENCE_ID)) {
+        return null;
+      }
+      _localStreamOpened = true;
+      return new LocalInputStream(stub);
+    } finally {
+      getStreamLock().unlock();
+    }
+  }
+
   /**
    * Returns the number of bytes that can be read from this stream without
    * blocking.
@@ -251,4 +324,122 @@ public abstract class RemoteInputStreamServer
   protected abstract long skip(long n)
     throws IOException;
 
+  /**
+   * InputStream returned by {@link #openLocalStream} which reads directly
+   * from the underlying stream.
+   */
+  private final class LocalInputStream extends InputStream
+  {
+    @SuppressWarnings("unused")
+    private final Object _stub;
+    /** buffer for single byte reads */
+    private final byte[] _singleByte = new byte[1];
+    private boolean _readSuccess = true;
+    private boolean _closed;
+
+    private LocalInputStream(Object stub) {
+      _stub = stub;
+    }
+
+    @Override
+    public int read()
+      throws IOException
+    {
+      int numRead = read(_singleByte, 0, 1);
+      return((numRead > 0) ? (_singleByte[0] & 0xFF) : -1);
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len)
+      throws IOException
+    {
+      checkAborted();
+
+      getStreamLock().lock();
+      try {
+        int numRead = _in.read(buf, off, len);
+        if(numRead > 0) {
+          _monitor.localBytesMoved(RemoteInputStreamServer.this, numRead);
+          _monitor.bytesMoved(RemoteInputStreamServer.this, numRead, false);
+        }
+        return numRead;
+      } catch(IOException e) {
+        failed(e);
+        throw e;
+      } catch(RuntimeException e) {
+        failed(e);
+        throw e;
+      } finally {
+        getStreamLock().unlock();
+      }
+    }
+
+    @Override
+    public long skip(long n)
+      throws IOException
+    {
+      checkAborted();
+
+      getStreamLock().lock();
+      try {
+        // skip as much as requested (like the remote client), the
+        // underlying stream may skip less (e.g. only buffered bytes)
+        long numSkipped = 0L;
+        while(numSkipped < n) {
+          long curSkipped = _in.skip(n - numSkipped);
+          if(curSkipped <= 0L) {
+            // skip(0) does not distinguish eof, so check with a read
+            if(_in.read() < 0) {
+              break;
+            }
+            curSkipped = 1L;
+          }
+          numSkipped += curSkipped;
+        }
+        _monitor.localBytesSkipped(RemoteInputStreamServer.this, numSkipped);
+        _monitor.bytesSkipped(RemoteInputStreamServer.this, numSkipped,
+                              false);
+        return numSkipped;
+      } catch(IOException e) {
+        failed(e);
+        throw e;
+      } catch(RuntimeException e) {
+        failed(e);
+        throw e;
+      } finally {
+        getStreamLock().unlock();
+      }
+    }
+
+    @Override
+    public int available()
+      throws IOException
+    {
+      checkAborted();
+
+      getStreamLock().lock();
+      try {
+        return _in.available();
+      } finally {
+        getStreamLock().unlock();
+      }
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      if(_closed) {
+        return;
+      }
+      _closed = true;
+      RemoteInputStreamServer.this.close(_readSuccess);
+    }
+
+    private void failed(Exception e) {
+      _readSuccess = false;
+      _monitor.failure(RemoteInputStreamServer.this, e);
+    }
+  }
+
 }
@@ -18,6 +18,8 @@ package com.healthmarketscience.rmiio;
 
 import java.io.IOException;
 import java.rmi.RemoteException;
+
+import com.healthmarketscience.rmiio.exporter.RemoteStreamExporter;
 import org.apache.commons.logging.Log;
 
 
@@ -26,6 +28,10 @@ import org.apache.commons.logging.Log;
  * hood.  The retry policy for a given method call will use the internal
  * policy for the default methods, but may be overridden on a per-call basis
  * using the extended methods.
+ * <p>
+ * If the stub is for a stream server exported by this JVM (see
+ * {@link RemoteStreamExporter#getLocalServer}), the calls are made directly
+ * on the server.
  *
  * @author James Ahlborn
  */
@@ -34,10 +40,18 @@ public class RemoteInputStreamWrapper
   implements RemoteInputStream
 {
 
+  /** the target of the stream calls, either the stub or, if the stub is for
+      a stream server exported by this JVM, the server itself (the stub is
+      kept reachable so that the server is not unreferenced) */
+  private final RemoteInputStream _target;
+
   public RemoteInputStreamWrapper(RemoteInputStream stub,
                                   RemoteRetry retry,
                                   Log log) {
     super(stub, retry, log);
+    RemoteInputStream server = RemoteStreamExporter.getLocalServer(
+        stub, RemoteInputStreamServer.class);
+    _target = ((server != null) ? server : stub);
   }
 
   @Override
@@ -50,8 +64,8 @@ public class RemoteInputStreamWrapper
   public boolean usingGZIPCompression(RemoteRetry retry)
     throws IOException
   {
-    return retry.call(
-        _stub::usingGZIPCompression, _log, RemoteException.class);
+    return call("usingGZIPCompression", retry,
+                _target::usingGZIPCompression, RemoteException.class);
   }
 
   @Override
@@ -64,7 +78,7 @@ public class RemoteInputStreamWrapper
   public int available(RemoteRetry retry)
     throws IOException
   {
-    return retry.call(_stub::available, _log, IOException.class);
+    return call("available", retry, _target::available, IOException.class);
   }
 
   @Override
@@ -77,8 +91,9 @@ public class RemoteInputStreamWrapper
   public void close(final boolean readSuccess, RemoteRetry retry)
     throws IOException
   {
-    retry.call((RemoteRetry.IVoidCaller)() -> _stub.close(readSuccess),
-               _log, IOException.class);
+    call("close", retry,
+         (RemoteRetry.IVoidCaller)() -> _target.close(readSuccess),
+         IOException.class);
   }
 
   @Override
@@ -91,8 +106,19 @@ public class RemoteInputStreamWrapper
   public byte[] readPacket(final int packetId, RemoteRetry retry)
     throws IOException
   {
-    return retry.call(() -> _stub.readPacket(packetId),
-                      _log, IOException.class);
+    if(isDirectCall(retry)) {
+      // this is called for every packet, so skip the retry machinery unless
+      // the first attempt fails
+      long startTime = System.nanoTime();
+      try {
+        return _target.readPacket(packetId);
+      } catch(Throwable t) {
+        return callAfterFailure(retry, () -> _target.readPacket(packetId), t,
+                                startTime, IOException.class);
+      }
+    }
+    return call("readPacket", retry, () -> _target.readPacket(packetId),
+                IOException.class);
   }
 
   @Override
@@ -105,7 +131,8 @@ public class RemoteInputStreamWrapper
   public long skip(final long n, final int skipId, RemoteRetry retry)
     throws IOException
   {
-    return retry.call(() -> _stub.skip(n, skipId), _log, IOException.class);
+    return call("skip", retry, () -> _target.skip(n, skipId),
+                IOException.class);
   }
 
 }
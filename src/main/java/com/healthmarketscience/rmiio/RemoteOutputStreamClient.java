@@ -16,12 +16,29 @@ limitations under the License.
 
 package com.healthmarketscience.rmiio;
 
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.zip.GZIPOutputStream;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.logging.Log;
 
+import com.healthmarketscience.rmiio.exporter.RemoteStreamExporter;
+import com.healthmarketscience.rmiio.metrics.FlightRecorderEvents;
 import com.healthmarketscience.rmiio.util.SingleByteAdapter;
 import com.healthmarketscience.rmiio.util.PipeBuffer;
 
@@ -40,6 +57,10 @@ import com.healthmarketscience.rmiio.util.PipeBuffer;
  * them).  In such a scenario, a client will not detect a problem in the
  * remote stream unless they specifically test for an error in the
  * PrintWriter/PrintStream.
+ * <p>
+ * If the remote stream was exported by this JVM and the local short-circuit
+ * is enabled (see {@link RemoteStreamExporter}), the returned stream accesses
+ * the server's underlying stream directly instead of making remote calls.
  *
  * @author James Ahlborn
  */
@@ -106,6 +127,17 @@ public class RemoteOutputStreamClient
                                   Integer chunkSize)
     throws IOException
   {
+    // a stream exported by this JVM can be written directly
+    RemoteOutputStreamServer localServer =
+      RemoteStreamExporter.getLocalServer(remoteOut,
+                                          RemoteOutputStreamServer.class);
+    if(localServer != null) {
+      OutputStream localOut = localServer.openLocalStream(remoteOut);
+      if(localOut != null) {
+        return localOut;
+      }
+    }
+
     if(retry == null) {
       retry = DEFAULT_RETRY;
     }
@@ -126,6 +158,179 @@ public class RemoteOutputStreamClient
     return retStream;
   }
 
+  /**
+   * Wraps a RemoteOutputStream as an OutputStream using the
+   * {@link #DEFAULT_RETRY} retry policy, sending only the differences from
+   * the existing server-side data if possible (see
+   * {@link #wrapDelta(RemoteOutputStream,RemoteRetry)}).
+   */
+  public static OutputStream wrapDelta(RemoteOutputStream remoteOut)
+    throws IOException
+  {
+    return wrapDelta(remoteOut, null);
+  }
+
+  /**
+   * Wraps a RemoteOutputStream as an OutputStream using the given retry
+   * policy, sending only the differences from the existing server-side data
+   * if possible.  If the remote stream is a {@link DeltaRemoteOutputStream}
+   * (e.g. a {@link FileRemoteOutputStream}), the data written to the
+   * returned stream is compared against the block signatures of the
+   * existing data using a rolling checksum (so moved data is found at any
+   * offset), and only the data which does not match an existing block is
+   * sent (matching blocks are sent as references).  Otherwise, this method
+   * behaves like {@link #wrap(RemoteOutputStream,RemoteRetry)}.
+   * <p>
+   * Note, the returned stream holds up to a block of data (plus any
+   * unmatched data) before sending it, so {@link OutputStream#flush} only
+   * sends the data which has already been encoded.
+   *
+   * @param remoteOut a remote output stream interface
+   * @param retry RemoteException retry policy to use, if <code>null</code>,
+   *              {@link #DEFAULT_RETRY} will be used.
+   * @return an OutputStream which will write to the given RemoteOutputStream
+   */
+  public static OutputStream wrapDelta(RemoteOutputStream remoteOut,
+                                       RemoteRetry retry)
+    throws IOException
+  {
+    if(retry == null) {
+      retry = DEFAULT_RETRY;
+    }
+
+    // (a stream exported by this JVM is better written directly)
+    if((remoteOut instanceof DeltaRemoteOutputStream) &&
+       (RemoteStreamExporter.getLocalServer(
+           remoteOut, RemoteOutputStreamServer.class) == null)) {
+      DeltaSignature signature = RemoteWrapper.wrap(
+          DeltaRemoteOutputStream.class, (DeltaRemoteOutputStream)remoteOut,
+          retry, LOG).getDeltaSignature();
+      if(signature != null) {
+        return new DeltaOutputStream(wrap(remoteOut, retry), remoteOut,
+                                     signature);
+      }
+    }
+
+    return wrap(remoteOut, retry);
+  }
+
+  /**
+   * Wraps a RemoteOutputStream as a WritableByteChannel using the
+   * {@link #DEFAULT_RETRY} retry policy (see
+   * {@link #wrapChannel(RemoteOutputStream,RemoteRetry)}).
+   */
+  public static WritableByteChannel wrapChannel(RemoteOutputStream remoteOut)
+    throws IOException
+  {
+    return wrapChannel(remoteOut, null);
+  }
+
+  /**
+   * Wraps a RemoteOutputStream as a WritableByteChannel using the given
+   * retry policy.  The data in the given buffers (heap or direct) is copied
+   * directly into the outgoing packets, without going through an
+   * intermediate array.  Closing the returned channel closes the remote
+   * stream.
+   *
+   * @param remoteOut a remote output stream interface
+   * @param retry RemoteException retry policy to use, if <code>null</code>,
+   *              {@link #DEFAULT_RETRY} will be used.
+   * @return a channel which will write to the given RemoteOutputStream
+   */
+  public static WritableByteChannel wrapChannel(RemoteOutputStream remoteOut,
+                                                RemoteRetry retry)
+    throws IOException
+  {
+    return new RemoteOutputChannel(wrap(remoteOut, retry));
+  }
+
+  /**
+   * Asynchronously copies all the data from the given channel to the given
+   * RemoteOutputStream using the {@link #DEFAULT_RETRY} retry policy (see
+   * {@link #transferFromAsync(RemoteOutputStream,ReadableByteChannel,RemoteRetry,Executor)}).
+   */
+  public static CompletableFuture<TransferStats> transferFromAsync(
+      RemoteOutputStream remoteOut, ReadableByteChannel in, Executor executor)
+  {
+    return transferFromAsync(remoteOut, in, null, executor);
+  }
+
+  /**
+   * Asynchronously copies all the data from the given channel to the given
+   * RemoteOutputStream.  The transfer is driven by the given executor, one
+   * chunk per task, so that a small number of threads can drive many
+   * concurrent transfers (no thread is blocked waiting for the transfer to
+   * complete).  The remote stream will be closed when the transfer
+   * completes (successfully or not), the given channel will not.
+   *
+   * @param remoteOut a remote output stream interface
+   * @param in the channel from which the data will be read
+   * @param retry RemoteException retry policy to use, if <code>null</code>,
+   *              {@link #DEFAULT_RETRY} will be used.
+   * @param executor the executor which will run the transfer
+   * @return a future which will be completed with the stats for the
+   *         transfer (or the failure).  Cancelling the future will stop the
+   *         transfer.
+   */
+  public static CompletableFuture<TransferStats> transferFromAsync(
+      RemoteOutputStream remoteOut, ReadableByteChannel in,
+      RemoteRetry retry, Executor executor)
+  {
+    return new AsyncUpload(remoteOut, retry, executor, in, null).start();
+  }
+
+  /**
+   * Asynchronously copies all the data from the given file to the given
+   * RemoteOutputStream using the {@link #DEFAULT_RETRY} retry policy (see
+   * {@link #transferFromAsync(RemoteOutputStream,ReadableByteChannel,RemoteRetry,Executor)}).
+   */
+  public static CompletableFuture<TransferStats> transferFromAsync(
+      RemoteOutputStream remoteOut, Path file, Executor executor)
+  {
+    return transferFromAsync(remoteOut, file, null, executor);
+  }
+
+  /**
+   * Asynchronously copies all the data from the given file to the given
+   * RemoteOutputStream (see
+   * {@link #transferFromAsync(RemoteOutputStream,ReadableByteChannel,RemoteRetry,Executor)}).
+   * The file will be closed when the transfer completes.
+   */
+  public static CompletableFuture<TransferStats> transferFromAsync(
+      RemoteOutputStream remoteOut, Path file, RemoteRetry retry,
+      Executor executor)
+  {
+    return new AsyncUpload(remoteOut, retry, executor, null, file).start();
+  }
+
+  /**
+   * Closes the given stream (returned from a call to {@link #wrap}) such
+   * that the server considers the transfer failed.
+   */
+  private static void closeFailed(OutputStream out,
+                                  RemoteOutputStream remoteOut)
+    throws IOException
+  {
+    try {
+      OutputStream target = ((out instanceof SaferGZIPOutputStream) ?
+                             ((SaferGZIPOutputStream)out).getTarget() : out);
+      if(target instanceof RemoteOutputStreamImpl) {
+        ((RemoteOutputStreamImpl)target)._writeSuccess = false;
+      } else {
+        // stream written directly to a local server (the subsequent close of
+        // the local stream will be a no-op)
+        RemoteOutputStreamServer localServer =
+          RemoteStreamExporter.getLocalServer(
+              remoteOut, RemoteOutputStreamServer.class);
+        if(localServer != null) {
+          localServer.close(false);
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
   /**
    * OutputStream implementation which reads data from a RemoteOutputStream
    * server.
@@ -197,7 +402,11 @@ public class RemoteOutputStreamClient
       while(_byteBuffer.hasRemaining() &&
             (flushPartial || (_byteBuffer.packetsAvailable() > 0))) {
         byte[] packet = _byteBuffer.readPacket();
-        _remoteOut.writePacket(packet, nextActionId++);
+        int packetId = nextActionId++;
+        Object event = FlightRecorderEvents.beginPacket();
+        _remoteOut.writePacket(packet, packetId);
+        FlightRecorderEvents.endPacket(event, _remoteOut, true, true,
+                                       packetId, packet.length, false);
       }
     }
 
@@ -266,6 +475,458 @@ public class RemoteOutputStreamClient
       }
     }
 
+    /**
+     * Writes all the remaining bytes from the given buffer.  The bytes are
+     * copied directly into the outgoing packets.
+     */
+    public synchronized int write(ByteBuffer src)
+      throws IOException
+    {
+      int len = src.remaining();
+      boolean success = false;
+      try {
+        if(src.hasArray()) {
+          _byteBuffer.write(src.array(), src.arrayOffset() + src.position(),
+                            len);
+          src.position(src.limit());
+        } else {
+          while(src.hasRemaining()) {
+            byte[] packet = new byte[Math.min(src.remaining(), _chunkSize)];
+            src.get(packet);
+            if(packet.length == _chunkSize) {
+              // full packet, hand it over as is
+              _byteBuffer.writePacket(packet, 0, packet.length);
+            } else {
+              _byteBuffer.write(packet, 0, packet.length);
+            }
+          }
+        }
+        flushPackets(false);
+        success = true;
+      } finally {
+        if(!success) {
+          _writeSuccess = false;
+        }
+      }
+      return len;
+    }
+
+  }
+
+  /**
+   * OutputStream which encodes the written data as delta instructions
+   * against the signature of the existing server-side data (see
+   * {@link DeltaRemoteOutputStream}).
+   */
+  private static final class DeltaOutputStream extends OutputStream
+  {
+    /** max number of blocks with the same rolling checksum which are
+        considered as matches */
+    private static final int MAX_CANDIDATES = 8;
+
+    /** the stream to which the instructions are written */
+    private final DataOutputStream _out;
+    /** the wrapped remote stream (under _out) */
+    private final OutputStream _target;
+    private final RemoteOutputStream _remoteOut;
+    private final DeltaSignature _signature;
+    private final int _blockSize;
+    /** indexes of the full size blocks by rolling checksum */
+    private final Map<Integer,int[]> _blocksBySum =
+      new HashMap<Integer,int[]>();
+    /** cheap pre-filter for the rolling checksums of the blocks */
+    private final BitSet _sumFilter = new BitSet(1 << 16);
+    /** hash of the current window */
+    private final MessageDigest _blockDigest;
+    /** hash of all the written data */
+    private final MessageDigest _digest;
+    /** the unmatched data, followed by the current window */
+    private final byte[] _buf;
+    /** start of the unmatched (literal) data in the buffer */
+    private int _litStart;
+    /** start of the current window in the buffer */
+    private int _start;
+    /** end of the data in the buffer */
+    private int _end;
+    /** whether the rolling checksum of the current window is valid */
+    private boolean _haveSum;
+    private int _sumA;
+    private int _sumB;
+    /** the pending run of matched blocks, if any */
+    private int _copyStart = -1;
+    private int _copyCount;
+    /** total length of the written data */
+    private long _length;
+    private final byte[] _singleByte = new byte[1];
+    private boolean _closed;
+
+    private DeltaOutputStream(OutputStream out, RemoteOutputStream remoteOut,
+                              DeltaSignature signature)
+      throws IOException
+    {
+      _out = new DataOutputStream(out);
+      _target = out;
+      _remoteOut = remoteOut;
+      _signature = signature;
+      _blockSize = signature.getBlockSize();
+      _blockDigest = ChunkManifest.newDigest(DeltaSignature.HASH_ALGORITHM);
+      _digest = ChunkManifest.newDigest(DeltaSignature.HASH_ALGORITHM);
+      _buf = new byte[DeltaSignature.MAX_LITERAL_LENGTH + _blockSize + 1];
+
+      for(int i = 0; i < signature.getNumBlocks(); ++i) {
+        if(signature.getBlockLength(i) != _blockSize) {
+          // the (short) last block is only checked at the end of the data
+          continue;
+        }
+        int sum = signature.getWeakSum(i);
+        int[] candidates = _blocksBySum.get(sum);
+        if(candidates == null) {
+          candidates = new int[]{i};
+        } else if(candidates.length < MAX_CANDIDATES) {
+          candidates = Arrays.copyOf(candidates, candidates.length + 1);
+          candidates[candidates.length - 1] = i;
+        }
+        _blocksBySum.put(sum, candidates);
+        _sumFilter.set(getFilterIndex(sum));
+      }
+    }
+
+    @Override
+    public void write(int b)
+      throws IOException
+    {
+      _singleByte[0] = (byte)b;
+      write(_singleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len)
+      throws IOException
+    {
+      if(_closed) {
+        throw new IOException("stream closed");
+      }
+      if((off < 0) || (len < 0) || (len > (b.length - off))) {
+        throw new IndexOutOfBoundsException();
+      }
+      _digest.update(b, off, len);
+      _length += len;
+      for(int i = off; i < (off + len); ++i) {
+        addByte(b[i]);
+      }
+    }
+
+    @Override
+    public void flush()
+      throws IOException
+    {
+      _out.flush();
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      if(_closed) {
+        return;
+      }
+
+      boolean success = false;
+      try {
+        try {
+          // the remaining data may match the (short) last block
+          int tailLen = _end - _start;
+          int lastBlock = _signature.getNumBlocks() - 1;
+          if((tailLen > 0) && (tailLen < _blockSize) && (lastBlock >= 0) &&
+             (_signature.getBlockLength(lastBlock) == tailLen) &&
+             (_signature.getWeakSum(lastBlock) ==
+              DeltaSignature.weakSum(_buf, _start, tailLen))) {
+            _blockDigest.update(_buf, _start, tailLen);
+            if(_signature.isStrongHash(lastBlock, _blockDigest.digest())) {
+              flushLiteral(_start);
+              addCopy(lastBlock);
+              _start = _end;
+              _litStart = _end;
+            }
+          }
+
+          flushLiteral(_end);
+          flushCopy();
+          _out.writeByte(DeltaSignature.OP_END);
+          _out.writeLong(_length);
+          _out.write(_digest.digest());
+          success = true;
+        } finally {
+          if(success) {
+            _out.close();
+          } else {
+            // the server must not apply a partial delta
+            closeFailed(_target, _remoteOut);
+          }
+        }
+      } finally {
+        _closed = true;
+      }
+    }
+
+    private void addByte(byte val)
+      throws IOException
+    {
+      if(_end == _buf.length) {
+        // make room by moving the pending data to the start of the buffer
+        int numPending = _end - _litStart;
+        System.arraycopy(_buf, _litStart, _buf, 0, numPending);
+        _start -= _litStart;
+        _litStart = 0;
+        _end = numPending;
+      }
+      _buf[_end++] = val;
+
+      if((_end - _start) < _blockSize) {
+        // window not full yet
+        return;
+      }
+
+      if(!_haveSum) {
+        // window just filled
+        _sumA = 0;
+        _sumB = 0;
+        for(int i = _start; i < _end; ++i) {
+          int curVal = _buf[i] & 0xFF;
+          _sumA += curVal;
+          _sumB += (_end - i) * curVal;
+        }
+        _haveSum = true;
+      } else {
+        // roll the oldest byte out of the window (it becomes literal data)
+        int outVal = _buf[_start] & 0xFF;
+        _sumA += (val & 0xFF) - outVal;
+        _sumB += _sumA - (_blockSize * outVal);
+        ++_start;
+        if((_start - _litStart) >= DeltaSignature.MAX_LITERAL_LENGTH) {
+          flushLiteral(_start);
+        }
+      }
+
+      int block = findBlock(DeltaSignature.toWeakSum(_sumA, _sumB));
+      if(block >= 0) {
+        flushLiteral(_start);
+        addCopy(block);
+        _start += _blockSize;
+        _litStart = _start;
+        _haveSum = false;
+      }
+    }
+
+    /**
+     * @return the index of a block matching the current window, or -1 if
+     *         there is none
+     */
+    private int findBlock(int sum)
+    {
+      // prefer continuing the current run of blocks
+      byte[] strongHash = null;
+      int nextBlock = ((_copyStart >= 0) ? (_copyStart + _copyCount) : -1);
+      if((nextBlock >= 0) && (nextBlock < _signature.getNumBlocks()) &&
+         (_signature.getBlockLength(nextBlock) == _blockSize) &&
+         (_signature.getWeakSum(nextBlock) == sum)) {
+        strongHash = getWindowHash();
+        if(_signature.isStrongHash(nextBlock, strongHash)) {
+          return nextBlock;
+        }
+      }
+
+      if(!_sumFilter.get(getFilterIndex(sum))) {
+        return -1;
+      }
+      int[] candidates = _blocksBySum.get(sum);
+      if(candidates == null) {
+        return -1;
+      }
+      if(strongHash == null) {
+        strongHash = getWindowHash();
+      }
+      for(int candidate : candidates) {
+        if(_signature.isStrongHash(candidate, strongHash)) {
+          return candidate;
+        }
+      }
+      return -1;
+    }
+
+    private byte[] getWindowHash() {
+      _blockDigest.update(_buf, _start, _blockSize);
+      return _blockDigest.digest();
+    }
+
+    private void addCopy(int block)
+      throws IOException
+    {
+      if((_copyStart >= 0) && (block == (_copyStart + _copyCount))) {
+        ++_copyCount;
+        return;
+      }
+      flushCopy();
+      _copyStart = block;
+      _copyCount = 1;
+    }
+
+    private void flushCopy()
+      throws IOException
+    {
+      if(_copyStart >= 0) {
+        _out.writeByte(DeltaSignature.OP_COPY);
+        _out.writeInt(_copyStart);
+        _out.writeInt(_copyCount);
+        _copyStart = -1;
+        _copyCount = 0;
+      }
+    }
+
+    /**
+     * Sends the unmatched data before the given position in the buffer.
+     */
+    private void flushLiteral(int end)
+      throws IOException
+    {
+      int len = end - _litStart;
+      if(len > 0) {
+        flushCopy();
+        _out.writeByte(DeltaSignature.OP_LITERAL);
+        _out.writeInt(len);
+        _out.write(_buf, _litStart, len);
+        _litStart = end;
+      }
+    }
+
+    private static int getFilterIndex(int sum) {
+      return ((sum ^ (sum >>> 16)) & 0xFFFF);
+    }
+  }
+
+  /**
+   * WritableByteChannel which writes to a wrapped RemoteOutputStream.
+   */
+  private static final class RemoteOutputChannel
+    implements WritableByteChannel
+  {
+    /** the wrapped remote stream */
+    private final OutputStream _out;
+    /** temp buffer for writing direct buffers to a compressed stream */
+    private byte[] _tmpBuf;
+    private volatile boolean _open = true;
+
+    private RemoteOutputChannel(OutputStream out) {
+      _out = out;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src)
+      throws IOException
+    {
+      if(!_open) {
+        throw new ClosedChannelException();
+      }
+
+      if(_out instanceof RemoteOutputStreamImpl) {
+        return ((RemoteOutputStreamImpl)_out).write(src);
+      }
+
+      int len = src.remaining();
+      if(src.hasArray()) {
+        _out.write(src.array(), src.arrayOffset() + src.position(), len);
+        src.position(src.limit());
+      } else {
+        if(_tmpBuf == null) {
+          _tmpBuf = new byte[DEFAULT_CHUNK_SIZE];
+        }
+        while(src.hasRemaining()) {
+          int numBytes = Math.min(src.remaining(), _tmpBuf.length);
+          src.get(_tmpBuf, 0, numBytes);
+          _out.write(_tmpBuf, 0, numBytes);
+        }
+      }
+      return len;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return _open;
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      _open = false;
+      _out.close();
+    }
+  }
+
+  /**
+   * AsyncTransfer which copies the data from a channel to a
+   * RemoteOutputStream.
+   */
+  private static final class AsyncUpload extends AsyncTransfer
+  {
+    private final RemoteOutputStream _remoteOut;
+    private final RemoteRetry _retry;
+    private final Path _file;
+    private final byte[] _buf = new byte[DEFAULT_CHUNK_SIZE];
+    private final ByteBuffer _bb = ByteBuffer.wrap(_buf);
+    private ReadableByteChannel _in;
+    private OutputStream _out;
+
+    private AsyncUpload(RemoteOutputStream remoteOut, RemoteRetry retry,
+                        Executor executor, ReadableByteChannel in,
+                        Path file) {
+      super(executor);
+      _remoteOut = remoteOut;
+      _retry = ((retry != null) ? retry : DEFAULT_RETRY);
+      _in = in;
+      _file = file;
+    }
+
+    @Override
+    protected int transferChunk()
+      throws IOException
+    {
+      if(_out == null) {
+        // do the setup in the first task (it involves remote calls)
+        if(_file != null) {
+          _in = FileChannel.open(_file, StandardOpenOption.READ);
+        }
+        _out = wrap(_remoteOut, _retry);
+      }
+
+      _bb.clear();
+      int numRead = _in.read(_bb);
+      if(numRead > 0) {
+        _out.write(_buf, 0, numRead);
+      }
+      return numRead;
+    }
+
+    @Override
+    protected void finish(boolean success)
+      throws IOException
+    {
+      try {
+        if(success) {
+          _out.close();
+        } else if(_out != null) {
+          // make sure the server knows the transfer failed (a normal close
+          // would flush the partial data as a success)
+          closeFailed(_out, _remoteOut);
+        } else {
+          new RemoteOutputStreamWrapper(_remoteOut, _retry, LOG).close(false);
+        }
+      } finally {
+        if((_file != null) && (_in != null)) {
+          _in.close();
+        }
+      }
+    }
   }
 
   /**
@@ -281,6 +942,10 @@ public class RemoteOutputStreamClient
       super(out, size);
     }
 
+    private OutputStream getTarget() {
+      return out;
+    }
+
     @Override
     public void close()
       throws IOException
@@ -19,6 +19,8 @@ package com.healthmarketscience.rmiio;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import com.healthmarketscience.rmiio.metrics.FlightRecorderEvents;
+
 
 /**
  * Server implementation base class for a RemoteOutputStream.  Handles the
@@ -43,6 +45,8 @@ public abstract class RemoteOutputStreamServer
   protected transient final OutputStream _out;
   /** id of the last packet passed into a writePacket() call */
   private transient int _lastPacketId = INITIAL_INVALID_SEQUENCE_ID;
+  /** whether the underlying stream has been handed to a local client */
+  private transient boolean _localStreamOpened;
 
   public RemoteOutputStreamServer(OutputStream out) {
     this(out, DUMMY_MONITOR);
@@ -66,6 +70,7 @@ public abstract class RemoteOutputStreamServer
   /** Returns the real OutputStream to which this stream is writing data */
   public OutputStream getOutputStream() { return _out; }
 
+  @Deprecated
   @Override
   protected final Object getLock() { return _out; }
 
@@ -81,9 +86,12 @@ public abstract class RemoteOutputStreamServer
   protected void closeImpl(boolean writeSuccess)
     throws IOException
   {
-    synchronized(getLock()) {
+    getStreamLock().lock();
+    try {
       // close output
       _out.close();
+    } finally {
+      getStreamLock().unlock();
     }
   }
 
@@ -114,13 +122,21 @@ public abstract class RemoteOutputStreamServer
 
     checkAborted();
 
-    synchronized(getLock()) {
+    // wait for any bandwidth limits and an I/O slot (outside of the lock so
+    // that we don't hold up other calls, e.g. close)
+    awaitBandwidth();
+    IOScheduler.Ticket ioTicket = acquireIOSlot(packet.length);
+
+    getStreamLock().lock();
+    try {
       if(packetId < _lastPacketId) {
         throw new IllegalArgumentException("packetId must increase.");
       }
 
+      Object event = FlightRecorderEvents.beginPacket();
       boolean isReattempt = false;
       if(packetId != _lastPacketId) {
+        long startTime = System.nanoTime();
         try {
           writePacket(packet);
         } catch(IOException e) {
@@ -131,11 +147,19 @@ public abstract class RemoteOutputStreamServer
           // update the monitor
           _monitor.failure(this, e);
           throw e;
+        } finally {
+          releaseIOSlot(ioTicket, packet.length);
+          ioTicket = null;
         }
 
         // update packetId
         _lastPacketId = packetId;
 
+        consumeBandwidth(packet.length);
+
+        // update the monitor
+        _monitor.packetServiced(this, System.nanoTime() - startTime);
+
       } else {
 
         // try again!
@@ -144,6 +168,46 @@ public abstract class RemoteOutputStreamServer
 
       // update the monitor
       _monitor.bytesMoved(this, packet.length, isReattempt);
+
+      FlightRecorderEvents.endPacket(event, this, true, false, packetId,
+                                     packet.length, isReattempt);
+    } finally {
+      // give back the I/O slot if unused (e.g. for a reattempt)
+      releaseIOSlot(ioTicket, 0L);
+      getStreamLock().unlock();
+    }
+  }
+
+  /**
+   * Returns an OutputStream which writes directly to the underlying stream
+   * of this server, for a client in the same JVM (see
+   * {@link
+   * com.healthmarketscience.rmiio.exporter.RemoteStreamExporter#getLocalServer}).
+   * The returned stream does no packetization or compression and is not
+   * subject to bandwidth limits or I/O scheduling.  Closing the returned
+   * stream closes this server (like a remote close).
+   *
+   * @param stub the stub for this server held by the client, kept reachable
+   *             by the returned stream so that this server is not
+   *             unreferenced
+   * @return a local stream, or <code>null</code> if this server does not
+   *         support local streams or has already been written
+   */
+  OutputStream openLocalStream(Object stub)
+    throws IOException
+  {
+    checkAborted();
+
+    getStreamLock().lock();
+    try {
+      if(!isLocalStreamSupported() || isClosed() || _localStreamOpened ||
+         (_lastPacketId != INITIAL_INVALID_SEQUENCE_ID)) {
+        return null;
+      }
+      _localStreamOpened = true;
+      return new LocalOutputStream(stub);
+    } finally {
+      getStreamLock().unlock();
     }
   }
 
@@ -160,4 +224,85 @@ public abstract class RemoteOutputStreamServer
   protected abstract void writePacket(byte[] packet)
     throws IOException;
 
+  /**
+   * OutputStream returned by {@link #openLocalStream} which writes directly
+   * to the underlying stream.
+   */
+  private final class LocalOutputStream extends OutputStream
+  {
+    @SuppressWarnings("unused")
+    private final Object _stub;
+    /** buffer for single byte writes */
+    private final byte[] _singleByte = new byte[1];
+    private boolean _writeSuccess = true;
+    private boolean _closed;
+
+    private LocalOutputStream(Object stub) {
+      _stub = stub;
+    }
+
+    @Override
+    public void write(int b)
+      throws IOException
+    {
+      _singleByte[0] = (byte)b;
+      write(_singleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len)
+      throws IOException
+    {
+      checkAborted();
+
+      getStreamLock().lock();
+      try {
+        _out.write(buf, off, len);
+        _monitor.localBytesMoved(RemoteOutputStreamServer.this, len);
+        _monitor.bytesMoved(RemoteOutputStreamServer.this, len, false);
+      } catch(IOException e) {
+        failed(e);
+        throw e;
+      } catch(RuntimeException e) {
+        failed(e);
+        throw e;
+      } finally {
+        getStreamLock().unlock();
+      }
+    }
+
+    @Override
+    public void flush()
+      throws IOException
+    {
+      checkAborted();
+
+      getStreamLock().lock();
+      try {
+        _out.flush();
+      } catch(IOException e) {
+        failed(e);
+        throw e;
+      } finally {
+        getStreamLock().unlock();
+      }
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      if(_closed) {
+        return;
+      }
+      _closed = true;
+      RemoteOutputStreamServer.this.close(_writeSuccess);
+    }
+
+    private void failed(Exception e) {
+      _writeSuccess = false;
+      _monitor.failure(RemoteOutputStreamServer.this, e);
+    }
+  }
+
 }
@@ -18,6 +18,8 @@ package com.healthmarketscience.rmiio;
 
 import java.io.IOException;
 import java.rmi.RemoteException;
+
+import com.healthmarketscience.rmiio.exporter.RemoteStreamExporter;
 import org.apache.commons.logging.Log;
 
 
@@ -26,6 +28,10 @@ import org.apache.commons.logging.Log;
  * hood.  The retry policy for a given method call will use the internal
  * policy for the default methods, but may be overridden on a per-call basis
  * using the extended methods.
+ * <p>
+ * If the stub is for a stream server exported by this JVM (see
+ * {@link RemoteStreamExporter#getLocalServer}), the calls are made directly
+ * on the server.
  *
  * @author James Ahlborn
  */
@@ -34,10 +40,18 @@ public class RemoteOutputStreamWrapper
   implements RemoteOutputStream
 {
 
+  /** the target of the stream calls, either the stub or, if the stub is for
+      a stream server exported by this JVM, the server itself (the stub is
+      kept reachable so that the server is not unreferenced) */
+  private final RemoteOutputStream _target;
+
   public RemoteOutputStreamWrapper(RemoteOutputStream stub,
                                    RemoteRetry retry,
                                    Log log) {
     super(stub, retry, log);
+    RemoteOutputStream server = RemoteStreamExporter.getLocalServer(
+        stub, RemoteOutputStreamServer.class);
+    _target = ((server != null) ? server : stub);
   }
 
   @Override
@@ -50,7 +64,8 @@ public class RemoteOutputStreamWrapper
   public boolean usingGZIPCompression(RemoteRetry retry)
     throws IOException
   {
-    return retry.call(_stub::usingGZIPCompression, _log, RemoteException.class);
+    return call("usingGZIPCompression", retry,
+                _target::usingGZIPCompression, RemoteException.class);
   }
 
   @Override
@@ -63,8 +78,9 @@ public class RemoteOutputStreamWrapper
   public void close(final boolean writeSuccess, RemoteRetry retry)
     throws IOException
   {
-    retry.call((RemoteRetry.IVoidCaller)() -> _stub.close(writeSuccess),
-               _log, IOException.class);
+    call("close", retry,
+         (RemoteRetry.IVoidCaller)() -> _target.close(writeSuccess),
+         IOException.class);
   }
 
   @Override
@@ -77,7 +93,8 @@ public class RemoteOutputStreamWrapper
   public void flush(RemoteRetry retry)
     throws IOException
   {
-    retry.call((RemoteRetry.IVoidCaller)_stub::flush, _log, IOException.class);
+    call("flush", retry, (RemoteRetry.IVoidCaller)_target::flush,
+         IOException.class);
   }
 
   @Override
@@ -91,8 +108,23 @@ public class RemoteOutputStreamWrapper
                           RemoteRetry retry)
     throws IOException
   {
-    retry.call((RemoteRetry.IVoidCaller)() -> _stub.writePacket(packet, packetId),
-               _log, IOException.class);
+    if(isDirectCall(retry)) {
+      // this is called for every packet, so skip the retry machinery unless
+      // the first attempt fails
+      long startTime = System.nanoTime();
+      try {
+        _target.writePacket(packet, packetId);
+      } catch(Throwable t) {
+        callAfterFailure(
+            retry,
+            (RemoteRetry.IVoidCaller)() -> _target.writePacket(packet, packetId),
+            t, startTime, IOException.class);
+      }
+      return;
+    }
+    call("writePacket", retry,
+         (RemoteRetry.IVoidCaller)() -> _target.writePacket(packet, packetId),
+         IOException.class);
   }
 
 }
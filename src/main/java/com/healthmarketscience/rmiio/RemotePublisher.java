@@ -0,0 +1,384 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Adapters which expose remote data as a {@link Flow.Publisher}, for use in
+ * reactive pipelines.  Data is only fetched from the remote server as the
+ * subscriber requests it, so the subscriber's demand provides backpressure
+ * all the way to the server:
+ * <ul>
+ * <li>{@link #forStream} publishes the data of a RemoteInputStream as
+ *     ByteBuffers, one per packet, so a <code>request(n)</code> fetches (at
+ *     most) <code>n</code> packets from the server.</li>
+ * <li>{@link #forIterator} publishes the elements of a RemoteIterator (or any
+ *     CloseableIOIterator), so a <code>request(n)</code> reads
+ *     <code>n</code> elements (and only the packets needed to decode
+ *     them).</li>
+ * </ul>
+ * <p>
+ * The remote calls are made by tasks submitted to the given executor (a
+ * bounded batch of elements per task), so no thread is dedicated to a
+ * publisher and no thread is used while there is no outstanding demand.
+ * Signals to a subscriber are serialized, but may be made from different
+ * executor threads.
+ * <p>
+ * The returned publishers may only be subscribed to once (the underlying
+ * remote data can only be read once), additional subscribers will receive
+ * an {@link IllegalStateException}.  The remote stream/iterator is closed
+ * when the publisher completes, fails, or the subscription is cancelled.
+ * <p>
+ * Note, this class requires java 9+ (the rest of the library does not).
+ *
+ * @author James Ahlborn
+ */
+public class RemotePublisher
+{
+  private static final Log LOG = LogFactory.getLog(RemotePublisher.class);
+
+  /** max number of elements published by a single executor task before
+      yielding to other tasks */
+  private static final int MAX_ELEMENTS_PER_TASK = 64;
+
+  private RemotePublisher() {}
+
+  /**
+   * Returns a publisher of the data from the given RemoteInputStream using
+   * the {@link RemoteClient#DEFAULT_RETRY} retry policy (see
+   * {@link #forStream(RemoteInputStream,RemoteRetry,Executor)}).
+   */
+  public static Flow.Publisher<ByteBuffer> forStream(
+      RemoteInputStream remoteIn, Executor executor)
+  {
+    return forStream(remoteIn, null, executor);
+  }
+
+  /**
+   * Returns a publisher of the data from the given RemoteInputStream.  Each
+   * published ByteBuffer is a newly allocated buffer containing (at most)
+   * one packet of data, which the subscriber is free to keep.
+   *
+   * @param remoteIn a remote input stream interface
+   * @param retry RemoteException retry policy to use, if <code>null</code>,
+   *              {@link RemoteClient#DEFAULT_RETRY} will be used.
+   * @param executor the executor which will make the remote calls and
+   *                 signal the subscriber
+   */
+  public static Flow.Publisher<ByteBuffer> forStream(
+      final RemoteInputStream remoteIn, RemoteRetry retry,
+      Executor executor)
+  {
+    final RemoteRetry streamRetry = ((retry != null) ? retry :
+                                     RemoteClient.DEFAULT_RETRY);
+    return new Publisher<ByteBuffer>(executor) {
+      private InputStream _in;
+
+      @Override
+      protected ByteBuffer nextElement() throws IOException {
+        if(_in == null) {
+          _in = RemoteInputStreamClient.wrap(remoteIn, streamRetry);
+        }
+        byte[] buf = new byte[RemoteInputStreamServer.DEFAULT_CHUNK_SIZE];
+        int numRead = _in.read(buf);
+        return((numRead >= 0) ? ByteBuffer.wrap(buf, 0, numRead) : null);
+      }
+
+      @Override
+      protected void close(boolean success) throws IOException {
+        if(success) {
+          _in.close();
+        } else {
+          // make sure the server knows the transfer failed
+          new RemoteInputStreamWrapper(remoteIn, streamRetry, LOG)
+            .close(false);
+        }
+      }
+    };
+  }
+
+  /**
+   * Returns a publisher of the elements of the given iterator (typically a
+   * RemoteIterator).  Note, <code>null</code> elements are not allowed by
+   * the Flow api, and will fail the publisher with a
+   * NullPointerException.
+   *
+   * @param iter the iterator whose elements will be published
+   * @param executor the executor which will make the remote calls and
+   *                 signal the subscriber
+   */
+  public static <T> Flow.Publisher<T> forIterator(
+      final CloseableIOIterator<? extends T> iter, Executor executor)
+  {
+    return new Publisher<T>(executor) {
+      @Override
+      protected T nextElement() throws IOException {
+        if(!iter.hasNext()) {
+          return null;
+        }
+        T elem = iter.next();
+        if(elem == null) {
+          throw new NullPointerException("iterator returned null element");
+        }
+        return elem;
+      }
+
+      @Override
+      protected void close(boolean success) throws IOException {
+        iter.close();
+      }
+    };
+  }
+
+  /**
+   * Base class for the single subscriber publishers.
+   */
+  private static abstract class Publisher<T>
+    implements Flow.Publisher<T>
+  {
+    private final Executor _executor;
+    private final AtomicBoolean _subscribed = new AtomicBoolean();
+
+    private Publisher(Executor executor) {
+      if(executor == null) {
+        throw new IllegalArgumentException("executor cannot be null");
+      }
+      _executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber)
+    {
+      if(subscriber == null) {
+        throw new NullPointerException("subscriber cannot be null");
+      }
+      if(!_subscribed.compareAndSet(false, true)) {
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {}
+            @Override
+            public void cancel() {}
+          });
+        subscriber.onError(new IllegalStateException(
+                               "publisher already has a subscriber"));
+        return;
+      }
+      Subscription<T> subscription = new Subscription<T>(this, subscriber);
+      subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * @return the next element, or <code>null</code> if there are no more
+     *         elements
+     */
+    protected abstract T nextElement() throws IOException;
+
+    /**
+     * Closes the underlying remote data, called once (if any element was
+     * requested or the subscription was cancelled).
+     *
+     * @param success <code>true</code> if all elements were published,
+     *                <code>false</code> otherwise
+     */
+    protected abstract void close(boolean success) throws IOException;
+  }
+
+  /**
+   * Subscription which publishes elements from the executor as they are
+   * requested.
+   */
+  private static final class Subscription<T>
+    implements Flow.Subscription, Runnable
+  {
+    private final Publisher<T> _publisher;
+    private final Flow.Subscriber<? super T> _subscriber;
+    /** current outstanding demand (Long.MAX_VALUE is unbounded) */
+    private long _demand;
+    /** whether or not a task is currently scheduled/running */
+    private boolean _scheduled;
+    private boolean _cancelled;
+    private boolean _done;
+    /** invalid request failure to be signalled */
+    private Throwable _requestFailure;
+
+    private Subscription(Publisher<T> publisher,
+                         Flow.Subscriber<? super T> subscriber) {
+      _publisher = publisher;
+      _subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n)
+    {
+      synchronized(this) {
+        if(_done) {
+          return;
+        }
+        if(n <= 0L) {
+          _requestFailure = new IllegalArgumentException(
+              "non-positive request " + n);
+        } else {
+          _demand += n;
+          if(_demand < 0L) {
+            // overflowed, treat as unbounded
+            _demand = Long.MAX_VALUE;
+          }
+        }
+      }
+      schedule();
+    }
+
+    @Override
+    public void cancel()
+    {
+      synchronized(this) {
+        if(_done) {
+          return;
+        }
+        _cancelled = true;
+      }
+      // close the remote data from the executor (it involves remote calls)
+      schedule();
+    }
+
+    private void schedule()
+    {
+      synchronized(this) {
+        if(_scheduled || _done) {
+          return;
+        }
+        _scheduled = true;
+      }
+      submit();
+    }
+
+    private void submit()
+    {
+      try {
+        _publisher._executor.execute(this);
+      } catch(Throwable t) {
+        terminate(t, true);
+      }
+    }
+
+    @Override
+    public void run()
+    {
+      for(int i = 0; i < MAX_ELEMENTS_PER_TASK; ++i) {
+
+        Throwable requestFailure = null;
+        boolean cancelled = false;
+        synchronized(this) {
+          if(_done) {
+            _scheduled = false;
+            return;
+          }
+          requestFailure = _requestFailure;
+          cancelled = _cancelled;
+          if((requestFailure == null) && !cancelled) {
+            if(_demand == 0L) {
+              // wait for more demand
+              _scheduled = false;
+              return;
+            }
+            if(_demand != Long.MAX_VALUE) {
+              --_demand;
+            }
+          }
+        }
+
+        if(requestFailure != null) {
+          terminate(requestFailure, true);
+          return;
+        }
+        if(cancelled) {
+          terminate(null, false);
+          return;
+        }
+
+        T elem = null;
+        try {
+          elem = _publisher.nextElement();
+        } catch(Throwable t) {
+          terminate(t, true);
+          return;
+        }
+        if(elem == null) {
+          terminate(null, true);
+          return;
+        }
+
+        try {
+          _subscriber.onNext(elem);
+        } catch(Throwable t) {
+          // subscribers should not throw, treat it as a cancel
+          LOG.warn("Subscriber failed handling element, cancelling", t);
+          terminate(t, false);
+          return;
+        }
+      }
+
+      // more demand, but give other tasks a turn
+      submit();
+    }
+
+    /**
+     * Finishes this subscription, closing the remote data.
+     *
+     * @param failure the failure, if any
+     * @param signal whether or not the subscriber should be signalled
+     */
+    private void terminate(Throwable failure, boolean signal)
+    {
+      synchronized(this) {
+        if(_done) {
+          return;
+        }
+        _done = true;
+        _scheduled = false;
+      }
+
+      try {
+        _publisher.close(signal && (failure == null));
+      } catch(Throwable t) {
+        if(failure == null) {
+          failure = t;
+        } else if(LOG.isDebugEnabled()) {
+          LOG.debug("Ignoring exception while closing failed publisher", t);
+        }
+      }
+
+      if(signal) {
+        if(failure != null) {
+          _subscriber.onError(failure);
+        } else {
+          _subscriber.onComplete();
+        }
+      }
+    }
+  }
+
+}
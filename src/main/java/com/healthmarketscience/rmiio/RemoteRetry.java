@@ -17,6 +17,10 @@ limitations under the License.
 package com.healthmarketscience.rmiio;
 
 import java.rmi.RemoteException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.healthmarketscience.rmiio.metrics.FlightRecorderEvents;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.logging.Log;
 
@@ -87,7 +91,13 @@ public abstract class RemoteRetry
   public static final Always SIMPLE_ALWAYS = new SimpleAlways();
 
 
-  protected RemoteRetry() {}
+  /** whether the first attempt of a call may be made directly by the
+      caller, see {@link #isDirectFirstAttemptAllowed} */
+  private final boolean _directFirstAttemptAllowed;
+
+  protected RemoteRetry() {
+    _directFirstAttemptAllowed = !overridesCall(getClass());
+  }
 
 
   /**
@@ -112,8 +122,19 @@ public abstract class RemoteRetry
     if(sleepTime > 30) {
       sleepTime = 30;
     }
+    sleep(sleepTime * 1000, log);
+  }
+
+  /**
+   * Sleeps for the given number of milliseconds, passing along any interrupt.
+   *
+   * @param sleepMillis time to sleep in milliseconds
+   * @param log debug log
+   */
+  protected static void sleep(long sleepMillis, Log log)
+  {
     try {
-      Thread.sleep(sleepTime * 1000);
+      Thread.sleep(sleepMillis);
     } catch(InterruptedException ignored) {
       // pass interrupt along
       Thread.currentThread().interrupt();
@@ -136,34 +157,108 @@ public abstract class RemoteRetry
    */
   protected final <RetType> RetType callImpl(ICaller<RetType> caller, Log log)
     throws Throwable
+  {
+    return callImpl(caller, log, null, System.nanoTime());
+  }
+
+  /**
+   * Implementation of the actual retry logic, optionally starting with the
+   * failure of an attempt which was already made by the caller.
+   *
+   * @param caller implementation of the actual remote method call
+   * @param log debug log
+   * @param failure failure of the first attempt of the call, if already
+   *                made, otherwise <code>null</code>
+   * @param startTime {@link System#nanoTime} when the call was first
+   *                  attempted
+   */
+  private <RetType> RetType callImpl(ICaller<RetType> caller, Log log,
+                                     Throwable failure, long startTime)
+    throws Throwable
   {
     int numTries = 0;
     do {
-      try {
-        // attempt actual remote call
-        return caller.call();
-      } catch(Throwable e) {
-
-        // keep track of number of retries
-        ++numTries;
-
-        // determine if caller wants to retry
-        if(!shouldRetry(e, numTries)) {
-          // guess not...
-          log.warn("Retry for caller " + caller + " giving up!");
-          throw e;
+      if(failure == null) {
+        try {
+          // attempt actual remote call
+          return caller.call();
+        } catch(Throwable e) {
+          failure = e;
         }
+      }
 
-        if(log.isDebugEnabled()) {
-          log.debug("Caller " + caller + " got exception, retrying", e);
-        }
+      // keep track of number of retries
+      ++numTries;
+
+      // determine if caller wants to retry
+      long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(
+          System.nanoTime() - startTime);
+      boolean retry = shouldRetry(failure, numTries, elapsedMillis);
+      FlightRecorderEvents.retry(caller, numTries, failure, retry);
+      if(!retry) {
+        // guess not...
+        log.warn("Retry for caller " + caller + " giving up!");
+        throw failure;
+      }
 
-        // wait for a bit before retrying
-        backOff(numTries, log);
+      if(log.isDebugEnabled()) {
+        log.debug("Caller " + caller + " got exception, retrying", failure);
       }
+
+      // wait for a bit before retrying
+      Object event = FlightRecorderEvents.beginBackOff();
+      backOff(numTries, elapsedMillis, log);
+      FlightRecorderEvents.endBackOff(event, numTries);
+      failure = null;
     } while(true);
   }
 
+  /**
+   * Returns <code>true</code> if the first attempt of a remote method call
+   * may be made directly by the caller, with this retry policy only getting
+   * involved (via {@link #callAfterFailure}) if that attempt fails.  This
+   * allows frequently made calls to avoid allocating an ICaller in the
+   * common, successful case.  This is only allowed if the
+   * {@link #call(ICaller,Log,Class,Class,Class)} method (through which all
+   * the other call methods are made) has not been overridden, since an
+   * overriding policy may need to see every attempt (e.g.
+   * {@link CircuitBreakerRetry}).
+   */
+  public final boolean isDirectFirstAttemptAllowed() {
+    return _directFirstAttemptAllowed;
+  }
+
+  /**
+   * Continues a remote method call whose first attempt was made directly by
+   * the caller and failed with the given throwable, as if the call had been
+   * made using {@link #call(ICaller,Log,Class)} in the first place.  Should
+   * only be used if {@link #isDirectFirstAttemptAllowed} returns
+   * <code>true</code>.
+   *
+   * @param caller implementation of the actual remote method call, used for
+   *               any further attempts
+   * @param failure failure thrown by the first attempt
+   * @param startTime {@link System#nanoTime} when the first attempt was made
+   * @param log debug log
+   * @param throwType1 the user defined Exception thrown by the call
+   */
+  public final <RetType, ExType1 extends Throwable>
+  RetType callAfterFailure(ICaller<RetType> caller,
+                           Throwable failure,
+                           long startTime,
+                           Log log,
+                           Class<ExType1> throwType1)
+    throws ExType1
+  {
+    try {
+      return callImpl(caller, log, failure, startTime);
+    } catch(Throwable e) {
+      throwCommonTypes(e);
+      throwIfMatchesType(e, throwType1);
+      throw handleNoMatches(e);
+    }
+  }
+
   /**
    * Wrapper for {@link #callImpl} which only throws RuntimeException.
    */
@@ -373,6 +468,22 @@ public abstract class RemoteRetry
   }
 
 
+  /**
+   * Returns <code>true</code> if the given RemoteRetry class overrides the
+   * {@link #call(ICaller,Log,Class,Class,Class)} method.
+   */
+  private static boolean overridesCall(Class<?> retryClass)
+  {
+    try {
+      return(retryClass.getMethod("call", ICaller.class, Log.class,
+                                  Class.class, Class.class, Class.class)
+             .getDeclaringClass() != RemoteRetry.class);
+    } catch(NoSuchMethodException e) {
+      // shouldn't happen, assume the worst
+      return true;
+    }
+  }
+
   /**
    * Checks the given exception against the given Exception type, throwing if
    * the given exception is an instanceof the given type.  Otherwise, returns.
@@ -434,6 +545,39 @@ public abstract class RemoteRetry
    */
   public abstract void backOff(int numRetries, Log log);
 
+  /**
+   * Variant of {@link #shouldRetry(Throwable,int)} which is also given the
+   * time elapsed since the current remote method call was first attempted.
+   * This is the method actually called by the retry logic, and by default
+   * just calls {@link #shouldRetry(Throwable,int)}.  Implementations which
+   * enforce a deadline on the overall call should override this method.
+   *
+   * @param t throwable thrown
+   * @param numRetries number of previous reattempts
+   * @param elapsedMillis time elapsed since the first attempt of the call
+   * @return <code>true</code> iff call should be repeated, <code>true</code>
+   *         otherwise
+   */
+  public boolean shouldRetry(Throwable t, int numRetries, long elapsedMillis)
+  {
+    return shouldRetry(t, numRetries);
+  }
+
+  /**
+   * Variant of {@link #backOff(int,Log)} which is also given the time elapsed
+   * since the current remote method call was first attempted.  This is the
+   * method actually called by the retry logic, and by default just calls
+   * {@link #backOff(int,Log)}.
+   *
+   * @param numRetries number of previous reattempts
+   * @param elapsedMillis time elapsed since the first attempt of the call
+   * @param log debug log
+   */
+  public void backOff(int numRetries, long elapsedMillis, Log log)
+  {
+    backOff(numRetries, log);
+  }
+
 
   /**
    * @see ICaller
@@ -538,6 +682,147 @@ public abstract class RemoteRetry
 
   }
 
+  /**
+   * Implementation of RemoteRetry which retries RemoteExceptions using
+   * exponential backoff with "decorrelated jitter": each delay is chosen
+   * randomly between the base delay and three times the previous delay
+   * (capped at the max delay).  The randomness keeps many clients which
+   * failed at the same time (say, because the server restarted) from
+   * retrying in lockstep.
+   * <p>
+   * Additionally, the total time spent in a single call may be bounded by a
+   * deadline (no retries will be attempted once the deadline has passed, and
+   * no backoff will sleep past the deadline), and the total number of
+   * retries may be limited by a {@link RetryBudget}.  Since the budget is
+   * shared by all the calls made using this instance, a single instance (or
+   * at least a single budget) should be used for all the streams talking to
+   * the same endpoint.
+   */
+  public static class Exponential extends RemoteRetry
+  {
+    /** default number of times to retry */
+    public static final int DEFAULT_NUM_MAX_RETRIES = 5;
+    /** default base delay, in milliseconds */
+    public static final long DEFAULT_BASE_DELAY = 100L;
+    /** default max delay, in milliseconds */
+    public static final long DEFAULT_MAX_DELAY = 10000L;
+    /** default per-call deadline, in milliseconds */
+    public static final long DEFAULT_DEADLINE = 30000L;
+    /** value for the deadline which indicates that calls have no deadline */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final int _maxNumRetries;
+    private final long _baseDelay;
+    private final long _maxDelay;
+    private final long _deadline;
+    private final RetryBudget _budget;
+    /** the last delay used by the current call on each thread */
+    private final ThreadLocal<long[]> _lastDelay =
+      ThreadLocal.withInitial(() -> new long[1]);
+
+    public Exponential() {
+      this(DEFAULT_NUM_MAX_RETRIES, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY,
+           DEFAULT_DEADLINE, null);
+    }
+
+    /**
+     * @param maxNumRetries max number of times to retry a single call
+     * @param baseDelay minimum delay in milliseconds between attempts
+     * @param maxDelay maximum delay in milliseconds between attempts
+     * @param deadline max time in milliseconds to spend retrying a single
+     *                 call, {@link #NO_DEADLINE} for no limit
+     * @param budget optional budget limiting the total number of retries
+     *               across all calls made using this instance, may be
+     *               {@code null}
+     */
+    public Exponential(int maxNumRetries, long baseDelay, long maxDelay,
+                       long deadline, RetryBudget budget)
+    {
+      if((baseDelay <= 0L) || (maxDelay < baseDelay)) {
+        throw new IllegalArgumentException(
+            "invalid delays " + baseDelay + ", " + maxDelay);
+      }
+      if(deadline <= 0L) {
+        throw new IllegalArgumentException("invalid deadline " + deadline);
+      }
+      _maxNumRetries = maxNumRetries;
+      _baseDelay = baseDelay;
+      _maxDelay = maxDelay;
+      _deadline = deadline;
+      _budget = budget;
+    }
+
+    public int getMaxNumRetries() {
+      return _maxNumRetries;
+    }
+
+    public long getBaseDelay() {
+      return _baseDelay;
+    }
+
+    public long getMaxDelay() {
+      return _maxDelay;
+    }
+
+    public long getDeadline() {
+      return _deadline;
+    }
+
+    public RetryBudget getRetryBudget() {
+      return _budget;
+    }
+
+    @Override
+    public boolean shouldRetry(Throwable t, int numRetries)
+    {
+      return shouldRetry(t, numRetries, 0L);
+    }
+
+    @Override
+    public boolean shouldRetry(Throwable t, int numRetries,
+                               long elapsedMillis)
+    {
+      // note, we check the budget last so that we only consume a retry
+      // token if we are actually going to retry
+      return((t instanceof RemoteException) &&
+             (numRetries < getMaxNumRetries()) &&
+             (elapsedMillis < _deadline) &&
+             ((_budget == null) || _budget.tryAcquire()));
+    }
+
+    @Override
+    public void backOff(int numRetries, Log log)
+    {
+      backOff(numRetries, 0L, log);
+    }
+
+    @Override
+    public void backOff(int numRetries, long elapsedMillis, Log log)
+    {
+      long[] lastDelay = _lastDelay.get();
+      if((numRetries <= 1) || (lastDelay[0] < _baseDelay)) {
+        // first retry of a new call
+        lastDelay[0] = _baseDelay;
+      }
+
+      // decorrelated jitter: random value between the base delay and 3x the
+      // last delay, capped at the max delay (checked before multiplying so
+      // that large delays cannot overflow)
+      long bound = ((lastDelay[0] < (_maxDelay / 3L)) ?
+                    ((lastDelay[0] * 3L) + 1L) : _maxDelay);
+      long delay = ((bound > _baseDelay) ?
+                    ThreadLocalRandom.current().nextLong(_baseDelay, bound) :
+                    _baseDelay);
+      lastDelay[0] = delay;
+
+      // don't sleep past the deadline
+      delay = Math.min(delay, _deadline - elapsedMillis);
+      if(delay > 0L) {
+        sleep(delay, log);
+      }
+    }
+  }
+
   /**
    * Simple implementation of RemoteRetry which <b>always</b> retries
    * RemoteExceptions thrown from the remote method call.  This will make a
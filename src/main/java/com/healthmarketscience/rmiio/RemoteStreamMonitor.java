@@ -90,6 +90,18 @@ public interface RemoteStreamMonitor<StreamServerType> {
    */
   public void localBytesSkipped(StreamServerType stream, long numBytes);
 
+  /**
+   * Called after a new packet has been read from/written to the underlying
+   * stream for a remote client.  Will not be called for reattempts of a
+   * previously handled packet.  The default implementation does nothing.
+   *
+   * @param stream the stream for which the packet was handled
+   * @param serviceNanos the time, in nanoseconds, spent reading/writing the
+   *                     packet from/to the underlying stream
+   */
+  public default void packetServiced(StreamServerType stream,
+                                     long serviceNanos) {}
+
   /**
    * Called when the given stream is closed.  The clean parameter indicates
    * whether or not the transfer completed successfully.
@@ -29,8 +29,12 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.healthmarketscience.rmiio.exporter.RemoteStreamExporter;
+import com.healthmarketscience.rmiio.metrics.FlightRecorderEvents;
+import com.healthmarketscience.rmiio.metrics.RemoteStreamInventory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -63,6 +67,12 @@ public abstract class RemoteStreamServer<StreamServerType, StreamType>
   private static final Set<Object> _hardRefSet =
     Collections.synchronizedSet(new HashSet<Object>());
 
+  /** limiter shared by all stream servers, if any */
+  private static volatile BandwidthLimiter _globalLimiter;
+  /** I/O scheduler used by all stream servers which do not have their own
+      scheduler, if any */
+  private static volatile IOScheduler _globalScheduler;
+
   private enum State {
     OPEN, ABORTED, CLOSED;
   }
@@ -77,6 +87,18 @@ public abstract class RemoteStreamServer<StreamServerType, StreamType>
   /** the implicitly exported stub for this object, created by a call to
       writeReplace, if any */
   private transient volatile StreamType _writeReplacement;
+  /** the lock for the underlying stream operations */
+  private transient final ReentrantLock _streamLock = new ReentrantLock();
+  /** the limiter for this stream, if any */
+  private transient volatile BandwidthLimiter _limiter;
+  /** the I/O scheduler for this stream, if any */
+  private transient volatile IOScheduler _scheduler;
+  /** the group for scheduling I/O, if <code>null</code>, this stream */
+  private transient volatile Object _ioGroup;
+  /** the relative weight of this stream when scheduling I/O */
+  private transient volatile int _ioWeight = 1;
+  /** number of bytes transferred through the I/O scheduler */
+  private transient volatile long _ioBytes;
 
   public RemoteStreamServer(RemoteStreamMonitor<StreamServerType> monitor) {
     _monitor = monitor;
@@ -110,6 +132,11 @@ public abstract class RemoteStreamServer<StreamServerType, StreamType>
     _exporter = exporter;
 
     if(!(HardRefMonitor.class.isInstance(_monitor))) {
+      // track this stream in the inventory (if enabled) until it is closed
+      // (the inventory will be notified via the final closed() monitor call)
+      _monitor = RemoteStreamInventory.getInstance().register(
+          this, exporter, _monitor);
+
       // we temporarily wrap the monitor in order to keep our remote stub from
       // getting prematurely garbage collected.  see HardRefMonitor for more
       // details.  (we do this after a successful export only, or else we may
@@ -165,6 +192,197 @@ public abstract class RemoteStreamServer<StreamServerType, StreamType>
     return(_state.get() == State.CLOSED);
   }
 
+  /**
+   * @return <code>true</code> iff this stream server is still being kept in
+   *         memory by a hard reference awaiting the first remote call (see
+   *         HardRefMonitor), <code>false</code> otherwise.
+   */
+  public final boolean isPinned() {
+    return HardRefMonitor.class.isInstance(_monitor);
+  }
+
+  /**
+   * Sets the limiter which will be used by all stream servers (in addition to
+   * any per-stream limiter).
+   *
+   * @param limiter the new global limiter, may be <code>null</code> for no
+   *                global limit
+   */
+  public static void setGlobalBandwidthLimiter(BandwidthLimiter limiter) {
+    _globalLimiter = limiter;
+  }
+
+  /**
+   * @return the limiter used by all stream servers, if any
+   */
+  public static BandwidthLimiter getGlobalBandwidthLimiter() {
+    return _globalLimiter;
+  }
+
+  /**
+   * Sets the limiter for the bytes transferred by this stream server (in
+   * addition to any global limiter).  The limiter may be shared with other
+   * stream servers.
+   *
+   * @param limiter the new limiter, may be <code>null</code> for no limit
+   */
+  public void setBandwidthLimiter(BandwidthLimiter limiter) {
+    _limiter = limiter;
+  }
+
+  /**
+   * @return the limiter for this stream server, if any
+   */
+  public BandwidthLimiter getBandwidthLimiter() {
+    return _limiter;
+  }
+
+  /**
+   * Waits until any bandwidth limits on this stream server allow more bytes
+   * to be transferred.  Should be called before reading/writing a packet,
+   * <b>without</b> holding the stream lock.
+   */
+  protected final void awaitBandwidth()
+    throws IOException
+  {
+    BandwidthLimiter limiter = _limiter;
+    if(limiter != null) {
+      limiter.await();
+    }
+    limiter = _globalLimiter;
+    if(limiter != null) {
+      limiter.await();
+    }
+  }
+
+  /**
+   * Records the given number of bytes as transferred against any bandwidth
+   * limits on this stream server.
+   */
+  protected final void consumeBandwidth(long numBytes)
+  {
+    BandwidthLimiter limiter = _limiter;
+    if(limiter != null) {
+      limiter.consume(numBytes);
+    }
+    limiter = _globalLimiter;
+    if(limiter != null) {
+      limiter.consume(numBytes);
+    }
+  }
+
+  /**
+   * Sets the I/O scheduler which will be used by all stream servers which do
+   * not have their own scheduler.
+   *
+   * @param scheduler the new global scheduler, may be <code>null</code> for
+   *                  unscheduled I/O
+   */
+  public static void setGlobalIOScheduler(IOScheduler scheduler) {
+    _globalScheduler = scheduler;
+  }
+
+  /**
+   * @return the I/O scheduler used by all stream servers which do not have
+   *         their own scheduler, if any
+   */
+  public static IOScheduler getGlobalIOScheduler() {
+    return _globalScheduler;
+  }
+
+  /**
+   * Sets the I/O scheduler for this stream server (overriding any global
+   * scheduler).
+   *
+   * @param scheduler the new scheduler, may be <code>null</code> to use the
+   *                  global scheduler
+   */
+  public void setIOScheduler(IOScheduler scheduler) {
+    _scheduler = scheduler;
+  }
+
+  /**
+   * @return the I/O scheduler for this stream server, if any
+   */
+  public IOScheduler getIOScheduler() {
+    return _scheduler;
+  }
+
+  /**
+   * Sets the group (e.g. tenant) which this stream server belongs to when
+   * sharing I/O slots fairly.  All streams in a group share a single
+   * fair share of the I/O slots.
+   *
+   * @param ioGroup the group for this stream, if <code>null</code>, this
+   *                stream gets its own share
+   */
+  public void setIOGroup(Object ioGroup) {
+    _ioGroup = ioGroup;
+  }
+
+  public Object getIOGroup() {
+    return _ioGroup;
+  }
+
+  /**
+   * Sets the relative weight of this stream server (or its group) when
+   * sharing I/O slots fairly, e.g. a stream with weight 2 will get twice the
+   * I/O of a stream with weight 1.  Defaults to 1.
+   */
+  public void setIOWeight(int ioWeight) {
+    if(ioWeight < 1) {
+      throw new IllegalArgumentException("ioWeight must be > 0");
+    }
+    _ioWeight = ioWeight;
+  }
+
+  public int getIOWeight() {
+    return _ioWeight;
+  }
+
+  /**
+   * Waits for an I/O slot from the I/O scheduler for this stream server, if
+   * any.  Should be called before doing I/O on the underlying stream,
+   * <b>without</b> holding the stream lock (like {@link #awaitBandwidth}), and
+   * the returned ticket must be passed to {@link #releaseIOSlot} once the I/O
+   * is complete.
+   *
+   * @param estimatedBytes estimate of the bytes which will be transferred
+   * @return the ticket for the I/O slot, or <code>null</code> if there is no
+   *         scheduler
+   */
+  protected final IOScheduler.Ticket acquireIOSlot(long estimatedBytes)
+    throws IOException
+  {
+    IOScheduler scheduler = _scheduler;
+    if(scheduler == null) {
+      scheduler = _globalScheduler;
+      if(scheduler == null) {
+        return null;
+      }
+    }
+    Object ioGroup = _ioGroup;
+    return scheduler.acquire(((ioGroup != null) ? ioGroup : this), _ioWeight,
+                             _ioBytes, estimatedBytes);
+  }
+
+  /**
+   * Releases the given I/O slot, if any.  Should be called while holding the
+   * stream lock.
+   *
+   * @param ticket ticket returned from {@link #acquireIOSlot}, may be
+   *               <code>null</code>
+   * @param actualBytes the number of bytes actually transferred
+   */
+  protected final void releaseIOSlot(IOScheduler.Ticket ticket,
+                                     long actualBytes)
+  {
+    if(ticket != null) {
+      _ioBytes += actualBytes;
+      ticket.release(actualBytes);
+    }
+  }
+
   /**
    * Forces this stream server to close (if not already closed), will
    * <b>break</b> any outstanding client interactions.  Should be called one
@@ -220,8 +438,10 @@ public abstract class RemoteStreamServer<StreamServerType, StreamType>
       try {
 
         // update the monitor
-        _monitor.closed(getAsSub(), (remoteClose && closeCompleted &&
-                                     (oldState == State.OPEN)));
+        boolean clean = (remoteClose && closeCompleted &&
+                         (oldState == State.OPEN));
+        FlightRecorderEvents.closed(this, clean);
+        _monitor.closed(getAsSub(), clean);
 
       } finally {
 
@@ -315,10 +535,47 @@ public abstract class RemoteStreamServer<StreamServerType, StreamType>
     throws IOException;
 
   /**
-   * Returns a handle to the object used to lock the underlying stream
-   * operations for this remote stream.
+   * Returns the lock used to lock the underlying stream operations for this
+   * remote stream.  This is an explicit lock (instead of an object monitor)
+   * so that blocking stream operations do not pin the carrier thread when
+   * run on a virtual thread.
    */
-  protected abstract Object getLock();
+  protected final Lock getStreamLock() {
+    return _streamLock;
+  }
+
+  /**
+   * Returns <code>true</code> if a client in the same JVM may access the
+   * underlying stream of this server directly (bypassing the packet
+   * methods), <code>false</code> otherwise (see
+   * {@link RemoteStreamExporter#getLocalServer}).  Subclasses whose packets
+   * are not simply the (possibly compressed) data of the underlying stream
+   * should return <code>false</code>.
+   */
+  protected boolean isLocalStreamSupported() {
+    return true;
+  }
+
+  /**
+   * Returns a handle to the object which was previously used to lock the
+   * underlying stream operations for this remote stream.  This method is
+   * only retained for source compatibility, subclasses no longer need to
+   * implement it.
+   * <p>
+   * <b>Note</b>, this is a behavior change: the underlying stream operations
+   * are now locked using {@link #getStreamLock}, and synchronizing on the
+   * object returned from this method does <i>not</i> exclude those
+   * operations (an object monitor cannot exclude against an explicit lock).
+   * Subclasses which used {@code synchronized(getLock())} to coordinate
+   * with the stream operations must use {@code getStreamLock().lock()} (and
+   * {@code unlock()}) instead.
+   *
+   * @deprecated use {@link #getStreamLock} instead
+   */
+  @Deprecated
+  protected Object getLock() {
+    return this;
+  }
 
   /**
    * @return the class of the remote stream interface for this server
@@ -400,6 +657,12 @@ public abstract class RemoteStreamServer<StreamServerType, StreamType>
       _realMonitor.localBytesSkipped(stream, numBytes);
     }
 
+    @Override
+    public void packetServiced(StreamServerType stream, long serviceNanos) {
+      cleanup();
+      _realMonitor.packetServiced(stream, serviceNanos);
+    }
+
     @Override
     public void closed(StreamServerType stream, boolean clean) {
       cleanup();
@@ -17,6 +17,7 @@ limitations under the License.
 package com.healthmarketscience.rmiio;
 
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
 import org.apache.commons.logging.Log;
@@ -38,7 +39,13 @@ import java.lang.reflect.Proxy;
  * wrapper implementation at run time.  This may be slightly less efficient
  * than a custom implementation since reflection is used for the actual method
  * invocations, but for remote method calls that overhead is probably
- * meaningless.
+ * meaningless.  (For the stream interfaces, which may make a very large
+ * number of calls, {@link #wrap} returns the custom wrapper implementations
+ * instead.)
+ * <p>
+ * The remote calls made through a wrapper (including any retries and backoff
+ * handled by the retry policy) may be observed by setting a
+ * {@link RemoteCallMonitor}.
  *
  * @author James Ahlborn
  */
@@ -54,6 +61,12 @@ public class RemoteWrapper<RemoteType>
   /** the log which will be used by the retry facility when making the remote
       calls */
   protected final Log _log;
+  /** the monitor for the remote calls made through this wrapper */
+  protected RemoteCallMonitor _callMonitor;
+
+  /** the monitor used by newly created wrappers */
+  private static volatile RemoteCallMonitor _defaultCallMonitor =
+    RemoteCallMonitor.DUMMY_MONITOR;
 
   public RemoteWrapper(RemoteType stub, RemoteRetry retry, Log log) {
     if(stub == null) {
@@ -62,6 +75,7 @@ public class RemoteWrapper<RemoteType>
     _stub = stub;
     _retry = retry;
     _log = log;
+    _callMonitor = _defaultCallMonitor;
   }
 
   /**
@@ -81,17 +95,51 @@ public class RemoteWrapper<RemoteType>
   public static <R> R wrap(Class<R> iface, R stub,
                            RemoteRetry retry, Log log)
   {
+    // use the custom (non-reflective) wrappers for the stream interfaces
+    if(iface == RemoteInputStream.class) {
+      return iface.cast(new RemoteInputStreamWrapper(
+                            (RemoteInputStream)stub, retry, log));
+    }
+    if(iface == RemoteOutputStream.class) {
+      return iface.cast(new RemoteOutputStreamWrapper(
+                            (RemoteOutputStream)stub, retry, log));
+    }
+
     RemoteWrapper<R> wrapper = new RemoteWrapper<R>(stub, retry, log);
     return iface.cast(Proxy.newProxyInstance(
         Thread.currentThread().getContextClassLoader(),
         new Class<?>[]{iface}, wrapper));
   }
 
+  /**
+   * Sets the RemoteCallMonitor which will be used by all subsequently created
+   * wrappers (existing wrappers are unaffected).
+   *
+   * @param callMonitor the new default monitor.  {@code null} causes the
+   *                    {@link RemoteCallMonitor#DUMMY_MONITOR} to be used.
+   */
+  public static void setDefaultRemoteCallMonitor(
+      RemoteCallMonitor callMonitor) {
+    _defaultCallMonitor = ((callMonitor != null) ? callMonitor :
+                           RemoteCallMonitor.DUMMY_MONITOR);
+  }
+
+  /**
+   * @return the RemoteCallMonitor used by newly created wrappers
+   */
+  public static RemoteCallMonitor getDefaultRemoteCallMonitor() {
+    return _defaultCallMonitor;
+  }
+
   /**
    * Gets the wrapper underlying a proxy created by a call to {@link #wrap}.
    */
   public static RemoteWrapper<?> getWrapper(Object proxy)
   {
+    if(proxy instanceof RemoteWrapper) {
+      // custom wrapper implementation
+      return (RemoteWrapper<?>)proxy;
+    }
     return (RemoteWrapper<?>)Proxy.getInvocationHandler(proxy);
   }
 
@@ -107,6 +155,24 @@ public class RemoteWrapper<RemoteType>
     return _retry;
   }
 
+  public RemoteCallMonitor getRemoteCallMonitor() {
+    return _callMonitor;
+  }
+
+  /**
+   * Sets the monitor for the remote calls made through this wrapper.
+   * <p>
+   * Note, this method is not thread-safe as this should only be used on a
+   * wrapper for which the caller has exclusive ownership.
+   *
+   * @param callMonitor the new monitor.  {@code null} causes the
+   *                    {@link RemoteCallMonitor#DUMMY_MONITOR} to be used.
+   */
+  public void setRemoteCallMonitor(RemoteCallMonitor callMonitor) {
+    _callMonitor = ((callMonitor != null) ? callMonitor :
+                    RemoteCallMonitor.DUMMY_MONITOR);
+  }
+
   /**
    * {@inheritDoc}
    * <p>
@@ -128,8 +194,152 @@ public class RemoteWrapper<RemoteType>
     throws Throwable
   {
     // make the method call on the actual remote stub within the retry handler
-    return _retry.call(
-        () -> method.invoke(_stub, method, args), _log, Exception.class);
+    return call(method.getName(), _retry, () -> {
+        try {
+          return method.invoke(_stub, args);
+        } catch(InvocationTargetException e) {
+          // unwrap the actual failure so that the retry policy can see it
+          Throwable cause = e.getCause();
+          if(cause instanceof Exception) {
+            throw (Exception)cause;
+          }
+          if(cause instanceof Error) {
+            throw (Error)cause;
+          }
+          throw e;
+        }
+      }, Exception.class);
+  }
+
+  /**
+   * Makes the given remote method call within the given retry policy,
+   * reporting the call to the current RemoteCallMonitor.  If the monitor is
+   * the {@link RemoteCallMonitor#DUMMY_MONITOR}, the call is passed directly
+   * to the retry policy.
+   *
+   * @param methodName name of the remote method being called
+   * @param retry the retry policy to use for the call
+   * @param caller implementation of the actual remote method call
+   * @param throwType the user defined Exception thrown by the call
+   */
+  protected <RetType, ExType extends Throwable> RetType call(
+      String methodName, RemoteRetry retry, RemoteRetry.ICaller<RetType> caller,
+      Class<ExType> throwType)
+    throws ExType
+  {
+    RemoteCallMonitor callMonitor = _callMonitor;
+    if(callMonitor == RemoteCallMonitor.DUMMY_MONITOR) {
+      return retry.call(caller, _log, throwType);
+    }
+
+    MonitoredCaller<RetType> monitoredCaller =
+      new MonitoredCaller<RetType>(methodName, caller, callMonitor);
+    Throwable failure = null;
+    try {
+      return retry.call(monitoredCaller, _log, throwType);
+    } catch(RuntimeException e) {
+      failure = e;
+      throw e;
+    } catch(Error e) {
+      failure = e;
+      throw e;
+    } catch(Throwable e) {
+      failure = e;
+      throw throwType.cast(e);
+    } finally {
+      monitoredCaller.completed(failure);
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if the first attempt of a call using the given
+   * retry policy may be made directly on the stub (without allocating an
+   * ICaller), in which case {@link #callAfterFailure} must be used to handle
+   * a failure of that attempt.  Direct calls are not made while a
+   * RemoteCallMonitor is in use.
+   */
+  protected boolean isDirectCall(RemoteRetry retry) {
+    return((_callMonitor == RemoteCallMonitor.DUMMY_MONITOR) &&
+           retry.isDirectFirstAttemptAllowed());
+  }
+
+  /**
+   * Handles the failure of a direct first attempt of a remote method call
+   * (see {@link #isDirectCall}) using the given retry policy.
+   *
+   * @param retry the retry policy to use for the call
+   * @param caller implementation of the actual remote method call, used for
+   *               any further attempts
+   * @param failure failure thrown by the first attempt
+   * @param startTime {@link System#nanoTime} when the first attempt was made
+   * @param throwType the user defined Exception thrown by the call
+   */
+  protected <RetType, ExType extends Throwable> RetType callAfterFailure(
+      RemoteRetry retry, RemoteRetry.ICaller<RetType> caller,
+      Throwable failure, long startTime, Class<ExType> throwType)
+    throws ExType
+  {
+    return retry.callAfterFailure(caller, failure, startTime, _log,
+                                  throwType);
+  }
+
+  /**
+   * ICaller which tracks the attempts made by the retry policy and reports
+   * them to a RemoteCallMonitor.
+   */
+  private static final class MonitoredCaller<RetType>
+    implements RemoteRetry.ICaller<RetType>
+  {
+    private final String _methodName;
+    private final RemoteRetry.ICaller<RetType> _caller;
+    private final RemoteCallMonitor _callMonitor;
+    private final long _startTime = System.nanoTime();
+    private long _lastAttemptEndTime;
+    private long _backOffNanos;
+    private int _numAttempts;
+    private Throwable _lastFailure;
+
+    private MonitoredCaller(String methodName,
+                            RemoteRetry.ICaller<RetType> caller,
+                            RemoteCallMonitor callMonitor) {
+      _methodName = methodName;
+      _caller = caller;
+      _callMonitor = callMonitor;
+    }
+
+    @Override
+    public RetType call()
+      throws Exception
+    {
+      long attemptStartTime = System.nanoTime();
+      if(_numAttempts > 0) {
+        // the retry policy decided to reattempt after the last failure
+        _backOffNanos += (attemptStartTime - _lastAttemptEndTime);
+        _callMonitor.retried(_methodName, _numAttempts, _lastFailure);
+      }
+      ++_numAttempts;
+      try {
+        return _caller.call();
+      } catch(Exception e) {
+        _lastFailure = e;
+        throw e;
+      } catch(Error e) {
+        _lastFailure = e;
+        throw e;
+      } finally {
+        _lastAttemptEndTime = System.nanoTime();
+      }
+    }
+
+    private void completed(Throwable failure) {
+      _callMonitor.callCompleted(_methodName, System.nanoTime() - _startTime,
+                                 _numAttempts, _backOffNanos, failure);
+    }
+
+    @Override
+    public String toString() {
+      return _methodName + "[" + _caller + "]";
+    }
   }
 
 }
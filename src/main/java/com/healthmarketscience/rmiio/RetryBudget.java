@@ -0,0 +1,95 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket which limits the rate of retries across any number of remote
+ * calls (see {@link RemoteRetry.Exponential}).  Each retry consumes one
+ * token, and tokens are replenished at a fixed rate up to a maximum.  When
+ * an endpoint fails, the calls to it will retry until the bucket is drained,
+ * after which further failures will be reported immediately instead of
+ * piling even more retries on a struggling endpoint.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author James Ahlborn
+ */
+public class RetryBudget
+{
+  /** tokens added per nanosecond */
+  private final double _tokensPerNano;
+  /** max number of tokens */
+  private final double _maxTokens;
+  /** current number of tokens */
+  private double _tokens;
+  /** last time the tokens were replenished */
+  private long _lastRefillTime;
+
+  /**
+   * @param retriesPerSecond the sustained rate at which retries are allowed
+   * @param maxBurst the max number of retries allowed in a burst (and the
+   *                 initial number of available retries)
+   */
+  public RetryBudget(double retriesPerSecond, int maxBurst)
+  {
+    if((retriesPerSecond < 0.0d) || (maxBurst < 1)) {
+      throw new IllegalArgumentException(
+          "invalid budget " + retriesPerSecond + ", " + maxBurst);
+    }
+    _tokensPerNano = retriesPerSecond / TimeUnit.SECONDS.toNanos(1L);
+    _maxTokens = maxBurst;
+    _tokens = maxBurst;
+    _lastRefillTime = System.nanoTime();
+  }
+
+  /**
+   * Attempts to consume a retry token.
+   *
+   * @return <code>true</code> if a token was available (the retry is
+   *         allowed), <code>false</code> otherwise
+   */
+  public synchronized boolean tryAcquire()
+  {
+    refill();
+    if(_tokens >= 1.0d) {
+      _tokens -= 1.0d;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return the number of currently available retries
+   */
+  public synchronized int getAvailable()
+  {
+    refill();
+    return (int)_tokens;
+  }
+
+  private void refill()
+  {
+    // caller should synch
+    long now = System.nanoTime();
+    _tokens = Math.min(_maxTokens,
+                       _tokens + ((now - _lastRefillTime) * _tokensPerNano));
+    _lastRefillTime = now;
+  }
+
+}
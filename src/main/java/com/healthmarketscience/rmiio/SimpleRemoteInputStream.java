@@ -68,8 +68,11 @@ public class SimpleRemoteInputStream extends RemoteInputStreamServer
   protected int availableImpl()
     throws IOException
   {
-    synchronized(getLock()) {
+    getStreamLock().lock();
+    try {
       return _in.available();
+    } finally {
+      getStreamLock().unlock();
     }
   }
 
@@ -77,7 +80,7 @@ public class SimpleRemoteInputStream extends RemoteInputStreamServer
   protected byte[] readPacket()
     throws IOException
   {
-    // will be called synchronized
+    // will be called with the stream lock held
 
     // read another packet of data
     byte[] packet = _inAdapter.readPacket();
@@ -91,7 +94,7 @@ public class SimpleRemoteInputStream extends RemoteInputStreamServer
   protected long skip(long n)
     throws IOException
   {
-    // will be called synchronized
+    // will be called with the stream lock held
     long numSkipped = _in.skip(n);
     _monitor.localBytesSkipped(this, numSkipped);
     return numSkipped;
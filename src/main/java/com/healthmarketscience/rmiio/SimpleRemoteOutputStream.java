@@ -61,8 +61,11 @@ public class SimpleRemoteOutputStream extends RemoteOutputStreamServer
   protected void flushImpl()
     throws IOException
   {
-    synchronized(getLock()) {
+    getStreamLock().lock();
+    try {
       _out.flush();
+    } finally {
+      getStreamLock().unlock();
     }
   }
 
@@ -70,7 +73,7 @@ public class SimpleRemoteOutputStream extends RemoteOutputStreamServer
   protected void writePacket(byte[] packet)
     throws IOException
   {
-    // will be called synchronized
+    // will be called with the stream lock held
 
     _outAdapter.writePacket(packet);
     _monitor.localBytesMoved(this, packet.length);
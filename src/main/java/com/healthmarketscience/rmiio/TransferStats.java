@@ -0,0 +1,67 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics for a completed transfer, the result of the asynchronous
+ * transfer methods (e.g.
+ * {@link RemoteInputStreamClient#transferToAsync(RemoteInputStream,java.nio.file.Path,java.util.concurrent.Executor)}).
+ *
+ * @author James Ahlborn
+ */
+public final class TransferStats implements Serializable
+{
+  private static final long serialVersionUID = 20261019L;
+
+  private final long _bytes;
+  private final long _chunks;
+  private final long _elapsedNanos;
+
+  public TransferStats(long bytes, long chunks, long elapsedNanos) {
+    _bytes = bytes;
+    _chunks = chunks;
+    _elapsedNanos = elapsedNanos;
+  }
+
+  /** @return the number of (uncompressed) bytes transferred */
+  public long getBytes() { return _bytes; }
+
+  /** @return the number of chunks in which the bytes were transferred */
+  public long getChunks() { return _chunks; }
+
+  /** @return the time from the start to the end of the transfer */
+  public long getElapsedNanos() { return _elapsedNanos; }
+
+  /** @return the average transfer rate */
+  public long getBytesPerSecond() {
+    return((_elapsedNanos > 0L) ?
+           (long)(((double)_bytes * TimeUnit.SECONDS.toNanos(1L)) /
+                  _elapsedNanos) :
+           0L);
+  }
+
+  @Override
+  public String toString() {
+    return "TransferStats[bytes=" + _bytes + ", chunks=" + _chunks +
+      ", elapsedNanos=" + _elapsedNanos + ", bytesPerSecond=" +
+      getBytesPerSecond() + "]";
+  }
+
+}
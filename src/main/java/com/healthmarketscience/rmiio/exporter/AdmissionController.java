@@ -0,0 +1,358 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.exporter;
+
+import java.lang.management.ManagementFactory;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.healthmarketscience.rmiio.RemoteInputStreamServer;
+import com.healthmarketscience.rmiio.RemoteStreamServer;
+import com.healthmarketscience.rmiio.metrics.LatencyHistogram;
+
+/**
+ * Limits the number of concurrently open stream servers exported by a
+ * RemoteStreamExporter (see
+ * {@link RemoteStreamExporter#setAdmissionController}), as well as the
+ * total number of bytes buffered by them.  Without limits, a burst of new
+ * streams can exhaust the memory and file descriptors of a server.
+ * <p>
+ * When an export would exceed the limits, the export either waits (in
+ * order) for up to the queue timeout for other streams to close, or, if the
+ * queue timeout is 0, is rejected immediately.  A rejected export throws a
+ * {@link RejectedException} (a RemoteException) from
+ * {@link RemoteStreamExporter#export}.  A stream server is counted from the
+ * time it is exported until it is unexported (which normally happens when it
+ * is closed).
+ * <p>
+ * The number of bytes buffered by a stream server is estimated by
+ * {@link #getBufferedBytes(RemoteStreamServer)}, which may be overridden for
+ * more accurate estimates.  Metrics about the queue depth and wait times are
+ * available via JMX (see {@link #registerMBean}).
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author James Ahlborn
+ */
+public class AdmissionController implements AdmissionControllerMXBean
+{
+  /** the domain and type used for the ObjectName when registered with JMX,
+      the name of the controller will be appended */
+  public static final String OBJECT_NAME_PREFIX =
+    "com.healthmarketscience.rmiio:type=AdmissionController";
+
+  /** value for limits which indicates no limit */
+  public static final int UNLIMITED = -1;
+
+  /** default estimate of the bytes buffered by a stream server */
+  public static final long DEFAULT_BUFFERED_BYTES_PER_STREAM =
+    2L * RemoteInputStreamServer.DEFAULT_CHUNK_SIZE;
+
+  private final String _name;
+  private final int _maxOpenStreams;
+  private final long _maxBufferedBytes;
+  private final long _queueTimeout;
+  /** lock for the admission state */
+  private final Object _lock = new Object();
+  /** the currently admitted servers and their estimated buffered bytes */
+  private final Map<RemoteStreamServer<?,?>,Long> _admitted =
+    new IdentityHashMap<RemoteStreamServer<?,?>,Long>();
+  /** the exports waiting for admission, in order */
+  private final ArrayDeque<Object> _waiters = new ArrayDeque<Object>();
+  private long _bufferedBytes;
+  private int _maxQueueDepth;
+  private long _numAdmitted;
+  private long _numRejected;
+  private final LatencyHistogram _waitTime = new LatencyHistogram();
+  /** the name with which this instance is registered with JMX, if any */
+  private ObjectName _objectName;
+
+  /**
+   * @param name name of this controller (used for JMX registration)
+   * @param maxOpenStreams max number of concurrently open stream servers, or
+   *                       {@link #UNLIMITED}
+   * @param maxBufferedBytes max estimated number of bytes buffered by the
+   *                         open stream servers, or {@link #UNLIMITED}
+   * @param queueTimeout max time in milliseconds an export will wait for
+   *                     admission, 0 to reject immediately
+   */
+  public AdmissionController(String name, int maxOpenStreams,
+                             long maxBufferedBytes, long queueTimeout)
+  {
+    if((maxOpenStreams < UNLIMITED) || (maxOpenStreams == 0) ||
+       (maxBufferedBytes < UNLIMITED) || (maxBufferedBytes == 0L) ||
+       (queueTimeout < 0L)) {
+      throw new IllegalArgumentException(
+          "invalid limits " + maxOpenStreams + ", " + maxBufferedBytes +
+          ", " + queueTimeout);
+    }
+    _name = name;
+    _maxOpenStreams = maxOpenStreams;
+    _maxBufferedBytes = maxBufferedBytes;
+    _queueTimeout = queueTimeout;
+  }
+
+  @Override
+  public String getName() {
+    return _name;
+  }
+
+  @Override
+  public int getMaxOpenStreams() {
+    return _maxOpenStreams;
+  }
+
+  @Override
+  public long getMaxBufferedBytes() {
+    return _maxBufferedBytes;
+  }
+
+  @Override
+  public long getQueueTimeout() {
+    return _queueTimeout;
+  }
+
+  @Override
+  public int getOpenStreams() {
+    synchronized(_lock) {
+      return _admitted.size();
+    }
+  }
+
+  @Override
+  public long getBufferedBytes() {
+    synchronized(_lock) {
+      return _bufferedBytes;
+    }
+  }
+
+  @Override
+  public int getQueueDepth() {
+    synchronized(_lock) {
+      return _waiters.size();
+    }
+  }
+
+  @Override
+  public int getMaxQueueDepth() {
+    synchronized(_lock) {
+      return _maxQueueDepth;
+    }
+  }
+
+  @Override
+  public long getAdmitted() {
+    synchronized(_lock) {
+      return _numAdmitted;
+    }
+  }
+
+  @Override
+  public long getRejected() {
+    synchronized(_lock) {
+      return _numRejected;
+    }
+  }
+
+  @Override
+  public long getWaitCount() {
+    return _waitTime.getSnapshot().getCount();
+  }
+
+  @Override
+  public long getWaitMeanNanos() {
+    return _waitTime.getSnapshot().getMean();
+  }
+
+  @Override
+  public long getWait99thPercentileNanos() {
+    return _waitTime.getSnapshot().getPercentile(99.0d);
+  }
+
+  @Override
+  public long getWaitMaxNanos() {
+    return _waitTime.getSnapshot().getMax();
+  }
+
+  /**
+   * @return a point-in-time copy of the time spent waiting by exports which
+   *         had to wait for admission
+   */
+  public LatencyHistogram.Snapshot getWaitTime() {
+    return _waitTime.getSnapshot();
+  }
+
+  /**
+   * Returns the estimated number of bytes buffered by the given stream
+   * server while it is open.  The default implementation returns
+   * {@link #DEFAULT_BUFFERED_BYTES_PER_STREAM}.
+   */
+  protected long getBufferedBytes(RemoteStreamServer<?,?> server) {
+    return DEFAULT_BUFFERED_BYTES_PER_STREAM;
+  }
+
+  /**
+   * Admits the given stream server, waiting if necessary.  Called by
+   * {@link RemoteStreamExporter#export} before exporting a server.
+   *
+   * @throws RejectedException if the server could not be admitted
+   */
+  public void admit(RemoteStreamServer<?,?> server)
+    throws RemoteException
+  {
+    long bytes = getBufferedBytes(server);
+    synchronized(_lock) {
+      if(_admitted.containsKey(server)) {
+        // already admitted
+        return;
+      }
+
+      if(_waiters.isEmpty() && canAdmit(bytes)) {
+        addServer(server, bytes);
+        return;
+      }
+
+      if(_queueTimeout == 0L) {
+        ++_numRejected;
+        throw new RejectedException(
+            "Too many open streams, rejecting export of " + server);
+      }
+
+      // wait our turn
+      Object waiter = new Object();
+      _waiters.addLast(waiter);
+      _maxQueueDepth = Math.max(_maxQueueDepth, _waiters.size());
+      long startTime = System.nanoTime();
+      long endTime = startTime + TimeUnit.MILLISECONDS.toNanos(_queueTimeout);
+      try {
+        while((_waiters.peekFirst() != waiter) || !canAdmit(bytes)) {
+          long remaining = endTime - System.nanoTime();
+          if(remaining <= 0L) {
+            ++_numRejected;
+            throw new RejectedException(
+                "Timed out waiting for admission of " + server);
+          }
+          TimeUnit.NANOSECONDS.timedWait(_lock, remaining);
+        }
+        addServer(server, bytes);
+      } catch(InterruptedException e) {
+        // pass interrupt along
+        Thread.currentThread().interrupt();
+        ++_numRejected;
+        throw (RejectedException)
+          new RejectedException("Interrupted waiting for admission of " +
+                                server).initCause(e);
+      } finally {
+        _waiters.remove(waiter);
+        _waitTime.record(System.nanoTime() - startTime);
+        // the next waiter may be able to proceed
+        _lock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Releases the given stream server, if it was admitted.  Called by
+   * {@link RemoteStreamExporter#unexport} (or by
+   * {@link RemoteStreamExporter#export} if the export fails).
+   */
+  public void release(RemoteStreamServer<?,?> server)
+  {
+    synchronized(_lock) {
+      Long bytes = _admitted.remove(server);
+      if(bytes != null) {
+        _bufferedBytes -= bytes;
+        _lock.notifyAll();
+      }
+    }
+  }
+
+  private boolean canAdmit(long bytes)
+  {
+    // caller should synch
+    if((_maxOpenStreams != UNLIMITED) &&
+       (_admitted.size() >= _maxOpenStreams)) {
+      return false;
+    }
+    // always allow one stream in, even if it exceeds the byte limit on its
+    // own
+    return((_maxBufferedBytes == UNLIMITED) || _admitted.isEmpty() ||
+           ((_bufferedBytes + bytes) <= _maxBufferedBytes));
+  }
+
+  private void addServer(RemoteStreamServer<?,?> server, long bytes)
+  {
+    // caller should synch
+    _admitted.put(server, bytes);
+    _bufferedBytes += bytes;
+    ++_numAdmitted;
+  }
+
+  /**
+   * Registers this instance with the platform MBeanServer using the name
+   * {@link #OBJECT_NAME_PREFIX}{@code ,name=<name>}.
+   */
+  public synchronized void registerMBean()
+    throws JMException
+  {
+    if(_objectName != null) {
+      return;
+    }
+    ObjectName objName = new ObjectName(
+        OBJECT_NAME_PREFIX + ",name=" + ObjectName.quote(_name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objName);
+    _objectName = objName;
+  }
+
+  /**
+   * Unregisters this instance from the platform MBeanServer, if previously
+   * registered by a call to {@link #registerMBean}.
+   */
+  public synchronized void unregisterMBean()
+    throws JMException
+  {
+    if(_objectName == null) {
+      return;
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.unregisterMBean(_objectName);
+    } finally {
+      _objectName = null;
+    }
+  }
+
+  /**
+   * Exception thrown when a stream server export is rejected due to the
+   * admission limits.
+   */
+  public static class RejectedException extends RemoteException
+  {
+    private static final long serialVersionUID = 20261019L;
+
+    public RejectedException(String msg) {
+      super(msg);
+    }
+  }
+
+}
@@ -0,0 +1,73 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.exporter;
+
+/**
+ * JMX management interface for {@link AdmissionController}.  All times are
+ * in nanoseconds.
+ *
+ * @author James Ahlborn
+ */
+public interface AdmissionControllerMXBean
+{
+  /** @return the name of the controller */
+  public String getName();
+
+  /** @return max number of concurrently open stream servers */
+  public int getMaxOpenStreams();
+
+  /** @return max estimated number of bytes buffered by the open stream
+              servers */
+  public long getMaxBufferedBytes();
+
+  /** @return max time in milliseconds an export waits for admission, 0 if
+              exports are rejected immediately */
+  public long getQueueTimeout();
+
+  /** @return number of currently open (admitted) stream servers */
+  public int getOpenStreams();
+
+  /** @return estimated number of bytes buffered by the open stream
+              servers */
+  public long getBufferedBytes();
+
+  /** @return number of exports currently waiting for admission */
+  public int getQueueDepth();
+
+  /** @return max number of exports which have waited for admission at the
+              same time */
+  public int getMaxQueueDepth();
+
+  /** @return total number of admitted exports */
+  public long getAdmitted();
+
+  /** @return total number of rejected exports (including timeouts) */
+  public long getRejected();
+
+  /** @return total number of exports which had to wait for admission */
+  public long getWaitCount();
+
+  /** @return mean time spent waiting by exports which had to wait */
+  public long getWaitMeanNanos();
+
+  /** @return estimated 99th percentile time spent waiting by exports which
+              had to wait */
+  public long getWait99thPercentileNanos();
+
+  /** @return max time spent waiting for admission */
+  public long getWaitMaxNanos();
+}
@@ -0,0 +1,317 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.exporter;
+
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.healthmarketscience.rmiio.RemoteStreamServer;
+
+
+/**
+ * RemoteStreamExporter for tests and benchmarks which exports streams via
+ * standard RMI (like {@link DefaultRemoteStreamExporter}), but wraps the
+ * returned stubs so that every remote call experiences emulated network
+ * conditions:
+ * <ul>
+ * <li><b>latency</b>: fixed delay (in milliseconds) added to every call</li>
+ * <li><b>jitter</b>: additional random delay (in milliseconds, uniformly
+ *     distributed between 0 and the given value) added to every call</li>
+ * <li><b>bandwidth</b>: max bytes per second of packet data moved by a
+ *     stream (0 for unlimited).  Each stream is treated as its own link, and
+ *     only the packet data is counted (not the RMI protocol overhead).</li>
+ * <li><b>failure rate</b>: probability (between 0 and 1) that a call fails
+ *     with a RemoteException.  Half of the failures happen before the call
+ *     reaches the server (a lost request), the other half after the server
+ *     has handled the call (a lost response), so both sides of the retry
+ *     logic are exercised.</li>
+ * </ul>
+ * This allows retry policies, chunk sizes, etc. to be evaluated under
+ * WAN-like conditions entirely within one machine.  The emulation happens
+ * in the client side stub, so the client and server may be in the same JVM
+ * or in separate JVMs (as long as the client has the rmiio classes).
+ * <p>
+ * The default constructor reads the conditions from the system properties
+ * {@link #LATENCY_PROPERTY}, {@link #JITTER_PROPERTY},
+ * {@link #BANDWIDTH_PROPERTY} and {@link #FAILURE_RATE_PROPERTY}, so this
+ * exporter can be enabled for an entire JVM via the
+ * {@link RemoteStreamExporter#EXPORTER_PROPERTY} system property.
+ * <p>
+ * Note, this exporter is not intended for production use.
+ *
+ * @author James Ahlborn
+ */
+public class NetworkEmulatingRemoteStreamExporter
+  extends DefaultRemoteStreamExporter
+{
+  /** system property which sets the latency (in millis) for the default
+      constructor */
+  public static final String LATENCY_PROPERTY =
+    "com.healthmarketscience.rmiio.exporter.emulate.latency";
+  /** system property which sets the jitter (in millis) for the default
+      constructor */
+  public static final String JITTER_PROPERTY =
+    "com.healthmarketscience.rmiio.exporter.emulate.jitter";
+  /** system property which sets the bandwidth (in bytes per second) for the
+      default constructor */
+  public static final String BANDWIDTH_PROPERTY =
+    "com.healthmarketscience.rmiio.exporter.emulate.bandwidth";
+  /** system property which sets the failure rate (between 0 and 1) for the
+      default constructor */
+  public static final String FAILURE_RATE_PROPERTY =
+    "com.healthmarketscience.rmiio.exporter.emulate.failureRate";
+
+  private final NetworkConditions _conditions;
+
+  public NetworkEmulatingRemoteStreamExporter() {
+    this(Long.getLong(LATENCY_PROPERTY, 0L),
+         Long.getLong(JITTER_PROPERTY, 0L),
+         Long.getLong(BANDWIDTH_PROPERTY, 0L),
+         Double.parseDouble(System.getProperty(FAILURE_RATE_PROPERTY, "0")));
+  }
+
+  /**
+   * Exports streams using {@link DefaultRemoteStreamExporter#ANY_PORT}.
+   *
+   * @param latency fixed delay in milliseconds added to every call
+   * @param jitter max random delay in milliseconds added to every call
+   * @param bandwidth max bytes per second of packet data for each stream, 0
+   *                  for unlimited
+   * @param failureRate probability (between 0 and 1) that a call fails
+   */
+  public NetworkEmulatingRemoteStreamExporter(long latency, long jitter,
+                                              long bandwidth,
+                                              double failureRate)
+  {
+    this(ANY_PORT, latency, jitter, bandwidth, failureRate);
+  }
+
+  /**
+   * @param port port number to use when exporting streams
+   * @param latency fixed delay in milliseconds added to every call
+   * @param jitter max random delay in milliseconds added to every call
+   * @param bandwidth max bytes per second of packet data for each stream, 0
+   *                  for unlimited
+   * @param failureRate probability (between 0 and 1) that a call fails
+   */
+  public NetworkEmulatingRemoteStreamExporter(int port, long latency,
+                                              long jitter, long bandwidth,
+                                              double failureRate)
+  {
+    super(port);
+    if((latency < 0L) || (jitter < 0L) || (bandwidth < 0L) ||
+       (failureRate < 0.0d) || (failureRate > 1.0d)) {
+      throw new IllegalArgumentException(
+          "invalid network conditions " + latency + ", " + jitter + ", " +
+          bandwidth + ", " + failureRate);
+    }
+    _conditions = new NetworkConditions(
+        TimeUnit.MILLISECONDS.toNanos(latency),
+        TimeUnit.MILLISECONDS.toNanos(jitter), bandwidth, failureRate);
+  }
+
+  public long getLatency() {
+    return TimeUnit.NANOSECONDS.toMillis(_conditions._latencyNanos);
+  }
+
+  public long getJitter() {
+    return TimeUnit.NANOSECONDS.toMillis(_conditions._jitterNanos);
+  }
+
+  public long getBandwidth() {
+    return _conditions._bandwidth;
+  }
+
+  public double getFailureRate() {
+    return _conditions._failureRate;
+  }
+
+  @Override
+  protected Object exportImpl(RemoteStreamServer<?,?> server)
+    throws RemoteException
+  {
+    Object stub = super.exportImpl(server);
+    // the stub implements all the remote interfaces of the server (which
+    // may extend the basic remote stream interface)
+    return Proxy.newProxyInstance(
+        server.getRemoteClass().getClassLoader(),
+        stub.getClass().getInterfaces(),
+        new EmulatingHandler(stub, _conditions));
+  }
+
+  @Override
+  protected boolean isLocalShortCircuitAllowed() {
+    // the point is to go through the (emulated) network
+    return false;
+  }
+
+  /**
+   * The emulated network conditions (serializable so that they travel with
+   * the stubs).
+   */
+  private static final class NetworkConditions implements Serializable
+  {
+    private static final long serialVersionUID = 20261019L;
+
+    private final long _latencyNanos;
+    private final long _jitterNanos;
+    private final long _bandwidth;
+    private final double _failureRate;
+
+    private NetworkConditions(long latencyNanos, long jitterNanos,
+                              long bandwidth, double failureRate) {
+      _latencyNanos = latencyNanos;
+      _jitterNanos = jitterNanos;
+      _bandwidth = bandwidth;
+      _failureRate = failureRate;
+    }
+  }
+
+  /**
+   * InvocationHandler which applies the network conditions to calls on the
+   * real stub.
+   */
+  private static final class EmulatingHandler
+    implements InvocationHandler, Serializable
+  {
+    private static final long serialVersionUID = 20261019L;
+
+    private final Object _stub;
+    private final NetworkConditions _conditions;
+    /** time at which the emulated link for this stream is next free (caller
+        should synch) */
+    private transient long _linkFreeTime;
+
+    private EmulatingHandler(Object stub, NetworkConditions conditions) {
+      _stub = stub;
+      _conditions = conditions;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+      throws Throwable
+    {
+      if(method.getDeclaringClass() == Object.class) {
+        // local methods
+        if("equals".equals(method.getName())) {
+          return(proxy == args[0]);
+        }
+        return invokeStub(method, args);
+      }
+
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      long delayNanos = _conditions._latencyNanos;
+      if(_conditions._jitterNanos > 0L) {
+        delayNanos += random.nextLong(_conditions._jitterNanos + 1L);
+      }
+      boolean fail = ((_conditions._failureRate > 0.0d) &&
+                      (random.nextDouble() < _conditions._failureRate));
+      boolean failRequest = (fail && random.nextBoolean());
+
+      // outbound data (e.g. writePacket) is sent before the call is handled
+      sleep(delayNanos / 2L);
+      transmit(getPayloadLength(args));
+      if(failRequest) {
+        throw new RemoteException("emulated network failure (request lost) " +
+                                  "calling " + method.getName());
+      }
+
+      Object result = invokeStub(method, args);
+
+      // inbound data (e.g. readPacket) is received after the call is handled
+      sleep(delayNanos - (delayNanos / 2L));
+      if(result instanceof byte[]) {
+        transmit(((byte[])result).length);
+      }
+      if(fail) {
+        throw new RemoteException("emulated network failure (response lost) " +
+                                  "calling " + method.getName());
+      }
+      return result;
+    }
+
+    private Object invokeStub(Method method, Object[] args)
+      throws Throwable
+    {
+      try {
+        return method.invoke(_stub, args);
+      } catch(InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+
+    /**
+     * Waits for the given number of bytes to move across the emulated link
+     * (after any data already in flight).
+     */
+    private void transmit(int numBytes)
+      throws InterruptedIOException
+    {
+      if((_conditions._bandwidth <= 0L) || (numBytes <= 0)) {
+        return;
+      }
+      long transmitNanos = (long)((numBytes * (double)TimeUnit.SECONDS.toNanos(1L)) /
+                                  _conditions._bandwidth);
+      long doneTime = 0L;
+      synchronized(this) {
+        long now = System.nanoTime();
+        if((_linkFreeTime - now) < 0L) {
+          _linkFreeTime = now;
+        }
+        _linkFreeTime += transmitNanos;
+        doneTime = _linkFreeTime;
+      }
+      sleep(doneTime - System.nanoTime());
+    }
+
+    private static int getPayloadLength(Object[] args)
+    {
+      int length = 0;
+      if(args != null) {
+        for(Object arg : args) {
+          if(arg instanceof byte[]) {
+            length += ((byte[])arg).length;
+          }
+        }
+      }
+      return length;
+    }
+
+    private static void sleep(long nanos)
+      throws InterruptedIOException
+    {
+      if(nanos <= 0L) {
+        return;
+      }
+      try {
+        TimeUnit.NANOSECONDS.sleep(nanos);
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw (InterruptedIOException)new InterruptedIOException(
+            "interrupted during emulated network delay").initCause(e);
+      }
+    }
+  }
+
+}
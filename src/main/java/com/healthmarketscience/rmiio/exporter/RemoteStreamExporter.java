@@ -17,8 +17,11 @@ limitations under the License.
 package com.healthmarketscience.rmiio.exporter;
 
 import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.healthmarketscience.rmiio.RemoteStreamServer;
+import com.healthmarketscience.rmiio.metrics.FlightRecorderEvents;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -35,6 +38,14 @@ import org.apache.commons.logging.LogFactory;
  * RemoteStreamExporter implementations are expected to be thread-safe and
  * reentrant after construction.
  * <p>
+ * When the system property {@link #LOCAL_SHORT_CIRCUIT_PROPERTY} is
+ * <code>true</code> (or {@link #setLocalShortCircuitEnabled} is called), the
+ * stubs of exported streams are tracked so that clients in the exporting JVM
+ * can find the actual server (see {@link #getLocalServer}) and bypass the RPC
+ * framework entirely.  The stream client utilities (e.g.
+ * {@link com.healthmarketscience.rmiio.RemoteInputStreamClient}) do this
+ * automatically.
+ * <p>
  * For some helper classes which may be useful for alternative RPC
  * frameworks, see {@link RemoteStreamServerInvokerHelper},
  * {@link RemoteInputStreamClientProxy}, and
@@ -56,9 +67,29 @@ public abstract class RemoteStreamExporter
   public static final String DEFAULT_EXPORTER_CLASS_NAME =
     DefaultRemoteStreamExporter.class.getName();
 
+  /** system property which enables the same JVM short-circuit for exported
+      streams (see {@link #getLocalServer}) */
+  public static final String LOCAL_SHORT_CIRCUIT_PROPERTY =
+    "com.healthmarketscience.rmiio.exporter.localShortCircuit";
+
   /** RemoteStreamExporter instance returned by {@link #getInstance}, created
       once, on demand */
   private static RemoteStreamExporter _INSTANCE = null;
+
+  /** whether or not exported streams are tracked for the same JVM
+      short-circuit */
+  private static volatile boolean _localShortCircuit =
+    Boolean.getBoolean(LOCAL_SHORT_CIRCUIT_PROPERTY);
+  /** the currently exported servers, keyed by stub (if the short-circuit is
+      enabled) */
+  private static final Map<Object,RemoteStreamServer<?,?>> _localServers =
+    new ConcurrentHashMap<Object,RemoteStreamServer<?,?>>();
+  /** the stubs of the currently exported servers, keyed by server */
+  private static final Map<RemoteStreamServer<?,?>,Object> _localStubs =
+    new ConcurrentHashMap<RemoteStreamServer<?,?>,Object>();
+
+  /** optional limits on the streams exported by this exporter */
+  private volatile AdmissionController _admissionController;
   
   protected RemoteStreamExporter() {
   }
@@ -102,10 +133,79 @@ public abstract class RemoteStreamExporter
     return _INSTANCE;
   }
 
+  /**
+   * @return <code>true</code> if the stubs of exported streams are tracked
+   *         for the same JVM short-circuit, <code>false</code> otherwise
+   */
+  public static boolean isLocalShortCircuitEnabled() {
+    return _localShortCircuit;
+  }
+
+  /**
+   * Enables or disables tracking of the stubs of exported streams for the
+   * same JVM short-circuit.  Only affects streams exported after this call.
+   */
+  public static void setLocalShortCircuitEnabled(boolean localShortCircuit) {
+    _localShortCircuit = localShortCircuit;
+  }
+
+  /**
+   * Returns the open stream server in this JVM which was exported with the
+   * given stub, if any.  This allows a client which receives a stub for a
+   * stream exported by the same JVM to make calls directly on the server,
+   * avoiding the overhead of the RPC framework (marshalling, loopback
+   * connections, etc.).  Note, this only works for RPC frameworks where a
+   * deserialized stub is <code>equal</code> to the original stub (such as
+   * RMI), and only if the short-circuit is enabled (see
+   * {@link #isLocalShortCircuitEnabled}).
+   *
+   * @param stub a stub returned from {@link #export}, possibly deserialized
+   * @param serverClass the expected type of the server
+   * @return the local server for the given stub, or <code>null</code> if
+   *         the stub is not for an open server of the expected type
+   *         exported by this JVM
+   */
+  public static <ServerType extends RemoteStreamServer<?,?>> ServerType getLocalServer(
+      Object stub, Class<ServerType> serverClass)
+  {
+    if((stub == null) || _localServers.isEmpty()) {
+      return null;
+    }
+    RemoteStreamServer<?,?> server = _localServers.get(stub);
+    if(!serverClass.isInstance(server) || server.isClosed()) {
+      return null;
+    }
+    return serverClass.cast(server);
+  }
+
+  /**
+   * @return the controller which limits the streams exported by this
+   *         exporter, if any
+   */
+  public AdmissionController getAdmissionController() {
+    return _admissionController;
+  }
+
+  /**
+   * Sets the controller which limits the streams exported by this exporter.
+   * This should be set before any streams are exported, as any streams
+   * exported with a previous controller will not be released from it.
+   *
+   * @param admissionController the new controller, may be
+   *                            <code>null</code> for no limits
+   */
+  public void setAdmissionController(AdmissionController admissionController)
+  {
+    _admissionController = admissionController;
+  }
+
   /**
    * Exports the given stream server via the desired RPC framework and returns
    * the "remote" instance (often some sort of serializable stub object).  The
    * given stream instance should now be reachable from a remote call.
+   * <p>
+   * If this exporter has an {@link AdmissionController}, the export may wait
+   * for admission or be rejected.
    * @return the remote stub used for interacting with this stream instance
    *         from a remote client
    * @throws RemoteException if the stream instance could not be exported
@@ -114,6 +214,33 @@ public abstract class RemoteStreamExporter
           StreamServerType extends RemoteStreamServer<?,StreamType>> StreamType export(
       StreamServerType server)
     throws RemoteException
+  {
+    // wait for admission (outside of the server lock, as this may block for
+    // a while)
+    AdmissionController admissionController = _admissionController;
+    if(admissionController != null) {
+      admissionController.admit(server);
+    }
+
+    boolean exportSuccess = false;
+    try {
+      StreamType stub = exportAdmitted(server);
+      exportSuccess = true;
+      return stub;
+    } finally {
+      if(!exportSuccess && (admissionController != null)) {
+        admissionController.release(server);
+      }
+    }
+  }
+
+  /**
+   * Does the work of {@link #export} once the server has been admitted.
+   */
+  private <StreamType,
+           StreamServerType extends RemoteStreamServer<?,StreamType>> StreamType exportAdmitted(
+      StreamServerType server)
+    throws RemoteException
   {
     synchronized(server) {
 
@@ -121,31 +248,45 @@ public abstract class RemoteStreamExporter
         LOG.debug("Exporting remote object " + server);
       }
 
-      // first, do the actual export (if the exportImpl call fails, we have to
-      // assume the object was not successufully exported)
-      Object stubObj = exportImpl(server);
-
+      Object event = FlightRecorderEvents.beginExport();
       boolean exportProcessed = false;
-      StreamType stub = null;
       try {
 
-        // cast the stub to the correct type
-        stub = server.getRemoteClass().cast(stubObj);
-        
-        // let the stream do stuff if necessary
-        server.exported(this);
+        // first, do the actual export (if the exportImpl call fails, we have
+        // to assume the object was not successufully exported)
+        Object stubObj = exportImpl(server);
 
-        // all good!
-        exportProcessed = true;
-        
-      } finally {
-        if(!exportProcessed) {
-          // bailout!
-          unexport(server);
+        StreamType stub = null;
+        try {
+
+          // cast the stub to the correct type
+          stub = server.getRemoteClass().cast(stubObj);
+
+          // let the stream do stuff if necessary
+          server.exported(this);
+
+          if(_localShortCircuit && (stubObj != server) &&
+             isLocalShortCircuitAllowed()) {
+            _localServers.put(stubObj, server);
+            _localStubs.put(server, stubObj);
+          }
+
+          // all good!
+          exportProcessed = true;
+
+        } finally {
+          if(!exportProcessed) {
+            // bailout!
+            unexport(server);
+          }
         }
-      }
 
-      return stub;
+        return stub;
+
+      } finally {
+        FlightRecorderEvents.endExport(event, server, this, true,
+                                       exportProcessed);
+      }
     }
   }
   
@@ -162,9 +303,27 @@ public abstract class RemoteStreamExporter
           LOG.debug("Unexporting remote object " + server);
         }
 
+        Object stub = _localStubs.remove(server);
+        if(stub != null) {
+          _localServers.remove(stub);
+        }
+
         // do the actual unexport
-        unexportImpl(server);
-        
+        Object event = FlightRecorderEvents.beginExport();
+        boolean success = false;
+        try {
+          unexportImpl(server);
+          success = true;
+        } finally {
+          FlightRecorderEvents.endExport(event, server, this, false, success);
+
+          // the server no longer counts against the admission limits
+          AdmissionController admissionController = _admissionController;
+          if(admissionController != null) {
+            admissionController.release(server);
+          }
+        }
+
       } catch(Exception e) {
         if(LOG.isDebugEnabled()) {
           LOG.debug("Unexporting failed! for " + server, e);
@@ -174,6 +333,16 @@ public abstract class RemoteStreamExporter
     }
   }
 
+  /**
+   * Returns <code>true</code> if the streams exported by this exporter may be
+   * short-circuited by clients in the same JVM (see {@link #getLocalServer}),
+   * <code>false</code> otherwise.  Exporters whose stubs do more than make
+   * remote calls should return <code>false</code>.
+   */
+  protected boolean isLocalShortCircuitAllowed() {
+    return true;
+  }
+
   /**
    * Called by {@link #export} to do the actual export work for the relevant
    * RPC framework.  This method will be called synchronized on the given
@@ -0,0 +1,255 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.metrics;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Entry point for the Java Flight Recorder events generated by the rmiio
+ * library.  Events are generated for:
+ * <ul>
+ * <li>packets read/written by the stream servers and clients
+ *     ({@code com.healthmarketscience.rmiio.Packet})</li>
+ * <li>failed remote call attempts and back off sleeps in RemoteRetry
+ *     ({@code com.healthmarketscience.rmiio.Retry},
+ *     {@code com.healthmarketscience.rmiio.BackOff})</li>
+ * <li>stream server exports and unexports
+ *     ({@code com.healthmarketscience.rmiio.Export})</li>
+ * <li>stream server closes, including whether the close was clean
+ *     ({@code com.healthmarketscience.rmiio.Close})</li>
+ * </ul>
+ * <p>
+ * Events are only created while a flight recording is actually running, so
+ * the cost when not recording is a single volatile read per call.  The
+ * events can be enabled/disabled and thresholded individually via the normal
+ * recording settings.  If the current JVM does not support flight recording,
+ * all the methods in this class are no-ops.
+ * <p>
+ * The {@code begin*} methods return an opaque handle (possibly {@code null})
+ * which must be passed to the corresponding {@code end*} method.
+ *
+ * @author James Ahlborn
+ */
+public final class FlightRecorderEvents
+{
+  private static final Log LOG = LogFactory.getLog(FlightRecorderEvents.class);
+
+  /** ids of the currently running recordings */
+  private static final Set<Long> _runningRecordings =
+    ConcurrentHashMap.newKeySet();
+  /** whether or not any recordings are currently running */
+  private static volatile boolean _recording;
+
+  /** the recorder which creates the actual events, <code>null</code> if
+      flight recording is not supported by this JVM */
+  private static final Recorder RECORDER = init();
+
+  private FlightRecorderEvents() {}
+
+  private static Recorder init()
+  {
+    try {
+      // the jfr support is compiled separately (for java 11+), so it must be
+      // loaded reflectively
+      Recorder recorder = (Recorder)Class.forName(
+          FlightRecorderEvents.class.getPackage().getName() +
+          ".FlightRecorderSupport").getDeclaredConstructor().newInstance();
+      recorder.addListener();
+      return recorder;
+    } catch(Throwable e) {
+      // most likely the jfr api is not available in this jvm
+      if(LOG.isDebugEnabled()) {
+        LOG.debug("Flight recorder events not available", e);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * @return <code>true</code> iff flight recording is supported by this JVM
+   */
+  public static boolean isAvailable() {
+    return(RECORDER != null);
+  }
+
+  /**
+   * @return <code>true</code> iff events are currently being recorded
+   */
+  public static boolean isRecording() {
+    return _recording;
+  }
+
+  static void recordingStateChanged(long id, boolean running)
+  {
+    if(running) {
+      _runningRecordings.add(id);
+    } else {
+      _runningRecordings.remove(id);
+    }
+    _recording = !_runningRecordings.isEmpty();
+  }
+
+  /**
+   * Begins a packet event.  Should be called before the packet is read or
+   * written.
+   */
+  public static Object beginPacket() {
+    return(_recording ? RECORDER.beginPacket() : null);
+  }
+
+  /**
+   * Ends a packet event.
+   *
+   * @param event the handle returned from {@link #beginPacket}
+   * @param stream the stream server or client handling the packet
+   * @param write <code>true</code> if the packet was written,
+   *              <code>false</code> if read
+   * @param client <code>true</code> if called from the client side,
+   *               <code>false</code> if from the server side
+   * @param packetId the id of the packet
+   * @param numBytes the number of bytes in the packet, -1 for end of stream
+   * @param isReattempt <code>true</code> if the packet was a reattempt
+   */
+  public static void endPacket(Object event, Object stream, boolean write,
+                               boolean client, int packetId, int numBytes,
+                               boolean isReattempt)
+  {
+    if(event != null) {
+      RECORDER.endPacket(event, stream, write, client, packetId, numBytes,
+                         isReattempt);
+    }
+  }
+
+  /**
+   * Records a failed remote call attempt.
+   *
+   * @param caller the remote call which failed
+   * @param numTries the number of failed attempts thus far
+   * @param cause the failure
+   * @param willRetry whether or not the call will be reattempted
+   */
+  public static void retry(Object caller, int numTries, Throwable cause,
+                           boolean willRetry)
+  {
+    if(_recording) {
+      RECORDER.retry(caller, numTries, cause, willRetry);
+    }
+  }
+
+  /**
+   * Begins a back off event.  Should be called before backing off.
+   */
+  public static Object beginBackOff() {
+    return(_recording ? RECORDER.beginBackOff() : null);
+  }
+
+  /**
+   * Ends a back off event.
+   *
+   * @param event the handle returned from {@link #beginBackOff}
+   * @param numTries the number of failed attempts thus far
+   */
+  public static void endBackOff(Object event, int numTries)
+  {
+    if(event != null) {
+      RECORDER.endBackOff(event, numTries);
+    }
+  }
+
+  /**
+   * Begins an export (or unexport) event.  Should be called before the
+   * export/unexport.
+   */
+  public static Object beginExport() {
+    return(_recording ? RECORDER.beginExport() : null);
+  }
+
+  /**
+   * Ends an export (or unexport) event.
+   *
+   * @param event the handle returned from {@link #beginExport}
+   * @param server the stream server which was exported/unexported
+   * @param exporter the exporter handling the export/unexport
+   * @param export <code>true</code> for an export, <code>false</code> for an
+   *               unexport
+   * @param success whether or not the export/unexport succeeded
+   */
+  public static void endExport(Object event, Object server, Object exporter,
+                               boolean export, boolean success)
+  {
+    if(event != null) {
+      RECORDER.endExport(event, server, exporter, export, success);
+    }
+  }
+
+  /**
+   * Records the close of a stream server.
+   *
+   * @param server the stream server which was closed
+   * @param clean whether or not the stream was closed cleanly by the client
+   */
+  public static void closed(Object server, boolean clean)
+  {
+    if(_recording) {
+      RECORDER.closed(server, clean);
+    }
+  }
+
+  /**
+   * Creator of the actual flight recorder events (see the methods of the
+   * same name in FlightRecorderEvents).
+   */
+  interface Recorder
+  {
+    public void addListener();
+
+    public Object beginPacket();
+
+    public void endPacket(Object event, Object stream, boolean write,
+                          boolean client, int packetId, int numBytes,
+                          boolean isReattempt);
+
+    public void retry(Object caller, int numTries, Throwable cause,
+                      boolean willRetry);
+
+    public Object beginBackOff();
+
+    public void endBackOff(Object event, int numTries);
+
+    public Object beginExport();
+
+    public void endExport(Object event, Object server, Object exporter,
+                          boolean export, boolean success);
+
+    public void closed(Object server, boolean clean);
+  }
+
+  /**
+   * @return a description of the given object which identifies the
+   *         instance (matches the descriptions used by
+   *         {@link RemoteStreamInventory})
+   */
+  static String describe(Object obj) {
+    return obj.getClass().getName() + "@" +
+      Integer.toHexString(System.identityHashCode(obj));
+  }
+
+}
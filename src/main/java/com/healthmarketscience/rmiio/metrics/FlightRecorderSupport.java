@@ -0,0 +1,245 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+
+/**
+ * Holds all the code which directly references the {@code jdk.jfr} api.
+ * This class is compiled separately for java 11+ and is only loaded
+ * (reflectively) by {@link FlightRecorderEvents}, so the rest of the library
+ * works fine in a JVM which does not include Java Flight Recorder.
+ *
+ * @author James Ahlborn
+ */
+class FlightRecorderSupport implements FlightRecorderEvents.Recorder
+{
+  /** category for all the rmiio events */
+  private static final String CATEGORY = "RMIIO";
+
+  FlightRecorderSupport() {}
+
+  /**
+   * Adds a listener which keeps {@link FlightRecorderEvents} informed of
+   * which recordings are currently running.  Note, this does <i>not</i>
+   * force the recorder to be initialized.
+   */
+  @Override
+  public void addListener()
+  {
+    FlightRecorder.addListener(new FlightRecorderListener() {
+        @Override
+        public void recorderInitialized(FlightRecorder recorder) {
+          // pick up any recordings which were started before we were
+          // listening
+          for(Recording recording : recorder.getRecordings()) {
+            recordingStateChanged(recording);
+          }
+        }
+        @Override
+        public void recordingStateChanged(Recording recording) {
+          FlightRecorderEvents.recordingStateChanged(
+              recording.getId(),
+              (recording.getState() == RecordingState.RUNNING));
+        }
+      });
+  }
+
+  @Override
+  public Object beginPacket() {
+    PacketEvent event = new PacketEvent();
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public void endPacket(Object eventObj, Object stream, boolean write,
+                        boolean client, int packetId, int numBytes,
+                        boolean isReattempt)
+  {
+    PacketEvent event = (PacketEvent)eventObj;
+    event.end();
+    if(event.shouldCommit()) {
+      event.stream = FlightRecorderEvents.describe(stream);
+      event.operation = (write ? "write" : "read");
+      event.client = client;
+      event.packetId = packetId;
+      event.bytes = numBytes;
+      event.reattempt = isReattempt;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void retry(Object caller, int numTries, Throwable cause,
+                    boolean willRetry)
+  {
+    RetryEvent event = new RetryEvent();
+    if(event.shouldCommit()) {
+      event.caller = String.valueOf(caller);
+      event.attempt = numTries;
+      event.exceptionClass = cause.getClass();
+      event.message = cause.getMessage();
+      event.willRetry = willRetry;
+      event.commit();
+    }
+  }
+
+  @Override
+  public Object beginBackOff() {
+    BackOffEvent event = new BackOffEvent();
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public void endBackOff(Object eventObj, int numTries)
+  {
+    BackOffEvent event = (BackOffEvent)eventObj;
+    event.end();
+    if(event.shouldCommit()) {
+      event.attempt = numTries;
+      event.commit();
+    }
+  }
+
+  @Override
+  public Object beginExport() {
+    ExportEvent event = new ExportEvent();
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public void endExport(Object eventObj, Object server, Object exporter,
+                        boolean export, boolean success)
+  {
+    ExportEvent event = (ExportEvent)eventObj;
+    event.end();
+    if(event.shouldCommit()) {
+      event.stream = FlightRecorderEvents.describe(server);
+      event.exporter = exporter.getClass().getName();
+      event.operation = (export ? "export" : "unexport");
+      event.success = success;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void closed(Object server, boolean clean)
+  {
+    CloseEvent event = new CloseEvent();
+    if(event.shouldCommit()) {
+      event.stream = FlightRecorderEvents.describe(server);
+      event.clean = clean;
+      event.commit();
+    }
+  }
+
+  @Name("com.healthmarketscience.rmiio.Packet")
+  @Label("Stream Packet")
+  @Category(CATEGORY)
+  @Description("A packet read or written by a remote stream client or server")
+  @StackTrace(false)
+  static final class PacketEvent extends Event
+  {
+    @Label("Stream")
+    String stream;
+    @Label("Operation")
+    String operation;
+    @Label("Client")
+    @Description("Whether the packet was handled on the client side")
+    boolean client;
+    @Label("Packet Id")
+    int packetId;
+    @Label("Bytes")
+    @Description("Number of bytes in the packet, -1 for end of stream")
+    @DataAmount
+    int bytes;
+    @Label("Reattempt")
+    boolean reattempt;
+  }
+
+  @Name("com.healthmarketscience.rmiio.Retry")
+  @Label("Remote Call Retry")
+  @Category(CATEGORY)
+  @Description("A failed remote call attempt handled by RemoteRetry")
+  static final class RetryEvent extends Event
+  {
+    @Label("Caller")
+    String caller;
+    @Label("Attempt")
+    int attempt;
+    @Label("Exception Class")
+    Class<?> exceptionClass;
+    @Label("Message")
+    String message;
+    @Label("Will Retry")
+    boolean willRetry;
+  }
+
+  @Name("com.healthmarketscience.rmiio.BackOff")
+  @Label("Remote Call Back Off")
+  @Category(CATEGORY)
+  @Description("Time spent waiting before reattempting a failed remote call")
+  @StackTrace(false)
+  static final class BackOffEvent extends Event
+  {
+    @Label("Attempt")
+    int attempt;
+  }
+
+  @Name("com.healthmarketscience.rmiio.Export")
+  @Label("Stream Export")
+  @Category(CATEGORY)
+  @Description("A remote stream server export or unexport")
+  static final class ExportEvent extends Event
+  {
+    @Label("Stream")
+    String stream;
+    @Label("Exporter")
+    String exporter;
+    @Label("Operation")
+    String operation;
+    @Label("Success")
+    boolean success;
+  }
+
+  @Name("com.healthmarketscience.rmiio.Close")
+  @Label("Stream Close")
+  @Category(CATEGORY)
+  @Description("A remote stream server close")
+  static final class CloseEvent extends Event
+  {
+    @Label("Stream")
+    String stream;
+    @Label("Clean")
+    @Description("Whether the stream was closed cleanly by the client")
+    boolean clean;
+  }
+
+}
@@ -0,0 +1,186 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.metrics;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latency values (in nanoseconds).  Values are
+ * recorded in power-of-two buckets (bucket <code>i</code> holds values in
+ * the range <code>[2^(i-1), 2^i)</code>), so recording a value is just a
+ * few atomic increments and the reported percentiles are accurate to within
+ * a factor of two, which is plenty for spotting latency problems.
+ *
+ * @author James Ahlborn
+ */
+public class LatencyHistogram
+{
+  /** number of buckets, enough for any non-negative long value */
+  private static final int NUM_BUCKETS = 64;
+
+  /** the counts for each bucket */
+  private final AtomicLongArray _buckets = new AtomicLongArray(NUM_BUCKETS);
+  /** total number of recorded values */
+  private final LongAdder _count = new LongAdder();
+  /** sum of all recorded values */
+  private final LongAdder _total = new LongAdder();
+  /** largest recorded value */
+  private final LongAccumulator _max = new LongAccumulator(Math::max, 0L);
+
+  public LatencyHistogram() {}
+
+  /**
+   * Records the given value in this histogram.  Negative values are recorded
+   * as 0.
+   */
+  public void record(long nanos)
+  {
+    if(nanos < 0L) {
+      nanos = 0L;
+    }
+    _buckets.incrementAndGet(getBucket(nanos));
+    _count.increment();
+    _total.add(nanos);
+    _max.accumulate(nanos);
+  }
+
+  /**
+   * @return a point-in-time copy of the current state of this histogram.
+   *         note that, since recording is not synchronized, the values may
+   *         be slightly inconsistent with each other if values are being
+   *         recorded concurrently.
+   */
+  public Snapshot getSnapshot()
+  {
+    long[] buckets = new long[NUM_BUCKETS];
+    for(int i = 0; i < NUM_BUCKETS; ++i) {
+      buckets[i] = _buckets.get(i);
+    }
+    return new Snapshot(buckets, _count.sum(), _total.sum(), _max.get());
+  }
+
+  /**
+   * @return the bucket for the given (non-negative) value
+   */
+  private static int getBucket(long nanos) {
+    return(NUM_BUCKETS - Long.numberOfLeadingZeros(nanos));
+  }
+
+  /**
+   * @return the largest value which can be recorded in the given bucket
+   */
+  private static long getBucketUpperBound(int bucket) {
+    // note, this works for the last bucket as well (overflows to MAX_VALUE)
+    return((1L << bucket) - 1L);
+  }
+
+  /**
+   * Immutable copy of the state of a LatencyHistogram.
+   */
+  public static final class Snapshot implements Serializable
+  {
+    private static final long serialVersionUID = 20261019L;
+
+    private final long[] _buckets;
+    private final long _count;
+    private final long _total;
+    private final long _max;
+
+    private Snapshot(long[] buckets, long count, long total, long max) {
+      _buckets = buckets;
+      _count = count;
+      _total = total;
+      _max = max;
+    }
+
+    /** @return the number of recorded values */
+    public long getCount() {
+      return _count;
+    }
+
+    /** @return the sum of all recorded values */
+    public long getTotal() {
+      return _total;
+    }
+
+    /** @return the largest recorded value */
+    public long getMax() {
+      return _max;
+    }
+
+    /** @return the mean of all recorded values (0 if none recorded) */
+    public long getMean() {
+      return((_count > 0L) ? (_total / _count) : 0L);
+    }
+
+    /**
+     * @return the counts of the recorded values in each bucket, where bucket
+     *         <code>i</code> holds values in the range
+     *         <code>[2^(i-1), 2^i)</code> (bucket 0 holds 0)
+     */
+    public long[] getBucketCounts() {
+      return _buckets.clone();
+    }
+
+    /**
+     * Returns an estimate of the given percentile of the recorded values.
+     * The returned value is the upper bound of the bucket containing the
+     * percentile (but never more than the actual max).
+     *
+     * @param percentile the desired percentile, between 0 and 100
+     * @return the estimated value at the given percentile (0 if none
+     *         recorded)
+     */
+    public long getPercentile(double percentile)
+    {
+      if((percentile < 0.0d) || (percentile > 100.0d)) {
+        throw new IllegalArgumentException("invalid percentile " +
+                                           percentile);
+      }
+
+      long total = 0L;
+      for(long bucketCount : _buckets) {
+        total += bucketCount;
+      }
+      if(total == 0L) {
+        return 0L;
+      }
+
+      long target = Math.max(
+          1L, (long)Math.ceil(total * (percentile / 100.0d)));
+      long cur = 0L;
+      for(int i = 0; i < _buckets.length; ++i) {
+        cur += _buckets[i];
+        if(cur >= target) {
+          return Math.min(getBucketUpperBound(i), _max);
+        }
+      }
+      return _max;
+    }
+
+    @Override
+    public String toString() {
+      return "count=" + _count + ", mean=" + getMean() + ", p50=" +
+        getPercentile(50.0d) + ", p99=" + getPercentile(99.0d) + ", max=" +
+        _max;
+    }
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.metrics;
+
+import com.healthmarketscience.rmiio.RemoteStreamMonitor;
+
+/**
+ * RemoteStreamMonitor implementation which updates a
+ * {@link RemoteStreamMetrics} instance and then forwards all calls to a
+ * delegate monitor.  Instances should be created using
+ * {@link RemoteStreamMetrics#createInputMonitor} or
+ * {@link RemoteStreamMetrics#createOutputMonitor}.
+ *
+ * @author James Ahlborn
+ */
+class MetricsRemoteStreamMonitor<StreamServerType>
+  implements RemoteStreamMonitor<StreamServerType>
+{
+  /** the metrics to update */
+  private final RemoteStreamMetrics _metrics;
+  /** the direction of the streams using this monitor */
+  private final RemoteStreamMetrics.Direction _direction;
+  /** the monitor to which all calls are forwarded */
+  private final RemoteStreamMonitor<StreamServerType> _delegate;
+
+  MetricsRemoteStreamMonitor(RemoteStreamMetrics metrics,
+                             RemoteStreamMetrics.Direction direction,
+                             RemoteStreamMonitor<StreamServerType> delegate)
+  {
+    if(delegate == null) {
+      throw new IllegalArgumentException("delegate monitor cannot be null");
+    }
+    _metrics = metrics;
+    _direction = direction;
+    _delegate = delegate;
+  }
+
+  @Override
+  public void failure(StreamServerType stream, Exception e) {
+    _metrics.failure(stream);
+    _delegate.failure(stream, e);
+  }
+
+  @Override
+  public void bytesMoved(StreamServerType stream, int numBytes,
+                         boolean isReattempt) {
+    _metrics.bytesMoved(stream, _direction, numBytes, isReattempt);
+    _delegate.bytesMoved(stream, numBytes, isReattempt);
+  }
+
+  @Override
+  public void bytesSkipped(StreamServerType stream, long numBytes,
+                           boolean isReattempt) {
+    _metrics.bytesSkipped(stream, _direction, numBytes, isReattempt);
+    _delegate.bytesSkipped(stream, numBytes, isReattempt);
+  }
+
+  @Override
+  public void localBytesMoved(StreamServerType stream, int numBytes) {
+    _metrics.localBytesMoved(stream, _direction, numBytes);
+    _delegate.localBytesMoved(stream, numBytes);
+  }
+
+  @Override
+  public void localBytesSkipped(StreamServerType stream, long numBytes) {
+    _metrics.localBytesSkipped(stream, _direction, numBytes);
+    _delegate.localBytesSkipped(stream, numBytes);
+  }
+
+  @Override
+  public void packetServiced(StreamServerType stream, long serviceNanos) {
+    _metrics.packetServiced(stream, _direction, serviceNanos);
+    _delegate.packetServiced(stream, serviceNanos);
+  }
+
+  @Override
+  public void closed(StreamServerType stream, boolean clean) {
+    _metrics.closed(stream, clean);
+    _delegate.closed(stream, clean);
+  }
+
+}
@@ -0,0 +1,198 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.metrics;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.healthmarketscience.rmiio.RemoteCallMonitor;
+
+/**
+ * RemoteCallMonitor implementation which aggregates metrics per remote
+ * method: call latency, attempts, time spent backing off, and the types of
+ * the exceptions which triggered retries.  This makes it possible to tell
+ * whether slow transfers are caused by slow calls or by (otherwise silent)
+ * retries.
+ * <p>
+ * Example usage:
+ * <pre>
+ *
+ * RemoteCallMetrics callMetrics = new RemoteCallMetrics();
+ * RemoteWrapper.setDefaultRemoteCallMonitor(callMetrics);
+ *
+ * // ... later
+ * for(RemoteCallMetrics.MethodSnapshot method :
+ *       callMetrics.getSnapshots().values()) {
+ *   System.out.println(method);
+ * }
+ *
+ * </pre>
+ *
+ * @author James Ahlborn
+ */
+public class RemoteCallMetrics implements RemoteCallMonitor
+{
+  /** the metrics for each method which has been called */
+  private final ConcurrentMap<String,MethodMetrics> _methods =
+    new ConcurrentHashMap<String,MethodMetrics>();
+
+  public RemoteCallMetrics() {}
+
+  @Override
+  public void retried(String methodName, int numTries, Throwable cause) {
+    getMethod(methodName).retried(cause);
+  }
+
+  @Override
+  public void callCompleted(String methodName, long latencyNanos,
+                            int numAttempts, long backOffNanos,
+                            Throwable failure) {
+    getMethod(methodName).callCompleted(latencyNanos, numAttempts,
+                                        backOffNanos, failure);
+  }
+
+  /**
+   * @return a point-in-time copy of the metrics for each method which has
+   *         been called, keyed (and sorted) by method name
+   */
+  public Map<String,MethodSnapshot> getSnapshots() {
+    Map<String,MethodSnapshot> snapshots =
+      new TreeMap<String,MethodSnapshot>();
+    for(Map.Entry<String,MethodMetrics> e : _methods.entrySet()) {
+      snapshots.put(e.getKey(), new MethodSnapshot(e.getKey(), e.getValue()));
+    }
+    return snapshots;
+  }
+
+  /**
+   * Returns the metrics for the given method, creating them if necessary.
+   */
+  private MethodMetrics getMethod(String methodName) {
+    MethodMetrics metrics = _methods.get(methodName);
+    if(metrics == null) {
+      MethodMetrics newMetrics = new MethodMetrics();
+      metrics = _methods.putIfAbsent(methodName, newMetrics);
+      if(metrics == null) {
+        metrics = newMetrics;
+      }
+    }
+    return metrics;
+  }
+
+  /**
+   * Metrics for a single remote method.
+   */
+  private static final class MethodMetrics
+  {
+    private final LongAdder _calls = new LongAdder();
+    private final LongAdder _failures = new LongAdder();
+    private final LongAdder _attempts = new LongAdder();
+    private final LongAdder _retries = new LongAdder();
+    private final LongAdder _backOffNanos = new LongAdder();
+    private final LatencyHistogram _latency = new LatencyHistogram();
+    /** number of retries triggered by each exception type */
+    private final ConcurrentMap<String,LongAdder> _retryCauses =
+      new ConcurrentHashMap<String,LongAdder>();
+
+    private void retried(Throwable cause) {
+      _retries.increment();
+      String causeName = ((cause != null) ? cause.getClass().getName() :
+                          "unknown");
+      LongAdder count = _retryCauses.get(causeName);
+      if(count == null) {
+        LongAdder newCount = new LongAdder();
+        count = _retryCauses.putIfAbsent(causeName, newCount);
+        if(count == null) {
+          count = newCount;
+        }
+      }
+      count.increment();
+    }
+
+    private void callCompleted(long latencyNanos, int numAttempts,
+                               long backOffNanos, Throwable failure) {
+      _calls.increment();
+      if(failure != null) {
+        _failures.increment();
+      }
+      _attempts.add(numAttempts);
+      _backOffNanos.add(backOffNanos);
+      _latency.record(latencyNanos);
+    }
+  }
+
+  /**
+   * Immutable copy of the metrics for a single remote method.
+   */
+  public static final class MethodSnapshot implements Serializable
+  {
+    private static final long serialVersionUID = 20261019L;
+
+    private final String _methodName;
+    private final long _calls;
+    private final long _failures;
+    private final long _attempts;
+    private final long _retries;
+    private final long _backOffNanos;
+    private final LatencyHistogram.Snapshot _latency;
+    private final Map<String,Long> _retryCauses = new TreeMap<String,Long>();
+
+    private MethodSnapshot(String methodName, MethodMetrics metrics) {
+      _methodName = methodName;
+      _calls = metrics._calls.sum();
+      _failures = metrics._failures.sum();
+      _attempts = metrics._attempts.sum();
+      _retries = metrics._retries.sum();
+      _backOffNanos = metrics._backOffNanos.sum();
+      _latency = metrics._latency.getSnapshot();
+      for(Map.Entry<String,LongAdder> e : metrics._retryCauses.entrySet()) {
+        _retryCauses.put(e.getKey(), e.getValue().sum());
+      }
+    }
+
+    /** @return the name of the remote method */
+    public String getMethodName() { return _methodName; }
+    /** @return the number of completed calls */
+    public long getCalls() { return _calls; }
+    /** @return the number of calls which ultimately failed */
+    public long getFailures() { return _failures; }
+    /** @return the total number of attempts for all completed calls */
+    public long getAttempts() { return _attempts; }
+    /** @return the total number of retries */
+    public long getRetries() { return _retries; }
+    /** @return the total time spent backing off between attempts */
+    public long getBackOffNanos() { return _backOffNanos; }
+    /** @return the latency of the completed calls (including retries) */
+    public LatencyHistogram.Snapshot getLatency() { return _latency; }
+    /** @return the number of retries triggered by each exception type,
+                keyed by exception class name */
+    public Map<String,Long> getRetryCauses() { return _retryCauses; }
+
+    @Override
+    public String toString() {
+      return _methodName + "[calls=" + _calls + ", failures=" + _failures +
+        ", attempts=" + _attempts + ", retries=" + _retries +
+        ", backOffNanos=" + _backOffNanos + ", latency=[" + _latency +
+        "], retryCauses=" + _retryCauses + "]";
+    }
+  }
+
+}
@@ -0,0 +1,586 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.metrics;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.healthmarketscience.rmiio.RemoteStreamMonitor;
+import com.healthmarketscience.rmiio.RemoteStreamServer;
+import com.healthmarketscience.rmiio.exporter.RemoteStreamExporter;
+import com.healthmarketscience.rmiio.util.ThreadFactories;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Inventory of all the currently exported (and not yet closed) remote stream
+ * servers in this JVM, useful for tracking down "stuck" or leaked streams.
+ * Stream servers are added to the inventory when they are exported (via
+ * {@link RemoteStreamServer#exported}) and removed when they are closed (via
+ * the final monitor call in {@code RemoteStreamServer.finish}).  For each
+ * open stream, the inventory tracks the stream class, age, bytes moved, last
+ * activity time, exporter, whether or not the stream is still pinned in
+ * memory awaiting the first client call, and (for a sample of the streams)
+ * the stack at the time the stream was exported.
+ * <p>
+ * An open stream which has been idle for longer than the
+ * {@link #getLeakIdleThreshold leak idle threshold} is considered a suspected
+ * leak.  Suspected leaks can be retrieved directly, via JMX (after a call to
+ * {@link #registerMBean}), or logged periodically by setting the
+ * {@link #setLeakReportPeriod leak report period}.  The inventory holds only
+ * weak references to the stream servers, so tracking a stream will never
+ * keep it from being garbage collected (streams which are collected without
+ * ever being closed are counted and logged as well, and their entries are
+ * removed the next time a stream is registered or the inventory is
+ * queried).
+ * <p>
+ * The inventory is disabled by default (tracking adds a little overhead to
+ * every export and remote call), and may be enabled via
+ * {@link #setEnabled} or configured using the following system properties:
+ * <ul>
+ * <li>{@value #ENABLED_PROPERTY} - whether or not exported streams are
+ *     tracked (default {@code false})</li>
+ * <li>{@value #STACK_SAMPLE_INTERVAL_PROPERTY} - the interval at which
+ *     creation stacks are captured, 0 to disable (default
+ *     {@value #DEFAULT_STACK_SAMPLE_INTERVAL})</li>
+ * <li>{@value #LEAK_IDLE_THRESHOLD_PROPERTY} - the idle time in millis after
+ *     which a stream is suspected of being leaked (default
+ *     {@value #DEFAULT_LEAK_IDLE_THRESHOLD})</li>
+ * <li>{@value #LEAK_REPORT_PERIOD_PROPERTY} - the period in millis at which
+ *     suspected leaks are logged, 0 to disable (default 0)</li>
+ * </ul>
+ *
+ * @author James Ahlborn
+ */
+public class RemoteStreamInventory implements RemoteStreamInventoryMXBean
+{
+  private static final Log LOG =
+    LogFactory.getLog(RemoteStreamInventory.class);
+
+  /** the ObjectName used when registered with JMX */
+  public static final String OBJECT_NAME =
+    "com.healthmarketscience.rmiio:type=RemoteStreamInventory";
+
+  /** system property which controls whether or not exported streams are
+      tracked */
+  public static final String ENABLED_PROPERTY =
+    "com.healthmarketscience.rmiio.inventory.enabled";
+  /** system property which sets the interval at which the creation stack of
+      exported streams is captured */
+  public static final String STACK_SAMPLE_INTERVAL_PROPERTY =
+    "com.healthmarketscience.rmiio.inventory.stackSampleInterval";
+  /** system property which sets the idle time (in millis) after which a
+      stream is suspected of being leaked */
+  public static final String LEAK_IDLE_THRESHOLD_PROPERTY =
+    "com.healthmarketscience.rmiio.inventory.leakIdleThreshold";
+  /** system property which sets the period (in millis) at which suspected
+      leaks are logged */
+  public static final String LEAK_REPORT_PERIOD_PROPERTY =
+    "com.healthmarketscience.rmiio.inventory.leakReportPeriod";
+
+  /** by default, capture the creation stack of every 100th stream */
+  public static final int DEFAULT_STACK_SAMPLE_INTERVAL = 100;
+  /** by default, streams idle for 10 minutes are suspected leaks */
+  public static final long DEFAULT_LEAK_IDLE_THRESHOLD = 10L * 60L * 1000L;
+
+  private static final RemoteStreamInventory INSTANCE =
+    new RemoteStreamInventory();
+
+  /** all the currently open streams */
+  private final Set<Entry<?>> _entries = ConcurrentHashMap.newKeySet();
+  /** queue of the references to streams which have been garbage collected */
+  private final ReferenceQueue<Object> _collected =
+    new ReferenceQueue<Object>();
+  /** total number of streams which have been tracked */
+  private final AtomicLong _exportedCount = new AtomicLong();
+  private final LongAdder _closedCount = new LongAdder();
+  private final LongAdder _collectedCount = new LongAdder();
+  private volatile boolean _enabled;
+  private volatile int _stackSampleInterval;
+  private volatile long _leakIdleThreshold;
+  /** the period of the current leak report task, 0 if none */
+  private long _leakReportPeriod;
+  /** executor which runs the leak report task, if any */
+  private ScheduledExecutorService _reporter;
+  private ScheduledFuture<?> _reportTask;
+  /** the name with which this instance is registered with JMX, if any */
+  private ObjectName _objectName;
+
+  RemoteStreamInventory() {
+    _enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+    _stackSampleInterval = Integer.getInteger(STACK_SAMPLE_INTERVAL_PROPERTY,
+                                              DEFAULT_STACK_SAMPLE_INTERVAL);
+    _leakIdleThreshold = Long.getLong(LEAK_IDLE_THRESHOLD_PROPERTY,
+                                      DEFAULT_LEAK_IDLE_THRESHOLD);
+    setLeakReportPeriod(Long.getLong(LEAK_REPORT_PERIOD_PROPERTY, 0L));
+  }
+
+  /**
+   * @return the inventory for this JVM
+   */
+  public static RemoteStreamInventory getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Adds the given, newly exported, stream server to the inventory (if
+   * enabled).  Called by {@link RemoteStreamServer#exported}.
+   *
+   * @param server the newly exported stream server
+   * @param exporter the exporter which exported the server
+   * @param monitor the current monitor of the stream server
+   * @return the monitor which the stream server should use from now on (if
+   *         tracked, a monitor which updates the inventory and forwards all
+   *         calls to the given monitor)
+   */
+  public <StreamServerType> RemoteStreamMonitor<StreamServerType> register(
+      RemoteStreamServer<StreamServerType,?> server,
+      RemoteStreamExporter exporter,
+      RemoteStreamMonitor<StreamServerType> monitor)
+  {
+    if(!_enabled || (monitor instanceof Entry)) {
+      return monitor;
+    }
+
+    // don't let the entries for unclosed streams pile up if the inventory is
+    // never queried
+    purgeCollected();
+
+    Throwable creationStack = null;
+    long count = _exportedCount.getAndIncrement();
+    int sampleInterval = _stackSampleInterval;
+    if((sampleInterval > 0) && ((count % sampleInterval) == 0L)) {
+      creationStack = new Throwable("stream server exported");
+    }
+
+    Entry<StreamServerType> entry = new Entry<StreamServerType>(
+        this, server, exporter, monitor, creationStack);
+    _entries.add(entry);
+    return entry;
+  }
+
+  /**
+   * Registers this instance with the platform MBeanServer using the name
+   * {@link #OBJECT_NAME}.
+   */
+  public synchronized void registerMBean()
+    throws JMException
+  {
+    if(_objectName != null) {
+      return;
+    }
+    ObjectName objName = new ObjectName(OBJECT_NAME);
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objName);
+    _objectName = objName;
+  }
+
+  /**
+   * Unregisters this instance from the platform MBeanServer, if previously
+   * registered by a call to {@link #registerMBean}.
+   */
+  public synchronized void unregisterMBean()
+    throws JMException
+  {
+    if(_objectName == null) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(_objectName);
+    } finally {
+      _objectName = null;
+    }
+  }
+
+  /**
+   * @return the name with which this instance is registered with JMX, or
+   *         {@code null} if not registered
+   */
+  public synchronized ObjectName getObjectName() {
+    return _objectName;
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return _enabled;
+  }
+
+  @Override
+  public void setEnabled(boolean enabled) {
+    // note, disabling only affects newly exported streams
+    _enabled = enabled;
+  }
+
+  @Override
+  public int getOpenStreamCount() {
+    purgeCollected();
+    return _entries.size();
+  }
+
+  @Override
+  public long getClosedStreamCount() {
+    return _closedCount.sum();
+  }
+
+  @Override
+  public long getCollectedUnclosedStreamCount() {
+    purgeCollected();
+    return _collectedCount.sum();
+  }
+
+  @Override
+  public long getLeakIdleThreshold() {
+    return _leakIdleThreshold;
+  }
+
+  @Override
+  public void setLeakIdleThreshold(long idleThreshold) {
+    if(idleThreshold < 0L) {
+      throw new IllegalArgumentException("invalid idle threshold " +
+                                         idleThreshold);
+    }
+    _leakIdleThreshold = idleThreshold;
+  }
+
+  @Override
+  public int getStackSampleInterval() {
+    return _stackSampleInterval;
+  }
+
+  @Override
+  public void setStackSampleInterval(int sampleInterval) {
+    if(sampleInterval < 0) {
+      throw new IllegalArgumentException("invalid sample interval " +
+                                         sampleInterval);
+    }
+    _stackSampleInterval = sampleInterval;
+  }
+
+  @Override
+  public synchronized long getLeakReportPeriod() {
+    return _leakReportPeriod;
+  }
+
+  @Override
+  public synchronized void setLeakReportPeriod(long period)
+  {
+    if(period < 0L) {
+      throw new IllegalArgumentException("invalid report period " + period);
+    }
+
+    if(_reportTask != null) {
+      _reportTask.cancel(false);
+      _reportTask = null;
+    }
+    _leakReportPeriod = period;
+
+    if(period == 0L) {
+      if(_reporter != null) {
+        _reporter.shutdown();
+        _reporter = null;
+      }
+      return;
+    }
+
+    if(_reporter == null) {
+      _reporter = Executors.newSingleThreadScheduledExecutor(
+          ThreadFactories.newPlatformThreadFactory(
+              "RemoteStreamInventory-LeakReporter"));
+    }
+    _reportTask = _reporter.scheduleWithFixedDelay(
+        this::reportSuspectedLeaks, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return a point-in-time copy of the info for all the currently open
+   *         streams
+   */
+  public List<StreamInfo> getOpenStreams() {
+    purgeCollected();
+    long now = System.currentTimeMillis();
+    List<StreamInfo> infos = new ArrayList<StreamInfo>();
+    for(Entry<?> entry : _entries) {
+      infos.add(new StreamInfo(entry, now));
+    }
+    return infos;
+  }
+
+  /**
+   * @return a point-in-time copy of the info for all the currently open
+   *         streams which are suspected of being leaked (have been idle
+   *         longer than the leak idle threshold)
+   */
+  public List<StreamInfo> getSuspectedLeakStreams() {
+    long idleThreshold = _leakIdleThreshold;
+    List<StreamInfo> leaks = new ArrayList<StreamInfo>();
+    for(StreamInfo info : getOpenStreams()) {
+      if(info.getIdleTime() >= idleThreshold) {
+        leaks.add(info);
+      }
+    }
+    return leaks;
+  }
+
+  @Override
+  public String[] getOpenStreamDetails() {
+    return toStrings(getOpenStreams(), false);
+  }
+
+  @Override
+  public String[] getSuspectedLeaks() {
+    return toStrings(getSuspectedLeakStreams(), true);
+  }
+
+  @Override
+  public int reportSuspectedLeaks()
+  {
+    List<StreamInfo> leaks = getSuspectedLeakStreams();
+    for(StreamInfo info : leaks) {
+      LOG.warn("Suspected leaked stream server " + info,
+               info.getCreationStack());
+    }
+    return leaks.size();
+  }
+
+  /**
+   * @return the current number of entries, without purging the entries for
+   *         collected streams
+   */
+  int getNumEntries() {
+    return _entries.size();
+  }
+
+  /**
+   * Removes all the entries for streams which have been garbage collected
+   * without being closed.
+   */
+  private void purgeCollected()
+  {
+    Reference<?> ref = null;
+    while((ref = _collected.poll()) != null) {
+      Entry<?> entry = ((ServerRef<?>)ref)._entry;
+      // (closed streams were already removed)
+      if(_entries.remove(entry)) {
+        _collectedCount.increment();
+        LOG.warn("Stream server " + entry._description +
+                 " was garbage collected without being closed",
+                 entry._creationStack);
+      }
+    }
+  }
+
+  /**
+   * Called by an Entry when the relevant stream is closed.
+   */
+  private void closed(Entry<?> entry) {
+    if(_entries.remove(entry)) {
+      _closedCount.increment();
+    }
+  }
+
+  private static String[] toStrings(List<StreamInfo> infos,
+                                    boolean includeStack)
+  {
+    String[] strs = new String[infos.size()];
+    for(int i = 0; i < strs.length; ++i) {
+      StreamInfo info = infos.get(i);
+      StringBuilder sb = new StringBuilder().append(info);
+      if(includeStack && (info.getCreationStack() != null)) {
+        for(StackTraceElement elem : info.getCreationStack().getStackTrace()) {
+          sb.append("\n\tat ").append(elem);
+        }
+      }
+      strs[i] = sb.toString();
+    }
+    return strs;
+  }
+
+  /**
+   * Inventory entry for a single stream server.  Is also the monitor for the
+   * stream server, which updates the entry and forwards all calls to the
+   * original monitor.
+   */
+  private static final class Entry<StreamServerType>
+    implements RemoteStreamMonitor<StreamServerType>
+  {
+    private final RemoteStreamInventory _inventory;
+    private final ServerRef<StreamServerType> _server;
+    private final RemoteStreamMonitor<StreamServerType> _delegate;
+    private final String _description;
+    private final String _exporter;
+    private final Throwable _creationStack;
+    private final long _createTime = System.currentTimeMillis();
+    private volatile long _lastActivityTime = _createTime;
+    private final LongAdder _bytesMoved = new LongAdder();
+
+    private Entry(RemoteStreamInventory inventory,
+                  RemoteStreamServer<StreamServerType,?> server,
+                  RemoteStreamExporter exporter,
+                  RemoteStreamMonitor<StreamServerType> delegate,
+                  Throwable creationStack)
+    {
+      _inventory = inventory;
+      _server = new ServerRef<StreamServerType>(server, inventory._collected,
+                                                this);
+      _delegate = delegate;
+      _description = FlightRecorderEvents.describe(server);
+      _exporter = ((exporter != null) ? exporter.getClass().getName() :
+                   null);
+      _creationStack = creationStack;
+    }
+
+    private void touch() {
+      _lastActivityTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public void failure(StreamServerType stream, Exception e) {
+      touch();
+      _delegate.failure(stream, e);
+    }
+
+    @Override
+    public void bytesMoved(StreamServerType stream, int numBytes,
+                           boolean isReattempt) {
+      if(!isReattempt) {
+        _bytesMoved.add(numBytes);
+      }
+      touch();
+      _delegate.bytesMoved(stream, numBytes, isReattempt);
+    }
+
+    @Override
+    public void bytesSkipped(StreamServerType stream, long numBytes,
+                             boolean isReattempt) {
+      touch();
+      _delegate.bytesSkipped(stream, numBytes, isReattempt);
+    }
+
+    @Override
+    public void localBytesMoved(StreamServerType stream, int numBytes) {
+      _delegate.localBytesMoved(stream, numBytes);
+    }
+
+    @Override
+    public void localBytesSkipped(StreamServerType stream, long numBytes) {
+      _delegate.localBytesSkipped(stream, numBytes);
+    }
+
+    @Override
+    public void packetServiced(StreamServerType stream, long serviceNanos) {
+      _delegate.packetServiced(stream, serviceNanos);
+    }
+
+    @Override
+    public void closed(StreamServerType stream, boolean clean) {
+      _inventory.closed(this);
+      _delegate.closed(stream, clean);
+    }
+  }
+
+  /**
+   * Weak reference to a tracked stream server, which finds its way back to
+   * the relevant entry once the stream server is collected.
+   */
+  private static final class ServerRef<StreamServerType>
+    extends WeakReference<RemoteStreamServer<StreamServerType,?>>
+  {
+    private final Entry<StreamServerType> _entry;
+
+    private ServerRef(RemoteStreamServer<StreamServerType,?> server,
+                      ReferenceQueue<Object> queue,
+                      Entry<StreamServerType> entry)
+    {
+      super(server, queue);
+      _entry = entry;
+    }
+  }
+
+  /**
+   * Immutable copy of the inventory info for a single stream server.
+   */
+  public static final class StreamInfo implements Serializable
+  {
+    private static final long serialVersionUID = 20261019L;
+
+    private final String _description;
+    private final String _exporter;
+    private final long _createTime;
+    private final long _lastActivityTime;
+    private final long _snapshotTime;
+    private final long _bytesMoved;
+    private final boolean _pinned;
+    private final Throwable _creationStack;
+
+    private StreamInfo(Entry<?> entry, long now) {
+      _description = entry._description;
+      _exporter = entry._exporter;
+      _createTime = entry._createTime;
+      _lastActivityTime = entry._lastActivityTime;
+      _snapshotTime = now;
+      _bytesMoved = entry._bytesMoved.sum();
+      RemoteStreamServer<?,?> server = entry._server.get();
+      _pinned = ((server != null) && server.isPinned());
+      _creationStack = entry._creationStack;
+    }
+
+    /** @return the class name and identity of the stream server */
+    public String getDescription() { return _description; }
+    /** @return the class name of the exporter which exported the stream
+                server */
+    public String getExporter() { return _exporter; }
+    /** @return the time at which the stream server was exported */
+    public long getCreateTime() { return _createTime; }
+    /** @return the time of the last remote activity on the stream server */
+    public long getLastActivityTime() { return _lastActivityTime; }
+    /** @return the time (in millis) since the stream server was exported */
+    public long getAge() { return _snapshotTime - _createTime; }
+    /** @return the time (in millis) since the last remote activity on the
+                stream server */
+    public long getIdleTime() { return _snapshotTime - _lastActivityTime; }
+    /** @return the number of bytes moved over the wire */
+    public long getBytesMoved() { return _bytesMoved; }
+    /** @return whether or not the stream server is still pinned in memory
+                awaiting the first remote call */
+    public boolean isPinned() { return _pinned; }
+    /** @return a Throwable containing the stack at the time the stream
+                server was exported, or {@code null} if not sampled */
+    public Throwable getCreationStack() { return _creationStack; }
+
+    @Override
+    public String toString() {
+      return _description + "[age=" + getAge() + "ms, idle=" + getIdleTime() +
+        "ms, bytesMoved=" + _bytesMoved + ", exporter=" + _exporter +
+        ", pinned=" + _pinned + "]";
+    }
+  }
+
+}
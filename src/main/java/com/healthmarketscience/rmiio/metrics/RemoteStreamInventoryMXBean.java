@@ -0,0 +1,82 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.metrics;
+
+/**
+ * JMX management interface for {@link RemoteStreamInventory}.  All times are
+ * in milliseconds.
+ *
+ * @author James Ahlborn
+ */
+public interface RemoteStreamInventoryMXBean
+{
+  /** @return whether or not newly exported streams are being tracked */
+  public boolean isEnabled();
+
+  /** @param enabled whether or not newly exported streams should be
+                     tracked */
+  public void setEnabled(boolean enabled);
+
+  /** @return number of exported stream servers which have not yet been
+              closed */
+  public int getOpenStreamCount();
+
+  /** @return number of exported stream servers which have been closed */
+  public long getClosedStreamCount();
+
+  /** @return number of exported stream servers which were garbage collected
+              without ever being closed */
+  public long getCollectedUnclosedStreamCount();
+
+  /** @return a description of each of the currently open streams */
+  public String[] getOpenStreamDetails();
+
+  /** @return a description (including the creation stack, if sampled) of
+              each of the currently open streams which are suspected of
+              being leaked */
+  public String[] getSuspectedLeaks();
+
+  /** @return the idle time after which an open stream is suspected of being
+              leaked */
+  public long getLeakIdleThreshold();
+
+  /** @param idleThreshold the idle time after which an open stream is
+                          suspected of being leaked */
+  public void setLeakIdleThreshold(long idleThreshold);
+
+  /** @return the interval at which the creation stack of newly exported
+              streams is captured (0 for never, 1 for every stream) */
+  public int getStackSampleInterval();
+
+  /** @param sampleInterval the interval at which the creation stack of
+                           newly exported streams is captured (0 for never,
+                           1 for every stream) */
+  public void setStackSampleInterval(int sampleInterval);
+
+  /** @return the period at which suspected leaks are logged, 0 if not
+              currently logging */
+  public long getLeakReportPeriod();
+
+  /** @param period the period at which suspected leaks are logged, 0 to
+                   stop logging */
+  public void setLeakReportPeriod(long period);
+
+  /** Logs the currently suspected leaks immediately.
+      @return the number of suspected leaks */
+  public int reportSuspectedLeaks();
+
+}
@@ -0,0 +1,639 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.metrics;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.healthmarketscience.rmiio.RemoteInputStreamServer;
+import com.healthmarketscience.rmiio.RemoteOutputStreamServer;
+import com.healthmarketscience.rmiio.RemoteStreamMonitor;
+import com.healthmarketscience.rmiio.RemoteStreamServer;
+
+/**
+ * Aggregates metrics for any number of remote stream servers, both globally
+ * and per-stream.  Streams are tracked by creating them with a monitor
+ * returned from {@link #createInputMonitor} or {@link #createOutputMonitor}
+ * (which may wrap another, user defined, monitor).  The metrics can be
+ * retrieved programmatically via {@link #getSnapshot} and
+ * {@link #getStreamSnapshots}, or via JMX after a call to
+ * {@link #registerMBean}.
+ * <p>
+ * All counters are updated without locking, so the overhead should be low
+ * enough to leave enabled in production.  A stream is considered "active"
+ * from the first time its monitor is notified of some activity until it is
+ * closed.
+ * <p>
+ * Example usage:
+ * <pre>
+ *
+ * RemoteStreamMetrics metrics = new RemoteStreamMetrics("fileServer");
+ * metrics.registerMBean();
+ *
+ * RemoteInputStreamServer istream = new GZIPRemoteInputStream(
+ *   new FileInputStream(file), metrics.createInputMonitor());
+ *
+ * </pre>
+ *
+ * @author James Ahlborn
+ */
+public class RemoteStreamMetrics implements RemoteStreamMetricsMXBean
+{
+  /** the domain and type used for the ObjectName when registered with JMX,
+      the name of the metrics instance will be appended */
+  public static final String OBJECT_NAME_PREFIX =
+    "com.healthmarketscience.rmiio:type=RemoteStreamMetrics";
+
+  /** the name of the metrics instance returned by the default
+      constructor */
+  public static final String DEFAULT_NAME = "default";
+
+  /** the direction of data movement for a stream */
+  public enum Direction {
+    INPUT, OUTPUT;
+  }
+
+  /** the name of this metrics instance */
+  private final String _name;
+  private final LongAdder _bytesMoved = new LongAdder();
+  private final LongAdder _packetsMoved = new LongAdder();
+  private final LongAdder _reattempts = new LongAdder();
+  private final LongAdder _bytesSkipped = new LongAdder();
+  private final LongAdder _skips = new LongAdder();
+  private final LongAdder _localBytesMoved = new LongAdder();
+  private final LongAdder _localBytesSkipped = new LongAdder();
+  private final LongAdder _failures = new LongAdder();
+  private final LongAdder _closedStreams = new LongAdder();
+  private final LongAdder _dirtyClosedStreams = new LongAdder();
+  /** time spent reading packets from the local input streams */
+  private final LatencyHistogram _readPacketTimes = new LatencyHistogram();
+  /** time spent writing packets to the local output streams */
+  private final LatencyHistogram _writePacketTimes = new LatencyHistogram();
+  /** per-stream metrics for all the currently active streams */
+  private final ConcurrentMap<Object,StreamMetrics> _streams =
+    new ConcurrentHashMap<Object,StreamMetrics>();
+  /** the name with which this instance is registered with JMX, if any */
+  private ObjectName _objectName;
+
+  public RemoteStreamMetrics() {
+    this(DEFAULT_NAME);
+  }
+
+  public RemoteStreamMetrics(String name) {
+    if(name == null) {
+      throw new IllegalArgumentException("name cannot be null");
+    }
+    _name = name;
+  }
+
+  @Override
+  public String getName() {
+    return _name;
+  }
+
+  /**
+   * @return a new monitor for RemoteInputStreamServers which updates this
+   *         metrics instance
+   */
+  public RemoteStreamMonitor<RemoteInputStreamServer> createInputMonitor() {
+    return createInputMonitor(RemoteInputStreamServer.DUMMY_MONITOR);
+  }
+
+  /**
+   * @param delegate a monitor which will also be notified of all stream
+   *                 events
+   * @return a new monitor for RemoteInputStreamServers which updates this
+   *         metrics instance
+   */
+  public RemoteStreamMonitor<RemoteInputStreamServer> createInputMonitor(
+      RemoteStreamMonitor<RemoteInputStreamServer> delegate) {
+    return new MetricsRemoteStreamMonitor<RemoteInputStreamServer>(
+        this, Direction.INPUT, delegate);
+  }
+
+  /**
+   * @return a new monitor for RemoteOutputStreamServers which updates this
+   *         metrics instance
+   */
+  public RemoteStreamMonitor<RemoteOutputStreamServer> createOutputMonitor() {
+    return createOutputMonitor(RemoteOutputStreamServer.DUMMY_MONITOR);
+  }
+
+  /**
+   * @param delegate a monitor which will also be notified of all stream
+   *                 events
+   * @return a new monitor for RemoteOutputStreamServers which updates this
+   *         metrics instance
+   */
+  public RemoteStreamMonitor<RemoteOutputStreamServer> createOutputMonitor(
+      RemoteStreamMonitor<RemoteOutputStreamServer> delegate) {
+    return new MetricsRemoteStreamMonitor<RemoteOutputStreamServer>(
+        this, Direction.OUTPUT, delegate);
+  }
+
+  /**
+   * Registers this instance with the platform MBeanServer using the name
+   * {@link #OBJECT_NAME_PREFIX}{@code ,name=<name>}.
+   */
+  public synchronized void registerMBean()
+    throws JMException
+  {
+    if(_objectName != null) {
+      return;
+    }
+    ObjectName objName = new ObjectName(
+        OBJECT_NAME_PREFIX + ",name=" + ObjectName.quote(_name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objName);
+    _objectName = objName;
+  }
+
+  /**
+   * Unregisters this instance from the platform MBeanServer, if previously
+   * registered by a call to {@link #registerMBean}.
+   */
+  public synchronized void unregisterMBean()
+    throws JMException
+  {
+    if(_objectName == null) {
+      return;
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.unregisterMBean(_objectName);
+    } finally {
+      _objectName = null;
+    }
+  }
+
+  /**
+   * @return the name with which this instance is registered with JMX, or
+   *         {@code null} if not registered
+   */
+  public synchronized ObjectName getObjectName() {
+    return _objectName;
+  }
+
+  /**
+   * @return a point-in-time copy of the global metrics
+   */
+  public Snapshot getSnapshot() {
+    return new Snapshot(this);
+  }
+
+  /**
+   * @return a point-in-time copy of the metrics of all the currently active
+   *         streams
+   */
+  public List<StreamSnapshot> getStreamSnapshots() {
+    List<StreamSnapshot> snapshots = new ArrayList<StreamSnapshot>();
+    for(StreamMetrics stream : _streams.values()) {
+      snapshots.add(new StreamSnapshot(stream));
+    }
+    return snapshots;
+  }
+
+  @Override
+  public long getBytesMoved() {
+    return _bytesMoved.sum();
+  }
+
+  @Override
+  public long getPacketsMoved() {
+    return _packetsMoved.sum();
+  }
+
+  @Override
+  public long getReattempts() {
+    return _reattempts.sum();
+  }
+
+  @Override
+  public long getBytesSkipped() {
+    return _bytesSkipped.sum();
+  }
+
+  @Override
+  public long getSkips() {
+    return _skips.sum();
+  }
+
+  @Override
+  public long getLocalBytesMoved() {
+    return _localBytesMoved.sum();
+  }
+
+  @Override
+  public long getLocalBytesSkipped() {
+    return _localBytesSkipped.sum();
+  }
+
+  @Override
+  public long getFailures() {
+    return _failures.sum();
+  }
+
+  @Override
+  public int getActiveStreams() {
+    return _streams.size();
+  }
+
+  @Override
+  public long getClosedStreams() {
+    return _closedStreams.sum();
+  }
+
+  @Override
+  public long getDirtyClosedStreams() {
+    return _dirtyClosedStreams.sum();
+  }
+
+  @Override
+  public long getReadPacketCount() {
+    return _readPacketTimes.getSnapshot().getCount();
+  }
+
+  @Override
+  public long getReadPacketMeanNanos() {
+    return _readPacketTimes.getSnapshot().getMean();
+  }
+
+  @Override
+  public long getReadPacket50thPercentileNanos() {
+    return _readPacketTimes.getSnapshot().getPercentile(50.0d);
+  }
+
+  @Override
+  public long getReadPacket99thPercentileNanos() {
+    return _readPacketTimes.getSnapshot().getPercentile(99.0d);
+  }
+
+  @Override
+  public long getReadPacketMaxNanos() {
+    return _readPacketTimes.getSnapshot().getMax();
+  }
+
+  @Override
+  public long getWritePacketCount() {
+    return _writePacketTimes.getSnapshot().getCount();
+  }
+
+  @Override
+  public long getWritePacketMeanNanos() {
+    return _writePacketTimes.getSnapshot().getMean();
+  }
+
+  @Override
+  public long getWritePacket50thPercentileNanos() {
+    return _writePacketTimes.getSnapshot().getPercentile(50.0d);
+  }
+
+  @Override
+  public long getWritePacket99thPercentileNanos() {
+    return _writePacketTimes.getSnapshot().getPercentile(99.0d);
+  }
+
+  @Override
+  public long getWritePacketMaxNanos() {
+    return _writePacketTimes.getSnapshot().getMax();
+  }
+
+  @Override
+  public String[] getActiveStreamDetails() {
+    List<StreamSnapshot> snapshots = getStreamSnapshots();
+    String[] details = new String[snapshots.size()];
+    for(int i = 0; i < details.length; ++i) {
+      details[i] = snapshots.get(i).toString();
+    }
+    return details;
+  }
+
+  /**
+   * Returns the per-stream metrics for the given stream, creating them if
+   * necessary.  Activity may be reported after a stream is closed (e.g. by a
+   * concurrent read), so the per-stream metrics are never (re)created for a
+   * closed stream.
+   *
+   * @return the per-stream metrics, or {@code null} if the stream is closed
+   */
+  private StreamMetrics getStream(Object stream, Direction dir) {
+    StreamMetrics metrics = _streams.get(stream);
+    if((metrics == null) && !isClosed(stream)) {
+      StreamMetrics newMetrics = new StreamMetrics(stream, dir);
+      metrics = _streams.putIfAbsent(stream, newMetrics);
+      if(metrics == null) {
+        metrics = newMetrics;
+        if(isClosed(stream)) {
+          // the stream was closed concurrently, and closed() may already
+          // have been called, so don't leave the new metrics behind
+          _streams.remove(stream, newMetrics);
+        }
+      }
+    }
+    return metrics;
+  }
+
+  private static boolean isClosed(Object stream) {
+    // note, the server is marked closed before the monitor is notified
+    return((stream instanceof RemoteStreamServer) &&
+           ((RemoteStreamServer<?,?>)stream).isClosed());
+  }
+
+  void failure(Object stream) {
+    _failures.increment();
+    // note, failures may be reported after a stream is closed, so we don't
+    // want to (re)create the per-stream metrics here
+    StreamMetrics metrics = _streams.get(stream);
+    if(metrics != null) {
+      metrics.failure();
+    }
+  }
+
+  void bytesMoved(Object stream, Direction dir, int numBytes,
+                  boolean isReattempt) {
+    if(isReattempt) {
+      _reattempts.increment();
+    } else {
+      _bytesMoved.add(numBytes);
+      _packetsMoved.increment();
+    }
+    StreamMetrics metrics = getStream(stream, dir);
+    if(metrics != null) {
+      metrics.bytesMoved(numBytes, isReattempt);
+    }
+  }
+
+  void bytesSkipped(Object stream, Direction dir, long numBytes,
+                    boolean isReattempt) {
+    if(isReattempt) {
+      _reattempts.increment();
+    } else {
+      _bytesSkipped.add(numBytes);
+      _skips.increment();
+    }
+    StreamMetrics metrics = getStream(stream, dir);
+    if(metrics != null) {
+      metrics.bytesSkipped(numBytes, isReattempt);
+    }
+  }
+
+  void localBytesMoved(Object stream, Direction dir, int numBytes) {
+    _localBytesMoved.add(numBytes);
+    StreamMetrics metrics = getStream(stream, dir);
+    if(metrics != null) {
+      metrics.localBytesMoved(numBytes);
+    }
+  }
+
+  void localBytesSkipped(Object stream, Direction dir, long numBytes) {
+    _localBytesSkipped.add(numBytes);
+    StreamMetrics metrics = getStream(stream, dir);
+    if(metrics != null) {
+      metrics.localBytesSkipped(numBytes);
+    }
+  }
+
+  void packetServiced(Object stream, Direction dir, long serviceNanos) {
+    ((dir == Direction.INPUT) ? _readPacketTimes : _writePacketTimes)
+      .record(serviceNanos);
+    StreamMetrics metrics = getStream(stream, dir);
+    if(metrics != null) {
+      metrics.packetServiced(serviceNanos);
+    }
+  }
+
+  void closed(Object stream, boolean clean) {
+    _streams.remove(stream);
+    _closedStreams.increment();
+    if(!clean) {
+      _dirtyClosedStreams.increment();
+    }
+  }
+
+  /**
+   * Metrics for a single stream.  A given stream is generally only accessed
+   * by one thread at a time, so these are kept simple.
+   */
+  private static final class StreamMetrics
+  {
+    private final String _description;
+    private final Direction _direction;
+    private final long _createTime = System.currentTimeMillis();
+    private volatile long _lastActivityTime = _createTime;
+    private final LongAdder _bytesMoved = new LongAdder();
+    private final LongAdder _packetsMoved = new LongAdder();
+    private final LongAdder _reattempts = new LongAdder();
+    private final LongAdder _bytesSkipped = new LongAdder();
+    private final LongAdder _localBytesMoved = new LongAdder();
+    private final LongAdder _localBytesSkipped = new LongAdder();
+    private final LongAdder _failures = new LongAdder();
+    private final LongAdder _serviceNanos = new LongAdder();
+
+    private StreamMetrics(Object stream, Direction dir) {
+      _description = stream.getClass().getSimpleName() + "@" +
+        Integer.toHexString(System.identityHashCode(stream));
+      _direction = dir;
+    }
+
+    private void touch() {
+      _lastActivityTime = System.currentTimeMillis();
+    }
+
+    private void failure() {
+      _failures.increment();
+      touch();
+    }
+
+    private void bytesMoved(int numBytes, boolean isReattempt) {
+      if(isReattempt) {
+        _reattempts.increment();
+      } else {
+        _bytesMoved.add(numBytes);
+        _packetsMoved.increment();
+      }
+      touch();
+    }
+
+    private void bytesSkipped(long numBytes, boolean isReattempt) {
+      if(isReattempt) {
+        _reattempts.increment();
+      } else {
+        _bytesSkipped.add(numBytes);
+      }
+      touch();
+    }
+
+    private void localBytesMoved(int numBytes) {
+      _localBytesMoved.add(numBytes);
+    }
+
+    private void localBytesSkipped(long numBytes) {
+      _localBytesSkipped.add(numBytes);
+    }
+
+    private void packetServiced(long serviceNanos) {
+      _serviceNanos.add(serviceNanos);
+    }
+  }
+
+  /**
+   * Immutable copy of the global metrics of a RemoteStreamMetrics instance.
+   */
+  public static final class Snapshot implements Serializable
+  {
+    private static final long serialVersionUID = 20261019L;
+
+    private final String _name;
+    private final long _bytesMoved;
+    private final long _packetsMoved;
+    private final long _reattempts;
+    private final long _bytesSkipped;
+    private final long _skips;
+    private final long _localBytesMoved;
+    private final long _localBytesSkipped;
+    private final long _failures;
+    private final int _activeStreams;
+    private final long _closedStreams;
+    private final long _dirtyClosedStreams;
+    private final LatencyHistogram.Snapshot _readPacketTimes;
+    private final LatencyHistogram.Snapshot _writePacketTimes;
+
+    private Snapshot(RemoteStreamMetrics metrics) {
+      _name = metrics.getName();
+      _bytesMoved = metrics.getBytesMoved();
+      _packetsMoved = metrics.getPacketsMoved();
+      _reattempts = metrics.getReattempts();
+      _bytesSkipped = metrics.getBytesSkipped();
+      _skips = metrics.getSkips();
+      _localBytesMoved = metrics.getLocalBytesMoved();
+      _localBytesSkipped = metrics.getLocalBytesSkipped();
+      _failures = metrics.getFailures();
+      _activeStreams = metrics.getActiveStreams();
+      _closedStreams = metrics.getClosedStreams();
+      _dirtyClosedStreams = metrics.getDirtyClosedStreams();
+      _readPacketTimes = metrics._readPacketTimes.getSnapshot();
+      _writePacketTimes = metrics._writePacketTimes.getSnapshot();
+    }
+
+    public String getName() { return _name; }
+    public long getBytesMoved() { return _bytesMoved; }
+    public long getPacketsMoved() { return _packetsMoved; }
+    public long getReattempts() { return _reattempts; }
+    public long getBytesSkipped() { return _bytesSkipped; }
+    public long getSkips() { return _skips; }
+    public long getLocalBytesMoved() { return _localBytesMoved; }
+    public long getLocalBytesSkipped() { return _localBytesSkipped; }
+    public long getFailures() { return _failures; }
+    public int getActiveStreams() { return _activeStreams; }
+    public long getClosedStreams() { return _closedStreams; }
+    public long getDirtyClosedStreams() { return _dirtyClosedStreams; }
+    public LatencyHistogram.Snapshot getReadPacketTimes() {
+      return _readPacketTimes;
+    }
+    public LatencyHistogram.Snapshot getWritePacketTimes() {
+      return _writePacketTimes;
+    }
+
+    @Override
+    public String toString() {
+      return "RemoteStreamMetrics[" + _name + "]: bytesMoved=" + _bytesMoved +
+        ", packetsMoved=" + _packetsMoved + ", reattempts=" + _reattempts +
+        ", bytesSkipped=" + _bytesSkipped + ", skips=" + _skips +
+        ", localBytesMoved=" + _localBytesMoved + ", localBytesSkipped=" +
+        _localBytesSkipped + ", failures=" + _failures + ", activeStreams=" +
+        _activeStreams + ", closedStreams=" + _closedStreams +
+        ", dirtyClosedStreams=" + _dirtyClosedStreams +
+        ", readPacketTimes=[" + _readPacketTimes +
+        "], writePacketTimes=[" + _writePacketTimes + "]";
+    }
+  }
+
+  /**
+   * Immutable copy of the metrics of a single stream.
+   */
+  public static final class StreamSnapshot implements Serializable
+  {
+    private static final long serialVersionUID = 20261019L;
+
+    private final String _description;
+    private final Direction _direction;
+    private final long _createTime;
+    private final long _lastActivityTime;
+    private final long _bytesMoved;
+    private final long _packetsMoved;
+    private final long _reattempts;
+    private final long _bytesSkipped;
+    private final long _localBytesMoved;
+    private final long _localBytesSkipped;
+    private final long _failures;
+    private final long _serviceNanos;
+
+    private StreamSnapshot(StreamMetrics stream) {
+      _description = stream._description;
+      _direction = stream._direction;
+      _createTime = stream._createTime;
+      _lastActivityTime = stream._lastActivityTime;
+      _bytesMoved = stream._bytesMoved.sum();
+      _packetsMoved = stream._packetsMoved.sum();
+      _reattempts = stream._reattempts.sum();
+      _bytesSkipped = stream._bytesSkipped.sum();
+      _localBytesMoved = stream._localBytesMoved.sum();
+      _localBytesSkipped = stream._localBytesSkipped.sum();
+      _failures = stream._failures.sum();
+      _serviceNanos = stream._serviceNanos.sum();
+    }
+
+    /** @return the class name and identity hash of the stream */
+    public String getDescription() { return _description; }
+    public Direction getDirection() { return _direction; }
+    /** @return the time (in millis) of the first activity on the stream */
+    public long getCreateTime() { return _createTime; }
+    /** @return the time (in millis) of the last remote activity on the
+                stream */
+    public long getLastActivityTime() { return _lastActivityTime; }
+    public long getBytesMoved() { return _bytesMoved; }
+    public long getPacketsMoved() { return _packetsMoved; }
+    public long getReattempts() { return _reattempts; }
+    public long getBytesSkipped() { return _bytesSkipped; }
+    public long getLocalBytesMoved() { return _localBytesMoved; }
+    public long getLocalBytesSkipped() { return _localBytesSkipped; }
+    public long getFailures() { return _failures; }
+    /** @return the total time (in nanos) spent reading/writing packets from
+                the local stream */
+    public long getServiceNanos() { return _serviceNanos; }
+
+    @Override
+    public String toString() {
+      return _description + "(" + _direction + "): ageMillis=" +
+        (System.currentTimeMillis() - _createTime) + ", idleMillis=" +
+        (System.currentTimeMillis() - _lastActivityTime) + ", bytesMoved=" +
+        _bytesMoved + ", packetsMoved=" + _packetsMoved + ", reattempts=" +
+        _reattempts + ", bytesSkipped=" + _bytesSkipped +
+        ", localBytesMoved=" + _localBytesMoved + ", localBytesSkipped=" +
+        _localBytesSkipped + ", failures=" + _failures + ", serviceNanos=" +
+        _serviceNanos;
+    }
+  }
+
+}
@@ -0,0 +1,103 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.metrics;
+
+/**
+ * JMX management interface for {@link RemoteStreamMetrics}.  All times are
+ * in nanoseconds.
+ *
+ * @author James Ahlborn
+ */
+public interface RemoteStreamMetricsMXBean
+{
+  /** @return the name of the metrics instance */
+  public String getName();
+
+  /** @return total number of bytes moved over the wire (not counting
+              reattempts) */
+  public long getBytesMoved();
+
+  /** @return total number of packets moved over the wire (not counting
+              reattempts) */
+  public long getPacketsMoved();
+
+  /** @return total number of reattempted packet/skip calls */
+  public long getReattempts();
+
+  /** @return total number of bytes skipped over the wire (not counting
+              reattempts) */
+  public long getBytesSkipped();
+
+  /** @return total number of skip calls (not counting reattempts) */
+  public long getSkips();
+
+  /** @return total number of bytes moved to/from the local streams */
+  public long getLocalBytesMoved();
+
+  /** @return total number of bytes skipped in the local streams */
+  public long getLocalBytesSkipped();
+
+  /** @return total number of stream failures */
+  public long getFailures();
+
+  /** @return number of streams which have been used but not yet closed */
+  public int getActiveStreams();
+
+  /** @return total number of closed streams */
+  public long getClosedStreams();
+
+  /** @return total number of streams which were not closed cleanly */
+  public long getDirtyClosedStreams();
+
+  /** @return number of packets read from the local input streams */
+  public long getReadPacketCount();
+
+  /** @return mean time spent reading a packet from a local input stream */
+  public long getReadPacketMeanNanos();
+
+  /** @return estimated median time spent reading a packet from a local
+              input stream */
+  public long getReadPacket50thPercentileNanos();
+
+  /** @return estimated 99th percentile time spent reading a packet from a
+              local input stream */
+  public long getReadPacket99thPercentileNanos();
+
+  /** @return max time spent reading a packet from a local input stream */
+  public long getReadPacketMaxNanos();
+
+  /** @return number of packets written to the local output streams */
+  public long getWritePacketCount();
+
+  /** @return mean time spent writing a packet to a local output stream */
+  public long getWritePacketMeanNanos();
+
+  /** @return estimated median time spent writing a packet to a local
+              output stream */
+  public long getWritePacket50thPercentileNanos();
+
+  /** @return estimated 99th percentile time spent writing a packet to a
+              local output stream */
+  public long getWritePacket99thPercentileNanos();
+
+  /** @return max time spent writing a packet to a local output stream */
+  public long getWritePacketMaxNanos();
+
+  /** @return a description of each of the currently active streams */
+  public String[] getActiveStreamDetails();
+
+}
@@ -220,6 +220,31 @@ public abstract class EncodingInputStream extends PacketInputStream
   }
 
 
+  /**
+   * Removes the next packet of data currently buffered by this stream,
+   * without doing any more encoding.  Useful for subclasses which can move
+   * the encoded data directly to its destination (after first draining any
+   * buffered data).
+   *
+   * @return the next buffered packet, or <code>null</code> if no data is
+   *         currently buffered
+   */
+  protected byte[] readBufferedPacket()
+    throws IOException
+  {
+    throwIfClosed();
+    return(_overflowBuf.hasRemaining() ? _overflowBuf.readPacket() : null);
+  }
+
+  /**
+   * @return <code>true</code> if the encoder has closed the linked
+   *         OutputStream (no more data will be encoded), <code>false</code>
+   *         otherwise
+   */
+  protected boolean isEncodingComplete() {
+    return _gotEOF;
+  }
+
   private void refillPacket(boolean readPartial)
     throws IOException
   {
@@ -0,0 +1,124 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Utility for creating the threads used by the rmiio utilities (and useful
+ * for the producer/consumer threads of client code, e.g. the threads on
+ * either end of an {@link com.healthmarketscience.rmiio.IOIteratorPipe}).
+ * <p>
+ * When the system property {@link #VIRTUAL_THREADS_PROPERTY} is
+ * <code>true</code> and the JVM supports virtual threads (java 21+), the
+ * returned factories create virtual threads, which are much cheaper than
+ * platform threads when running many thousands of concurrent transfers.
+ * Otherwise, the returned factories create platform daemon threads.
+ *
+ * @author James Ahlborn
+ */
+public class ThreadFactories
+{
+  private static final Log LOG = LogFactory.getLog(ThreadFactories.class);
+
+  /** system property which enables the use of virtual threads (if
+      supported by the JVM) */
+  public static final String VIRTUAL_THREADS_PROPERTY =
+    "com.healthmarketscience.rmiio.virtualThreads";
+
+  /** "Thread.ofVirtual()" method, if virtual threads are enabled and
+      supported */
+  private static final Method OF_VIRTUAL_METHOD = loadOfVirtualMethod();
+
+  private ThreadFactories() {}
+
+  /**
+   * @return <code>true</code> if the factories returned by this class
+   *         create virtual threads, <code>false</code> otherwise
+   */
+  public static boolean isUsingVirtualThreads() {
+    return(OF_VIRTUAL_METHOD != null);
+  }
+
+  /**
+   * Returns a ThreadFactory which creates virtual threads (if enabled and
+   * supported), otherwise platform daemon threads.
+   *
+   * @param namePrefix prefix for the names of the created threads (a
+   *                   sequence number will be appended)
+   */
+  public static ThreadFactory newThreadFactory(String namePrefix)
+  {
+    if(OF_VIRTUAL_METHOD != null) {
+      try {
+        return newVirtualThreadFactory(namePrefix);
+      } catch(Exception e) {
+        LOG.warn("Failed creating virtual thread factory, " +
+                 "using platform threads", e);
+      }
+    }
+    return newPlatformThreadFactory(namePrefix);
+  }
+
+  /**
+   * Returns a ThreadFactory which creates platform daemon threads.
+   *
+   * @param namePrefix prefix for the names of the created threads (a
+   *                   sequence number will be appended)
+   */
+  public static ThreadFactory newPlatformThreadFactory(final String namePrefix)
+  {
+    final AtomicInteger threadNum = new AtomicInteger();
+    return r -> {
+      Thread t = new Thread(r, namePrefix + "-" + threadNum.getAndIncrement());
+      t.setDaemon(true);
+      return t;
+    };
+  }
+
+  private static ThreadFactory newVirtualThreadFactory(String namePrefix)
+    throws Exception
+  {
+    // Thread.ofVirtual().name(namePrefix + "-", 0).factory(), using
+    // reflection so that this class can be used on older jvms
+    Object builder = OF_VIRTUAL_METHOD.invoke(null);
+    Class<?> builderClass = OF_VIRTUAL_METHOD.getReturnType();
+    builder = builderClass.getMethod("name", String.class, Long.TYPE)
+      .invoke(builder, namePrefix + "-", 0L);
+    return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+  }
+
+  private static Method loadOfVirtualMethod()
+  {
+    if(!Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)) {
+      return null;
+    }
+    try {
+      return Thread.class.getMethod("ofVirtual");
+    } catch(Exception e) {
+      LOG.info("Virtual threads are not supported by this jvm, " +
+               "using platform threads");
+      return null;
+    }
+  }
+
+}
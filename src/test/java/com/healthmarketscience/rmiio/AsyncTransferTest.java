@@ -0,0 +1,225 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * @author James Ahlborn
+ */
+public class AsyncTransferTest extends TestCase
+{
+  private static final int NUM_TRANSFERS = 20;
+
+  private ExecutorService _executor;
+
+  public AsyncTransferTest(String name) {
+    super(name);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    // far fewer threads than concurrent transfers
+    _executor = Executors.newFixedThreadPool(2);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    _executor.shutdownNow();
+  }
+
+  public void testDownload() throws Exception
+  {
+    byte[] data = newData(RemoteInputStreamServer.DEFAULT_CHUNK_SIZE * 3 + 17);
+
+    List<ByteArrayOutputStream> outs = new ArrayList<ByteArrayOutputStream>();
+    List<Future<TransferStats>> futures =
+      new ArrayList<Future<TransferStats>>();
+    for(int i = 0; i < NUM_TRANSFERS; ++i) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      outs.add(out);
+      futures.add(RemoteInputStreamClient.transferToAsync(
+                      new SimpleRemoteInputStream(
+                          new ByteArrayInputStream(data)),
+                      Channels.newChannel(out), _executor));
+    }
+
+    for(int i = 0; i < NUM_TRANSFERS; ++i) {
+      TransferStats stats = futures.get(i).get(30, TimeUnit.SECONDS);
+      assertEquals(data.length, stats.getBytes());
+      assertTrue(stats.getChunks() >= 4L);
+      assertTrue(Arrays.equals(data, outs.get(i).toByteArray()));
+    }
+  }
+
+  public void testFileRoundTrip() throws Exception
+  {
+    byte[] data = newData(RemoteInputStreamServer.DEFAULT_CHUNK_SIZE * 2 + 5);
+    Path srcFile = Files.createTempFile("rmiio_async", ".dat");
+    Path dstFile = Files.createTempFile("rmiio_async", ".dat");
+    try {
+      Files.write(srcFile, data);
+
+      ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+      TransferStats stats = RemoteOutputStreamClient.transferFromAsync(
+          new SimpleRemoteOutputStream(uploaded), srcFile, _executor)
+        .get(30, TimeUnit.SECONDS);
+      assertEquals(data.length, stats.getBytes());
+      assertTrue(Arrays.equals(data, uploaded.toByteArray()));
+
+      stats = RemoteInputStreamClient.transferToAsync(
+          new SimpleRemoteInputStream(
+              new ByteArrayInputStream(uploaded.toByteArray())),
+          dstFile, _executor)
+        .get(30, TimeUnit.SECONDS);
+      assertEquals(data.length, stats.getBytes());
+      assertTrue(Arrays.equals(data, Files.readAllBytes(dstFile)));
+    } finally {
+      Files.deleteIfExists(srcFile);
+      Files.deleteIfExists(dstFile);
+    }
+  }
+
+  public void testFailedUpload() throws Exception
+  {
+    for(boolean compress : new boolean[]{false, true}) {
+      final boolean[] writeSuccess = new boolean[]{true};
+      RemoteOutputStreamServer remoteOut = (compress ?
+        new GZIPRemoteOutputStream(new ByteArrayOutputStream()) {
+          private static final long serialVersionUID = 0L;
+          @Override
+          protected void closeImpl(boolean success) throws IOException {
+            writeSuccess[0] = success;
+            super.closeImpl(success);
+          }
+        } :
+        new SimpleRemoteOutputStream(new ByteArrayOutputStream()) {
+          private static final long serialVersionUID = 0L;
+          @Override
+          protected void closeImpl(boolean success) throws IOException {
+            writeSuccess[0] = success;
+            super.closeImpl(success);
+          }
+        });
+      try {
+        RemoteOutputStreamClient.transferFromAsync(
+            remoteOut, newFailingChannel(), _executor)
+          .get(30, TimeUnit.SECONDS);
+        fail("ExecutionException should have been thrown");
+      } catch(ExecutionException e) {
+        assertEquals("disk error", e.getCause().getMessage());
+      }
+      // server was closed as a failed transfer
+      assertTrue(remoteOut.isClosed());
+      assertFalse(writeSuccess[0]);
+    }
+  }
+
+  public void testFailedDownload() throws Exception
+  {
+    byte[] data = newData(RemoteInputStreamServer.DEFAULT_CHUNK_SIZE * 3 + 1);
+    WritableByteChannel badOut = new WritableByteChannel() {
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+          throw new IOException("disk full");
+        }
+        @Override
+        public boolean isOpen() { return true; }
+        @Override
+        public void close() {}
+      };
+
+    for(boolean compress : new boolean[]{false, true}) {
+      final boolean[] readSuccess = new boolean[]{true};
+      RemoteInputStreamServer server = (compress ?
+        new GZIPRemoteInputStream(new ByteArrayInputStream(data)) {
+          private static final long serialVersionUID = 0L;
+          @Override
+          protected void closeImpl(boolean success) throws IOException {
+            readSuccess[0] = success;
+            super.closeImpl(success);
+          }
+        } :
+        new SimpleRemoteInputStream(new ByteArrayInputStream(data)) {
+          private static final long serialVersionUID = 0L;
+          @Override
+          protected void closeImpl(boolean success) throws IOException {
+            readSuccess[0] = success;
+            super.closeImpl(success);
+          }
+        });
+      try {
+        RemoteInputStreamClient.transferToAsync(server, badOut, _executor)
+          .get(30, TimeUnit.SECONDS);
+        fail("ExecutionException should have been thrown");
+      } catch(ExecutionException e) {
+        assertEquals("disk full", e.getCause().getMessage());
+      }
+      // server was closed as a failed transfer
+      assertTrue(server.isClosed());
+      assertFalse(readSuccess[0]);
+    }
+  }
+
+  private static ReadableByteChannel newFailingChannel()
+  {
+    return new ReadableByteChannel() {
+        private boolean _first = true;
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+          if(_first) {
+            _first = false;
+            dst.put(new byte[10]);
+            return 10;
+          }
+          throw new IOException("disk error");
+        }
+        @Override
+        public boolean isOpen() { return true; }
+        @Override
+        public void close() {}
+      };
+  }
+
+  private static byte[] newData(int len)
+  {
+    byte[] data = new byte[len];
+    for(int i = 0; i < data.length; ++i) {
+      data[i] = (byte)i;
+    }
+    return data;
+  }
+
+}
@@ -0,0 +1,121 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * @author James Ahlborn
+ */
+public class BandwidthLimiterTest extends TestCase
+{
+  private static final int DATA_SIZE =
+    RemoteInputStreamServer.DEFAULT_CHUNK_SIZE * 8;
+
+  public BandwidthLimiterTest(String name) {
+    super(name);
+  }
+
+  public void testLimiter() throws Exception
+  {
+    BandwidthLimiter limiter = new BandwidthLimiter(1000L, 100L);
+    assertEquals(100L, limiter.getAvailable());
+    limiter.consume(300L);
+    assertTrue(limiter.getAvailable() < 0L);
+
+    long startTime = System.currentTimeMillis();
+    limiter.await();
+    long elapsed = System.currentTimeMillis() - startTime;
+    assertTrue(elapsed >= 150L);
+    assertTrue(limiter.getAvailable() >= 0L);
+
+    // changing the rate wakes up waiters
+    limiter.consume(10000L);
+    final BandwidthLimiter fLimiter = limiter;
+    Thread t = new Thread(() -> {
+        try {
+          Thread.sleep(50L);
+        } catch(InterruptedException ignored) {
+          // ignored
+        }
+        fLimiter.setBytesPerSecond(BandwidthLimiter.UNLIMITED);
+      });
+    t.start();
+    startTime = System.currentTimeMillis();
+    limiter.await();
+    elapsed = System.currentTimeMillis() - startTime;
+    t.join();
+    assertTrue(limiter.isUnlimited());
+    assertTrue(elapsed < 5000L);
+  }
+
+  public void testStreamLimits() throws Exception
+  {
+    byte[] data = new byte[DATA_SIZE];
+    long rate = DATA_SIZE * 4;
+
+    // per-stream limit
+    SimpleRemoteInputStream in = new SimpleRemoteInputStream(
+        new ByteArrayInputStream(data));
+    in.setBandwidthLimiter(new BandwidthLimiter(rate, 0L));
+    long elapsed = readAll(in);
+    assertTrue("elapsed " + elapsed, elapsed >= 200L);
+
+    // global limit, also applied to writes
+    RemoteStreamServer.setGlobalBandwidthLimiter(
+        new BandwidthLimiter(rate, 0L));
+    try {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      SimpleRemoteOutputStream out = new SimpleRemoteOutputStream(bout);
+      byte[] packet = new byte[RemoteInputStreamServer.DEFAULT_CHUNK_SIZE];
+      long startTime = System.currentTimeMillis();
+      for(int i = 0; i < 8; ++i) {
+        out.writePacket(packet, i);
+      }
+      out.close(true);
+      elapsed = System.currentTimeMillis() - startTime;
+      assertTrue("elapsed " + elapsed, elapsed >= 200L);
+      assertEquals(DATA_SIZE, bout.size());
+    } finally {
+      RemoteStreamServer.setGlobalBandwidthLimiter(null);
+    }
+
+    // no limits
+    in = new SimpleRemoteInputStream(new ByteArrayInputStream(data));
+    assertNull(in.getBandwidthLimiter());
+    elapsed = readAll(in);
+    assertTrue("elapsed " + elapsed, elapsed < 200L);
+  }
+
+  private static long readAll(RemoteInputStreamServer in) throws Exception
+  {
+    long startTime = System.currentTimeMillis();
+    int numRead = 0;
+    int packetId = 0;
+    byte[] packet = null;
+    while((packet = in.readPacket(packetId++)) != null) {
+      numRead += packet.length;
+    }
+    in.close(true);
+    assertEquals(DATA_SIZE, numRead);
+    return System.currentTimeMillis() - startTime;
+  }
+
+}
@@ -0,0 +1,244 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * @author James Ahlborn
+ */
+public class ChunkCacheTest extends TestCase
+{
+  private static final int CHUNK_SIZE = 16 * 1024;
+
+  private Path _dir;
+  private Path _file;
+
+  public ChunkCacheTest(String name) {
+    super(name);
+  }
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    _dir = Files.createTempDirectory("rmiio_chunks");
+    _file = Files.createTempFile("rmiio_chunked", ".dat");
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    try(DirectoryStream<Path> dirStream = Files.newDirectoryStream(_dir)) {
+      for(Path file : dirStream) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(_dir);
+    Files.deleteIfExists(_file);
+  }
+
+  public void testCachedDownload() throws Exception
+  {
+    // 4 chunks (plus a partial chunk), where the third chunk is a repeat of
+    // the first
+    byte[] data = newData((CHUNK_SIZE * 4) + 100, 42L);
+    System.arraycopy(data, 0, data, CHUNK_SIZE * 2, CHUNK_SIZE);
+    Files.write(_file, data);
+
+    ChunkCache cache = new ChunkCache(_dir, 1024 * 1024);
+
+    FileRemoteInputStream server = newServer();
+    assertTrue(Arrays.equals(data, readAll(
+                   RemoteInputStreamClient.wrapCached(server.export(),
+                                                      cache))));
+    assertTrue(server.isClosed());
+    assertEquals(4, cache.getNumChunks());
+    assertEquals(4, cache.getNumMisses());
+    assertEquals(1, cache.getNumHits());
+    assertEquals(data.length - CHUNK_SIZE, cache.getSize());
+
+    // the second download is served entirely from the cache
+    server = newServer();
+    assertTrue(Arrays.equals(data, readAll(
+                   RemoteInputStreamClient.wrapCached(server.export(),
+                                                      cache))));
+    assertTrue(server.isClosed());
+    assertEquals(4, cache.getNumMisses());
+    assertEquals(6, cache.getNumHits());
+
+    // as is a download using a new cache on the same directory
+    cache = new ChunkCache(_dir, 1024 * 1024);
+    assertEquals(4, cache.getNumChunks());
+    server = newServer();
+    assertTrue(Arrays.equals(data, readAll(
+                   RemoteInputStreamClient.wrapCached(server.export(),
+                                                      cache))));
+    assertEquals(0, cache.getNumMisses());
+    assertEquals(5, cache.getNumHits());
+
+    // a changed file gets a new manifest
+    data[CHUNK_SIZE + 5] = (byte)~data[CHUNK_SIZE + 5];
+    Files.write(_file, data);
+    Files.setLastModifiedTime(
+        _file, FileTime.fromMillis(System.currentTimeMillis() + 5000L));
+    server = newServer();
+    assertTrue(Arrays.equals(data, readAll(
+                   RemoteInputStreamClient.wrapCached(server.export(),
+                                                      cache))));
+    assertEquals(1, cache.getNumMisses());
+    assertEquals(5, cache.getNumChunks());
+  }
+
+  public void testSkipAndFallback() throws Exception
+  {
+    byte[] data = newData((CHUNK_SIZE * 3) + 100, 17L);
+    Files.write(_file, data);
+
+    ChunkCache cache = new ChunkCache(_dir, 1024 * 1024);
+
+    // skipping a whole chunk does not fetch it
+    FileRemoteInputStream server = newServer();
+    InputStream in = RemoteInputStreamClient.wrapCached(server.export(),
+                                                        cache);
+    assertEquals(10, in.read(new byte[10]));
+    assertEquals(CHUNK_SIZE * 2, in.skip(CHUNK_SIZE * 2));
+    byte[] rest = readAll(in);
+    assertTrue(Arrays.equals(
+                   Arrays.copyOfRange(data, (CHUNK_SIZE * 2) + 10,
+                                      data.length), rest));
+    assertEquals(3, cache.getNumMisses());
+    assertEquals(3, cache.getNumChunks());
+    assertTrue(server.isClosed());
+
+    // normal streams are read normally
+    SimpleRemoteInputStream simpleServer = new SimpleRemoteInputStream(
+        new ByteArrayInputStream(data));
+    assertTrue(Arrays.equals(data, readAll(
+                   RemoteInputStreamClient.wrapCached(simpleServer.export(),
+                                                      cache))));
+    assertTrue(simpleServer.isClosed());
+    assertEquals(3, cache.getNumMisses());
+  }
+
+  public void testEviction() throws Exception
+  {
+    ChunkCache cache = new ChunkCache(_dir, (CHUNK_SIZE * 2) + 10);
+
+    byte[] chunk1 = newData(CHUNK_SIZE, 1L);
+    byte[] chunk2 = newData(CHUNK_SIZE, 2L);
+    byte[] chunk3 = newData(CHUNK_SIZE, 3L);
+    cache.put(ChunkManifest.HASH_ALGORITHM, hash(chunk1), chunk1);
+    cache.put(ChunkManifest.HASH_ALGORITHM, hash(chunk2), chunk2);
+
+    // use chunk1, so chunk2 is least recently used
+    assertTrue(Arrays.equals(chunk1, cache.get(ChunkManifest.HASH_ALGORITHM,
+                                               hash(chunk1))));
+    cache.put(ChunkManifest.HASH_ALGORITHM, hash(chunk3), chunk3);
+
+    assertEquals(2, cache.getNumChunks());
+    assertEquals(CHUNK_SIZE * 2, cache.getSize());
+    assertNull(cache.get(ChunkManifest.HASH_ALGORITHM, hash(chunk2)));
+    assertNotNull(cache.get(ChunkManifest.HASH_ALGORITHM, hash(chunk1)));
+    assertNotNull(cache.get(ChunkManifest.HASH_ALGORITHM, hash(chunk3)));
+    assertEquals(2, countFiles());
+
+    // corrupt data is discarded
+    Files.write(_dir.resolve(getFileName(chunk3)), chunk2);
+    assertNull(cache.get(ChunkManifest.HASH_ALGORITHM, hash(chunk3)));
+    assertEquals(1, cache.getNumChunks());
+    assertEquals(1, countFiles());
+
+    // a smaller cache on the same directory evicts the excess (least
+    // recently used first)
+    cache.put(ChunkManifest.HASH_ALGORITHM, hash(chunk3), chunk3);
+    Files.setLastModifiedTime(_dir.resolve(getFileName(chunk1)),
+                              FileTime.fromMillis(1000L));
+    cache = new ChunkCache(_dir, CHUNK_SIZE);
+    assertEquals(1, cache.getNumChunks());
+    assertEquals(1, countFiles());
+    assertNotNull(cache.get(ChunkManifest.HASH_ALGORITHM, hash(chunk3)));
+
+    cache.clear();
+    assertEquals(0, cache.getNumChunks());
+    assertEquals(0, countFiles());
+  }
+
+  private FileRemoteInputStream newServer() throws IOException
+  {
+    return new FileRemoteInputStream(
+        _file, RemoteInputStreamServer.DUMMY_MONITOR,
+        RemoteInputStreamServer.DEFAULT_CHUNK_SIZE, CHUNK_SIZE);
+  }
+
+  private int countFiles() throws IOException
+  {
+    int count = 0;
+    try(DirectoryStream<Path> dirStream = Files.newDirectoryStream(_dir)) {
+      for(Path ignored : dirStream) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  private static String getFileName(byte[] chunk) throws Exception
+  {
+    StringBuilder sb = new StringBuilder("sha256-");
+    for(byte b : hash(chunk)) {
+      sb.append(String.format("%02x", b & 0xFF));
+    }
+    return sb.toString();
+  }
+
+  private static byte[] hash(byte[] chunk) throws Exception
+  {
+    return MessageDigest.getInstance(ChunkManifest.HASH_ALGORITHM)
+      .digest(chunk);
+  }
+
+  private static byte[] readAll(InputStream in) throws Exception
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[1000];
+    int numRead = 0;
+    while((numRead = in.read(buf)) >= 0) {
+      out.write(buf, 0, numRead);
+    }
+    in.close();
+    return out.toByteArray();
+  }
+
+  private static byte[] newData(int len, long seed)
+  {
+    byte[] data = new byte[len];
+    new Random(seed).nextBytes(data);
+    return data;
+  }
+
+}
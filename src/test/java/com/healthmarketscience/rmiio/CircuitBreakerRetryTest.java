@@ -0,0 +1,172 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.rmi.server.RemoteObject;
+import java.rmi.server.RemoteRef;
+
+import junit.framework.TestCase;
+
+/**
+ * @author James Ahlborn
+ */
+public class CircuitBreakerRetryTest extends TestCase
+{
+
+  public CircuitBreakerRetryTest(String name) {
+    super(name);
+  }
+
+  public void testCircuit() throws Exception
+  {
+    CircuitBreakerRetry retry = new CircuitBreakerRetry(
+        "testCircuit:1234", RemoteRetry.NEVER, 2, 50L);
+    // instances for the same endpoint share the circuit
+    CircuitBreakerRetry otherRetry = new CircuitBreakerRetry(
+        "testCircuit:1234", RemoteRetry.NEVER);
+    assertTrue(retry.isClosed());
+
+    final boolean[] endpointDown = new boolean[]{true};
+    final int[] numCalls = new int[]{0};
+    RemoteRetry.ICaller<String> caller = () -> {
+      ++numCalls[0];
+      if(endpointDown[0]) {
+        throw new RemoteException("endpoint down");
+      }
+      return "success";
+    };
+
+    // 2 failures open the circuit
+    for(int i = 0; i < 2; ++i) {
+      try {
+        retry.call(caller, RemoteException.class);
+        fail("RemoteException should have been thrown");
+      } catch(RemoteException e) {
+        assertFalse(e instanceof CircuitBreakerRetry.OpenException);
+      }
+    }
+    assertFalse(retry.isClosed());
+    assertFalse(otherRetry.isClosed());
+    assertEquals(2, numCalls[0]);
+
+    // now calls fail fast
+    try {
+      otherRetry.call(caller, RemoteException.class);
+      fail("OpenException should have been thrown");
+    } catch(CircuitBreakerRetry.OpenException ignored) {
+      // success
+    }
+    assertEquals(2, numCalls[0]);
+
+    // failed probe re-opens the circuit
+    Thread.sleep(60L);
+    try {
+      retry.call(caller, RemoteException.class);
+      fail("RemoteException should have been thrown");
+    } catch(RemoteException e) {
+      assertFalse(e instanceof CircuitBreakerRetry.OpenException);
+    }
+    assertEquals(3, numCalls[0]);
+    assertFalse(retry.isClosed());
+
+    // successful probe closes the circuit
+    endpointDown[0] = false;
+    Thread.sleep(60L);
+    assertEquals("success", retry.call(caller, RemoteException.class));
+    assertTrue(retry.isClosed());
+
+    // non-remote failures do not open the circuit
+    for(int i = 0; i < 3; ++i) {
+      try {
+        retry.call(() -> {
+            throw new IOException("remote failure");
+          }, IOException.class);
+        fail("IOException should have been thrown");
+      } catch(IOException ignored) {
+        // success
+      }
+    }
+    assertTrue(retry.isClosed());
+  }
+
+  public void testEndpoint() throws Exception
+  {
+    assertNull(CircuitBreakerRetry.getEndpoint("notAStub"));
+    assertSame(RemoteRetry.SIMPLE,
+               CircuitBreakerRetry.forStub("notAStub", RemoteRetry.SIMPLE));
+
+    SimpleRemoteInputStream server = new SimpleRemoteInputStream(
+        new ByteArrayInputStream(new byte[10]));
+    try {
+      RemoteInputStream stub = server.export();
+      String endpoint = CircuitBreakerRetry.getEndpoint(stub);
+      assertNotNull(endpoint);
+      assertTrue(endpoint, endpoint.matches(".+:\\d+"));
+
+      RemoteRetry retry = CircuitBreakerRetry.forStub(
+          stub, RemoteRetry.SIMPLE);
+      assertEquals(endpoint, ((CircuitBreakerRetry)retry).getEndpoint());
+
+      // make an actual call through the breaker
+      RemoteInputStreamWrapper wrapper = new RemoteInputStreamWrapper(
+          stub, retry, RemoteRetry.LOG);
+      assertEquals(10, wrapper.readPacket(0).length);
+      assertTrue(((CircuitBreakerRetry)retry).isClosed());
+    } finally {
+      server.close();
+    }
+  }
+
+  public void testUnknownEndpoint() throws Exception
+  {
+    // a remote ref whose string form does not include the endpoint
+    RemoteRef ref = (RemoteRef)Proxy.newProxyInstance(
+        RemoteRef.class.getClassLoader(), new Class<?>[]{RemoteRef.class},
+        (proxy, method, args) -> {
+          if(method.getName().equals("remoteToString")) {
+            return "CustomRef [objId: 1234]";
+          }
+          throw new UnsupportedOperationException();
+        });
+    RemoteObject stub = new RemoteObject(ref) {
+        private static final long serialVersionUID = 0L;
+      };
+    assertNull(CircuitBreakerRetry.getEndpoint(stub));
+    assertSame(RemoteRetry.SIMPLE,
+               CircuitBreakerRetry.forStub(stub, RemoteRetry.SIMPLE));
+  }
+
+  public void testUnusedCircuitsDropped() throws Exception
+  {
+    int numCircuits = CircuitBreakerRetry.getNumCircuits();
+    for(int i = 0; i < 100; ++i) {
+      new CircuitBreakerRetry("testUnusedCircuitsDropped:" + i,
+                              RemoteRetry.NEVER);
+    }
+    for(int i = 0; (i < 50) &&
+          (CircuitBreakerRetry.getNumCircuits() > numCircuits); ++i) {
+      System.gc();
+      Thread.sleep(20L);
+    }
+    assertTrue(CircuitBreakerRetry.getNumCircuits() <= numCircuits);
+  }
+
+}
@@ -0,0 +1,252 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+/**
+ * @author James Ahlborn
+ */
+public class DeltaUploadTest extends TestCase
+{
+  private static final int BLOCK_SIZE = 4 * 1024;
+
+  private Path _dir;
+  private Path _file;
+
+  public DeltaUploadTest(String name) {
+    super(name);
+  }
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    _dir = Files.createTempDirectory("rmiio_delta");
+    _file = _dir.resolve("target.dat");
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    try(DirectoryStream<Path> dirStream = Files.newDirectoryStream(_dir)) {
+      for(Path file : dirStream) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(_dir);
+  }
+
+  public void testDeltaUpload() throws Exception
+  {
+    byte[] oldData = newData((BLOCK_SIZE * 40) + 123, 42L);
+    Files.write(_file, oldData);
+
+    // insert some new data (shifting the rest), change a byte, and drop a
+    // block
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    bout.write(oldData, 0, 1000);
+    bout.write(newData(77, 7L));
+    bout.write(oldData, 1000, (BLOCK_SIZE * 10) - 1000);
+    bout.write(oldData, BLOCK_SIZE * 11, oldData.length - (BLOCK_SIZE * 11));
+    byte[] newData = bout.toByteArray();
+    newData[BLOCK_SIZE * 20] = (byte)~newData[BLOCK_SIZE * 20];
+
+    AtomicLong numSent = new AtomicLong();
+    upload(newData, numSent, true);
+    assertTrue(Arrays.equals(newData, Files.readAllBytes(_file)));
+    // only the changed blocks are sent (plus a little overhead)
+    assertTrue(numSent.get() < (BLOCK_SIZE * 4));
+    assertEquals(1, countFiles());
+
+    // uploading the same data again sends (almost) nothing
+    numSent.set(0L);
+    upload(newData, numSent, true);
+    assertTrue(Arrays.equals(newData, Files.readAllBytes(_file)));
+    assertTrue(numSent.get() < 100);
+
+    // completely new data is sent as is (plus a little overhead)
+    byte[] otherData = newData(BLOCK_SIZE * 3, 3L);
+    numSent.set(0L);
+    upload(otherData, numSent, true);
+    assertTrue(Arrays.equals(otherData, Files.readAllBytes(_file)));
+    assertTrue(numSent.get() > otherData.length);
+    assertTrue(numSent.get() < (otherData.length + 100));
+  }
+
+  public void testNewFile() throws Exception
+  {
+    byte[] data = newData((BLOCK_SIZE * 30) + 5, 11L);
+
+    AtomicLong numSent = new AtomicLong();
+    upload(data, numSent, true);
+    assertTrue(Arrays.equals(data, Files.readAllBytes(_file)));
+    assertTrue(numSent.get() >= data.length);
+
+    // empty data
+    upload(new byte[0], numSent, true);
+    assertEquals(0L, Files.size(_file));
+    assertEquals(1, countFiles());
+  }
+
+  public void testPlainUpload() throws Exception
+  {
+    byte[] oldData = newData(BLOCK_SIZE * 5, 1L);
+    Files.write(_file, oldData);
+
+    byte[] data = newData(BLOCK_SIZE * 2, 2L);
+    AtomicLong numSent = new AtomicLong();
+    upload(data, numSent, false);
+    assertTrue(Arrays.equals(data, Files.readAllBytes(_file)));
+    assertEquals((long)data.length, numSent.get());
+    assertEquals(1, countFiles());
+  }
+
+  public void testFailedUpload() throws Exception
+  {
+    byte[] oldData = newData(BLOCK_SIZE * 5, 1L);
+    Files.write(_file, oldData);
+
+    // aborted upload
+    FileRemoteOutputStream server = new FileRemoteOutputStream(
+        _file, RemoteOutputStreamServer.DUMMY_MONITOR, BLOCK_SIZE);
+    OutputStream out = RemoteOutputStreamClient.wrapDelta(server.export());
+    out.write(newData(BLOCK_SIZE * 3, 2L));
+    out.flush();
+    server.abort();
+    server.close();
+    assertTrue(Arrays.equals(oldData, Files.readAllBytes(_file)));
+    assertEquals(1, countFiles());
+
+    // upload which does not send the end of the delta
+    server = new FileRemoteOutputStream(
+        _file, RemoteOutputStreamServer.DUMMY_MONITOR, BLOCK_SIZE);
+    RemoteOutputStream remoteOut = server.export();
+    assertNotNull(((DeltaRemoteOutputStream)remoteOut).getDeltaSignature());
+    OutputStream plainOut = RemoteOutputStreamClient.wrap(remoteOut);
+    plainOut.write(new byte[]{DeltaSignature.OP_LITERAL, 0, 0, 0, 1, 5});
+    try {
+      plainOut.close();
+      fail("IOException should have been thrown");
+    } catch(IOException e) {
+      // success
+    }
+    assertTrue(Arrays.equals(oldData, Files.readAllBytes(_file)));
+    assertEquals(1, countFiles());
+  }
+
+  public void testFailedClose() throws Exception
+  {
+    byte[] oldData = newData(BLOCK_SIZE * 5, 1L);
+    Files.write(_file, oldData);
+
+    // the end of the delta cannot be sent
+    FileRemoteOutputStream server = new FileRemoteOutputStream(
+        _file, RemoteOutputStreamServer.DUMMY_MONITOR, BLOCK_SIZE);
+    final DeltaRemoteOutputStream stub =
+      (DeltaRemoteOutputStream)server.export();
+    DeltaRemoteOutputStream badStub = new DeltaRemoteOutputStream() {
+        @Override
+        public DeltaSignature getDeltaSignature() throws IOException {
+          return stub.getDeltaSignature();
+        }
+        @Override
+        public boolean usingGZIPCompression() throws IOException {
+          return stub.usingGZIPCompression();
+        }
+        @Override
+        public void close(boolean writeSuccess) throws IOException {
+          stub.close(writeSuccess);
+        }
+        @Override
+        public void flush() throws IOException {
+          stub.flush();
+        }
+        @Override
+        public void writePacket(byte[] packet, int packetId)
+          throws IOException {
+          throw new IOException("disk full");
+        }
+      };
+    OutputStream out = RemoteOutputStreamClient.wrapDelta(badStub);
+    // (the literal data is held until the stream is closed)
+    out.write(newData(BLOCK_SIZE * 3, 2L));
+    try {
+      out.close();
+      fail("IOException should have been thrown");
+    } catch(IOException e) {
+      assertEquals("disk full", e.getMessage());
+    }
+    // the server was still closed (as a failed upload)
+    assertTrue(server.isClosed());
+    assertTrue(Arrays.equals(oldData, Files.readAllBytes(_file)));
+    assertEquals(1, countFiles());
+
+    // closing again is a no-op
+    out.close();
+  }
+
+  private void upload(byte[] data, final AtomicLong numSent, boolean delta)
+    throws Exception
+  {
+    FileRemoteOutputStream server = new FileRemoteOutputStream(
+        _file, new RemoteOutputStreamMonitor() {
+            @Override
+            public void bytesMoved(RemoteOutputStreamServer stream,
+                                   int numBytes, boolean isReattempt) {
+              numSent.addAndGet(numBytes);
+            }
+          }, BLOCK_SIZE);
+    OutputStream out = (delta ?
+                        RemoteOutputStreamClient.wrapDelta(server.export()) :
+                        RemoteOutputStreamClient.wrap(server.export()));
+    // write in odd sized pieces
+    for(int i = 0; i < data.length; i += 1000) {
+      out.write(data, i, Math.min(1000, data.length - i));
+    }
+    out.close();
+    assertTrue(server.isClosed());
+  }
+
+  private int countFiles() throws IOException
+  {
+    int count = 0;
+    try(DirectoryStream<Path> dirStream = Files.newDirectoryStream(_dir)) {
+      for(Path ignored : dirStream) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  private static byte[] newData(int len, long seed)
+  {
+    byte[] data = new byte[len];
+    new Random(seed).nextBytes(data);
+    return data;
+  }
+
+}
@@ -50,6 +50,38 @@ public class DirectRemoteInputStreamTest extends TestCase {
     doTestDirect(true, true);
   }
   
+  public void testMemoryThreshold() throws Exception
+  {
+    String origThreshold = System.getProperty(
+        DirectRemoteInputStream.MEMORY_THRESHOLD_PROPERTY);
+    try {
+      // everything spooled to a temp file
+      System.setProperty(DirectRemoteInputStream.MEMORY_THRESHOLD_PROPERTY,
+                         "0");
+      doTestDirect(false, false);
+      doTestDirect(true, true);
+
+      // everything held in memory
+      System.setProperty(DirectRemoteInputStream.MEMORY_THRESHOLD_PROPERTY,
+                         String.valueOf(FILE_SIZE * 2));
+      doTestDirect(false, false);
+      doTestDirect(true, true);
+
+      // spill to temp file part way through
+      System.setProperty(DirectRemoteInputStream.MEMORY_THRESHOLD_PROPERTY,
+                         String.valueOf(FILE_SIZE / 3));
+      doTestDirect(false, true);
+      doTestDirect(true, false);
+    } finally {
+      if(origThreshold != null) {
+        System.setProperty(DirectRemoteInputStream.MEMORY_THRESHOLD_PROPERTY,
+                           origThreshold);
+      } else {
+        System.clearProperty(DirectRemoteInputStream.MEMORY_THRESHOLD_PROPERTY);
+      }
+    }
+  }
+
   private void doTestDirect(boolean compress,
                             boolean reserialize) throws Exception
   {
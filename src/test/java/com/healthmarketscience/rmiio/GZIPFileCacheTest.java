@@ -0,0 +1,210 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * @author James Ahlborn
+ */
+public class GZIPFileCacheTest extends TestCase
+{
+  private Path _dir;
+  private Path _file1;
+  private Path _file2;
+
+  public GZIPFileCacheTest(String name) {
+    super(name);
+  }
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    _dir = Files.createTempDirectory("rmiio_gzcache");
+    _file1 = Files.createTempFile("rmiio_gzcached", ".dat");
+    _file2 = Files.createTempFile("rmiio_gzcached", ".dat");
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    try(DirectoryStream<Path> dirStream = Files.newDirectoryStream(_dir)) {
+      for(Path file : dirStream) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(_dir);
+    Files.deleteIfExists(_file1);
+    Files.deleteIfExists(_file2);
+  }
+
+  public void testCachedDownload() throws Exception
+  {
+    byte[] data = newData(100000, 42L);
+    Files.write(_file1, data);
+
+    GZIPFileCache cache = new GZIPFileCache(_dir, 1024 * 1024);
+
+    RemoteInputStreamServer server = cache.newStream(_file1);
+    assertTrue(server.usingGZIPCompression());
+    assertTrue(Arrays.equals(data, readAll(server)));
+    assertTrue(server.isClosed());
+    assertEquals(1, cache.getNumMisses());
+    assertEquals(0, cache.getNumHits());
+    assertEquals(1, cache.getNumEntries());
+    assertEquals(1, countFiles());
+    // (mostly repeated data compresses well)
+    assertTrue(cache.getSize() < (data.length / 2));
+
+    // the second download is served from the cache
+    server = cache.newStream(_file1);
+    assertTrue(server.usingGZIPCompression());
+    assertTrue(Arrays.equals(data, readAll(server)));
+    assertTrue(server.isClosed());
+    assertEquals(1, cache.getNumMisses());
+    assertEquals(1, cache.getNumHits());
+
+    // as is a download using a new cache on the same directory
+    cache = new GZIPFileCache(_dir, 1024 * 1024);
+    assertEquals(1, cache.getNumEntries());
+    assertTrue(Arrays.equals(data, readAll(cache.newStream(_file1))));
+    assertEquals(0, cache.getNumMisses());
+    assertEquals(1, cache.getNumHits());
+
+    // a changed file is compressed again
+    data[500] = (byte)~data[500];
+    Files.write(_file1, data);
+    Files.setLastModifiedTime(
+        _file1, FileTime.fromMillis(System.currentTimeMillis() + 5000L));
+    assertTrue(Arrays.equals(data, readAll(cache.newStream(_file1))));
+    assertEquals(1, cache.getNumMisses());
+    assertEquals(2, cache.getNumEntries());
+    assertTrue(Arrays.equals(data, readAll(cache.newStream(_file1))));
+    assertEquals(2, cache.getNumHits());
+  }
+
+  public void testIncompleteDownload() throws Exception
+  {
+    byte[] data = newData(100000, 17L);
+    Files.write(_file1, data);
+
+    GZIPFileCache cache = new GZIPFileCache(_dir, 1024 * 1024);
+
+    // a partially read stream is not cached
+    RemoteInputStreamServer server = cache.newStream(
+        _file1, RemoteInputStreamServer.DUMMY_MONITOR, 1024);
+    InputStream in = RemoteInputStreamClient.wrap(server.export());
+    assertEquals(10, in.read(new byte[10]));
+    in.close();
+    assertTrue(server.isClosed());
+    assertEquals(0, cache.getNumEntries());
+    assertEquals(0, countFiles());
+
+    // nor is an aborted stream
+    server = cache.newStream(_file1);
+    in = RemoteInputStreamClient.wrap(server.export());
+    assertEquals(10, in.read(new byte[10]));
+    server.abort();
+    server.close();
+    assertEquals(0, cache.getNumEntries());
+    assertEquals(0, countFiles());
+
+    assertTrue(Arrays.equals(data, readAll(cache.newStream(_file1))));
+    assertEquals(1, cache.getNumEntries());
+    assertEquals(3, cache.getNumMisses());
+  }
+
+  public void testEviction() throws Exception
+  {
+    byte[] data1 = newData(50000, 1L);
+    byte[] data2 = newData(50000, 2L);
+    Files.write(_file1, data1);
+    Files.write(_file2, data2);
+
+    GZIPFileCache cache = new GZIPFileCache(_dir, 1024 * 1024);
+    assertTrue(Arrays.equals(data1, readAll(cache.newStream(_file1))));
+    long size1 = cache.getSize();
+    cache.clear();
+    assertEquals(0, countFiles());
+
+    // room for only one entry
+    cache = new GZIPFileCache(_dir, size1 + 10);
+    assertTrue(Arrays.equals(data1, readAll(cache.newStream(_file1))));
+    assertTrue(Arrays.equals(data2, readAll(cache.newStream(_file2))));
+    assertEquals(1, cache.getNumEntries());
+    assertEquals(1, countFiles());
+
+    assertTrue(Arrays.equals(data2, readAll(cache.newStream(_file2))));
+    assertEquals(1, cache.getNumHits());
+    assertTrue(Arrays.equals(data1, readAll(cache.newStream(_file1))));
+    assertEquals(3, cache.getNumMisses());
+
+    cache.clear();
+    assertEquals(0, cache.getNumEntries());
+    assertEquals(0, countFiles());
+  }
+
+  private int countFiles() throws IOException
+  {
+    int count = 0;
+    try(DirectoryStream<Path> dirStream = Files.newDirectoryStream(_dir)) {
+      for(Path ignored : dirStream) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  private static byte[] readAll(RemoteInputStreamServer server)
+    throws Exception
+  {
+    InputStream in = RemoteInputStreamClient.wrap(server.export());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[1000];
+    int numRead = 0;
+    while((numRead = in.read(buf)) >= 0) {
+      out.write(buf, 0, numRead);
+    }
+    in.close();
+    return out.toByteArray();
+  }
+
+  private static byte[] newData(int len, long seed)
+  {
+    // random runs of repeated bytes (compressible, but not trivially)
+    byte[] data = new byte[len];
+    Random rand = new Random(seed);
+    int i = 0;
+    while(i < len) {
+      int runLen = Math.min(rand.nextInt(20) + 1, len - i);
+      Arrays.fill(data, i, i + runLen, (byte)rand.nextInt());
+      i += runLen;
+    }
+    return data;
+  }
+
+}
@@ -0,0 +1,311 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * @author James Ahlborn
+ */
+public class HedgingPolicyTest extends TestCase
+{
+
+  public HedgingPolicyTest(String name) {
+    super(name);
+  }
+
+  public void testHedgedRead() throws Exception
+  {
+    byte[] data = new byte[RemoteInputStreamServer.DEFAULT_CHUNK_SIZE * 5];
+    for(int i = 0; i < data.length; ++i) {
+      data[i] = (byte)i;
+    }
+
+    HedgingPolicy hedging = new HedgingPolicy(0.95d, 10L, 20L, null);
+    assertEquals(20L, hedging.getDelay());
+
+    StallingRemoteInputStream remoteIn = new StallingRemoteInputStream(
+        new SimpleRemoteInputStream(new ByteArrayInputStream(data)), 2);
+    InputStream in = RemoteInputStreamClient.wrap(
+        remoteIn, RemoteRetry.NEVER, hedging);
+
+    long startTime = System.currentTimeMillis();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      byte[] buf = new byte[1024];
+      int numRead = 0;
+      while((numRead = in.read(buf)) >= 0) {
+        out.write(buf, 0, numRead);
+      }
+      in.close();
+    } finally {
+      remoteIn.unstall();
+    }
+    long elapsed = System.currentTimeMillis() - startTime;
+
+    assertTrue(Arrays.equals(data, out.toByteArray()));
+    // the stalled packet was read by the hedged call (without waiting for
+    // the stalled call, which ignores interrupts)
+    assertTrue(elapsed < StallingRemoteInputStream.STALL_TIME);
+    assertTrue(hedging.getNumHedged() >= 1L);
+    assertTrue(hedging.getNumHedgeWins() >= 1L);
+    // the reading thread is never interrupted
+    assertFalse(Thread.interrupted());
+  }
+
+  public void testInterruptedRead() throws Exception
+  {
+    HedgingPolicy hedging = new HedgingPolicy(0.95d, 1000L, 1000L, null);
+    StallingRemoteInputStream remoteIn = new StallingRemoteInputStream(
+        new SimpleRemoteInputStream(new ByteArrayInputStream(new byte[10])),
+        0);
+
+    // the reader's own interrupt is honored (and not swallowed)
+    Thread.currentThread().interrupt();
+    try {
+      hedging.readPacket(remoteIn, 0);
+      fail("InterruptedIOException should have been thrown");
+    } catch(InterruptedIOException ignored) {
+      // success
+    } finally {
+      remoteIn.unstall();
+    }
+    assertTrue(Thread.interrupted());
+  }
+
+  public void testFailedRead() throws Exception
+  {
+    HedgingPolicy hedging = new HedgingPolicy(0.95d, 0L, 0L, null);
+
+    // the original call fails slowly (after the hedged call has been made)
+    StallingRemoteInputStream remoteIn = new StallingRemoteInputStream(
+        new SimpleRemoteInputStream(new ByteArrayInputStream(new byte[10])),
+        -1) {
+        private boolean _first = true;
+        @Override
+        public byte[] readPacket(int packetId) throws IOException {
+          boolean first = false;
+          synchronized(this) {
+            first = _first;
+            _first = false;
+          }
+          if(first) {
+            stall(200L);
+          }
+          return super.readPacket(packetId);
+        }
+      };
+    remoteIn._fail = true;
+    try {
+      hedging.readPacket(remoteIn, 0);
+      fail("RemoteException should have been thrown");
+    } catch(RemoteException ignored) {
+      // success
+    }
+    assertEquals(1L, hedging.getNumHedged());
+    assertEquals(0L, hedging.getNumHedgeWins());
+
+    // an original call which fails before the hedge delay is not hedged
+    hedging = new HedgingPolicy(0.95d, 1000L, 1000L, null);
+    remoteIn = new StallingRemoteInputStream(
+        new SimpleRemoteInputStream(new ByteArrayInputStream(new byte[10])),
+        -1);
+    remoteIn._fail = true;
+    try {
+      hedging.readPacket(remoteIn, 0);
+      fail("RemoteException should have been thrown");
+    } catch(RemoteException ignored) {
+      // success
+    }
+    assertEquals(0L, hedging.getNumHedged());
+  }
+
+  public void testOriginalFailsWhileHedging() throws Exception
+  {
+    final byte[] packet = new byte[]{1, 2, 3};
+    final CountDownLatch failOriginal = new CountDownLatch(1);
+    final ExecutorService delegate = Executors.newCachedThreadPool();
+
+    // the original call fails while the hedge is being submitted
+    ExecutorService executor = new AbstractExecutorService() {
+        private int _numCalls;
+        @Override
+        public void execute(Runnable command) {
+          if(++_numCalls == 2) {
+            failOriginal.countDown();
+            stall(100L);
+          }
+          delegate.execute(command);
+        }
+        @Override
+        public void shutdown() {}
+        @Override
+        public List<Runnable> shutdownNow() { return null; }
+        @Override
+        public boolean isShutdown() { return false; }
+        @Override
+        public boolean isTerminated() { return false; }
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+          return false;
+        }
+      };
+
+    RemoteInputStream remoteIn = new StallingRemoteInputStream(
+        new SimpleRemoteInputStream(new ByteArrayInputStream(new byte[0])),
+        -1) {
+        private boolean _first = true;
+        @Override
+        public byte[] readPacket(int packetId) throws IOException {
+          boolean first = false;
+          synchronized(this) {
+            first = _first;
+            _first = false;
+          }
+          if(!first) {
+            return packet;
+          }
+          try {
+            failOriginal.await();
+          } catch(InterruptedException e) {
+            throw new RemoteException("call abandoned");
+          }
+          throw new RemoteException("connection reset");
+        }
+      };
+
+    try {
+      HedgingPolicy hedging = new HedgingPolicy(0.95d, 0L, 0L, executor);
+      assertTrue(Arrays.equals(packet, hedging.readPacket(remoteIn, 0)));
+      assertEquals(1L, hedging.getNumHedged());
+      assertEquals(1L, hedging.getNumHedgeWins());
+    } finally {
+      delegate.shutdown();
+    }
+  }
+
+  /**
+   * Waits for the given time, ignoring interrupts (like a blocked socket
+   * read).
+   */
+  private static void stall(long millis)
+  {
+    awaitUninterruptibly(new CountDownLatch(1), millis);
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch, long millis)
+  {
+    long endTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    boolean interrupted = false;
+    while(true) {
+      long remainingNanos = endTime - System.nanoTime();
+      try {
+        if((remainingNanos <= 0L) ||
+           latch.await(remainingNanos, TimeUnit.NANOSECONDS)) {
+          break;
+        }
+      } catch(InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if(interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * RemoteInputStream which stalls the first call for the given packet id
+   * (as if the connection was stuck), ignoring interrupts.
+   */
+  private static class StallingRemoteInputStream
+    implements RemoteInputStream
+  {
+    private static final long STALL_TIME = 5000L;
+
+    private final RemoteInputStream _delegate;
+    private final int _stallPacketId;
+    private final CountDownLatch _unstall = new CountDownLatch(1);
+    private boolean _stalled;
+    private volatile boolean _fail;
+
+    private StallingRemoteInputStream(RemoteInputStream delegate,
+                                      int stallPacketId) {
+      _delegate = delegate;
+      _stallPacketId = stallPacketId;
+    }
+
+    @Override
+    public boolean usingGZIPCompression() throws IOException {
+      return _delegate.usingGZIPCompression();
+    }
+
+    @Override
+    public int available() throws IOException {
+      return _delegate.available();
+    }
+
+    @Override
+    public void close(boolean readSuccess) throws IOException {
+      _delegate.close(readSuccess);
+    }
+
+    @Override
+    public byte[] readPacket(int packetId) throws IOException {
+      if(_fail) {
+        throw new RemoteException("endpoint down");
+      }
+      boolean stall = false;
+      synchronized(this) {
+        if((packetId == _stallPacketId) && !_stalled) {
+          _stalled = true;
+          stall = true;
+        }
+      }
+      if(stall) {
+        awaitUninterruptibly(_unstall, STALL_TIME);
+      }
+      return _delegate.readPacket(packetId);
+    }
+
+    /**
+     * Ends any current (and future) stall.
+     */
+    private void unstall() {
+      _unstall.countDown();
+    }
+
+    @Override
+    public long skip(long n, int skipId) throws IOException {
+      return _delegate.skip(n, skipId);
+    }
+  }
+
+}
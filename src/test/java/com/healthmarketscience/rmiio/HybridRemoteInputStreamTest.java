@@ -0,0 +1,142 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import static com.healthmarketscience.rmiio.RemoteStreamServerTest.*;
+
+/**
+ * @author James Ahlborn
+ */
+public class HybridRemoteInputStreamTest extends TestCase {
+
+  public HybridRemoteInputStreamTest(String name) {
+    super(name);
+  }
+
+  public void testInline() throws Exception
+  {
+    doTestInline(false);
+    doTestInline(true);
+  }
+
+  private void doTestInline(boolean compress) throws Exception
+  {
+    byte[] data = new byte[5000];
+    for(int i = 0; i < data.length; ++i) {
+      data[i] = (byte)(i % 37);
+    }
+
+    AccumulateRemoteStreamMonitor<RemoteInputStreamServer> monitor =
+      new AccumulateRemoteStreamMonitor<RemoteInputStreamServer>(false);
+
+    HybridRemoteInputStream remoteStream = simulateRemote(
+        new HybridRemoteInputStream(new ByteArrayInputStream(data), compress,
+                                    HybridRemoteInputStream.DEFAULT_INLINE_SIZE,
+                                    monitor));
+
+    // everything should have been embedded and the server closed cleanly
+    assertTrue(remoteStream.isFullyInline());
+    assertTrue(monitor._closed);
+    assertTrue(monitor._closedClean);
+    assertEquals(data.length, monitor._numLocalBytes);
+
+    InputStream istream = RemoteInputStreamClient.wrap(remoteStream);
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    copy(istream, result, false, false);
+    istream.close();
+
+    assertTrue(Arrays.equals(data, result.toByteArray()));
+  }
+
+  public void testRemainder() throws Exception
+  {
+    doTestRemainder(false);
+    doTestRemainder(true);
+  }
+
+  private void doTestRemainder(boolean compress) throws Exception
+  {
+    File testFile = new File(TEST_FILE);
+
+    AccumulateRemoteStreamMonitor<RemoteInputStreamServer> monitor =
+      new AccumulateRemoteStreamMonitor<RemoteInputStreamServer>(false);
+
+    HybridRemoteInputStream remoteStream = simulateRemote(
+        new HybridRemoteInputStream(new FileInputStream(testFile), compress,
+                                    HybridRemoteInputStream.DEFAULT_INLINE_SIZE,
+                                    monitor));
+
+    // the rest of the file should be provided by an exported server
+    assertFalse(remoteStream.isFullyInline());
+    assertFalse(monitor._closed);
+
+    InputStream istream = RemoteInputStreamClient.wrap(remoteStream);
+
+    File resultFile = File.createTempFile("hybridStream_", ".out");
+    resultFile.deleteOnExit();
+
+    OutputStream ostream = new FileOutputStream(resultFile);
+    copy(istream, ostream, false, false);
+    istream.close();
+    ostream.close();
+
+    assertTrue(compare(testFile, resultFile, false) == 0);
+    assertTrue(monitor._closed);
+    assertTrue(monitor._closedClean);
+    assertEquals(FILE_SIZE, monitor._numLocalBytes);
+  }
+
+  public void testNotSerializable() throws Exception
+  {
+    RemoteInputStream remoteStream = new HybridRemoteInputStream(
+        new ByteArrayInputStream(new byte[10]), false);
+    simulateRemote(remoteStream);
+
+    try {
+      simulateRemote(remoteStream);
+      fail("NotSerializableException should have been thrown");
+    } catch(NotSerializableException ignored) {
+      // success
+      assertTrue(ignored.getMessage().contains("SERIAL"));
+    }
+
+    remoteStream = new HybridRemoteInputStream(
+        new ByteArrayInputStream(new byte[10]), false);
+    remoteStream.readPacket(0);
+
+    try {
+      simulateRemote(remoteStream);
+      fail("NotSerializableException should have been thrown");
+    } catch(NotSerializableException ignored) {
+      // success
+      assertTrue(ignored.getMessage().contains("LOCAL"));
+    }
+  }
+
+}
@@ -0,0 +1,226 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.ByteArrayInputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * @author James Ahlborn
+ */
+public class IOSchedulerTest extends TestCase
+{
+  private static final long BULK_BYTES = 1024L * 1024L;
+
+  public IOSchedulerTest(String name) {
+    super(name);
+  }
+
+  public void testShortStreamsFirst() throws Exception
+  {
+    IOScheduler scheduler = new IOScheduler(1);
+    List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+    IOScheduler.Ticket ticket = scheduler.acquire("holder", 1, 0L, 100L);
+    List<Thread> threads = new ArrayList<Thread>();
+    threads.add(queue(scheduler, order, "bulk", 1, BULK_BYTES));
+    threads.add(queue(scheduler, order, "short", 1, 0L));
+    ticket.release(100L);
+    for(Thread t : threads) {
+      t.join();
+    }
+
+    assertEquals(Arrays.asList("short", "bulk"), order);
+    assertEquals(0, scheduler.getNumActive());
+  }
+
+  public void testWeightedFairness() throws Exception
+  {
+    IOScheduler scheduler = new IOScheduler(1);
+    List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+    IOScheduler.Ticket ticket = scheduler.acquire("holder", 1, 0L, 100L);
+    List<Thread> threads = new ArrayList<Thread>();
+    for(int i = 0; i < 3; ++i) {
+      threads.add(queue(scheduler, order, "a", 1, BULK_BYTES));
+    }
+    for(int i = 0; i < 3; ++i) {
+      threads.add(queue(scheduler, order, "b", 2, BULK_BYTES));
+    }
+    ticket.release(100L);
+    for(Thread t : threads) {
+      t.join();
+    }
+
+    // "b" gets twice the share of "a"
+    assertEquals(Arrays.asList("a", "b", "b", "a", "b", "a"), order);
+    assertEquals(0, scheduler.getNumActive());
+    assertEquals(0, scheduler.getNumWaiting());
+  }
+
+  public void testStreamServer() throws Exception
+  {
+    IOScheduler scheduler = new IOScheduler(2);
+    SimpleRemoteInputStream in = new SimpleRemoteInputStream(
+        new ByteArrayInputStream(new byte[10000]));
+    in.setIOScheduler(scheduler);
+    in.setIOGroup("tenant");
+    in.setIOWeight(3);
+
+    int numRead = 0;
+    int packetId = 0;
+    byte[] packet = null;
+    while((packet = in.readPacket(packetId++)) != null) {
+      numRead += packet.length;
+      assertEquals(0, scheduler.getNumActive());
+    }
+    in.close(true);
+    assertEquals(10000, numRead);
+  }
+
+  public void testQueuedStreamClose() throws Exception
+  {
+    IOScheduler scheduler = new IOScheduler(1);
+    final SimpleRemoteInputStream in = new SimpleRemoteInputStream(
+        new ByteArrayInputStream(new byte[10000]));
+    in.setIOScheduler(scheduler);
+
+    // reattempts give back their slot
+    assertNotNull(in.readPacket(0));
+    assertNotNull(in.readPacket(0));
+    assertEquals(0, scheduler.getNumActive());
+    assertEquals(0, scheduler.getNumWaiting());
+
+    IOScheduler.Ticket ticket = scheduler.acquire("holder", 1, 0L, 100L);
+    Thread reader = new Thread(() -> {
+        try {
+          in.readPacket(1);
+        } catch(Exception ignored) {
+          // closed out from under the read
+        }
+      });
+    reader.start();
+    while(scheduler.getNumWaiting() == 0) {
+      Thread.sleep(5L);
+    }
+
+    // a stream waiting for an I/O slot can still be closed
+    Thread closer = new Thread(in::close);
+    closer.start();
+    closer.join(5000L);
+    assertFalse(closer.isAlive());
+    assertTrue(in.isClosed());
+
+    ticket.release(100L);
+    reader.join();
+    assertEquals(0, scheduler.getNumActive());
+    assertEquals(0, scheduler.getNumWaiting());
+  }
+
+  public void testAbandonedWait() throws Exception
+  {
+    IOScheduler scheduler = new IOScheduler(1);
+    List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+    IOScheduler.Ticket ticket = scheduler.acquire("holder", 1, 0L, 100L);
+    final Exception[] failure = new Exception[1];
+    Thread waiter = new Thread(() -> {
+        try {
+          scheduler.acquire("a", 1, BULK_BYTES, 1000L);
+        } catch(Exception e) {
+          failure[0] = e;
+        }
+      });
+    waiter.start();
+    while(scheduler.getNumWaiting() == 0) {
+      Thread.sleep(5L);
+    }
+    waiter.interrupt();
+    waiter.join();
+    assertTrue(failure[0] instanceof InterruptedIOException);
+    assertEquals(0, scheduler.getNumWaiting());
+
+    // the abandoned wait does not count against "a"
+    List<Thread> threads = new ArrayList<Thread>();
+    threads.add(queue(scheduler, order, "a", 1, BULK_BYTES));
+    threads.add(queue(scheduler, order, "b", 1, BULK_BYTES));
+    ticket.release(100L);
+    for(Thread t : threads) {
+      t.join();
+    }
+
+    assertEquals(Arrays.asList("a", "b"), order);
+    assertEquals(0, scheduler.getNumActive());
+  }
+
+  public void testIdleFlows() throws Exception
+  {
+    IOScheduler scheduler = new IOScheduler(1);
+
+    // flows without any remaining "credit" are discarded immediately
+    scheduler.acquire("a", 1, 0L, 100L).release(0L);
+    assertEquals(0, scheduler.getNumFlows());
+
+    // other flows are kept until their group is collected
+    Object group = new Object();
+    scheduler.acquire(group, 1, 0L, 100L).release(100L);
+    assertEquals(1, scheduler.getNumFlows());
+    group = null;
+    for(int i = 0; i < 50; ++i) {
+      System.gc();
+      Thread.sleep(20L);
+      if(scheduler.getNumFlows() == 0) {
+        break;
+      }
+    }
+    assertEquals(0, scheduler.getNumFlows());
+  }
+
+  /**
+   * Starts a thread which acquires (and immediately releases) a slot from
+   * the given scheduler, waiting until the thread is queued.
+   */
+  private static Thread queue(final IOScheduler scheduler,
+                              final List<String> order, final String group,
+                              final int weight, final long attainedBytes)
+    throws Exception
+  {
+    int numWaiting = scheduler.getNumWaiting();
+    Thread t = new Thread(() -> {
+        try {
+          IOScheduler.Ticket ticket = scheduler.acquire(
+              group, weight, attainedBytes, 100L);
+          order.add(group);
+          ticket.release(100L);
+        } catch(Exception e) {
+          throw new RuntimeException(e);
+        }
+      });
+    t.start();
+    while(scheduler.getNumWaiting() == numWaiting) {
+      Thread.sleep(5L);
+    }
+    return t;
+  }
+
+}
@@ -0,0 +1,301 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.healthmarketscience.rmiio.exporter.RemoteStreamExporter;
+import junit.framework.TestCase;
+
+/**
+ * @author James Ahlborn
+ */
+public class RemoteInputStreamClientTest extends TestCase
+{
+
+  public RemoteInputStreamClientTest(String name) {
+    super(name);
+  }
+
+  public void testTransferTo() throws Exception
+  {
+    byte[] data = newData(RemoteInputStreamServer.DEFAULT_CHUNK_SIZE * 4 + 3);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SimpleRemoteInputStream server =
+      new SimpleRemoteInputStream(new ByteArrayInputStream(data));
+    assertEquals(data.length, RemoteInputStreamClient.transferTo(server, out));
+    assertTrue(Arrays.equals(data, out.toByteArray()));
+    assertTrue(server.isClosed());
+
+    out = new ByteArrayOutputStream();
+    server = new SimpleRemoteInputStream(new ByteArrayInputStream(data));
+    assertEquals(data.length, RemoteInputStreamClient.transferTo(
+                     server, Channels.newChannel(out)));
+    assertTrue(Arrays.equals(data, out.toByteArray()));
+
+    out = new ByteArrayOutputStream();
+    GZIPRemoteInputStream gzServer =
+      new GZIPRemoteInputStream(new ByteArrayInputStream(data));
+    assertEquals(data.length, RemoteInputStreamClient.transferTo(
+                     gzServer, Channels.newChannel(out)));
+    assertTrue(Arrays.equals(data, out.toByteArray()));
+    assertTrue(gzServer.isClosed());
+  }
+
+  public void testFailedTransferTo() throws Exception
+  {
+    byte[] data = newData(RemoteInputStreamServer.DEFAULT_CHUNK_SIZE * 3 + 1);
+    OutputStream badOut = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+          throw new IOException("write failed");
+        }
+      };
+
+    boolean wasEnabled = RemoteStreamExporter.isLocalShortCircuitEnabled();
+    try {
+      for(int i = 0; i < 3; ++i) {
+        final boolean[] readSuccess = new boolean[]{true};
+        RemoteInputStreamServer server = ((i == 1) ?
+          new GZIPRemoteInputStream(new ByteArrayInputStream(data)) {
+            private static final long serialVersionUID = 0L;
+            @Override
+            protected void closeImpl(boolean success) throws IOException {
+              readSuccess[0] = success;
+              super.closeImpl(success);
+            }
+          } :
+          new SimpleRemoteInputStream(new ByteArrayInputStream(data)) {
+            private static final long serialVersionUID = 0L;
+            @Override
+            protected void closeImpl(boolean success) throws IOException {
+              readSuccess[0] = success;
+              super.closeImpl(success);
+            }
+          });
+        RemoteInputStream remoteIn = server;
+        if(i == 2) {
+          // read directly from the local server
+          RemoteStreamExporter.setLocalShortCircuitEnabled(true);
+          remoteIn = roundTrip(server.export());
+        }
+
+        try {
+          RemoteInputStreamClient.transferTo(remoteIn, badOut);
+          fail("IOException should have been thrown");
+        } catch(IOException e) {
+          assertEquals("write failed", e.getMessage());
+        }
+        assertTrue(server.isClosed());
+        assertFalse(readSuccess[0]);
+      }
+    } finally {
+      RemoteStreamExporter.setLocalShortCircuitEnabled(wasEnabled);
+    }
+  }
+
+  public void testTransferToAfterRead() throws Exception
+  {
+    byte[] data = newData(RemoteInputStreamServer.DEFAULT_CHUNK_SIZE * 3 + 7);
+
+    InputStream in = RemoteInputStreamClient.wrap(
+        new SimpleRemoteInputStream(new ByteArrayInputStream(data)));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    // leave some data buffered in the stream
+    byte[] buf = new byte[100];
+    assertEquals(buf.length, in.read(buf));
+    out.write(buf);
+
+    assertEquals(data.length - buf.length, in.transferTo(out));
+    assertEquals(-1, in.read());
+    in.close();
+    assertTrue(Arrays.equals(data, out.toByteArray()));
+  }
+
+  public void testWrapChannel() throws Exception
+  {
+    byte[] data = newData(RemoteInputStreamServer.DEFAULT_CHUNK_SIZE * 3 + 11);
+    Path file = Files.createTempFile("rmiio_channel", ".dat");
+    try {
+      Files.write(file, data);
+
+      for(boolean compress : new boolean[]{false, true}) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RemoteOutputStream remoteOut = (compress ?
+                                        new GZIPRemoteOutputStream(out) :
+                                        new SimpleRemoteOutputStream(out));
+        RemoteInputStream remoteIn = (compress ?
+          new GZIPRemoteInputStream(new ByteArrayInputStream(data)) :
+          new ChannelRemoteInputStream(
+              FileChannel.open(file, StandardOpenOption.READ)));
+        if(!compress) {
+          assertEquals(data.length, remoteIn.available());
+        }
+
+        ReadableByteChannel in = RemoteInputStreamClient.wrapChannel(
+            remoteIn);
+        WritableByteChannel outChannel =
+          RemoteOutputStreamClient.wrapChannel(remoteOut);
+        // odd sized direct buffer
+        ByteBuffer bb = ByteBuffer.allocateDirect(1000);
+        while(in.read(bb) >= 0) {
+          bb.flip();
+          outChannel.write(bb);
+          assertFalse(bb.hasRemaining());
+          bb.clear();
+        }
+        in.close();
+        outChannel.close();
+        assertFalse(in.isOpen());
+
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  public void testChannelSkip() throws Exception
+  {
+    byte[] data = newData(RemoteInputStreamServer.DEFAULT_CHUNK_SIZE * 2);
+    Path file = Files.createTempFile("rmiio_channel", ".dat");
+    try {
+      Files.write(file, data);
+
+      InputStream in = RemoteInputStreamClient.wrap(
+          new ChannelRemoteInputStream(
+              FileChannel.open(file, StandardOpenOption.READ)));
+      assertEquals(100L, in.skip(100L));
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      in.transferTo(out);
+      in.close();
+      assertTrue(Arrays.equals(Arrays.copyOfRange(data, 100, data.length),
+                               out.toByteArray()));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  public void testLocalShortCircuit() throws Exception
+  {
+    byte[] data = newData(RemoteInputStreamServer.DEFAULT_CHUNK_SIZE * 3 + 5);
+    boolean wasEnabled = RemoteStreamExporter.isLocalShortCircuitEnabled();
+    RemoteStreamExporter.setLocalShortCircuitEnabled(false);
+
+    // not tracked unless enabled
+    SimpleRemoteInputStream server =
+      new SimpleRemoteInputStream(new ByteArrayInputStream(data));
+    RemoteInputStream stub = roundTrip(server.export());
+    assertNull(RemoteStreamExporter.getLocalServer(
+                   stub, RemoteInputStreamServer.class));
+    server.close();
+
+    RemoteStreamExporter.setLocalShortCircuitEnabled(true);
+    try {
+
+      // the underlying stream is handed to the local client
+      GZIPRemoteInputStream gzServer =
+        new GZIPRemoteInputStream(new ByteArrayInputStream(data));
+      stub = roundTrip(gzServer.export());
+      assertSame(gzServer, RemoteStreamExporter.getLocalServer(
+                     stub, RemoteInputStreamServer.class));
+      InputStream in = RemoteInputStreamClient.wrap(stub);
+      // (including single byte reads)
+      assertEquals(data[0] & 0xFF, in.read());
+      assertTrue(Arrays.equals(Arrays.copyOfRange(data, 1, data.length),
+                               readAll(in)));
+      assertTrue(gzServer.isClosed());
+      assertNull(RemoteStreamExporter.getLocalServer(
+                     stub, RemoteInputStreamServer.class));
+
+      // once packets have been read, the client uses the packets (but still
+      // calls the server directly)
+      server = new SimpleRemoteInputStream(new ByteArrayInputStream(data));
+      stub = roundTrip(server.export());
+      RemoteInputStreamWrapper wrapper = new RemoteInputStreamWrapper(
+          stub, RemoteRetry.NEVER, RemoteInputStreamClient.LOG);
+      assertSame(stub, wrapper.getStub());
+      wrapper.readPacket(0);
+      in = RemoteInputStreamClient.wrap(stub);
+      assertTrue(Arrays.equals(data, readAll(in)));
+      assertTrue(server.isClosed());
+
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      GZIPRemoteOutputStream outServer = new GZIPRemoteOutputStream(bout);
+      RemoteOutputStream outStub = roundTrip(outServer.export());
+      OutputStream out = RemoteOutputStreamClient.wrap(outStub);
+      out.write(data[0]);
+      out.write(data, 1, data.length - 1);
+      out.close();
+      assertTrue(Arrays.equals(data, bout.toByteArray()));
+      assertTrue(outServer.isClosed());
+
+    } finally {
+      RemoteStreamExporter.setLocalShortCircuitEnabled(wasEnabled);
+    }
+  }
+
+  private static byte[] readAll(InputStream in) throws Exception
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[1000];
+    int numRead = 0;
+    while((numRead = in.read(buf)) >= 0) {
+      out.write(buf, 0, numRead);
+    }
+    in.close();
+    return out.toByteArray();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T roundTrip(T stub) throws Exception
+  {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    ObjectOutputStream oout = new ObjectOutputStream(bout);
+    oout.writeObject(stub);
+    oout.close();
+    ObjectInputStream oin = new ObjectInputStream(
+        new ByteArrayInputStream(bout.toByteArray()));
+    return (T)oin.readObject();
+  }
+
+  private static byte[] newData(int len)
+  {
+    byte[] data = new byte[len];
+    for(int i = 0; i < data.length; ++i) {
+      data[i] = (byte)i;
+    }
+    return data;
+  }
+
+}
@@ -0,0 +1,228 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * @author James Ahlborn
+ */
+public class RemotePublisherTest extends TestCase
+{
+  private ExecutorService _executor;
+
+  public RemotePublisherTest(String name) {
+    super(name);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    _executor = Executors.newFixedThreadPool(2);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    _executor.shutdownNow();
+  }
+
+  public void testStreamDemand() throws Exception
+  {
+    byte[] data = new byte[RemoteInputStreamServer.DEFAULT_CHUNK_SIZE * 5];
+    for(int i = 0; i < data.length; ++i) {
+      data[i] = (byte)i;
+    }
+    CountingRemoteInputStream remoteIn = new CountingRemoteInputStream(
+        new SimpleRemoteInputStream(new ByteArrayInputStream(data)));
+
+    TestSubscriber<ByteBuffer> sub = new TestSubscriber<ByteBuffer>();
+    RemotePublisher.forStream(remoteIn, _executor).subscribe(sub);
+
+    // nothing is fetched until requested
+    Thread.sleep(100L);
+    assertEquals(0, remoteIn._numPackets.get());
+
+    sub.request(2L);
+    sub.awaitElements(2);
+    Thread.sleep(100L);
+    assertEquals(2, sub._elements.size());
+    assertEquals(2, remoteIn._numPackets.get());
+
+    sub.request(Long.MAX_VALUE);
+    sub.awaitDone();
+    assertNull(sub._failure);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for(ByteBuffer bb : sub._elements) {
+      out.write(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining());
+    }
+    assertTrue(Arrays.equals(data, out.toByteArray()));
+    assertTrue(remoteIn._closed);
+  }
+
+  public void testIterator() throws Exception
+  {
+    List<Integer> values = new ArrayList<Integer>();
+    for(int i = 0; i < 500; ++i) {
+      values.add(i);
+    }
+
+    TestSubscriber<Integer> sub = new TestSubscriber<Integer>();
+    Flow.Publisher<Integer> pub = RemotePublisher.forIterator(
+        new CloseableIOIterator.Adapter<Integer>(values.iterator()),
+        _executor);
+    pub.subscribe(sub);
+    sub.request(Long.MAX_VALUE);
+    sub.awaitDone();
+    assertNull(sub._failure);
+    assertEquals(values, sub._elements);
+
+    // only one subscriber allowed
+    TestSubscriber<Integer> sub2 = new TestSubscriber<Integer>();
+    pub.subscribe(sub2);
+    sub2.awaitDone();
+    assertTrue(sub2._failure instanceof IllegalStateException);
+  }
+
+  public void testCancel() throws Exception
+  {
+    CountingRemoteInputStream remoteIn = new CountingRemoteInputStream(
+        new SimpleRemoteInputStream(new ByteArrayInputStream(
+                                        new byte[100000])));
+
+    TestSubscriber<ByteBuffer> sub = new TestSubscriber<ByteBuffer>();
+    RemotePublisher.forStream(remoteIn, _executor).subscribe(sub);
+    sub.request(1L);
+    sub.awaitElements(1);
+    sub._subscription.cancel();
+
+    for(int i = 0; (i < 100) && !remoteIn._closed; ++i) {
+      Thread.sleep(50L);
+    }
+    assertTrue(remoteIn._closed);
+    assertFalse(remoteIn._closeSuccess);
+    assertEquals(1, sub._elements.size());
+    assertEquals(1, sub._done.getCount());
+  }
+
+  private static final class TestSubscriber<T> implements Flow.Subscriber<T>
+  {
+    private final List<T> _elements = new ArrayList<T>();
+    private final CountDownLatch _done = new CountDownLatch(1);
+    private volatile Flow.Subscription _subscription;
+    private volatile Throwable _failure;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      _subscription = subscription;
+    }
+
+    @Override
+    public synchronized void onNext(T elem) {
+      _elements.add(elem);
+      notifyAll();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      _failure = t;
+      _done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      _done.countDown();
+    }
+
+    private void request(long n) {
+      _subscription.request(n);
+    }
+
+    private synchronized void awaitElements(int num) throws Exception {
+      long endTime = System.currentTimeMillis() + 30000L;
+      while((_elements.size() < num) &&
+            (System.currentTimeMillis() < endTime)) {
+        wait(100L);
+      }
+    }
+
+    private void awaitDone() throws Exception {
+      assertTrue(_done.await(30L, TimeUnit.SECONDS));
+    }
+  }
+
+  /**
+   * RemoteInputStream which counts the packets read.
+   */
+  private static final class CountingRemoteInputStream
+    implements RemoteInputStream
+  {
+    private final RemoteInputStream _delegate;
+    private final AtomicInteger _numPackets = new AtomicInteger();
+    private volatile boolean _closed;
+    private volatile boolean _closeSuccess;
+
+    private CountingRemoteInputStream(RemoteInputStream delegate) {
+      _delegate = delegate;
+    }
+
+    @Override
+    public boolean usingGZIPCompression() throws IOException {
+      return _delegate.usingGZIPCompression();
+    }
+
+    @Override
+    public int available() throws IOException {
+      return _delegate.available();
+    }
+
+    @Override
+    public void close(boolean readSuccess) throws IOException {
+      _closeSuccess = readSuccess;
+      _closed = true;
+      _delegate.close(readSuccess);
+    }
+
+    @Override
+    public byte[] readPacket(int packetId) throws IOException {
+      byte[] packet = _delegate.readPacket(packetId);
+      if(packet != null) {
+        _numPackets.incrementAndGet();
+      }
+      return packet;
+    }
+
+    @Override
+    public long skip(long n, int skipId) throws IOException {
+      return _delegate.skip(n, skipId);
+    }
+  }
+
+}
@@ -0,0 +1,263 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.rmi.RemoteException;
+
+import junit.framework.TestCase;
+
+/**
+ * @author James Ahlborn
+ */
+public class RemoteRetryTest extends TestCase
+{
+
+  public RemoteRetryTest(String name) {
+    super(name);
+  }
+
+  public void testExponential() throws Exception
+  {
+    RemoteRetry retry = new RemoteRetry.Exponential(
+        3, 5L, 20L, RemoteRetry.Exponential.NO_DEADLINE, null);
+
+    // succeeds on the last allowed attempt
+    FailingCaller caller = new FailingCaller(2);
+    assertEquals("success", retry.call(caller, RemoteException.class));
+    assertEquals(3, caller._numCalls);
+
+    // gives up after max attempts
+    caller = new FailingCaller(3);
+    try {
+      retry.call(caller, RemoteException.class);
+      fail("RemoteException should have been thrown");
+    } catch(RemoteException ignored) {
+      // success
+    }
+    assertEquals(3, caller._numCalls);
+
+    // non-remote exceptions are not retried
+    final int[] numCalls = new int[]{0};
+    try {
+      retry.call(() -> {
+          ++numCalls[0];
+          throw new IOException("not remote");
+        }, IOException.class);
+      fail("IOException should have been thrown");
+    } catch(IOException ignored) {
+      // success
+    }
+    assertEquals(1, numCalls[0]);
+  }
+
+  public void testDeadline() throws Exception
+  {
+    RemoteRetry retry = new RemoteRetry.Exponential(
+        Integer.MAX_VALUE, 10L, 20L, 100L, null);
+
+    FailingCaller caller = new FailingCaller(Integer.MAX_VALUE);
+    long startTime = System.currentTimeMillis();
+    try {
+      retry.call(caller, RemoteException.class);
+      fail("RemoteException should have been thrown");
+    } catch(RemoteException ignored) {
+      // success
+    }
+    long elapsed = System.currentTimeMillis() - startTime;
+
+    assertTrue(elapsed >= 100L);
+    assertTrue(elapsed < 1000L);
+    // at most 10ms per retry (plus the initial attempt)
+    assertTrue(caller._numCalls <= 11);
+  }
+
+  public void testBudget() throws Exception
+  {
+    RetryBudget budget = new RetryBudget(0.0d, 3);
+    RemoteRetry retry = new RemoteRetry.Exponential(
+        5, 1L, 2L, RemoteRetry.Exponential.NO_DEADLINE, budget);
+
+    // uses 2 of the 3 available retries
+    FailingCaller caller = new FailingCaller(2);
+    assertEquals("success", retry.call(caller, RemoteException.class));
+    assertEquals(1, budget.getAvailable());
+
+    // uses the last retry, then fails
+    caller = new FailingCaller(5);
+    try {
+      retry.call(caller, RemoteException.class);
+      fail("RemoteException should have been thrown");
+    } catch(RemoteException ignored) {
+      // success
+    }
+    assertEquals(2, caller._numCalls);
+    assertEquals(0, budget.getAvailable());
+
+    // budget replenishes over time
+    budget = new RetryBudget(1000.0d, 1);
+    assertTrue(budget.tryAcquire());
+    Thread.sleep(10L);
+    assertTrue(budget.tryAcquire());
+  }
+
+  public void testDirectFirstAttempt() throws Exception
+  {
+    assertTrue(RemoteRetry.SIMPLE.isDirectFirstAttemptAllowed());
+    assertTrue(new RemoteRetry.Exponential().isDirectFirstAttemptAllowed());
+    assertFalse(new CircuitBreakerRetry(
+                    "testDirectFirstAttempt:1234", RemoteRetry.NEVER)
+                .isDirectFirstAttemptAllowed());
+
+    RemoteRetry retry = new RemoteRetry.Exponential(
+        3, 1L, 2L, RemoteRetry.Exponential.NO_DEADLINE, null);
+
+    // failure of the direct attempt counts as the first attempt
+    FailingCaller caller = new FailingCaller(2);
+    RemoteException failure = null;
+    try {
+      caller.call();
+    } catch(RemoteException e) {
+      failure = e;
+    }
+    assertEquals("success", retry.callAfterFailure(
+                     caller, failure, System.nanoTime(), RemoteRetry.LOG,
+                     RemoteException.class));
+    assertEquals(3, caller._numCalls);
+
+    caller = new FailingCaller(3);
+    try {
+      caller.call();
+    } catch(RemoteException e) {
+      failure = e;
+    }
+    try {
+      retry.callAfterFailure(caller, failure, System.nanoTime(),
+                             RemoteRetry.LOG, RemoteException.class);
+      fail("RemoteException should have been thrown");
+    } catch(RemoteException ignored) {
+      // success
+    }
+    assertEquals(3, caller._numCalls);
+  }
+
+  public void testHugeDelays() throws Exception
+  {
+    // (the deadline keeps the actual sleeps short)
+    RemoteRetry retry = new RemoteRetry.Exponential(
+        5, Long.MAX_VALUE / 4L, Long.MAX_VALUE, 1L, null);
+    for(int i = 1; i <= 5; ++i) {
+      retry.backOff(i, 0L, RemoteRetry.LOG);
+    }
+
+    retry = new RemoteRetry.Exponential(
+        5, Long.MAX_VALUE, Long.MAX_VALUE, 1L, null);
+    for(int i = 1; i <= 5; ++i) {
+      retry.backOff(i, 0L, RemoteRetry.LOG);
+    }
+  }
+
+  public void testDirectWrapper() throws Exception
+  {
+    RemoteRetry retry = new RemoteRetry.Exponential(
+        3, 1L, 2L, RemoteRetry.Exponential.NO_DEADLINE, null);
+
+    FlakyRemoteInputStream stub = new FlakyRemoteInputStream(2);
+    RemoteInputStream wrapper = RemoteWrapper.wrap(
+        RemoteInputStream.class, stub, retry, RemoteRetry.LOG);
+    assertTrue(wrapper instanceof RemoteInputStreamWrapper);
+    assertSame(wrapper, RemoteWrapper.getWrapper(wrapper));
+
+    assertEquals(100, wrapper.readPacket(0).length);
+    assertEquals(3, stub._numCalls);
+    assertNull(wrapper.readPacket(1));
+    assertEquals(4, stub._numCalls);
+    wrapper.close(true);
+  }
+
+  /**
+   * Caller which fails with a RemoteException the given number of times
+   * before succeeding.
+   */
+  private static final class FailingCaller
+    implements RemoteRetry.ICaller<String>
+  {
+    private final int _numFailures;
+    private int _numCalls;
+
+    private FailingCaller(int numFailures) {
+      _numFailures = numFailures;
+    }
+
+    @Override
+    public String call() throws RemoteException {
+      if(_numCalls++ < _numFailures) {
+        throw new RemoteException("spurious failure");
+      }
+      return "success";
+    }
+  }
+
+  /**
+   * RemoteInputStream which fails the given number of readPacket calls with
+   * a RemoteException before succeeding.
+   */
+  private static final class FlakyRemoteInputStream
+    implements RemoteInputStream
+  {
+    private final RemoteInputStream _delegate = new SimpleRemoteInputStream(
+        new ByteArrayInputStream(new byte[100]));
+    private int _numFailures;
+    private int _numCalls;
+
+    private FlakyRemoteInputStream(int numFailures) {
+      _numFailures = numFailures;
+    }
+
+    @Override
+    public boolean usingGZIPCompression() throws IOException {
+      return _delegate.usingGZIPCompression();
+    }
+
+    @Override
+    public int available() throws IOException {
+      return _delegate.available();
+    }
+
+    @Override
+    public void close(boolean readSuccess) throws IOException {
+      _delegate.close(readSuccess);
+    }
+
+    @Override
+    public byte[] readPacket(int packetId) throws IOException {
+      ++_numCalls;
+      if(_numFailures > 0) {
+        --_numFailures;
+        throw new RemoteException("spurious failure");
+      }
+      return _delegate.readPacket(packetId);
+    }
+
+    @Override
+    public long skip(long n, int skipId) throws IOException {
+      return _delegate.skip(n, skipId);
+    }
+  }
+
+}
@@ -1261,9 +1261,6 @@ public class RemoteStreamServerTest extends BaseRemoteStreamTest {
       return RemoteInputStream.class;
     }
 
-    @Override
-    protected Object getLock() { return _in.getLock(); }
-
     @Override
     protected void closeImpl(boolean writeSuccess)
       throws IOException
@@ -1357,9 +1354,6 @@ public class RemoteStreamServerTest extends BaseRemoteStreamTest {
       return RemoteOutputStream.class;
     }
 
-    @Override
-    protected Object getLock() { return _out.getLock(); }
-
     @Override
     protected void closeImpl(boolean writeSuccess)
       throws IOException
@@ -0,0 +1,174 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.exporter;
+
+import java.io.ByteArrayInputStream;
+import java.rmi.RemoteException;
+
+import com.healthmarketscience.rmiio.RemoteStreamServer;
+import com.healthmarketscience.rmiio.SimpleRemoteInputStream;
+import junit.framework.TestCase;
+
+/**
+ * @author James Ahlborn
+ */
+public class AdmissionControllerTest extends TestCase
+{
+
+  public AdmissionControllerTest(String name) {
+    super(name);
+  }
+
+  public void testRejectFast() throws Exception
+  {
+    AdmissionController controller = new AdmissionController(
+        "testRejectFast", 2, AdmissionController.UNLIMITED, 0L);
+    RemoteStreamExporter exporter = new LocalExporter(controller);
+
+    SimpleRemoteInputStream s1 = newServer();
+    SimpleRemoteInputStream s2 = newServer();
+    exporter.export(s1);
+    exporter.export(s2);
+    assertEquals(2, controller.getOpenStreams());
+
+    SimpleRemoteInputStream s3 = newServer();
+    try {
+      exporter.export(s3);
+      fail("RejectedException should have been thrown");
+    } catch(AdmissionController.RejectedException ignored) {
+      // success
+    }
+    assertEquals(1L, controller.getRejected());
+
+    // closing a stream frees up a slot
+    s1.close();
+    assertEquals(1, controller.getOpenStreams());
+    exporter.export(s3);
+    assertEquals(3L, controller.getAdmitted());
+
+    s2.close();
+    s3.close();
+    assertEquals(0, controller.getOpenStreams());
+    assertEquals(0L, controller.getBufferedBytes());
+  }
+
+  public void testQueue() throws Exception
+  {
+    AdmissionController controller = new AdmissionController(
+        "testQueue", 1, AdmissionController.UNLIMITED, 5000L);
+    final RemoteStreamExporter exporter = new LocalExporter(controller);
+
+    SimpleRemoteInputStream s1 = newServer();
+    exporter.export(s1);
+
+    final SimpleRemoteInputStream s2 = newServer();
+    final RemoteException[] failure = new RemoteException[1];
+    Thread t = new Thread(() -> {
+        try {
+          exporter.export(s2);
+        } catch(RemoteException e) {
+          failure[0] = e;
+        }
+      });
+    t.start();
+    while(controller.getQueueDepth() == 0) {
+      Thread.sleep(5L);
+    }
+    Thread.sleep(20L);
+    s1.close();
+    t.join();
+
+    assertNull(failure[0]);
+    assertEquals(1, controller.getOpenStreams());
+    assertEquals(1, controller.getMaxQueueDepth());
+    assertEquals(0, controller.getQueueDepth());
+    assertEquals(1L, controller.getWaitCount());
+    assertTrue(controller.getWaitMaxNanos() >= 20000000L);
+
+    // a second (shorter) wait does not change the 99th percentile
+    final SimpleRemoteInputStream s3 = newServer();
+    t = new Thread(() -> {
+        try {
+          exporter.export(s3);
+        } catch(RemoteException e) {
+          failure[0] = e;
+        }
+      });
+    t.start();
+    while(controller.getQueueDepth() == 0) {
+      Thread.sleep(1L);
+    }
+    s2.close();
+    t.join();
+
+    assertNull(failure[0]);
+    assertEquals(2L, controller.getWaitCount());
+    assertTrue(controller.getWait99thPercentileNanos() >= 20000000L);
+    assertEquals(controller.getWaitTime().getPercentile(99.0d),
+                 controller.getWait99thPercentileNanos());
+    s3.close();
+  }
+
+  public void testTimeoutAndBytes() throws Exception
+  {
+    AdmissionController controller = new AdmissionController(
+        "testTimeoutAndBytes", AdmissionController.UNLIMITED,
+        AdmissionController.DEFAULT_BUFFERED_BYTES_PER_STREAM * 3 / 2, 50L);
+    RemoteStreamExporter exporter = new LocalExporter(controller);
+
+    SimpleRemoteInputStream s1 = newServer();
+    exporter.export(s1);
+
+    SimpleRemoteInputStream s2 = newServer();
+    long startTime = System.currentTimeMillis();
+    try {
+      exporter.export(s2);
+      fail("RejectedException should have been thrown");
+    } catch(AdmissionController.RejectedException ignored) {
+      // success
+    }
+    assertTrue((System.currentTimeMillis() - startTime) >= 50L);
+    assertEquals(1L, controller.getRejected());
+    assertEquals(1, controller.getOpenStreams());
+    s1.close();
+  }
+
+  private static SimpleRemoteInputStream newServer() {
+    return new SimpleRemoteInputStream(new ByteArrayInputStream(new byte[10]));
+  }
+
+  /**
+   * Exporter which does not actually export anything.
+   */
+  private static final class LocalExporter extends RemoteStreamExporter
+  {
+    private LocalExporter(AdmissionController controller) {
+      setAdmissionController(controller);
+    }
+
+    @Override
+    protected Object exportImpl(RemoteStreamServer<?,?> server) {
+      return server;
+    }
+
+    @Override
+    protected void unexportImpl(RemoteStreamServer<?,?> server) {
+      // nothing to do
+    }
+  }
+
+}
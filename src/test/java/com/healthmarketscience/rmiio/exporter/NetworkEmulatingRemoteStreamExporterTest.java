@@ -0,0 +1,168 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.exporter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.rmi.NoSuchObjectException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.healthmarketscience.rmiio.RemoteInputStream;
+import com.healthmarketscience.rmiio.RemoteInputStreamClient;
+import com.healthmarketscience.rmiio.RemoteOutputStream;
+import com.healthmarketscience.rmiio.RemoteOutputStreamClient;
+import com.healthmarketscience.rmiio.RemoteRetry;
+import com.healthmarketscience.rmiio.SimpleRemoteInputStream;
+import com.healthmarketscience.rmiio.SimpleRemoteOutputStream;
+import junit.framework.TestCase;
+import org.apache.commons.logging.Log;
+
+/**
+ * @author James Ahlborn
+ */
+public class NetworkEmulatingRemoteStreamExporterTest extends TestCase
+{
+  /** retry which never backs off, so that emulated failures do not slow down
+      the tests */
+  private static final RemoteRetry FAST_RETRY = new RemoteRetry.Simple(50) {
+      @Override
+      public void backOff(int numRetries, Log log) {}
+    };
+
+  public NetworkEmulatingRemoteStreamExporterTest(String name) {
+    super(name);
+  }
+
+  public void testConditions() throws Exception
+  {
+    NetworkEmulatingRemoteStreamExporter exporter =
+      new NetworkEmulatingRemoteStreamExporter(10L, 5L, 1000L, 0.5d);
+    assertEquals(10L, exporter.getLatency());
+    assertEquals(5L, exporter.getJitter());
+    assertEquals(1000L, exporter.getBandwidth());
+    assertEquals(0.5d, exporter.getFailureRate());
+
+    try {
+      new NetworkEmulatingRemoteStreamExporter(10L, 5L, 1000L, 1.5d);
+      fail("IllegalArgumentException should have been thrown");
+    } catch(IllegalArgumentException ignored) {
+      // success
+    }
+  }
+
+  public void testLatencyAndBandwidth() throws Exception
+  {
+    byte[] data = newData(40000);
+    NetworkEmulatingRemoteStreamExporter exporter =
+      new NetworkEmulatingRemoteStreamExporter(20L, 0L, 200000L, 0.0d);
+
+    SimpleRemoteInputStream server = new SimpleRemoteInputStream(
+        new ByteArrayInputStream(data));
+    try {
+      RemoteInputStream stub = exporter.export(server);
+
+      long startTime = System.nanoTime();
+      assertTrue(Arrays.equals(data, readAll(stub)));
+      long elapsed = TimeUnit.NANOSECONDS.toMillis(
+          System.nanoTime() - startTime);
+
+      // 40000 bytes at 200000 bytes/sec is at least 200 millis
+      assertTrue("elapsed " + elapsed, elapsed >= 200L);
+    } finally {
+      server.close();
+    }
+  }
+
+  public void testFailures() throws Exception
+  {
+    byte[] data = newData(100000);
+    NetworkEmulatingRemoteStreamExporter exporter =
+      new NetworkEmulatingRemoteStreamExporter(0L, 1L, 0L, 0.2d);
+
+    SimpleRemoteInputStream inServer = new SimpleRemoteInputStream(
+        new ByteArrayInputStream(data));
+    try {
+      // the emulation travels with the stub
+      RemoteInputStream stub = roundTrip(exporter.export(inServer));
+      assertTrue(Arrays.equals(data, readAll(stub)));
+    } finally {
+      inServer.close();
+    }
+
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    SimpleRemoteOutputStream outServer = new SimpleRemoteOutputStream(bout);
+    try {
+      RemoteOutputStream stub = roundTrip(exporter.export(outServer));
+      OutputStream out = RemoteOutputStreamClient.wrap(stub, FAST_RETRY);
+      out.write(data);
+      closeQuietly(out);
+      assertTrue(Arrays.equals(data, bout.toByteArray()));
+    } finally {
+      outServer.close();
+    }
+  }
+
+  private static byte[] readAll(RemoteInputStream stub) throws Exception
+  {
+    InputStream in = RemoteInputStreamClient.wrap(stub, FAST_RETRY);
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    byte[] buf = new byte[1024];
+    int numRead = 0;
+    while((numRead = in.read(buf)) >= 0) {
+      bout.write(buf, 0, numRead);
+    }
+    closeQuietly(in);
+    return bout.toByteArray();
+  }
+
+  private static void closeQuietly(Closeable c) throws Exception
+  {
+    try {
+      c.close();
+    } catch(NoSuchObjectException ignored) {
+      // the response to a successful close call was lost, so the retry found
+      // the server already unexported
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T roundTrip(T stub) throws Exception
+  {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    ObjectOutputStream oout = new ObjectOutputStream(bout);
+    oout.writeObject(stub);
+    oout.close();
+    ObjectInputStream oin = new ObjectInputStream(
+        new ByteArrayInputStream(bout.toByteArray()));
+    return (T)oin.readObject();
+  }
+
+  private static byte[] newData(int size)
+  {
+    byte[] data = new byte[size];
+    new Random(42L).nextBytes(data);
+    return data;
+  }
+
+}
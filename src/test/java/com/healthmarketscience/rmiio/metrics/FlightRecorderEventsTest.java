@@ -0,0 +1,122 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.healthmarketscience.rmiio.RemoteRetry;
+import com.healthmarketscience.rmiio.SimpleRemoteInputStream;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+import org.apache.commons.logging.Log;
+
+/**
+ * @author James Ahlborn
+ */
+public class FlightRecorderEventsTest extends TestCase
+{
+
+  public FlightRecorderEventsTest(String name) {
+    super(name);
+  }
+
+  public void testEvents() throws Exception
+  {
+    assertTrue(FlightRecorderEvents.isAvailable());
+    assertFalse(FlightRecorderEvents.isRecording());
+
+    File recordingFile = File.createTempFile("rmiioEvents_", ".jfr");
+    recordingFile.deleteOnExit();
+
+    Recording recording = new Recording();
+    try {
+      for(String name : new String[]{"Packet", "Retry", "BackOff", "Export",
+                                     "Close"}) {
+        recording.enable("com.healthmarketscience.rmiio." + name)
+          .withoutThreshold();
+      }
+      recording.start();
+      assertTrue(FlightRecorderEvents.isRecording());
+
+      SimpleRemoteInputStream server = new SimpleRemoteInputStream(
+          new ByteArrayInputStream(new byte[100]));
+      server.export();
+      assertNotNull(server.readPacket(0));
+      assertNull(server.readPacket(1));
+      server.close(true);
+
+      RemoteRetry retry = new RemoteRetry() {
+          @Override
+          public boolean shouldRetry(Throwable t, int numRetries) {
+            return(numRetries < 2);
+          }
+          @Override
+          public void backOff(int numRetries, Log log) {}
+        };
+      final int[] count = new int[]{0};
+      retry.call(() -> {
+          if(count[0]++ == 0) {
+            throw new RemoteException("spurious failure");
+          }
+          return null;
+        }, RemoteException.class);
+
+      recording.stop();
+      assertFalse(FlightRecorderEvents.isRecording());
+      recording.dump(recordingFile.toPath());
+    } finally {
+      recording.close();
+    }
+
+    Map<String,Integer> eventCounts = new HashMap<String,Integer>();
+    List<RecordedEvent> events = RecordingFile.readAllEvents(
+        recordingFile.toPath());
+    for(RecordedEvent event : events) {
+      String name = event.getEventType().getName();
+      Integer oldCount = eventCounts.get(name);
+      eventCounts.put(name, ((oldCount != null) ? (oldCount + 1) : 1));
+
+      if(name.endsWith(".Close")) {
+        assertTrue(event.getBoolean("clean"));
+      } else if(name.endsWith(".Retry")) {
+        assertEquals(RemoteException.class.getName(),
+                     event.getClass("exceptionClass").getName());
+        assertTrue(event.getBoolean("willRetry"));
+      }
+    }
+
+    assertEquals(Integer.valueOf(2),
+                 eventCounts.get("com.healthmarketscience.rmiio.Packet"));
+    assertEquals(Integer.valueOf(1),
+                 eventCounts.get("com.healthmarketscience.rmiio.Retry"));
+    assertEquals(Integer.valueOf(1),
+                 eventCounts.get("com.healthmarketscience.rmiio.BackOff"));
+    // export and unexport
+    assertEquals(Integer.valueOf(2),
+                 eventCounts.get("com.healthmarketscience.rmiio.Export"));
+    assertEquals(Integer.valueOf(1),
+                 eventCounts.get("com.healthmarketscience.rmiio.Close"));
+  }
+
+}
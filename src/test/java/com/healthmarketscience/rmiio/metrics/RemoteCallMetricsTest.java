@@ -0,0 +1,174 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.Map;
+
+import com.healthmarketscience.rmiio.RemoteCallMonitor;
+import com.healthmarketscience.rmiio.RemoteInputStream;
+import com.healthmarketscience.rmiio.RemoteInputStreamWrapper;
+import com.healthmarketscience.rmiio.RemoteRetry;
+import com.healthmarketscience.rmiio.RemoteWrapper;
+import com.healthmarketscience.rmiio.SimpleRemoteInputStream;
+import junit.framework.TestCase;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * @author James Ahlborn
+ */
+public class RemoteCallMetricsTest extends TestCase
+{
+  private static final Log LOG = LogFactory.getLog(RemoteCallMetricsTest.class);
+
+  /** retries RemoteExceptions up to 3 times, with a short backoff */
+  private static final RemoteRetry TEST_RETRY = new RemoteRetry() {
+      @Override
+      public boolean shouldRetry(Throwable t, int numRetries) {
+        return((t instanceof RemoteException) && (numRetries < 3));
+      }
+      @Override
+      public void backOff(int numRetries, Log log) {
+        try {
+          Thread.sleep(5);
+        } catch(InterruptedException ignored) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+
+  public RemoteCallMetricsTest(String name) {
+    super(name);
+  }
+
+  public void testWrapper() throws Exception
+  {
+    RemoteCallMetrics callMetrics = new RemoteCallMetrics();
+    RemoteInputStreamWrapper wrapper = new RemoteInputStreamWrapper(
+        new FlakyRemoteInputStream(2), TEST_RETRY, LOG);
+    assertSame(RemoteCallMonitor.DUMMY_MONITOR,
+               wrapper.getRemoteCallMonitor());
+    wrapper.setRemoteCallMonitor(callMetrics);
+
+    doTestCalls(wrapper, callMetrics);
+  }
+
+  public void testProxy() throws Exception
+  {
+    RemoteCallMetrics callMetrics = new RemoteCallMetrics();
+    RemoteWrapper.setDefaultRemoteCallMonitor(callMetrics);
+    RemoteInputStream proxy = null;
+    try {
+      proxy = RemoteWrapper.wrap(RemoteInputStream.class,
+                                 new FlakyRemoteInputStream(2),
+                                 TEST_RETRY, LOG);
+    } finally {
+      RemoteWrapper.setDefaultRemoteCallMonitor(null);
+    }
+    assertSame(RemoteCallMonitor.DUMMY_MONITOR,
+               RemoteWrapper.getDefaultRemoteCallMonitor());
+    assertSame(callMetrics,
+               RemoteWrapper.getWrapper(proxy).getRemoteCallMonitor());
+
+    doTestCalls(proxy, callMetrics);
+  }
+
+  private static void doTestCalls(RemoteInputStream remoteIn,
+                                  RemoteCallMetrics callMetrics)
+    throws Exception
+  {
+    // first packet requires 2 retries, the second fails immediately
+    assertEquals(100, remoteIn.readPacket(0).length);
+    assertNull(remoteIn.readPacket(1));
+    try {
+      remoteIn.skip(10, 0);
+      fail("IOException should have been thrown");
+    } catch(IOException ignored) {
+      // success
+    }
+
+    Map<String,RemoteCallMetrics.MethodSnapshot> snapshots =
+      callMetrics.getSnapshots();
+    assertEquals(2, snapshots.size());
+
+    RemoteCallMetrics.MethodSnapshot readPacket = snapshots.get("readPacket");
+    assertEquals(2, readPacket.getCalls());
+    assertEquals(0, readPacket.getFailures());
+    assertEquals(4, readPacket.getAttempts());
+    assertEquals(2, readPacket.getRetries());
+    assertTrue(readPacket.getBackOffNanos() >= 10000000L);
+    assertEquals(2, readPacket.getLatency().getCount());
+    assertEquals(Long.valueOf(2),
+                 readPacket.getRetryCauses().get(
+                     RemoteException.class.getName()));
+
+    RemoteCallMetrics.MethodSnapshot skip = snapshots.get("skip");
+    assertEquals(1, skip.getCalls());
+    assertEquals(1, skip.getFailures());
+    assertEquals(1, skip.getAttempts());
+    assertEquals(0, skip.getRetries());
+  }
+
+  /**
+   * RemoteInputStream which fails the first few readPacket calls with a
+   * RemoteException and always fails skip calls with an IOException.
+   */
+  private static final class FlakyRemoteInputStream
+    implements RemoteInputStream
+  {
+    private final RemoteInputStream _delegate = new SimpleRemoteInputStream(
+        new ByteArrayInputStream(new byte[100]));
+    private int _numFailures;
+
+    private FlakyRemoteInputStream(int numFailures) {
+      _numFailures = numFailures;
+    }
+
+    @Override
+    public boolean usingGZIPCompression() throws IOException {
+      return _delegate.usingGZIPCompression();
+    }
+
+    @Override
+    public int available() throws IOException {
+      return _delegate.available();
+    }
+
+    @Override
+    public void close(boolean readSuccess) throws IOException {
+      _delegate.close(readSuccess);
+    }
+
+    @Override
+    public byte[] readPacket(int packetId) throws IOException {
+      if(_numFailures > 0) {
+        --_numFailures;
+        throw new RemoteException("spurious failure");
+      }
+      return _delegate.readPacket(packetId);
+    }
+
+    @Override
+    public long skip(long n, int skipId) throws IOException {
+      throw new IOException("skip not supported");
+    }
+  }
+
+}
@@ -0,0 +1,183 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.metrics;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+
+import com.healthmarketscience.rmiio.RemoteInputStreamServer;
+import com.healthmarketscience.rmiio.RemoteStreamServer;
+import com.healthmarketscience.rmiio.SimpleRemoteInputStream;
+import junit.framework.TestCase;
+
+/**
+ * @author James Ahlborn
+ */
+public class RemoteStreamInventoryTest extends TestCase
+{
+
+  private boolean _wasEnabled;
+
+  public RemoteStreamInventoryTest(String name) {
+    super(name);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    RemoteStreamInventory inventory = RemoteStreamInventory.getInstance();
+    _wasEnabled = inventory.isEnabled();
+    inventory.setEnabled(true);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    RemoteStreamInventory.getInstance().setEnabled(_wasEnabled);
+  }
+
+  public void testDisabled() throws Exception
+  {
+    // opt-in only
+    assertFalse(new RemoteStreamInventory().isEnabled());
+
+    RemoteStreamInventory inventory = RemoteStreamInventory.getInstance();
+    inventory.setEnabled(false);
+
+    SimpleRemoteInputStream server = new SimpleRemoteInputStream(
+        new ByteArrayInputStream(new byte[100]));
+    server.export();
+    try {
+      assertNull(findInfo(inventory, server));
+    } finally {
+      server.close();
+    }
+  }
+
+  public void testInventory() throws Exception
+  {
+    RemoteStreamInventory inventory = RemoteStreamInventory.getInstance();
+    int oldStackSampleInterval = inventory.getStackSampleInterval();
+    long oldLeakIdleThreshold = inventory.getLeakIdleThreshold();
+    inventory.setStackSampleInterval(1);
+    long closedCount = inventory.getClosedStreamCount();
+
+    try {
+      SimpleRemoteInputStream server = new SimpleRemoteInputStream(
+          new ByteArrayInputStream(new byte[100]));
+      assertNull(findInfo(inventory, server));
+
+      server.export();
+
+      RemoteStreamInventory.StreamInfo info = findInfo(inventory, server);
+      assertNotNull(info);
+      assertTrue(info.isPinned());
+      assertEquals(0L, info.getBytesMoved());
+      assertNotNull(info.getExporter());
+      assertNotNull(info.getCreationStack());
+
+      // the first remote call should release the hard reference
+      server.readPacket(0);
+
+      info = findInfo(inventory, server);
+      assertFalse(info.isPinned());
+      assertEquals(100L, info.getBytesMoved());
+
+      inventory.setLeakIdleThreshold(0L);
+      assertTrue(inventory.getSuspectedLeakStreams().size() >= 1);
+      assertTrue(inventory.reportSuspectedLeaks() >= 1);
+      inventory.setLeakIdleThreshold(Long.MAX_VALUE);
+      assertNull(findLeak(inventory, server));
+
+      server.close();
+
+      assertNull(findInfo(inventory, server));
+      assertEquals(closedCount + 1, inventory.getClosedStreamCount());
+
+    } finally {
+      inventory.setStackSampleInterval(oldStackSampleInterval);
+      inventory.setLeakIdleThreshold(oldLeakIdleThreshold);
+    }
+  }
+
+  public void testCollectedPurgedOnRegister() throws Exception
+  {
+    RemoteStreamInventory inventory = RemoteStreamInventory.getInstance();
+    inventory.getOpenStreamCount();
+    int numEntries = inventory.getNumEntries();
+
+    for(int i = 0; i < 100; ++i) {
+      inventory.register(
+          new SimpleRemoteInputStream(new ByteArrayInputStream(new byte[0])),
+          null, RemoteInputStreamServer.DUMMY_MONITOR);
+    }
+    assertTrue(inventory.getNumEntries() >= (numEntries + 100));
+
+    // registering new streams purges the collected ones (without ever
+    // querying the inventory)
+    for(int i = 0; i < 50; ++i) {
+      System.gc();
+      Thread.sleep(20L);
+      SimpleRemoteInputStream server = new SimpleRemoteInputStream(
+          new ByteArrayInputStream(new byte[0]));
+      inventory.register(server, null, RemoteInputStreamServer.DUMMY_MONITOR)
+        .closed(server, true);
+      if(inventory.getNumEntries() <= numEntries) {
+        break;
+      }
+    }
+    assertTrue(inventory.getNumEntries() <= numEntries);
+  }
+
+  public void testMBean() throws Exception
+  {
+    RemoteStreamInventory inventory = RemoteStreamInventory.getInstance();
+    inventory.registerMBean();
+    try {
+      assertEquals(inventory.getOpenStreamCount(),
+                   ManagementFactory.getPlatformMBeanServer().getAttribute(
+                       inventory.getObjectName(), "OpenStreamCount"));
+    } finally {
+      inventory.unregisterMBean();
+    }
+  }
+
+  private static RemoteStreamInventory.StreamInfo findInfo(
+      RemoteStreamInventory inventory, RemoteStreamServer<?,?> server)
+  {
+    return find(inventory.getOpenStreams(), server);
+  }
+
+  private static RemoteStreamInventory.StreamInfo findLeak(
+      RemoteStreamInventory inventory, RemoteStreamServer<?,?> server)
+  {
+    return find(inventory.getSuspectedLeakStreams(), server);
+  }
+
+  private static RemoteStreamInventory.StreamInfo find(
+      Iterable<RemoteStreamInventory.StreamInfo> infos,
+      RemoteStreamServer<?,?> server)
+  {
+    String desc = server.getClass().getName() + "@" +
+      Integer.toHexString(System.identityHashCode(server));
+    for(RemoteStreamInventory.StreamInfo info : infos) {
+      if(info.getDescription().equals(desc)) {
+        return info;
+      }
+    }
+    return null;
+  }
+
+}
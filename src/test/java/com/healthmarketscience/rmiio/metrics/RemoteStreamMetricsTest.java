@@ -0,0 +1,162 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import com.healthmarketscience.rmiio.RemoteInputStream;
+import com.healthmarketscience.rmiio.RemoteInputStreamServer;
+import com.healthmarketscience.rmiio.RemoteStreamMonitor;
+import com.healthmarketscience.rmiio.SimpleRemoteInputStream;
+import com.healthmarketscience.rmiio.SimpleRemoteOutputStream;
+import junit.framework.TestCase;
+
+/**
+ * @author James Ahlborn
+ */
+public class RemoteStreamMetricsTest extends TestCase
+{
+
+  public RemoteStreamMetricsTest(String name) {
+    super(name);
+  }
+
+  public void testMetrics() throws Exception
+  {
+    RemoteStreamMetrics metrics = new RemoteStreamMetrics("test");
+
+    byte[] data = new byte[10000];
+    RemoteInputStream input = new SimpleRemoteInputStream(
+        new ByteArrayInputStream(data), metrics.createInputMonitor(), 1000);
+    SimpleRemoteOutputStream output = new SimpleRemoteOutputStream(
+        new ByteArrayOutputStream(), metrics.createOutputMonitor());
+
+    int packetId = 0;
+    byte[] packet = null;
+    while((packet = input.readPacket(packetId)) != null) {
+      output.writePacket(packet, packetId);
+      // reattempt every packet once
+      output.writePacket(packet, packetId);
+      ++packetId;
+    }
+
+    RemoteStreamMetrics.Snapshot snapshot = metrics.getSnapshot();
+    assertEquals(2, snapshot.getActiveStreams());
+    assertEquals(2 * data.length, snapshot.getBytesMoved());
+    assertEquals(20, snapshot.getPacketsMoved());
+    assertEquals(10, snapshot.getReattempts());
+    // includes the final read which hit EOF
+    assertEquals(11, snapshot.getReadPacketTimes().getCount());
+    assertEquals(10, snapshot.getWritePacketTimes().getCount());
+
+    List<RemoteStreamMetrics.StreamSnapshot> streams =
+      metrics.getStreamSnapshots();
+    assertEquals(2, streams.size());
+    for(RemoteStreamMetrics.StreamSnapshot stream : streams) {
+      assertEquals(data.length, stream.getBytesMoved());
+      assertEquals(10, stream.getPacketsMoved());
+      assertEquals(((stream.getDirection() ==
+                     RemoteStreamMetrics.Direction.OUTPUT) ? 10 : 0),
+                   stream.getReattempts());
+    }
+
+    input.close(true);
+    // local close (abort) is not considered clean
+    output.close();
+
+    snapshot = metrics.getSnapshot();
+    assertEquals(0, snapshot.getActiveStreams());
+    assertEquals(2, snapshot.getClosedStreams());
+    assertEquals(1, snapshot.getDirtyClosedStreams());
+    assertTrue(metrics.getStreamSnapshots().isEmpty());
+  }
+
+  public void testLateActivity() throws Exception
+  {
+    RemoteStreamMetrics metrics = new RemoteStreamMetrics("late");
+    RemoteStreamMonitor<RemoteInputStreamServer> monitor =
+      metrics.createInputMonitor();
+    SimpleRemoteInputStream input = new SimpleRemoteInputStream(
+        new ByteArrayInputStream(new byte[100]), monitor);
+    input.readPacket(0);
+    assertEquals(1, metrics.getSnapshot().getActiveStreams());
+    input.close(true);
+    assertEquals(0, metrics.getSnapshot().getActiveStreams());
+
+    // activity reported after the close does not resurrect the stream
+    monitor.bytesMoved(input, 10, false);
+    monitor.bytesSkipped(input, 10L, true);
+    monitor.localBytesMoved(input, 10);
+    monitor.localBytesSkipped(input, 10L);
+    monitor.packetServiced(input, 1000L);
+    monitor.failure(input, new IOException());
+
+    RemoteStreamMetrics.Snapshot snapshot = metrics.getSnapshot();
+    assertEquals(0, snapshot.getActiveStreams());
+    assertTrue(metrics.getStreamSnapshots().isEmpty());
+    // but is still included in the global metrics
+    assertEquals(110L, snapshot.getBytesMoved());
+    assertEquals(1L, snapshot.getReattempts());
+    assertEquals(1L, snapshot.getFailures());
+    assertEquals(1L, snapshot.getClosedStreams());
+  }
+
+  public void testMBean() throws Exception
+  {
+    RemoteStreamMetrics metrics = new RemoteStreamMetrics("mbeanTest");
+    metrics.registerMBean();
+    try {
+      RemoteInputStream input = new SimpleRemoteInputStream(
+          new ByteArrayInputStream(new byte[100]),
+          metrics.createInputMonitor());
+      input.readPacket(0);
+
+      assertEquals(100L, ManagementFactory.getPlatformMBeanServer()
+                   .getAttribute(metrics.getObjectName(), "BytesMoved"));
+      assertEquals(1, ManagementFactory.getPlatformMBeanServer()
+                   .getAttribute(metrics.getObjectName(), "ActiveStreams"));
+    } finally {
+      metrics.unregisterMBean();
+    }
+    assertNull(metrics.getObjectName());
+  }
+
+  public void testHistogram() throws Exception
+  {
+    LatencyHistogram histo = new LatencyHistogram();
+    assertEquals(0L, histo.getSnapshot().getPercentile(99.0d));
+
+    for(int i = 1; i <= 100; ++i) {
+      histo.record(i * 1000L);
+    }
+
+    LatencyHistogram.Snapshot snapshot = histo.getSnapshot();
+    assertEquals(100L, snapshot.getCount());
+    assertEquals(50500L, snapshot.getMean());
+    assertEquals(100000L, snapshot.getMax());
+
+    // percentiles are accurate to within a factor of 2
+    long p50 = snapshot.getPercentile(50.0d);
+    assertTrue((p50 >= 50000L) && (p50 < 100000L));
+    assertEquals(100000L, snapshot.getPercentile(100.0d));
+  }
+
+}
@@ -0,0 +1,66 @@
+/*
+Copyright (c) 2026 James Ahlborn
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.healthmarketscience.rmiio.util;
+
+import java.util.concurrent.ThreadFactory;
+
+import junit.framework.TestCase;
+
+/**
+ * @author James Ahlborn
+ */
+public class ThreadFactoriesTest extends TestCase
+{
+
+  public ThreadFactoriesTest(String name) {
+    super(name);
+  }
+
+  public void testPlatformThreads() throws Exception
+  {
+    ThreadFactory factory = ThreadFactories.newPlatformThreadFactory("test");
+    final boolean[] ran = new boolean[1];
+    Thread t1 = factory.newThread(() -> ran[0] = true);
+    Thread t2 = factory.newThread(() -> {});
+    assertTrue(t1.isDaemon());
+    assertEquals("test-0", t1.getName());
+    assertEquals("test-1", t2.getName());
+    t1.start();
+    t1.join();
+    assertTrue(ran[0]);
+  }
+
+  public void testDefaultThreads() throws Exception
+  {
+    // virtual threads are only used when enabled by system property
+    boolean virtualSupported = true;
+    try {
+      Thread.class.getMethod("ofVirtual");
+    } catch(NoSuchMethodException e) {
+      virtualSupported = false;
+    }
+    assertEquals(
+        Boolean.getBoolean(ThreadFactories.VIRTUAL_THREADS_PROPERTY) &&
+        virtualSupported,
+        ThreadFactories.isUsingVirtualThreads());
+
+    Thread t = ThreadFactories.newThreadFactory("test").newThread(() -> {});
+    assertTrue(t.isDaemon());
+    assertTrue(t.getName().startsWith("test-"));
+  }
+
+}